@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio;
+
+/**
+ * Handshake admission configuration. Limits how fast new sessions
+ * are created, handshakes over the limits are rejected with <b>503</b> status
+ * and <b>Retry-After</b> header.
+ * <p>
+ * All limits are disabled by default
+ *
+ * @see com.corundumstudio.socketio.handler.HandshakeAdmissionController
+ */
+public class AdmissionConfig {
+
+    private int handshakeRate = 0;
+
+    private int handshakeBurst = 0;
+
+    private int handshakeRatePerIp = 0;
+
+    private int handshakeBurstPerIp = 0;
+
+    private int ipBucketsSize = 10000;
+
+    private int maxPendingHandshakes = 0;
+
+    private int retryAfter = 1;
+
+    /**
+     * Handshakes per second allowed for whole server,
+     * <code>0</code> - unlimited
+     */
+    public int getHandshakeRate() {
+        return handshakeRate;
+    }
+    public void setHandshakeRate(int handshakeRate) {
+        this.handshakeRate = handshakeRate;
+    }
+
+    /**
+     * Handshakes allowed at once for whole server,
+     * <code>0</code> - equals to handshake rate
+     */
+    public int getHandshakeBurst() {
+        return handshakeBurst;
+    }
+    public void setHandshakeBurst(int handshakeBurst) {
+        this.handshakeBurst = handshakeBurst;
+    }
+
+    /**
+     * Handshakes per second allowed for single remote address,
+     * <code>0</code> - unlimited
+     */
+    public int getHandshakeRatePerIp() {
+        return handshakeRatePerIp;
+    }
+    public void setHandshakeRatePerIp(int handshakeRatePerIp) {
+        this.handshakeRatePerIp = handshakeRatePerIp;
+    }
+
+    /**
+     * Handshakes allowed at once for single remote address,
+     * <code>0</code> - equals to handshake rate per address
+     */
+    public int getHandshakeBurstPerIp() {
+        return handshakeBurstPerIp;
+    }
+    public void setHandshakeBurstPerIp(int handshakeBurstPerIp) {
+        this.handshakeBurstPerIp = handshakeBurstPerIp;
+    }
+
+    /**
+     * Max amount of remote addresses tracked for per address limit,
+     * least recently used addresses are evicted
+     */
+    public int getIpBucketsSize() {
+        return ipBucketsSize;
+    }
+    public void setIpBucketsSize(int ipBucketsSize) {
+        this.ipBucketsSize = ipBucketsSize;
+    }
+
+    /**
+     * Max amount of sessions which passed handshake
+     * but haven't connected transport yet,
+     * <code>0</code> - unlimited
+     */
+    public int getMaxPendingHandshakes() {
+        return maxPendingHandshakes;
+    }
+    public void setMaxPendingHandshakes(int maxPendingHandshakes) {
+        this.maxPendingHandshakes = maxPendingHandshakes;
+    }
+
+    /**
+     * <b>Retry-After</b> header value in seconds sent with rejected handshake
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking alternative of {@link AuthorizationListener}.
+ * Channel reads are paused until returned stage is completed
+ * and handshake is resumed on the channel event loop.
+ *
+ * @see Configuration#setAsyncAuthorizationListener(AsyncAuthorizationListener)
+ */
+public interface AsyncAuthorizationListener {
+
+    /**
+     * Checks is client with handshake data is authorized
+     *
+     * @param data - handshake data
+     * @return - stage completed with authorization result,
+     *           exceptionally completed stage is treated as failed authorization
+     */
+    CompletionStage<AuthorizationResult> authorize(HandshakeData data);
+
+}
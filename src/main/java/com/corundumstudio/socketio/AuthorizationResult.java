@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio;
+
+/**
+ * Result of asynchronous handshake authorization
+ *
+ * @see AsyncAuthorizationListener
+ */
+public class AuthorizationResult {
+
+    public static final AuthorizationResult SUCCESSFUL_AUTHORIZATION = new AuthorizationResult(true);
+    public static final AuthorizationResult FAILED_AUTHORIZATION = new AuthorizationResult(false);
+
+    private final boolean authorized;
+
+    public AuthorizationResult(boolean authorized) {
+        this.authorized = authorized;
+    }
+
+    public boolean isAuthorized() {
+        return authorized;
+    }
+
+}
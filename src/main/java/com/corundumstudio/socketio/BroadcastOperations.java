@@ -17,12 +17,14 @@ package com.corundumstudio.socketio;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import com.corundumstudio.socketio.listener.RawDataListener;
 import com.corundumstudio.socketio.misc.IterableCollection;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.protocol.Packet;
@@ -31,6 +33,9 @@ import com.corundumstudio.socketio.store.StoreFactory;
 import com.corundumstudio.socketio.store.pubsub.DispatchMessage;
 import com.corundumstudio.socketio.store.pubsub.PubSubType;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 /**
  * Fully thread-safe.
  *
@@ -116,6 +121,40 @@ public class BroadcastOperations implements ClientOperations {
         send(packet);
     }
 
+    /**
+     * Sends event with already encoded JSON arguments
+     * bypassing {@link com.corundumstudio.socketio.protocol.JsonSupport}.
+     * Arguments are usually received through {@link RawDataListener}.
+     *
+     * @param name - event name
+     * @param args - comma separated JSON arguments, like <code>{"a":1},"b"</code>.
+     *          Buffer isn't released and its reader index isn't changed.
+     */
+    public void sendRawEvent(String name, ByteBuf args) {
+        send(createRawEventPacket(name, args));
+    }
+
+    public void sendRawEvent(String name, SocketIOClient excludedClient, ByteBuf args) {
+        Packet packet = createRawEventPacket(name, args);
+        for (SocketIOClient client : clients) {
+            if (client.getSessionId().equals(excludedClient.getSessionId())) {
+                continue;
+            }
+            client.send(packet);
+        }
+        dispatch(packet);
+    }
+
+    private Packet createRawEventPacket(String name, ByteBuf args) {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName(name);
+        packet.setData(Collections.emptyList());
+        // copied once per broadcast since packet is encoded later for each client
+        packet.setEncodedArgs(ByteBufUtil.getBytes(args));
+        return packet;
+    }
+
     public <T> void sendEvent(String name, Object data, BroadcastAckCallback<T> ackCallback) {
         for (SocketIOClient client : clients) {
             client.sendEvent(name, ackCallback.createClientCallback(client), data);
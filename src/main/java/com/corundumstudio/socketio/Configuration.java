@@ -18,7 +18,10 @@ package com.corundumstudio.socketio;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
+import com.corundumstudio.socketio.handler.DefaultSessionIdGenerator;
 import com.corundumstudio.socketio.handler.SuccessAuthorizationListener;
 import com.corundumstudio.socketio.listener.DefaultExceptionListener;
 import com.corundumstudio.socketio.listener.ExceptionListener;
@@ -74,11 +77,16 @@ public class Configuration {
 
     private SocketConfig socketConfig = new SocketConfig();
 
+    private AdmissionConfig admissionConfig = new AdmissionConfig();
+
     private StoreFactory storeFactory = new MemoryStoreFactory();
 
     private JsonSupport jsonSupport;
 
     private AuthorizationListener authorizationListener = new SuccessAuthorizationListener();
+    private AsyncAuthorizationListener asyncAuthorizationListener;
+    private Executor authorizationExecutor;
+    private int maxPendingAuthorizations = 1024;
 
     private AckMode ackMode = AckMode.AUTO_SUCCESS_ONLY;
 
@@ -92,6 +100,20 @@ public class Configuration {
 
     private boolean randomSession = false;
 
+    private SessionIdGenerator sessionIdGenerator = new DefaultSessionIdGenerator();
+    private boolean compactSessionId = false;
+
+    private Set<String> handshakeHeaders;
+    private Set<String> handshakeParams;
+    private boolean releaseHandshakeData;
+
+    private Executor dispatchExecutor;
+    private int dispatchQueueThreshold = 128;
+    private boolean isolateListenerExceptions;
+
+    private int recoveryTimeout = 0;
+    private int recoveryBufferSize = 100;
+
     public Configuration() {
     }
 
@@ -145,8 +167,12 @@ public class Configuration {
         setPreferDirectBuffer(conf.isPreferDirectBuffer());
         setStoreFactory(conf.getStoreFactory());
         setAuthorizationListener(conf.getAuthorizationListener());
+        setAsyncAuthorizationListener(conf.getAsyncAuthorizationListener());
+        setAuthorizationExecutor(conf.getAuthorizationExecutor());
+        setMaxPendingAuthorizations(conf.getMaxPendingAuthorizations());
         setExceptionListener(conf.getExceptionListener());
         setSocketConfig(conf.getSocketConfig());
+        setAdmissionConfig(conf.getAdmissionConfig());
         setAckMode(conf.getAckMode());
         setMaxFramePayloadLength(conf.getMaxFramePayloadLength());
         setUpgradeTimeout(conf.getUpgradeTimeout());
@@ -158,6 +184,19 @@ public class Configuration {
         setHttpCompression(conf.isHttpCompression());
         setWebsocketCompression(conf.isWebsocketCompression());
         setRandomSession(conf.randomSession);
+        setSessionIdGenerator(conf.getSessionIdGenerator());
+        setCompactSessionId(conf.isCompactSessionId());
+
+        setHandshakeHeaders(conf.getHandshakeHeaders());
+        setHandshakeParams(conf.getHandshakeParams());
+        setReleaseHandshakeData(conf.isReleaseHandshakeData());
+
+        setDispatchExecutor(conf.getDispatchExecutor());
+        setDispatchQueueThreshold(conf.getDispatchQueueThreshold());
+        setIsolateListenerExceptions(conf.isIsolateListenerExceptions());
+
+        setRecoveryTimeout(conf.getRecoveryTimeout());
+        setRecoveryBufferSize(conf.getRecoveryBufferSize());
     }
 
     public JsonSupport getJsonSupport() {
@@ -392,6 +431,55 @@ public class Configuration {
         return authorizationListener;
     }
 
+    /**
+     * Asynchronous authorization listener invoked on every handshake
+     * instead of {@link #setAuthorizationListener(AuthorizationListener)} one.
+     * Channel reads are paused while authorization is pending.
+     * <p>
+     * Default is <code>null</code>
+     *
+     * @param asyncAuthorizationListener - asynchronous authorization listener
+     *
+     * @see com.corundumstudio.socketio.AsyncAuthorizationListener
+     */
+    public void setAsyncAuthorizationListener(AsyncAuthorizationListener asyncAuthorizationListener) {
+        this.asyncAuthorizationListener = asyncAuthorizationListener;
+    }
+    public AsyncAuthorizationListener getAsyncAuthorizationListener() {
+        return asyncAuthorizationListener;
+    }
+
+    /**
+     * Executor used to invoke authorization listener off the netty event loop.
+     * Applies to both blocking and asynchronous authorization listeners.
+     * <p>
+     * Default is <code>null</code> - blocking listener is invoked on event loop,
+     * asynchronous listener is invoked on event loop and expected to not block it
+     *
+     * @param authorizationExecutor - executor
+     */
+    public void setAuthorizationExecutor(Executor authorizationExecutor) {
+        this.authorizationExecutor = authorizationExecutor;
+    }
+    public Executor getAuthorizationExecutor() {
+        return authorizationExecutor;
+    }
+
+    /**
+     * Max amount of asynchronous authorizations in progress.
+     * Handshakes over the limit are rejected with <b>503</b> status.
+     * <p>
+     * Default is <code>1024</code>
+     *
+     * @param maxPendingAuthorizations - max pending authorizations
+     */
+    public void setMaxPendingAuthorizations(int maxPendingAuthorizations) {
+        this.maxPendingAuthorizations = maxPendingAuthorizations;
+    }
+    public int getMaxPendingAuthorizations() {
+        return maxPendingAuthorizations;
+    }
+
     /**
      * Exception listener invoked on any exception in
      * SocketIO listener
@@ -419,6 +507,18 @@ public class Configuration {
         this.socketConfig = socketConfig;
     }
 
+    public AdmissionConfig getAdmissionConfig() {
+        return admissionConfig;
+    }
+    /**
+     * Handshake admission configuration
+     *
+     * @param admissionConfig - config
+     */
+    public void setAdmissionConfig(AdmissionConfig admissionConfig) {
+        this.admissionConfig = admissionConfig;
+    }
+
     /**
      * Auto ack-response mode
      * Default is {@code AckMode.AUTO_SUCCESS_ONLY}
@@ -588,4 +688,171 @@ public class Configuration {
     public void setRandomSession(boolean randomSession) {
         this.randomSession = randomSession;
     }
+
+    /**
+     * Session id generator used for new clients.
+     * <p>
+     * Default is {@link DefaultSessionIdGenerator}
+     *
+     * @param sessionIdGenerator - session id generator
+     */
+    public void setSessionIdGenerator(SessionIdGenerator sessionIdGenerator) {
+        this.sessionIdGenerator = sessionIdGenerator;
+    }
+    public SessionIdGenerator getSessionIdGenerator() {
+        return sessionIdGenerator;
+    }
+
+    /**
+     * Sends session id to client in compact 22 chars form
+     * instead of canonical UUID form.
+     * Both forms are accepted from client.
+     * <p>
+     * Default is <code>false</code>
+     *
+     * @param compactSessionId - <code>true</code> to use compact session id
+     *
+     * @see com.corundumstudio.socketio.protocol.SessionIdCodec
+     */
+    public void setCompactSessionId(boolean compactSessionId) {
+        this.compactSessionId = compactSessionId;
+    }
+    public boolean isCompactSessionId() {
+        return compactSessionId;
+    }
+
+    /**
+     * Http headers kept in {@link HandshakeData} after authorization.
+     * Authorization listener always receives all headers.
+     * <p>
+     * Default is <code>null</code> - all headers are kept
+     *
+     * @param handshakeHeaders - header names
+     */
+    public void setHandshakeHeaders(Set<String> handshakeHeaders) {
+        this.handshakeHeaders = handshakeHeaders;
+    }
+    public Set<String> getHandshakeHeaders() {
+        return handshakeHeaders;
+    }
+
+    /**
+     * Url params kept in {@link HandshakeData} after authorization.
+     * Authorization listener always receives all params.
+     * <p>
+     * Default is <code>null</code> - all params are kept
+     *
+     * @param handshakeParams - param names
+     */
+    public void setHandshakeParams(Set<String> handshakeParams) {
+        this.handshakeParams = handshakeParams;
+    }
+    public Set<String> getHandshakeParams() {
+        return handshakeParams;
+    }
+
+    /**
+     * Releases {@link HandshakeData} of client once connect listeners have run
+     * in every registered namespace, so {@link SocketIOClient#getHandshakeData()}
+     * returns <code>null</code> afterwards. Client which doesn't connect to all
+     * namespaces keeps its handshake data. Origin and remote address are kept.
+     * <p>
+     * Default is <code>false</code>
+     *
+     * @param releaseHandshakeData - <code>true</code> to release handshake data
+     */
+    public void setReleaseHandshakeData(boolean releaseHandshakeData) {
+        this.releaseHandshakeData = releaseHandshakeData;
+    }
+    public boolean isReleaseHandshakeData() {
+        return releaseHandshakeData;
+    }
+
+    /**
+     * Executor used to invoke event, connect, disconnect and ack listeners
+     * instead of netty event loop. Invocations of each client are executed in order.
+     * Could be overridden per namespace.
+     * <p>
+     * Default is <code>null</code> - listeners are invoked on netty event loop
+     *
+     * @param dispatchExecutor - executor
+     *
+     * @see com.corundumstudio.socketio.namespace.DispatchExecutors
+     */
+    public void setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+    public Executor getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * Amount of pending listener invocations of client
+     * after which reads from client channel are paused.
+     * Reads are resumed once half of them are processed.
+     * <p>
+     * Default is <code>128</code>, <code>0</code> - never pause
+     *
+     * @param dispatchQueueThreshold - pending invocations amount
+     */
+    public void setDispatchQueueThreshold(int dispatchQueueThreshold) {
+        this.dispatchQueueThreshold = dispatchQueueThreshold;
+    }
+    public int getDispatchQueueThreshold() {
+        return dispatchQueueThreshold;
+    }
+
+    /**
+     * Invoke remaining listeners of event, connect, disconnect or ping
+     * if one of them has thrown an exception.
+     * Each exception is passed to {@link ExceptionListener}.
+     * Event with failed listener is still treated as failed by {@link AckMode#AUTO_SUCCESS_ONLY}.
+     * <p>
+     * Default is <code>false</code> - first failed listener stops invocation
+     *
+     * @param isolateListenerExceptions - <code>true</code> to invoke remaining listeners
+     */
+    public void setIsolateListenerExceptions(boolean isolateListenerExceptions) {
+        this.isolateListenerExceptions = isolateListenerExceptions;
+    }
+    public boolean isIsolateListenerExceptions() {
+        return isolateListenerExceptions;
+    }
+
+    /**
+     * Connection state recovery window in milliseconds.
+     * Session which lost its transport is kept with its rooms,
+     * ack state and missed events during this period and
+     * restored if client makes handshake with <b>pid</b> (private session id
+     * issued in open packet) and <b>offset</b> (last received event offset) query parameters.
+     * Recovering client passes authorization as a new one.
+     * Recoverable EIO4 sessions append offset as a last argument of each event.
+     * <p>
+     * Default is <code>0</code> - recovery is disabled
+     *
+     * @param recoveryTimeout - recovery window in milliseconds
+     */
+    public void setRecoveryTimeout(int recoveryTimeout) {
+        this.recoveryTimeout = recoveryTimeout;
+    }
+    public int getRecoveryTimeout() {
+        return recoveryTimeout;
+    }
+
+    /**
+     * Amount of recent events kept per session for replay
+     * after connection state recovery.
+     * Session can't be recovered if client missed more events.
+     * <p>
+     * Default is <code>100</code>
+     *
+     * @param recoveryBufferSize - events amount
+     */
+    public void setRecoveryBufferSize(int recoveryBufferSize) {
+        this.recoveryBufferSize = recoveryBufferSize;
+    }
+    public int getRecoveryBufferSize() {
+        return recoveryBufferSize;
+    }
+
 }
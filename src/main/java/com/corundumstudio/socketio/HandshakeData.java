@@ -17,10 +17,13 @@ package com.corundumstudio.socketio;
 
 import java.io.Serializable;
 import java.net.InetSocketAddress;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
 
 public class HandshakeData implements Serializable {
@@ -119,4 +122,49 @@ public class HandshakeData implements Serializable {
         return null;
     }
 
+    /**
+     * Creates a copy which keeps only listed headers and url params.
+     * Url query is dropped if url params are restricted.
+     *
+     * @param headerNames - headers to keep, <code>null</code> to keep all
+     * @param paramNames - url params to keep, <code>null</code> to keep all
+     * @return handshake data copy or this object if nothing is restricted
+     */
+    public HandshakeData retain(Collection<String> headerNames, Collection<String> paramNames) {
+        if (headerNames == null && paramNames == null) {
+            return this;
+        }
+
+        HttpHeaders retainedHeaders = headers;
+        if (headerNames != null) {
+            retainedHeaders = new DefaultHttpHeaders(false);
+            for (String name : headerNames) {
+                List<String> values = headers.getAll(name);
+                if (!values.isEmpty()) {
+                    retainedHeaders.add(name, values);
+                }
+            }
+        }
+
+        Map<String, List<String>> retainedParams = urlParams;
+        String retainedUrl = url;
+        if (paramNames != null) {
+            retainedParams = new HashMap<String, List<String>>(paramNames.size());
+            for (String name : paramNames) {
+                List<String> values = urlParams.get(name);
+                if (values != null) {
+                    retainedParams.put(name, values);
+                }
+            }
+            int queryIndex = url.indexOf('?');
+            if (queryIndex != -1) {
+                retainedUrl = url.substring(0, queryIndex);
+            }
+        }
+
+        HandshakeData data = new HandshakeData(retainedHeaders, retainedParams, address, local, retainedUrl, xdomain);
+        data.time = time;
+        return data;
+    }
+
 }
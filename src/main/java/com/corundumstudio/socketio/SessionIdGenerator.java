@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio;
+
+import java.util.UUID;
+
+/**
+ * Generates session id for new client
+ *
+ * @see Configuration#setSessionIdGenerator(SessionIdGenerator)
+ */
+public interface SessionIdGenerator {
+
+    /**
+     * Generates unique and unpredictable session id,
+     * invoked on the netty event loop so implementation should not block.
+     *
+     * @param data - handshake data
+     * @return session id
+     */
+    UUID generateSessionId(HandshakeData data);
+
+}
@@ -32,6 +32,7 @@ import com.corundumstudio.socketio.handler.AuthorizeHandler;
 import com.corundumstudio.socketio.handler.ClientHead;
 import com.corundumstudio.socketio.handler.ClientsBox;
 import com.corundumstudio.socketio.handler.EncoderHandler;
+import com.corundumstudio.socketio.handler.HandshakeAdmissionController;
 import com.corundumstudio.socketio.handler.InPacketHandler;
 import com.corundumstudio.socketio.handler.PacketListener;
 import com.corundumstudio.socketio.handler.WrongUrlHandler;
@@ -112,7 +113,7 @@ public class SocketIOChannelInitializer extends ChannelInitializer<Channel> impl
 
         JsonSupport jsonSupport = configuration.getJsonSupport();
         PacketEncoder encoder = new PacketEncoder(configuration, jsonSupport);
-        PacketDecoder decoder = new PacketDecoder(jsonSupport, ackManager);
+        PacketDecoder decoder = new PacketDecoder(jsonSupport, ackManager, namespacesHub);
 
         String connectPath = configuration.getContext() + "/";
 
@@ -233,6 +234,10 @@ public class SocketIOChannelInitializer extends ChannelInitializer<Channel> impl
         log.debug("Client with sessionId: {} disconnected", client.getSessionId());
     }
 
+    public HandshakeAdmissionController getAdmissionController() {
+        return authorizeHandler.getAdmissionController();
+    }
+
     public void stop() {
         StoreFactory factory = configuration.getStoreFactory();
         factory.shutdown();
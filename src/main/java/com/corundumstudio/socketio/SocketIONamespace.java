@@ -16,7 +16,9 @@
 package com.corundumstudio.socketio;
 
 import java.util.Collection;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import com.corundumstudio.socketio.listener.ClientListeners;
 import com.corundumstudio.socketio.listener.ListenerManager;
@@ -50,4 +52,46 @@ public interface SocketIONamespace  {
 
 	ListenerManager getListenerManager();
 
+    /**
+     * Executor used to invoke listeners of this namespace.
+     * Invocations of each client are executed in order.
+     * Listeners are invoked on netty event loop if executor is <code>null</code>.
+     * <p>
+     * Default is {@link Configuration#getDispatchExecutor()}
+     *
+     * @param dispatchExecutor - executor
+     */
+    void setDispatchExecutor(Executor dispatchExecutor);
+
+    /**
+     * Amount of inbound events dropped during decoding
+     * since namespace has no listeners for them.
+     *
+     * @return dropped events amount
+     */
+    long getDroppedEventsCount();
+
+    /**
+     * Rooms which have members on any node of cluster.
+     *
+     * @return room names
+     */
+    Set<String> getClusterRooms();
+
+    /**
+     * Amount of room members across all nodes of cluster.
+     *
+     * @param room - name of room
+     * @return members amount
+     */
+    int getClusterRoomSize(String room);
+
+    /**
+     * Other nodes of cluster which have members of room.
+     *
+     * @param room - name of room
+     * @return node ids
+     */
+    Set<Long> getRoomNodes(String room);
+
 }
@@ -35,6 +35,7 @@ import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.corundumstudio.socketio.handler.HandshakeAdmissionController;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
 
@@ -88,6 +89,43 @@ public class SocketIOServer implements ClientListeners {
         return namespacesHub.get(Namespace.DEFAULT_NAME).getClient(uuid);
     }
 
+    /**
+     * Send event to client of default namespace connected to any node of cluster.
+     * Event is sent directly if client is connected to this node,
+     * otherwise it's published to private channel of the node owning the client.
+     *
+     * @param uuid - id of client
+     * @param name - event name
+     * @param data - event arguments
+     * @return <code>false</code> if client is unknown
+     */
+    public boolean sendToSession(UUID uuid, String name, Object... data) {
+        return sendToSession(uuid, name, null, data);
+    }
+
+    /**
+     * Send event with ack to client of default namespace connected to any node of cluster.
+     * Ack of remote client is delivered back to this node.
+     *
+     * @param uuid - id of client
+     * @param name - event name
+     * @param ackCallback - ack callback, may be <code>null</code>
+     * @param data - event arguments
+     * @return <code>false</code> if client is unknown
+     */
+    public boolean sendToSession(UUID uuid, String name, AckCallback<?> ackCallback, Object... data) {
+        SocketIOClient client = getClient(uuid);
+        if (client != null) {
+            if (ackCallback == null) {
+                client.sendEvent(name, data);
+            } else {
+                client.sendEvent(name, ackCallback, data);
+            }
+            return true;
+        }
+        return configuration.getStoreFactory().sendToSession(Namespace.DEFAULT_NAME, uuid, name, ackCallback, data);
+    }
+
     /**
      * Get all namespaces
      *
@@ -220,6 +258,17 @@ public class SocketIOServer implements ClientListeners {
         return configuration;
     }
 
+    /**
+     * Handshake admission controller with its metrics:
+     * admitted, rejected handshakes and pending handshakes amount.
+     * Available after server start.
+     *
+     * @return admission controller
+     */
+    public HandshakeAdmissionController getAdmissionController() {
+        return pipelineFactory.getAdmissionController();
+    }
+
     @Override
     public void addMultiTypeEventListener(String eventName, MultiTypeEventListener listener, Class<?>... eventClass) {
     	listenerManager.addMultiTypeEventListener(eventName, listener, eventClass);
@@ -230,12 +279,27 @@ public class SocketIOServer implements ClientListeners {
     	listenerManager.addEventListener(eventName, eventClass, listener);
     }
 
+    @Override
+    public void addRawEventListener(String eventName, RawDataListener listener) {
+    	listenerManager.addRawEventListener(eventName, listener);
+    }
+
     @Override
     public void addEventInterceptor(EventInterceptor eventInterceptor) {
     	listenerManager.addEventInterceptor(eventInterceptor);
 
     }
 
+    @Override
+    public void addAnyEventListener(AnyEventListener listener) {
+    	listenerManager.addAnyEventListener(listener);
+    }
+
+    @Override
+    public void addEventMiddleware(EventMiddleware middleware) {
+    	listenerManager.addEventMiddleware(middleware);
+    }
+
 
     @Override
     public void removeAllListeners(String eventName) {
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.MultiTypeArgs;
+import com.corundumstudio.socketio.SocketIOClient;
+
+/**
+ * Invokes annotated listener method without reflection.
+ * Call path is specialized by method arity at scan time,
+ * so invocation doesn't allocate arguments array for methods up to 4 parameters.
+ * <p>
+ * Method is linked through {@link LambdaMetafactory} if it's public
+ * and its types are visible from this library class loader,
+ * otherwise through {@link MethodHandle}.
+ *
+ */
+abstract class ListenerInvoker {
+
+    /**
+     * Argument sources of listener method parameters.
+     * Non-negative values are indexes in {@link MultiTypeArgs}.
+     */
+    static final int CLIENT = -1;
+    static final int ACK_REQUEST = -2;
+    static final int DATA = -3;
+
+    interface Call0 {
+        void invoke() throws Throwable;
+    }
+
+    interface Call1 {
+        void invoke(Object a1) throws Throwable;
+    }
+
+    interface Call2 {
+        void invoke(Object a1, Object a2) throws Throwable;
+    }
+
+    interface Call3 {
+        void invoke(Object a1, Object a2, Object a3) throws Throwable;
+    }
+
+    interface Call4 {
+        void invoke(Object a1, Object a2, Object a3, Object a4) throws Throwable;
+    }
+
+    private static final Class<?>[] CALL_TYPES = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class};
+
+    /**
+     * Invokes listener method
+     *
+     * @param client - client
+     * @param data - event data, {@link MultiTypeArgs} for multi-type listeners
+     * @param ackRequest - ack request
+     * @throws Throwable - thrown by listener method
+     */
+    abstract void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable;
+
+    static Object arg(int source, SocketIOClient client, Object data, AckRequest ackRequest) {
+        switch (source) {
+        case CLIENT:
+            return client;
+        case ACK_REQUEST:
+            return ackRequest;
+        case DATA:
+            return data;
+        default:
+            return ((MultiTypeArgs) data).get(source);
+        }
+    }
+
+    /**
+     * Creates invoker of listener method
+     *
+     * @param target - listener object
+     * @param method - listener method
+     * @param sources - argument source of each method parameter
+     * @return invoker
+     */
+    static ListenerInvoker create(Object target, Method method, int[] sources) {
+        final int s1 = sources.length > 0 ? sources[0] : 0;
+        final int s2 = sources.length > 1 ? sources[1] : 0;
+        final int s3 = sources.length > 2 ? sources[2] : 0;
+        final int s4 = sources.length > 3 ? sources[3] : 0;
+
+        switch (sources.length) {
+        case 0: {
+            final Call0 call = (Call0) link(target, method);
+            return new ListenerInvoker() {
+                @Override
+                void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                    call.invoke();
+                }
+            };
+        }
+        case 1: {
+            final Call1 call = (Call1) link(target, method);
+            return new ListenerInvoker() {
+                @Override
+                void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                    call.invoke(arg(s1, client, data, ackRequest));
+                }
+            };
+        }
+        case 2: {
+            final Call2 call = (Call2) link(target, method);
+            return new ListenerInvoker() {
+                @Override
+                void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                    call.invoke(arg(s1, client, data, ackRequest), arg(s2, client, data, ackRequest));
+                }
+            };
+        }
+        case 3: {
+            final Call3 call = (Call3) link(target, method);
+            return new ListenerInvoker() {
+                @Override
+                void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                    call.invoke(arg(s1, client, data, ackRequest), arg(s2, client, data, ackRequest),
+                                    arg(s3, client, data, ackRequest));
+                }
+            };
+        }
+        case 4: {
+            final Call4 call = (Call4) link(target, method);
+            return new ListenerInvoker() {
+                @Override
+                void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                    call.invoke(arg(s1, client, data, ackRequest), arg(s2, client, data, ackRequest),
+                                    arg(s3, client, data, ackRequest), arg(s4, client, data, ackRequest));
+                }
+            };
+        }
+        default:
+            return createSpreader(target, method, sources);
+        }
+    }
+
+    private static ListenerInvoker createSpreader(Object target, Method method, final int[] sources) {
+        final MethodHandle handle = handle(target, method)
+                                        .asSpreader(Object[].class, sources.length)
+                                        .asType(MethodType.methodType(void.class, Object[].class));
+        return new ListenerInvoker() {
+            @Override
+            void invoke(SocketIOClient client, Object data, AckRequest ackRequest) throws Throwable {
+                Object[] args = new Object[sources.length];
+                for (int i = 0; i < sources.length; i++) {
+                    args[i] = arg(sources[i], client, data, ackRequest);
+                }
+                handle.invokeExact(args);
+            }
+        };
+    }
+
+    private static MethodHandle handle(Object target, Method method) {
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                handle = handle.bindTo(target);
+            }
+            return handle;
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't access listener method: " + method, e);
+        }
+    }
+
+    /**
+     * @return CallN implementation for method with N parameters
+     */
+    private static Object link(Object target, Method method) {
+        int arity = method.getParameterTypes().length;
+        Class<?> callType = CALL_TYPES[arity];
+        if (isLinkable(method)) {
+            try {
+                return metafactory(target, method, callType);
+            } catch (Throwable e) {
+                // fallback to method handle
+            }
+        }
+
+        MethodHandle handle = handle(target, method)
+                                .asType(MethodType.genericMethodType(arity).changeReturnType(void.class));
+        return wrap(handle, arity);
+    }
+
+    private static Object metafactory(Object target, Method method, Class<?> callType) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        int arity = method.getParameterTypes().length;
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodType invokedType = MethodType.methodType(callType);
+        if (!isStatic) {
+            invokedType = invokedType.appendParameterTypes(method.getDeclaringClass());
+        }
+        CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", invokedType,
+                                MethodType.genericMethodType(arity).changeReturnType(void.class),
+                                lookup.unreflect(method),
+                                MethodType.methodType(void.class, method.getParameterTypes()));
+        if (isStatic) {
+            return site.getTarget().invoke();
+        }
+        return site.getTarget().invoke(target);
+    }
+
+    /**
+     * Generated class is defined in this library class loader,
+     * so listener class and parameter types should be resolvable from it.
+     */
+    private static boolean isLinkable(Method method) {
+        if (!Modifier.isPublic(method.getModifiers())
+                || !Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                || !isVisible(method.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (type.isPrimitive() || !isVisible(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        try {
+            return Class.forName(type.getName(), false, ListenerInvoker.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Object wrap(final MethodHandle handle, int arity) {
+        switch (arity) {
+        case 0:
+            return new Call0() {
+                @Override
+                public void invoke() throws Throwable {
+                    handle.invokeExact();
+                }
+            };
+        case 1:
+            return new Call1() {
+                @Override
+                public void invoke(Object a1) throws Throwable {
+                    handle.invokeExact(a1);
+                }
+            };
+        case 2:
+            return new Call2() {
+                @Override
+                public void invoke(Object a1, Object a2) throws Throwable {
+                    handle.invokeExact(a1, a2);
+                }
+            };
+        case 3:
+            return new Call3() {
+                @Override
+                public void invoke(Object a1, Object a2, Object a3) throws Throwable {
+                    handle.invokeExact(a1, a2, a3);
+                }
+            };
+        default:
+            return new Call4() {
+                @Override
+                public void invoke(Object a1, Object a2, Object a3, Object a4) throws Throwable {
+                    handle.invokeExact(a1, a2, a3, a4);
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import com.corundumstudio.socketio.listener.ClientListeners;
+
+/**
+ * Registers listeners of annotated methods without reflection.
+ * Implementations are generated by {@link ListenerRegistrationProcessor}
+ * at compile time for each class with
+ * {@link OnConnect}, {@link OnDisconnect} or {@link OnEvent} methods.
+ *
+ * @param <T> listeners class
+ */
+public interface ListenerRegistration<T> {
+
+    /**
+     * Adds listeners of each annotated method declared by listeners class or its superclasses
+     *
+     * @param clientListeners - listeners holder
+     * @param listeners - listeners object
+     */
+    void register(ClientListeners clientListeners, T listeners);
+
+}
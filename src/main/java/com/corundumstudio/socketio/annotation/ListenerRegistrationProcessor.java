@@ -0,0 +1,411 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+
+/**
+ * Generates {@link ListenerRegistration} for classes with
+ * {@link OnConnect}, {@link OnDisconnect} or {@link OnEvent} methods
+ * and validates signatures of these methods at compile time.
+ * <p>
+ * Registration isn't generated if class or any of its listener methods
+ * can't be accessed from generated class in the same package,
+ * such classes are registered through reflection.
+ *
+ */
+public class ListenerRegistrationProcessor extends AbstractProcessor {
+
+    private static final List<Class<? extends Annotation>> ANNOTATIONS =
+                    Arrays.asList(OnConnect.class, OnDisconnect.class, OnEvent.class);
+
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> result = new HashSet<String>();
+        for (Class<? extends Annotation> annotation : ANNOTATIONS) {
+            result.add(annotation.getCanonicalName());
+        }
+        return result;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+        boolean valid = true;
+        for (Class<? extends Annotation> annotation : ANNOTATIONS) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) element;
+                valid &= validate(method);
+                types.add((TypeElement) method.getEnclosingElement());
+            }
+        }
+        if (!valid) {
+            return false;
+        }
+
+        for (TypeElement type : types) {
+            String name = ListenerRegistrations.registrationName(elements().getBinaryName(type).toString());
+            if (generated.add(name)) {
+                generate(type, name);
+            }
+        }
+        return false;
+    }
+
+    private Elements elements() {
+        return processingEnv.getElementUtils();
+    }
+
+    private Types types() {
+        return processingEnv.getTypeUtils();
+    }
+
+    private boolean isType(TypeMirror type, Class<?> clazz) {
+        TypeElement element = elements().getTypeElement(clazz.getCanonicalName());
+        return element != null && types().isSameType(types().erasure(type), types().erasure(element.asType()));
+    }
+
+    private boolean validate(ExecutableElement method) {
+        List<? extends VariableElement> params = method.getParameters();
+        for (Class<? extends Annotation> annotation : Arrays.asList(OnConnect.class, OnDisconnect.class)) {
+            if (method.getAnnotation(annotation) != null
+                    && (params.size() != 1 || !isType(params.get(0).asType(), SocketIOClient.class))) {
+                error(method, "Wrong " + annotation.getSimpleName() + " listener signature, "
+                                + SocketIOClient.class.getSimpleName() + " should be the only parameter");
+                return false;
+            }
+        }
+        OnEvent onEvent = method.getAnnotation(OnEvent.class);
+        if (onEvent != null && onEvent.value().trim().length() == 0) {
+            error(method, "OnEvent \"value\" parameter is required");
+            return false;
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    /**
+     * Collects listener methods in the same order as {@link ScannerEngine}:
+     * declared methods of class and then of its superclasses
+     */
+    private List<ExecutableElement> listenerMethods(TypeElement type) {
+        List<ExecutableElement> result = new ArrayList<ExecutableElement>();
+        TypeElement current = type;
+        while (current != null) {
+            for (Element element : current.getEnclosedElements()) {
+                if (element.getKind() == ElementKind.METHOD && isListener(element)) {
+                    result.add((ExecutableElement) element);
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                break;
+            }
+            current = (TypeElement) ((DeclaredType) superclass).asElement();
+        }
+        return result;
+    }
+
+    private boolean isListener(Element element) {
+        for (Class<? extends Annotation> annotation : ANNOTATIONS) {
+            if (element.getAnnotation(annotation) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return type.getKind() == ElementKind.CLASS && type.getTypeParameters().isEmpty();
+    }
+
+    private boolean isAccessible(TypeElement type, ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)
+                || !method.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        if (!method.getModifiers().contains(Modifier.PUBLIC)
+                && !elements().getPackageOf(method).equals(elements().getPackageOf(type))) {
+            return false;
+        }
+        TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+        if (!declaringType.getModifiers().contains(Modifier.PUBLIC)
+                && !elements().getPackageOf(declaringType).equals(elements().getPackageOf(type))) {
+            return false;
+        }
+        for (VariableElement param : method.getParameters()) {
+            if (hasTypeVariable(param.asType())) {
+                return false;
+            }
+        }
+        // generated listener catches Exception only
+        TypeMirror exception = elements().getTypeElement(Exception.class.getName()).asType();
+        TypeMirror error = elements().getTypeElement(Error.class.getName()).asType();
+        for (TypeMirror thrown : method.getThrownTypes()) {
+            if (!types().isAssignable(thrown, exception) && !types().isAssignable(thrown, error)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+        case TYPEVAR:
+            return true;
+        case ARRAY:
+            return hasTypeVariable(((ArrayType) type).getComponentType());
+        case WILDCARD:
+            WildcardType wildcard = (WildcardType) type;
+            return (wildcard.getExtendsBound() != null && hasTypeVariable(wildcard.getExtendsBound()))
+                    || (wildcard.getSuperBound() != null && hasTypeVariable(wildcard.getSuperBound()));
+        case DECLARED:
+            for (TypeMirror arg : ((DeclaredType) type).getTypeArguments()) {
+                if (hasTypeVariable(arg)) {
+                    return true;
+                }
+            }
+            return false;
+        default:
+            return false;
+        }
+    }
+
+    private void generate(TypeElement type, String name) {
+        if (!isAccessible(type)) {
+            note(type, "Listener registration isn't generated for inaccessible or generic class, reflection is used");
+            return;
+        }
+        List<ExecutableElement> methods = listenerMethods(type);
+        for (ExecutableElement method : methods) {
+            if (!isAccessible(type, method)) {
+                note(method, "Listener registration isn't generated since method is inaccessible from "
+                                + name + ", reflection is used");
+                return;
+            }
+        }
+
+        String typeName = type.getQualifiedName().toString();
+        int packageEnd = name.lastIndexOf('.');
+        try {
+            PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(name, type).openWriter());
+            try {
+                if (packageEnd != -1) {
+                    out.println("package " + name.substring(0, packageEnd) + ";");
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * Generated by " + ListenerRegistrationProcessor.class.getName());
+                out.println(" */");
+                out.println("public final class " + name.substring(packageEnd + 1)
+                                + " implements " + ListenerRegistration.class.getCanonicalName() + "<" + typeName + "> {");
+                out.println();
+                out.println("    @Override");
+                out.println("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+                out.println("    public void register(com.corundumstudio.socketio.listener.ClientListeners clientListeners, final "
+                                + typeName + " listeners) {");
+                for (ExecutableElement method : methods) {
+                    writeListeners(out, method);
+                }
+                out.println("    }");
+                out.println();
+                out.println("}");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            error(type, "Can't generate listener registration: " + e);
+        }
+    }
+
+    private void writeListeners(PrintWriter out, ExecutableElement method) {
+        if (method.getAnnotation(OnConnect.class) != null) {
+            out.println("        clientListeners.addConnectListener(new com.corundumstudio.socketio.listener.ConnectListener() {");
+            out.println("            @Override");
+            out.println("            public void onConnect(com.corundumstudio.socketio.SocketIOClient client) {");
+            writeCall(out, method, "client");
+            out.println("            }");
+            out.println("        });");
+        }
+        if (method.getAnnotation(OnDisconnect.class) != null) {
+            out.println("        clientListeners.addDisconnectListener(new com.corundumstudio.socketio.listener.DisconnectListener() {");
+            out.println("            @Override");
+            out.println("            public void onDisconnect(com.corundumstudio.socketio.SocketIOClient client) {");
+            writeCall(out, method, "client");
+            out.println("            }");
+            out.println("        });");
+        }
+        OnEvent onEvent = method.getAnnotation(OnEvent.class);
+        if (onEvent != null) {
+            writeEventListener(out, method, onEvent.value());
+        }
+    }
+
+    private void writeEventListener(PrintWriter out, ExecutableElement method, String eventName) {
+        List<? extends VariableElement> params = method.getParameters();
+        List<Integer> dataIndexes = new ArrayList<Integer>();
+        int clientIndex = -1;
+        int ackRequestIndex = -1;
+        for (int i = 0; i < params.size(); i++) {
+            TypeMirror type = params.get(i).asType();
+            if (isType(type, SocketIOClient.class)) {
+                if (clientIndex == -1) {
+                    clientIndex = i;
+                }
+            } else if (isType(type, AckRequest.class)) {
+                if (ackRequestIndex == -1) {
+                    ackRequestIndex = i;
+                }
+            } else {
+                dataIndexes.add(i);
+            }
+        }
+
+        boolean multiType = dataIndexes.size() > 1;
+        String[] args = new String[params.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = "null";
+        }
+        if (clientIndex != -1) {
+            args[clientIndex] = "client";
+        }
+        if (ackRequestIndex != -1) {
+            args[ackRequestIndex] = "ackRequest";
+        }
+        for (int i = 0; i < dataIndexes.size(); i++) {
+            int index = dataIndexes.get(i);
+            String value = multiType ? "data.get(" + i + ")" : "data";
+            args[index] = "(" + boxedName(params.get(index).asType()) + ") " + value;
+        }
+
+        String literal = elements().getConstantExpression(eventName);
+        if (multiType) {
+            out.println("        clientListeners.addMultiTypeEventListener(" + literal
+                            + ", new com.corundumstudio.socketio.listener.MultiTypeEventListener() {");
+            out.println("            @Override");
+            out.println("            public void onData(com.corundumstudio.socketio.SocketIOClient client, "
+                            + "com.corundumstudio.socketio.MultiTypeArgs data, com.corundumstudio.socketio.AckRequest ackRequest) {");
+            writeCall(out, method, args);
+            out.println("            }");
+            out.print("        }");
+            for (int index : dataIndexes) {
+                out.print(", " + classLiteral(params.get(index).asType()));
+            }
+            out.println(");");
+        } else {
+            String dataClass = "java.lang.Void.class";
+            if (!dataIndexes.isEmpty()) {
+                dataClass = classLiteral(params.get(dataIndexes.get(0)).asType());
+            }
+            out.println("        clientListeners.addEventListener(" + literal + ", (java.lang.Class) " + dataClass
+                            + ", new com.corundumstudio.socketio.listener.DataListener<java.lang.Object>() {");
+            out.println("            @Override");
+            out.println("            public void onData(com.corundumstudio.socketio.SocketIOClient client, "
+                            + "java.lang.Object data, com.corundumstudio.socketio.AckRequest ackRequest) {");
+            writeCall(out, method, args);
+            out.println("            }");
+            out.println("        });");
+        }
+    }
+
+    private void writeCall(PrintWriter out, ExecutableElement method, String... args) {
+        StringBuilder call = new StringBuilder();
+        if (method.getModifiers().contains(Modifier.STATIC)) {
+            call.append(((TypeElement) method.getEnclosingElement()).getQualifiedName());
+        } else {
+            call.append("listeners");
+        }
+        call.append('.').append(method.getSimpleName()).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                call.append(", ");
+            }
+            call.append(args[i]);
+        }
+        call.append(");");
+
+        out.println("                try {");
+        out.println("                    " + call);
+        out.println("                } catch (java.lang.Exception e) {");
+        out.println("                    throw new com.corundumstudio.socketio.handler.SocketIOException(e);");
+        out.println("                }");
+    }
+
+    private String boxedName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return types().boxedClass(types().getPrimitiveType(type.getKind())).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private String classLiteral(TypeMirror type) {
+        return types().erasure(type).toString() + ".class";
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves {@link ListenerRegistration} generated for listeners class.
+ *
+ */
+public final class ListenerRegistrations {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerRegistrations.class);
+
+    static final String SUFFIX = "_SocketIOListeners";
+
+    private static final ClassValue<ListenerRegistration<?>> REGISTRATIONS = new ClassValue<ListenerRegistration<?>>() {
+        @Override
+        protected ListenerRegistration<?> computeValue(Class<?> type) {
+            try {
+                Class<?> registrationClass = Class.forName(registrationName(type.getName()), true, type.getClassLoader());
+                return (ListenerRegistration<?>) registrationClass.newInstance();
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (Exception e) {
+                log.warn("Can't create generated listener registration for " + type + ", reflection is used", e);
+                return null;
+            } catch (LinkageError e) {
+                log.warn("Can't load generated listener registration for " + type + ", reflection is used", e);
+                return null;
+            }
+        }
+    };
+
+    private ListenerRegistrations() {
+    }
+
+    /**
+     * Name of registration class generated for listeners class
+     *
+     * @param binaryName - binary name of listeners class
+     * @return binary name of registration class
+     */
+    static String registrationName(String binaryName) {
+        int packageEnd = binaryName.lastIndexOf('.') + 1;
+        return binaryName.substring(0, packageEnd)
+                    + binaryName.substring(packageEnd).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * @param type - listeners class
+     * @return generated registration or <code>null</code> if class wasn't processed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ListenerRegistration<T> find(Class<T> type) {
+        return (ListenerRegistration<T>) REGISTRATIONS.get(type);
+    }
+
+}
@@ -16,7 +16,6 @@
 package com.corundumstudio.socketio.annotation;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import com.corundumstudio.socketio.SocketIOClient;
@@ -33,14 +32,13 @@ public class OnDisconnectScanner implements AnnotationScanner {
 
     @Override
     public void addListener(Namespace namespace, final Object object, final Method method, Annotation annotation) {
+        final ListenerInvoker invoker = ListenerInvoker.create(object, method, new int[] {ListenerInvoker.CLIENT});
         namespace.getListenerManager().addDisconnectListener(new DisconnectListener() {
             @Override
             public void onDisconnect(SocketIOClient client) {
                 try {
-                    method.invoke(object, client);
-                } catch (InvocationTargetException e) {
-                    throw new SocketIOException(e.getCause());
-                } catch (Exception e) {
+                    invoker.invoke(client, null, null);
+                } catch (Throwable e) {
                     throw new SocketIOException(e);
                 }
             }
@@ -16,7 +16,6 @@
 package com.corundumstudio.socketio.annotation;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
@@ -47,6 +46,24 @@ public class OnEventScanner implements AnnotationScanner {
         final int ackRequestIndex = paramIndex(method, AckRequest.class);
         final List<Integer> dataIndexes = dataIndexes(method);
 
+        int[] sources = new int[method.getParameterTypes().length];
+        if (socketIOClientIndex != -1) {
+            sources[socketIOClientIndex] = ListenerInvoker.CLIENT;
+        }
+        if (ackRequestIndex != -1) {
+            sources[ackRequestIndex] = ListenerInvoker.ACK_REQUEST;
+        }
+        int i = 0;
+        for (int index : dataIndexes) {
+            if (dataIndexes.size() > 1) {
+                sources[index] = i;
+            } else {
+                sources[index] = ListenerInvoker.DATA;
+            }
+            i++;
+        }
+        final ListenerInvoker invoker = ListenerInvoker.create(object, method, sources);
+
         if (dataIndexes.size() > 1) {
             List<Class<?>> classes = new ArrayList<Class<?>>();
             for (int index : dataIndexes) {
@@ -58,22 +75,8 @@ public class OnEventScanner implements AnnotationScanner {
                 @Override
                 public void onData(SocketIOClient client, MultiTypeArgs data, AckRequest ackSender) {
                     try {
-                        Object[] args = new Object[method.getParameterTypes().length];
-                        if (socketIOClientIndex != -1) {
-                            args[socketIOClientIndex] = client;
-                        }
-                        if (ackRequestIndex != -1) {
-                            args[ackRequestIndex] = ackSender;
-                        }
-                        int i = 0;
-                        for (int index : dataIndexes) {
-                            args[index] = data.get(i);
-                            i++;
-                        }
-                        method.invoke(object, args);
-                    } catch (InvocationTargetException e) {
-                        throw new SocketIOException(e.getCause());
-                    } catch (Exception e) {
+                        invoker.invoke(client, data, ackSender);
+                    } catch (Throwable e) {
                         throw new SocketIOException(e);
                     }
                 }
@@ -88,21 +91,8 @@ public class OnEventScanner implements AnnotationScanner {
                 @Override
                 public void onData(SocketIOClient client, Object data, AckRequest ackSender) {
                     try {
-                        Object[] args = new Object[method.getParameterTypes().length];
-                        if (socketIOClientIndex != -1) {
-                            args[socketIOClientIndex] = client;
-                        }
-                        if (ackRequestIndex != -1) {
-                            args[ackRequestIndex] = ackSender;
-                        }
-                        if (!dataIndexes.isEmpty()) {
-                            int dataIndex = dataIndexes.iterator().next();
-                            args[dataIndex] = data;
-                        }
-                        method.invoke(object, args);
-                    } catch (InvocationTargetException e) {
-                        throw new SocketIOException(e.getCause());
-                    } catch (Exception e) {
+                        invoker.invoke(client, data, ackSender);
+                    } catch (Throwable e) {
                         throw new SocketIOException(e);
                     }
                 }
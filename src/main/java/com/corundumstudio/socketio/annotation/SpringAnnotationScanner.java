@@ -59,6 +59,11 @@ public class SpringAnnotationScanner implements BeanPostProcessor {
 
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (ListenerRegistrations.find(bean.getClass()) != null) {
+            originalBeanClass = bean.getClass();
+            return bean;
+        }
+
         final AtomicBoolean add = new AtomicBoolean();
         ReflectionUtils.doWithMethods(bean.getClass(),
                 new MethodCallback() {
@@ -19,17 +19,28 @@ import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import com.corundumstudio.socketio.messages.HttpMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.corundumstudio.socketio.AsyncAuthorizationListener;
+import com.corundumstudio.socketio.AuthorizationListener;
+import com.corundumstudio.socketio.AuthorizationResult;
 import com.corundumstudio.socketio.Configuration;
 import com.corundumstudio.socketio.Disconnectable;
 import com.corundumstudio.socketio.DisconnectableHub;
@@ -41,8 +52,10 @@ import com.corundumstudio.socketio.messages.HttpErrorMessage;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
 import com.corundumstudio.socketio.protocol.AuthPacket;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.protocol.SessionIdCodec;
 import com.corundumstudio.socketio.scheduler.CancelableScheduler;
 import com.corundumstudio.socketio.scheduler.SchedulerKey;
 import com.corundumstudio.socketio.scheduler.SchedulerKey.Type;
@@ -50,13 +63,16 @@ import com.corundumstudio.socketio.store.StoreFactory;
 import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
 import com.corundumstudio.socketio.store.pubsub.PubSubType;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
@@ -70,6 +86,8 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
 
     private static final Logger log = LoggerFactory.getLogger(AuthorizeHandler.class);
 
+    private static final char PID_SEPARATOR = '.';
+
     private final CancelableScheduler disconnectScheduler;
 
     private final String connectPath;
@@ -79,10 +97,25 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
     private final DisconnectableHub disconnectable;
     private final AckManager ackManager;
     private final ClientsBox clientsBox;
+    private final AtomicInteger pendingAuthorizations = new AtomicInteger();
+    private final HandshakeAdmissionController admissionController;
+    private final FullHttpResponse rejectedResponse;
 
     public AuthorizeHandler(String connectPath, CancelableScheduler scheduler, Configuration configuration, NamespacesHub namespacesHub, StoreFactory storeFactory,
             DisconnectableHub disconnectable, AckManager ackManager, ClientsBox clientsBox) {
+        this(connectPath, scheduler, configuration, namespacesHub, storeFactory, disconnectable, ackManager, clientsBox,
+                new HandshakeAdmissionController(configuration.getAdmissionConfig()));
+    }
+
+    public AuthorizeHandler(String connectPath, CancelableScheduler scheduler, Configuration configuration, NamespacesHub namespacesHub, StoreFactory storeFactory,
+            DisconnectableHub disconnectable, AckManager ackManager, ClientsBox clientsBox, HandshakeAdmissionController admissionController) {
         super();
+        this.admissionController = admissionController;
+        // shared by all rejected handshakes, empty content isn't released by encoder
+        this.rejectedResponse = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE,
+                Unpooled.EMPTY_BUFFER);
+        rejectedResponse.headers().set(HttpHeaderNames.RETRY_AFTER, admissionController.getRetryAfter());
+        rejectedResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
         this.connectPath = connectPath;
         this.configuration = configuration;
         this.disconnectScheduler = scheduler;
@@ -127,8 +160,19 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
             List<String> sid = queryDecoder.parameters().get("sid");
             if (queryDecoder.path().equals(connectPath)
                     && sid == null) {
+                if (!admit(channel)) {
+                    req.release();
+                    return;
+                }
+
                 String origin = req.headers().get(HttpHeaderNames.ORIGIN);
+                if (configuration.getAsyncAuthorizationListener() != null
+                        || configuration.getAuthorizationExecutor() != null) {
+                    authorizeAsync(ctx, channel, origin, queryDecoder.parameters(), req);
+                    return;
+                }
                 if (!authorize(ctx, channel, origin, queryDecoder.parameters(), req)) {
+                    admissionController.release();
                     req.release();
                     return;
                 }
@@ -138,18 +182,22 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
         ctx.fireChannelRead(msg);
     }
 
-    private boolean authorize(ChannelHandlerContext ctx, Channel channel, String origin, Map<String, List<String>> params, FullHttpRequest req)
-            throws IOException {
-        Map<String, List<String>> headers = new HashMap<String, List<String>>(req.headers().names().size());
-        for (String name : req.headers().names()) {
-            List<String> values = req.headers().getAll(name);
-            headers.put(name, values);
+    /**
+     * Applies handshake admission limits, rejects handshake with 503 status if they are exceeded
+     */
+    private boolean admit(Channel channel) {
+        InetSocketAddress address = (InetSocketAddress) channel.remoteAddress();
+        if (admissionController.tryAcquire(address != null ? address.getAddress() : null)) {
+            return true;
         }
 
-        HandshakeData data = new HandshakeData(req.headers(), params,
-                (InetSocketAddress)channel.remoteAddress(),
-                (InetSocketAddress)channel.localAddress(),
-                req.uri(), origin != null && !origin.equalsIgnoreCase("null"));
+        channel.writeAndFlush(rejectedResponse).addListener(ChannelFutureListener.CLOSE);
+        return false;
+    }
+
+    private boolean authorize(ChannelHandlerContext ctx, Channel channel, String origin, Map<String, List<String>> params, FullHttpRequest req)
+            throws IOException {
+        HandshakeData data = createHandshakeData(channel, origin, params, req);
 
         boolean result = false;
         try {
@@ -158,19 +206,134 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
             log.error("Authorization error", e);
         }
 
+        return onAuthorized(channel, origin, params, req, data, result);
+    }
+
+    /**
+     * Runs authorization listener asynchronously with channel reads paused,
+     * handshake is completed on the channel event loop.
+     */
+    private void authorizeAsync(final ChannelHandlerContext ctx, final Channel channel, final String origin,
+            final Map<String, List<String>> params, final FullHttpRequest req) throws IOException {
+        if (pendingAuthorizations.incrementAndGet() > configuration.getMaxPendingAuthorizations()) {
+            pendingAuthorizations.decrementAndGet();
+            admissionController.release();
+            channel.writeAndFlush(rejectedResponse).addListener(ChannelFutureListener.CLOSE);
+            req.release();
+            log.debug("Handshake rejected, too many pending authorizations");
+            return;
+        }
+
+        final HandshakeData data = createHandshakeData(channel, origin, params, req);
+        channel.config().setAutoRead(false);
+
+        CompletionStage<AuthorizationResult> stage;
+        try {
+            stage = startAuthorization(data);
+        } catch (Exception e) {
+            CompletableFuture<AuthorizationResult> future = new CompletableFuture<AuthorizationResult>();
+            future.completeExceptionally(e);
+            stage = future;
+        }
+
+        stage.whenComplete(new BiConsumer<AuthorizationResult, Throwable>() {
+            @Override
+            public void accept(final AuthorizationResult result, final Throwable error) {
+                pendingAuthorizations.decrementAndGet();
+                channel.eventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        channel.config().setAutoRead(true);
+                        if (error != null) {
+                            log.error("Authorization error", error);
+                        }
+                        if (!channel.isActive()) {
+                            admissionController.release();
+                            req.release();
+                            return;
+                        }
+
+                        boolean authorized = error == null && result != null && result.isAuthorized();
+                        try {
+                            if (!onAuthorized(channel, origin, params, req, data, authorized)) {
+                                admissionController.release();
+                                req.release();
+                                return;
+                            }
+                        } catch (Exception e) {
+                            admissionController.release();
+                            req.release();
+                            ctx.fireExceptionCaught(e);
+                            return;
+                        }
+                        // forward message to polling or websocket handler to bind channel
+                        ctx.fireChannelRead(req);
+                    }
+                });
+            }
+        });
+    }
+
+    private CompletionStage<AuthorizationResult> startAuthorization(final HandshakeData data) {
+        final AsyncAuthorizationListener asyncListener = configuration.getAsyncAuthorizationListener();
+        Executor executor = configuration.getAuthorizationExecutor();
+        if (asyncListener != null) {
+            if (executor == null) {
+                return asyncListener.authorize(data);
+            }
+            return CompletableFuture.supplyAsync(new Supplier<CompletionStage<AuthorizationResult>>() {
+                @Override
+                public CompletionStage<AuthorizationResult> get() {
+                    return asyncListener.authorize(data);
+                }
+            }, executor).thenCompose(new Function<CompletionStage<AuthorizationResult>, CompletionStage<AuthorizationResult>>() {
+                @Override
+                public CompletionStage<AuthorizationResult> apply(CompletionStage<AuthorizationResult> stage) {
+                    return stage;
+                }
+            });
+        }
+
+        final AuthorizationListener listener = configuration.getAuthorizationListener();
+        return CompletableFuture.supplyAsync(new Supplier<AuthorizationResult>() {
+            @Override
+            public AuthorizationResult get() {
+                if (listener.isAuthorized(data)) {
+                    return AuthorizationResult.SUCCESSFUL_AUTHORIZATION;
+                }
+                return AuthorizationResult.FAILED_AUTHORIZATION;
+            }
+        }, executor);
+    }
+
+    private HandshakeData createHandshakeData(Channel channel, String origin, Map<String, List<String>> params, FullHttpRequest req) {
+        return new HandshakeData(req.headers(), params,
+                (InetSocketAddress)channel.remoteAddress(),
+                (InetSocketAddress)channel.localAddress(),
+                req.uri(), origin != null && !origin.equalsIgnoreCase("null"));
+    }
+
+    private boolean onAuthorized(Channel channel, String origin, Map<String, List<String>> params, FullHttpRequest req,
+            HandshakeData data, boolean result) throws IOException {
         if (!result) {
             HttpResponse res = new DefaultHttpResponse(HTTP_1_1, HttpResponseStatus.UNAUTHORIZED);
             channel.writeAndFlush(res)
                     .addListener(ChannelFutureListener.CLOSE);
-            log.debug("Handshake unauthorized, query params: {} headers: {}", params, headers);
+            log.debug("Handshake unauthorized, query params: {} headers: {}", params, req.headers());
             return false;
         }
 
+        // recovering client is authorized as a new one
+        if (configuration.getRecoveryTimeout() > 0
+                && recover(channel, params)) {
+            return true;
+        }
+
         UUID sessionId = null;
         if (configuration.isRandomSession()) {
-            sessionId = UUID.randomUUID();
+            sessionId = configuration.getSessionIdGenerator().generateSessionId(data);
         } else {
-            sessionId = this.generateOrGetSessionIdFromRequest(req.headers());
+            sessionId = this.generateOrGetSessionIdFromRequest(req.headers(), data);
         }
 
         List<String> transportValue = params.get("transport");
@@ -193,23 +356,132 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
             return false;
         }
 
-        ClientHead client = new ClientHead(sessionId, ackManager, disconnectable, storeFactory, data, clientsBox, transport, disconnectScheduler, configuration);
+        List<String> eioValue = params.get(EngineIOVersion.EIO);
+        EngineIOVersion engineIOVersion = EngineIOVersion.fromValue(eioValue != null ? eioValue.get(0) : null);
+        if (engineIOVersion == null) {
+            Map<String, Object> errorData = new HashMap<String, Object>();
+            errorData.put("code", 5);
+            errorData.put("message", "Unsupported protocol version");
+
+            channel.attr(HttpMessage.ORIGIN).set(origin);
+            channel.writeAndFlush(new HttpErrorMessage(errorData));
+            return false;
+        }
+
+        ClientHead client = new ClientHead(sessionId, ackManager, disconnectable, storeFactory, data, clientsBox, transport,
+                disconnectScheduler, configuration, engineIOVersion);
         channel.attr(ClientHead.CLIENT).set(client);
         clientsBox.addClient(client);
+        client.setHandshakePending();
+
+        sendOpenPacket(client);
+        log.debug("Handshake authorized for sessionId: {}, protocol: {}, query params: {} headers: {}", sessionId, engineIOVersion, params, req.headers());
+        return true;
+    }
 
+    private void sendOpenPacket(ClientHead client) {
+        client.send(createOpenPacket(client));
+        schedulePing(client);
+    }
+
+    private Packet createOpenPacket(ClientHead client) {
         String[] transports = {};
         if (configuration.getTransports().contains(Transport.WEBSOCKET)) {
             transports = new String[]{"websocket"};
         }
 
-        AuthPacket authPacket = new AuthPacket(sessionId, transports, configuration.getPingInterval(),
+        String sid;
+        if (configuration.isCompactSessionId()) {
+            sid = SessionIdCodec.encode(client.getSessionId());
+        } else {
+            sid = client.getSessionId().toString();
+        }
+        AuthPacket authPacket = new AuthPacket(sid, transports, configuration.getPingInterval(),
                 configuration.getPingTimeout());
+        if (configuration.getRecoveryTimeout() > 0) {
+            authPacket.setPid(sid + PID_SEPARATOR + client.issueRecoveryToken());
+        }
         Packet packet = new Packet(PacketType.OPEN);
         packet.setData(authPacket);
-        client.send(packet);
+        return packet;
+    }
 
+    private void schedulePing(ClientHead client) {
         client.schedulePingTimeout();
-        log.debug("Handshake authorized for sessionId: {}, query params: {} headers: {}", sessionId, params, headers);
+        if (client.getEngineIOVersion() == EngineIOVersion.V4) {
+            client.schedulePing();
+        }
+    }
+
+    /**
+     * Restores parked session by <b>pid</b> and <b>offset</b> query parameters
+     * and queues events missed by client.
+     * Pid consists of session id and secret token issued in the last open packet.
+     *
+     * @return <code>true</code> if session has been recovered
+     */
+    private boolean recover(Channel channel, Map<String, List<String>> params) {
+        List<String> pidValue = params.get("pid");
+        List<String> transportValue = params.get("transport");
+        if (pidValue == null || transportValue == null) {
+            return false;
+        }
+
+        Transport transport = Transport.byName(transportValue.get(0));
+        if (!configuration.getTransports().contains(transport)) {
+            return false;
+        }
+
+        String pid = pidValue.get(0);
+        int separator = pid.lastIndexOf(PID_SEPARATOR);
+        if (separator == -1) {
+            return false;
+        }
+
+        UUID sessionId;
+        long offset = 0;
+        try {
+            sessionId = SessionIdCodec.decode(pid.substring(0, separator));
+            List<String> offsetValue = params.get("offset");
+            if (offsetValue != null) {
+                offset = Long.parseLong(offsetValue.get(0));
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Malformed recovery params: {}", params);
+            return false;
+        }
+
+        ClientHead client = clientsBox.get(sessionId);
+        if (client == null
+                || !client.isRecoveryToken(pid.substring(separator + 1))) {
+            return false;
+        }
+        List<Packet> head = new ArrayList<Packet>(2);
+        head.add(createOpenPacket(client));
+        Namespace ns = namespacesHub.get(Namespace.DEFAULT_NAME);
+        // EIO3 client waits for default namespace connect packet
+        boolean connectDefault = client.getEngineIOVersion() == EngineIOVersion.V3
+                                    && client.getNamespaces().contains(ns);
+        if (connectDefault) {
+            Packet packet = new Packet(PacketType.MESSAGE);
+            packet.setSubType(PacketType.CONNECT);
+            head.add(packet);
+        }
+
+        // missed events are queued before session accepts new ones
+        List<Packet> missed = client.recover(transport, offset, head);
+        if (missed == null) {
+            return false;
+        }
+        if (connectDefault) {
+            client.takeRecoveredNamespace(ns);
+        }
+
+        channel.attr(ClientHead.CLIENT).set(client);
+        client.setHandshakePending();
+        schedulePing(client);
+
+        log.debug("Session {} recovered, {} missed events replayed", sessionId, missed.size());
         return true;
     }
 
@@ -218,11 +490,11 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
      * in the "io" cookie.  Failures to parse will cause a logging warning to be generated and a
      * random uuid to be generated instead (same as not passing a cookie in the first place).
      */
-    private UUID generateOrGetSessionIdFromRequest(HttpHeaders headers) {
+    private UUID generateOrGetSessionIdFromRequest(HttpHeaders headers, HandshakeData data) {
         List<String> values = headers.getAll("io");
         if (values.size() == 1) {
             try {
-                return UUID.fromString(values.get(0));
+                return SessionIdCodec.decode(values.get(0));
             } catch (IllegalArgumentException iaex) {
                 log.warn("Malformed UUID received for session! io=" + values.get(0));
             }
@@ -234,7 +506,7 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
             for (Cookie cookie : cookies) {
                 if (cookie.name().equals("io")) {
                     try {
-                        return UUID.fromString(cookie.value());
+                        return SessionIdCodec.decode(cookie.value());
                     } catch (IllegalArgumentException iaex) {
                         log.warn("Malformed UUID received for session! io=" + cookie.value());
                     }
@@ -242,7 +514,7 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
             }
         }
 
-        return UUID.randomUUID();
+        return configuration.getSessionIdGenerator().generateSessionId(data);
     }
 
     public void connect(UUID sessionId) {
@@ -251,6 +523,19 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
     }
 
     public void connect(ClientHead client) {
+        if (client.completeHandshake()) {
+            admissionController.release();
+        }
+
+        if (client.getEngineIOVersion() == EngineIOVersion.V4) {
+            // EIO4 clients connect to each namespace explicitly, including default one,
+            // so session is announced to other nodes once on its first transport connect
+            if (client.markConnectPublished()) {
+                configuration.getStoreFactory().pubSubStore().publish(PubSubType.CONNECT, new ConnectMessage(client.getSessionId()));
+            }
+            return;
+        }
+
         Namespace ns = namespacesHub.get(Namespace.DEFAULT_NAME);
 
         if (!client.getNamespaces().contains(ns)) {
@@ -265,8 +550,15 @@ public class AuthorizeHandler extends ChannelInboundHandlerAdapter implements Di
         }
     }
 
+    public HandshakeAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     @Override
     public void onDisconnect(ClientHead client) {
+        if (client.completeHandshake()) {
+            admissionController.release();
+        }
         clientsBox.removeClient(client.getSessionId());
     }
 
@@ -22,6 +22,7 @@ import com.corundumstudio.socketio.Transport;
 import com.corundumstudio.socketio.ack.AckManager;
 import com.corundumstudio.socketio.messages.OutPacketMessage;
 import com.corundumstudio.socketio.namespace.Namespace;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketType;
 import com.corundumstudio.socketio.scheduler.CancelableScheduler;
@@ -40,10 +41,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.SocketAddress;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientHead {
 
@@ -51,18 +55,33 @@ public class ClientHead {
 
     public static final AttributeKey<ClientHead> CLIENT = AttributeKey.<ClientHead>valueOf("client");
 
+    private static final SecureRandom RECOVERY_RANDOM = new SecureRandom();
+
     private final AtomicBoolean disconnected = new AtomicBoolean();
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private final AtomicBoolean handshakePending = new AtomicBoolean();
+    private final AtomicBoolean hubNotified = new AtomicBoolean();
+    private final AtomicBoolean connectPublished = new AtomicBoolean();
+    private final AtomicInteger readPauses = new AtomicInteger();
     private final Map<Namespace, NamespaceClient> namespaceClients = PlatformDependent.newConcurrentHashMap();
     private final Map<Transport, TransportState> channels = new HashMap<Transport, TransportState>(2);
-    private final HandshakeData handshakeData;
+    private volatile HandshakeData handshakeData;
+    private final String origin;
+    private final SocketAddress remoteAddress;
     private final UUID sessionId;
+    private final EngineIOVersion engineIOVersion;
 
-    private final Store store;
+    private final StoreFactory storeFactory;
+    private volatile Store store;
     private final DisconnectableHub disconnectableHub;
     private final AckManager ackManager;
     private ClientsBox clientsBox;
     private final CancelableScheduler disconnectScheduler;
     private final Configuration configuration;
+    private final ReplayBuffer replayBuffer;
+    private volatile byte[] recoveryToken;
+    private final Set<Namespace> connectedNamespaces = Collections.newSetFromMap(PlatformDependent.<Namespace, Boolean>newConcurrentHashMap());
+    private final Set<Namespace> recoveredNamespaces = Collections.newSetFromMap(PlatformDependent.<Namespace, Boolean>newConcurrentHashMap());
 
     private Packet lastBinaryPacket;
 
@@ -72,15 +91,30 @@ public class ClientHead {
     public ClientHead(UUID sessionId, AckManager ackManager, DisconnectableHub disconnectable,
             StoreFactory storeFactory, HandshakeData handshakeData, ClientsBox clientsBox, Transport transport, CancelableScheduler disconnectScheduler,
             Configuration configuration) {
+        this(sessionId, ackManager, disconnectable, storeFactory, handshakeData, clientsBox, transport, disconnectScheduler,
+                configuration, EngineIOVersion.V3);
+    }
+
+    public ClientHead(UUID sessionId, AckManager ackManager, DisconnectableHub disconnectable,
+            StoreFactory storeFactory, HandshakeData handshakeData, ClientsBox clientsBox, Transport transport, CancelableScheduler disconnectScheduler,
+            Configuration configuration, EngineIOVersion engineIOVersion) {
         this.sessionId = sessionId;
+        this.engineIOVersion = engineIOVersion;
         this.ackManager = ackManager;
         this.disconnectableHub = disconnectable;
-        this.store = storeFactory.createStore(sessionId);
-        this.handshakeData = handshakeData;
+        this.storeFactory = storeFactory;
+        this.origin = handshakeData.getHttpHeaders().get(HttpHeaderNames.ORIGIN);
+        this.remoteAddress = handshakeData.getAddress();
+        this.handshakeData = handshakeData.retain(configuration.getHandshakeHeaders(), configuration.getHandshakeParams());
         this.clientsBox = clientsBox;
         this.currentTransport = transport;
         this.disconnectScheduler = disconnectScheduler;
         this.configuration = configuration;
+        if (configuration.getRecoveryTimeout() > 0) {
+            this.replayBuffer = new ReplayBuffer(configuration.getRecoveryBufferSize());
+        } else {
+            this.replayBuffer = null;
+        }
 
         channels.put(Transport.POLLING, new TransportState());
         channels.put(Transport.WEBSOCKET, new TransportState());
@@ -95,6 +129,9 @@ public class ClientHead {
             clientsBox.remove(prevChannel);
         }
         clientsBox.add(channel, this);
+        if (readPauses.get() > 0) {
+            channel.config().setAutoRead(false);
+        }
 
         sendPackets(transport, channel);
     }
@@ -108,7 +145,7 @@ public class ClientHead {
     }
 
     public String getOrigin() {
-        return handshakeData.getHttpHeaders().get(HttpHeaderNames.ORIGIN);
+        return origin;
     }
 
     public ChannelFuture send(Packet packet) {
@@ -127,6 +164,10 @@ public class ClientHead {
             public void run() {
                 ClientHead client = clientsBox.get(sessionId);
                 if (client != null) {
+                    if (client.park()) {
+                        log.debug("{} parked due to ping timeout", sessionId);
+                        return;
+                    }
                     client.disconnect();
                     log.debug("{} removed due to ping timeout", sessionId);
                 }
@@ -134,9 +175,48 @@ public class ClientHead {
         }, configuration.getPingTimeout() + configuration.getPingInterval(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Engine.IO v4 heartbeat is driven by server,
+     * PING packet is sent every <code>pingInterval</code> and
+     * client answers with PONG which reschedules ping timeout.
+     */
+    public void schedulePing() {
+        SchedulerKey key = new SchedulerKey(Type.PING, sessionId);
+        disconnectScheduler.schedule(key, new Runnable() {
+            @Override
+            public void run() {
+                ClientHead client = clientsBox.get(sessionId);
+                if (client != null && client.isConnected()) {
+                    client.send(new Packet(PacketType.PING));
+                    client.schedulePing();
+                }
+            }
+        }, configuration.getPingInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    public void cancelPing() {
+        SchedulerKey key = new SchedulerKey(Type.PING, sessionId);
+        disconnectScheduler.cancel(key);
+    }
+
     public ChannelFuture send(Packet packet, Transport transport) {
         TransportState state = channels.get(transport);
-        state.getPacketsQueue().add(packet);
+        if (replayBuffer != null) {
+            // recovery snapshots buffer and unparks session under the same lock
+            synchronized (replayBuffer) {
+                if (packet.getType() == PacketType.MESSAGE
+                        && packet.getSubType() == PacketType.EVENT) {
+                    replayBuffer.add(packet);
+                }
+                if (parked.get()) {
+                    // will be replayed on recovery
+                    return null;
+                }
+                state.getPacketsQueue().add(packet);
+            }
+        } else {
+            state.getPacketsQueue().add(packet);
+        }
 
         Channel channel = state.getChannel();
         if (channel == null
@@ -153,6 +233,12 @@ public class ClientHead {
     public void removeNamespaceClient(NamespaceClient client) {
         namespaceClients.remove(client.getNamespace());
         if (namespaceClients.isEmpty()) {
+            notifyDisconnected();
+        }
+    }
+
+    private void notifyDisconnected() {
+        if (hubNotified.compareAndSet(false, true)) {
             disconnectableHub.onDisconnect(this);
         }
     }
@@ -175,13 +261,206 @@ public class ClientHead {
         return !disconnected.get();
     }
 
+    void setHandshakePending() {
+        handshakePending.set(true);
+    }
+
+    /**
+     * Marks admitted handshake as completed
+     *
+     * @return <code>true</code> if handshake was pending
+     */
+    boolean completeHandshake() {
+        return handshakePending.compareAndSet(true, false);
+    }
+
+    /**
+     * Marks session connect as published to other nodes
+     *
+     * @return <code>true</code> if it wasn't published before
+     */
+    boolean markConnectPublished() {
+        return connectPublished.compareAndSet(false, true);
+    }
+
+    /**
+     * Stops reading from client channels until {@link #resumeReads()} call.
+     * Pauses are counted, so reads are resumed after last pause is released.
+     */
+    public void pauseReads() {
+        if (readPauses.incrementAndGet() == 1) {
+            setAutoRead(false);
+        }
+    }
+
+    public void resumeReads() {
+        if (readPauses.decrementAndGet() == 0) {
+            setAutoRead(true);
+        }
+    }
+
+    private void setAutoRead(boolean autoRead) {
+        for (TransportState state : channels.values()) {
+            Channel channel = state.getChannel();
+            if (channel != null) {
+                channel.config().setAutoRead(autoRead);
+            }
+        }
+    }
+
+    public boolean isParked() {
+        return parked.get();
+    }
+
+    /**
+     * Keeps session with its rooms, ack state and missed events
+     * during recovery window instead of disconnecting it.
+     * Session is disconnected if it wasn't recovered during the window.
+     *
+     * @return <code>true</code> if session was parked,
+     *          <code>false</code> if recovery is disabled or session is already disconnected
+     */
+    public boolean park() {
+        if (replayBuffer == null || !isConnected()) {
+            return false;
+        }
+
+        synchronized (replayBuffer) {
+            if (!parked.compareAndSet(false, true)) {
+                return false;
+            }
+            for (TransportState state : channels.values()) {
+                Channel channel = state.update(null);
+                if (channel != null) {
+                    clientsBox.remove(channel);
+                    channel.close();
+                }
+                state.getPacketsQueue().clear();
+            }
+        }
+        cancelPingTimeout();
+        cancelPing();
+
+        SchedulerKey key = new SchedulerKey(Type.RECOVERY_TIMEOUT, sessionId);
+        disconnectScheduler.schedule(key, new Runnable() {
+            @Override
+            public void run() {
+                if (parked.compareAndSet(true, false)) {
+                    log.debug("{} wasn't recovered, disconnecting", sessionId);
+                    onChannelDisconnect();
+                }
+            }
+        }, configuration.getRecoveryTimeout(), TimeUnit.MILLISECONDS);
+
+        log.debug("{} parked for recovery", sessionId);
+        return true;
+    }
+
+    /**
+     * Restores parked session on new transport.
+     * Missed events are queued after <code>head</code> packets
+     * before any packet sent after recovery.
+     *
+     * @param transport - transport of recovered connection
+     * @param offset - offset of last event received by client, <code>0</code> if none
+     * @param head - packets to queue before missed events
+     * @return events missed by client or <code>null</code> if session can't be recovered
+     */
+    public List<Packet> recover(Transport transport, long offset, List<Packet> head) {
+        if (replayBuffer == null) {
+            return null;
+        }
+        List<Packet> missed;
+        synchronized (replayBuffer) {
+            if (!parked.get()) {
+                return null;
+            }
+            missed = replayBuffer.since(offset);
+            if (missed != null) {
+                currentTransport = transport;
+                recoveredNamespaces.addAll(namespaceClients.keySet());
+                Queue<Packet> queue = channels.get(transport).getPacketsQueue();
+                queue.addAll(head);
+                queue.addAll(missed);
+            }
+            // recovery timeout could disconnect session already
+            if (!parked.compareAndSet(true, false)) {
+                return null;
+            }
+        }
+        disconnectScheduler.cancel(new SchedulerKey(Type.RECOVERY_TIMEOUT, sessionId));
+
+        if (missed == null) {
+            log.debug("{} missed too many events to be recovered", sessionId);
+            onChannelDisconnect();
+            return null;
+        }
+        return missed;
+    }
+
+    /**
+     * Issues new secret token required to recover this session.
+     * Previously issued token is not valid anymore.
+     *
+     * @return url-safe token
+     */
+    public String issueRecoveryToken() {
+        byte[] token = new byte[16];
+        RECOVERY_RANDOM.nextBytes(token);
+        recoveryToken = token;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Checks token in constant time
+     *
+     * @param token - token received from client
+     * @return <code>true</code> if token matches last issued token
+     */
+    public boolean isRecoveryToken(String token) {
+        byte[] expected = recoveryToken;
+        if (expected == null) {
+            return false;
+        }
+        byte[] actual;
+        try {
+            actual = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    public boolean isRecoveredNamespace(Namespace namespace) {
+        return recoveredNamespaces.contains(namespace);
+    }
+
+    /**
+     * Marks recovered namespace as connected again
+     *
+     * @param namespace - namespace
+     * @return <code>true</code> if namespace was recovered and not connected yet
+     */
+    public boolean takeRecoveredNamespace(Namespace namespace) {
+        return recoveredNamespaces.remove(namespace);
+    }
+
     public void onChannelDisconnect() {
         cancelPingTimeout();
+        cancelPing();
 
         disconnected.set(true);
+        if (replayBuffer != null) {
+            replayBuffer.clear();
+        }
+        boolean hasNamespaces = !namespaceClients.isEmpty();
         for (NamespaceClient client : namespaceClients.values()) {
             client.onDisconnect();
         }
+        if (!hasNamespaces) {
+            // client didn't connect to any namespace (EIO4)
+            notifyDisconnected();
+        }
         for (TransportState state : channels.values()) {
             if (state.getChannel() != null) {
                 clientsBox.remove(state.getChannel());
@@ -189,10 +468,36 @@ public class ClientHead {
         }
     }
 
+    /**
+     * Handshake data of client
+     *
+     * @return handshake data or <code>null</code> if it has been released
+     *
+     * @see Configuration#setReleaseHandshakeData(boolean)
+     */
     public HandshakeData getHandshakeData() {
         return handshakeData;
     }
 
+    /**
+     * Invoked after connect listeners of namespace have been run.
+     * Handshake data is released only when client has connected to all namespaces,
+     * so connect listeners of each namespace still have access to it.
+     *
+     * @param namespace - connected namespace
+     * @param namespacesCount - amount of registered namespaces
+     */
+    public void onConnected(Namespace namespace, int namespacesCount) {
+        if (!configuration.isReleaseHandshakeData()) {
+            return;
+        }
+        connectedNamespaces.add(namespace);
+        if (connectedNamespaces.size() >= namespacesCount) {
+            handshakeData = null;
+            connectedNamespaces.clear();
+        }
+    }
+
     public AckManager getAckManager() {
         return ackManager;
     }
@@ -201,8 +506,12 @@ public class ClientHead {
         return sessionId;
     }
 
+    public EngineIOVersion getEngineIOVersion() {
+        return engineIOVersion;
+    }
+
     public SocketAddress getRemoteAddress() {
-        return handshakeData.getAddress();
+        return remoteAddress;
     }
 
     public void disconnect() {
@@ -224,8 +533,26 @@ public class ClientHead {
         return false;
     }
 
+    /**
+     * Store is created on first access,
+     * since most of sessions never use it.
+     */
     public Store getStore() {
-        return store;
+        Store result = store;
+        if (result == null) {
+            synchronized (this) {
+                result = store;
+                if (result == null) {
+                    result = storeFactory.createStore(sessionId);
+                    store = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean isStoreCreated() {
+        return store != null;
     }
 
     public boolean isTransportChannel(Channel channel, Transport transport) {
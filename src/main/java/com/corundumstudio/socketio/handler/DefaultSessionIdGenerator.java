@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.SessionIdGenerator;
+
+/**
+ * Generates random (version 4) UUIDs using per-thread {@link SecureRandom}
+ * instances, so handshakes on different event loops don't contend
+ * on single generator used by {@link UUID#randomUUID()}.
+ */
+public class DefaultSessionIdGenerator implements SessionIdGenerator {
+
+    private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            try {
+                // self-seeded from system entropy on first use, doesn't block afterwards
+                return SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    };
+
+    @Override
+    public UUID generateSessionId(HandshakeData data) {
+        SecureRandom random = RANDOM.get();
+        long msb = random.nextLong();
+        long lsb = random.nextLong();
+        // version 4, IETF variant
+        msb = (msb & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        lsb = (lsb & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+}
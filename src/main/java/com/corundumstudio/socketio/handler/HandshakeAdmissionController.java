@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.corundumstudio.socketio.AdmissionConfig;
+
+/**
+ * Admission control in front of handshake authorization.
+ * Checks pending handshakes limit, global and per remote address
+ * token buckets. Rejection path doesn't allocate objects.
+ *
+ * @see AdmissionConfig
+ */
+public class HandshakeAdmissionController {
+
+    private final AdmissionConfig config;
+    private final TokenBucket globalBucket;
+    private final Map<InetAddress, TokenBucket> ipBuckets;
+
+    private final AtomicInteger pendingHandshakes = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedByRate = new AtomicLong();
+    private final AtomicLong rejectedByIpRate = new AtomicLong();
+    private final AtomicLong rejectedByPending = new AtomicLong();
+
+    public HandshakeAdmissionController(final AdmissionConfig config) {
+        this.config = config;
+
+        if (config.getHandshakeRate() > 0) {
+            globalBucket = new TokenBucket(config.getHandshakeRate(),
+                    burst(config.getHandshakeRate(), config.getHandshakeBurst()), System.nanoTime());
+        } else {
+            globalBucket = null;
+        }
+
+        if (config.getHandshakeRatePerIp() > 0) {
+            ipBuckets = new LinkedHashMap<InetAddress, TokenBucket>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = -4387128743203245387L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InetAddress, TokenBucket> eldest) {
+                    return size() > config.getIpBucketsSize();
+                }
+            };
+        } else {
+            ipBuckets = null;
+        }
+    }
+
+    private int burst(int rate, int burst) {
+        if (burst > 0) {
+            return burst;
+        }
+        return rate;
+    }
+
+    /**
+     * Admits new handshake. Admitted handshake should be
+     * completed by {@link #release()} call.
+     *
+     * @param address - remote address
+     * @return <code>true</code> if handshake is admitted
+     */
+    public boolean tryAcquire(InetAddress address) {
+        int maxPending = config.getMaxPendingHandshakes();
+        if (maxPending > 0 && pendingHandshakes.get() >= maxPending) {
+            rejectedByPending.incrementAndGet();
+            return false;
+        }
+
+        long now = System.nanoTime();
+        if (globalBucket != null && !globalBucket.tryAcquire(now)) {
+            rejectedByRate.incrementAndGet();
+            return false;
+        }
+
+        if (ipBuckets != null && address != null
+                && !ipBucket(address, now).tryAcquire(now)) {
+            if (globalBucket != null) {
+                globalBucket.refund();
+            }
+            rejectedByIpRate.incrementAndGet();
+            return false;
+        }
+
+        pendingHandshakes.incrementAndGet();
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    private TokenBucket ipBucket(InetAddress address, long now) {
+        synchronized (ipBuckets) {
+            TokenBucket bucket = ipBuckets.get(address);
+            if (bucket == null) {
+                bucket = new TokenBucket(config.getHandshakeRatePerIp(),
+                        burst(config.getHandshakeRatePerIp(), config.getHandshakeBurstPerIp()), now);
+                ipBuckets.put(address, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    /**
+     * Completes admitted handshake
+     */
+    public void release() {
+        pendingHandshakes.decrementAndGet();
+    }
+
+    public int getRetryAfter() {
+        return config.getRetryAfter();
+    }
+
+    public int getPendingHandshakes() {
+        return pendingHandshakes.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejectedByRate() {
+        return rejectedByRate.get();
+    }
+
+    public long getRejectedByIpRate() {
+        return rejectedByIpRate.get();
+    }
+
+    public long getRejectedByPending() {
+        return rejectedByPending.get();
+    }
+
+    public long getRejected() {
+        return getRejectedByRate() + getRejectedByIpRate() + getRejectedByPending();
+    }
+
+}
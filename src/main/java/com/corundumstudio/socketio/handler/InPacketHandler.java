@@ -20,6 +20,9 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.Collections;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +31,7 @@ import com.corundumstudio.socketio.listener.ExceptionListener;
 import com.corundumstudio.socketio.messages.PacketsMessage;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketDecoder;
 import com.corundumstudio.socketio.protocol.PacketType;
@@ -62,15 +66,19 @@ public class InPacketHandler extends SimpleChannelInboundHandler<PacketsMessage>
         }
         while (content.isReadable()) {
             try {
-                Packet packet = decoder.decodePackets(content, client);
+                Packet packet = decoder.decodePackets(content, client, message.isBinary());
                 if (packet.hasAttachments() && !packet.isAttachmentsLoaded()) {
                     return;
                 }
+                if (packet.isDropped()) {
+                    log.trace("Event without listeners dropped in namespace: {}, sessionId: {}", packet.getNsp(), client.getSessionId());
+                    continue;
+                }
 
                 Namespace ns = namespacesHub.get(packet.getNsp());
                 if (ns == null) {
                     if ( isConnected(packet) ) {
-                        Packet p = makePacket(packet);
+                        Packet p = makePacket(packet, client);
                         client.send(p);
                     } else {
                         log.debug("Can't find namespace for endpoint: {}, sessionId: {} probably it was removed.", packet.getNsp(), client.getSessionId());
@@ -78,12 +86,19 @@ public class InPacketHandler extends SimpleChannelInboundHandler<PacketsMessage>
                     return;
                 }
 
-                if ( isConnected(packet) ) {
+                if ( isConnected(packet) && !client.isRecoveredNamespace(ns) ) {
                     client.addNamespaceClient(ns);
                 }
 
                 NamespaceClient nClient = client.getChildClient(ns);
+                if (nClient == null && packet.getType() != PacketType.MESSAGE
+                        && client.getEngineIOVersion() == EngineIOVersion.V4) {
+                    // EIO4 client may not be connected to default namespace
+                    packetListener.onEnginePacket(packet, client, message.getTransport());
+                    continue;
+                }
                 if (nClient == null) {
+                    ReferenceCountUtil.release(packet.getRawArgs());
                     log.debug("Can't find namespace client in namespace: {}, sessionId: {} probably it was disconnected.", ns.getName(), client.getSessionId());
                     return;
                 }
@@ -100,11 +115,16 @@ public class InPacketHandler extends SimpleChannelInboundHandler<PacketsMessage>
         return packet.getSubType() == PacketType.CONNECT;
     }
 
-    private Packet makePacket(Packet packet) {
+    private Packet makePacket(Packet packet, ClientHead client) {
         Packet p = new Packet(PacketType.MESSAGE);
         p.setSubType(PacketType.ERROR);
         p.setNsp(packet.getNsp());
-        p.setData("Invalid namespace");
+        if (client.getEngineIOVersion() == EngineIOVersion.V4) {
+            // EIO4 connect error payload is an object
+            p.setData(Collections.singletonMap("message", "Invalid namespace"));
+        } else {
+            p.setData("Invalid namespace");
+        }
         return p;
     }
 
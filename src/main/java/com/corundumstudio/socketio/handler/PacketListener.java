@@ -16,13 +16,13 @@
 package com.corundumstudio.socketio.handler;
 
 import java.util.Collections;
-import java.util.List;
 
 import com.corundumstudio.socketio.AckRequest;
 import com.corundumstudio.socketio.Transport;
 import com.corundumstudio.socketio.ack.AckManager;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketType;
 import com.corundumstudio.socketio.scheduler.CancelableScheduler;
@@ -43,7 +43,7 @@ public class PacketListener {
         this.scheduler = scheduler;
     }
 
-    public void onPacket(Packet packet, NamespaceClient client, Transport transport) {
+    public void onPacket(final Packet packet, final NamespaceClient client, Transport transport) {
         final AckRequest ackRequest = new AckRequest(packet, client);
 
         if (packet.isAckRequested()) {
@@ -52,28 +52,21 @@ public class PacketListener {
 
         switch (packet.getType()) {
         case PING: {
-            Packet outPacket = new Packet(PacketType.PONG);
-            outPacket.setData(packet.getData());
-            // TODO use future
-            client.getBaseClient().send(outPacket, transport);
-
-            if ("probe".equals(packet.getData())) {
-                client.getBaseClient().send(new Packet(PacketType.NOOP), Transport.POLLING);
-            } else {
-                client.getBaseClient().schedulePingTimeout();
-            }
+            onPing(packet, client.getBaseClient(), transport);
             Namespace namespace = namespacesHub.get(packet.getNsp());
             namespace.onPing(client);
             break;
         }
 
-        case UPGRADE: {
+        case PONG: {
             client.getBaseClient().schedulePingTimeout();
+            Namespace namespace = namespacesHub.get(packet.getNsp());
+            namespace.onPing(client);
+            break;
+        }
 
-            SchedulerKey key = new SchedulerKey(SchedulerKey.Type.UPGRADE_TIMEOUT, client.getSessionId());
-            scheduler.cancel(key);
-
-            client.getBaseClient().upgradeCurrentTransport(transport);
+        case UPGRADE: {
+            onUpgrade(client.getBaseClient(), transport);
             break;
         }
 
@@ -86,24 +79,29 @@ public class PacketListener {
 
             if (packet.getSubType() == PacketType.CONNECT) {
                 Namespace namespace = namespacesHub.get(packet.getNsp());
-                namespace.onConnect(client);
+                // recovered session keeps its rooms and doesn't trigger connect listeners
+                if (!client.getBaseClient().takeRecoveredNamespace(namespace)) {
+                    namespace.onConnect(client);
+                }
                 // send connect handshake packet back to client
-                client.getBaseClient().send(packet, transport);
+                client.getBaseClient().send(makeConnectPacket(packet, client), transport);
             }
 
             if (packet.getSubType() == PacketType.ACK
                     || packet.getSubType() == PacketType.BINARY_ACK) {
-                ackManager.onAck(client, packet);
+                Namespace namespace = namespacesHub.get(packet.getNsp());
+                namespace.execute(client, new Runnable() {
+                    @Override
+                    public void run() {
+                        ackManager.onAck(client, packet);
+                    }
+                });
             }
 
             if (packet.getSubType() == PacketType.EVENT
                     || packet.getSubType() == PacketType.BINARY_EVENT) {
                 Namespace namespace = namespacesHub.get(packet.getNsp());
-                List<Object> args = Collections.emptyList();
-                if (packet.getData() != null) {
-                    args = packet.getData();
-                }
-                namespace.onEvent(client, packet.getName(), args, ackRequest);
+                namespace.onEvent(client, packet, ackRequest);
             }
             break;
         }
@@ -117,4 +115,69 @@ public class PacketListener {
         }
     }
 
+    /**
+     * Handles engine level packets of EIO4 client
+     * which is not connected to packet namespace.
+     *
+     * @param packet - engine packet
+     * @param client - client
+     * @param transport - packet transport
+     */
+    public void onEnginePacket(Packet packet, ClientHead client, Transport transport) {
+        switch (packet.getType()) {
+        case PING:
+            onPing(packet, client, transport);
+            break;
+
+        case PONG:
+            client.schedulePingTimeout();
+            break;
+
+        case UPGRADE:
+            onUpgrade(client, transport);
+            break;
+
+        case CLOSE:
+            client.onChannelDisconnect();
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    private void onPing(Packet packet, ClientHead client, Transport transport) {
+        Packet outPacket = new Packet(PacketType.PONG);
+        outPacket.setData(packet.getData());
+        // TODO use future
+        client.send(outPacket, transport);
+
+        if ("probe".equals(packet.getData())) {
+            client.send(new Packet(PacketType.NOOP), Transport.POLLING);
+        } else {
+            client.schedulePingTimeout();
+        }
+    }
+
+    private void onUpgrade(ClientHead client, Transport transport) {
+        client.schedulePingTimeout();
+
+        SchedulerKey key = new SchedulerKey(SchedulerKey.Type.UPGRADE_TIMEOUT, client.getSessionId());
+        scheduler.cancel(key);
+
+        client.upgradeCurrentTransport(transport);
+    }
+
+    private Packet makeConnectPacket(Packet packet, NamespaceClient client) {
+        if (client.getBaseClient().getEngineIOVersion() != EngineIOVersion.V4) {
+            return packet;
+        }
+        // EIO4 client expects namespace session id in connect packet
+        Packet connectPacket = new Packet(PacketType.MESSAGE);
+        connectPacket.setSubType(PacketType.CONNECT);
+        connectPacket.setNsp(packet.getNsp());
+        connectPacket.setData(Collections.singletonMap("sid", client.getSessionId().toString()));
+        return connectPacket;
+    }
+
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.corundumstudio.socketio.protocol.Packet;
+
+/**
+ * Bounded per-session buffer of recently sent events
+ * used to replay missed events after connection state recovery.
+ *
+ * Offset is assigned once per packet, so broadcast packet
+ * shares the same offset for all sessions it was sent to.
+ */
+class ReplayBuffer {
+
+    private static final AtomicLong OFFSET_SEQUENCE = new AtomicLong();
+
+    private final ArrayDeque<Packet> packets;
+    private final int capacity;
+    private boolean overflowed;
+
+    ReplayBuffer(int capacity) {
+        this.capacity = capacity;
+        this.packets = new ArrayDeque<Packet>(Math.min(capacity, 16));
+    }
+
+    void add(Packet packet) {
+        synchronized (packet) {
+            if (packet.getOffset() == 0) {
+                packet.setOffset(OFFSET_SEQUENCE.incrementAndGet());
+            }
+        }
+
+        synchronized (this) {
+            if (packets.size() == capacity) {
+                packets.poll();
+                overflowed = true;
+            }
+            packets.add(packet);
+        }
+    }
+
+    /**
+     * Returns packets sent after packet with <code>offset</code>
+     *
+     * @param offset - offset of last packet received by client, <code>0</code> if none
+     * @return packets to replay or <code>null</code> if they are not available anymore
+     */
+    synchronized List<Packet> since(long offset) {
+        Iterator<Packet> iterator = packets.iterator();
+        if (offset != 0) {
+            boolean found = false;
+            while (iterator.hasNext()) {
+                if (iterator.next().getOffset() == offset) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        } else if (overflowed) {
+            return null;
+        }
+
+        if (!iterator.hasNext()) {
+            return Collections.emptyList();
+        }
+        List<Packet> result = new ArrayList<Packet>();
+        while (iterator.hasNext()) {
+            Packet packet = iterator.next();
+            if (packet.hasAttachments()) {
+                // binary attachments are consumed by encoder
+                return null;
+            }
+            result.add(packet);
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        packets.clear();
+    }
+
+}
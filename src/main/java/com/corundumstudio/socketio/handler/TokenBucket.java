@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+/**
+ * Token bucket refilled continuously with <code>rate</code> tokens per second
+ * up to <code>capacity</code>.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(int rate, int capacity, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = (double) rate / NANOS_PER_SECOND;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import java.util.List;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+
+/**
+ * Receives every event of namespace, including events
+ * without registered listeners. Invoked before event listeners.
+ *
+ */
+public interface AnyEventListener {
+
+    /**
+     * Invokes when event received from client
+     *
+     * @param client - sender
+     * @param eventName - event name
+     * @param args - event arguments. Arguments of event with registered listeners
+     *          are bound to classes declared by them, others are bound to generic JSON types.
+     * @param ackRequest - ack request
+     *
+     * @throws Exception
+     */
+    void onEvent(SocketIOClient client, String eventName, List<Object> args, AckRequest ackRequest) throws Exception;
+
+}
@@ -23,8 +23,14 @@ public interface ClientListeners {
 
     <T> void addEventListener(String eventName, Class<T> eventClass, DataListener<T> listener);
 
+    void addRawEventListener(String eventName, RawDataListener listener);
+
     void addEventInterceptor(EventInterceptor eventInterceptor);
 
+    void addAnyEventListener(AnyEventListener listener);
+
+    void addEventMiddleware(EventMiddleware middleware);
+
     void addDisconnectListener(DisconnectListener listener);
 
     void addConnectListener(ConnectListener listener);
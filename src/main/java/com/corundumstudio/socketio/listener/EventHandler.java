@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+
+/**
+ * Handles inbound event.
+ * Passed to {@link EventMiddleware} as the rest of the chain.
+ *
+ */
+public interface EventHandler {
+
+    /**
+     * @param client - sender received by middleware
+     * @param event - event received by middleware or its replacement,
+     *          replaced event is dispatched to listeners by its name
+     * @param ackRequest - ack request
+     *
+     * @throws Exception
+     */
+    void onEvent(SocketIOClient client, InboundEvent event, AckRequest ackRequest) throws Exception;
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+
+/**
+ * Intercepts inbound events before {@link AnyEventListener}s and event listeners.
+ * Middlewares are invoked in order of registration, each of them decides
+ * whether event goes further by invoking <code>next</code>.
+ * <p>
+ * Event arguments are bound on first access of {@link InboundEvent#getArgs()} elements,
+ * so middleware which checks only client or event name
+ * rejects event without its deserialization.
+ * <p>
+ * <code>next</code> should be invoked before method returns,
+ * raw arguments of event are released after that.
+ * Event is rejected if it isn't invoked.
+ *
+ */
+public interface EventMiddleware {
+
+    /**
+     * @param client - sender
+     * @param event - event name and arguments
+     * @param ackRequest - ack request, could be used to answer rejected event
+     * @param next - rest of the chain
+     *
+     * @throws Exception
+     */
+    void onEvent(SocketIOClient client, InboundEvent event, AckRequest ackRequest, EventHandler next) throws Exception;
+
+}
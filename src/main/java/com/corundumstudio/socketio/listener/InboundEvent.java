@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import java.util.List;
+
+/**
+ * Inbound event passed through {@link EventMiddleware}s
+ *
+ */
+public interface InboundEvent {
+
+    /**
+     * @return event name
+     */
+    String getName();
+
+    /**
+     * Arguments are bound to classes declared by event listeners on first access
+     * of their elements, others are bound to generic JSON types.
+     *
+     * @return event arguments
+     */
+    List<Object> getArgs();
+
+}
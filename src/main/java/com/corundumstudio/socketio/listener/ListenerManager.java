@@ -1,5 +1,7 @@
 package com.corundumstudio.socketio.listener;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
@@ -10,12 +12,19 @@ import com.corundumstudio.socketio.AckMode;
 import com.corundumstudio.socketio.AckRequest;
 import com.corundumstudio.socketio.MultiTypeArgs;
 import com.corundumstudio.socketio.SocketIOClient;
+import com.corundumstudio.socketio.annotation.ListenerRegistration;
+import com.corundumstudio.socketio.annotation.ListenerRegistrations;
 import com.corundumstudio.socketio.annotation.ScannerEngine;
+import com.corundumstudio.socketio.namespace.EventDispatchTable;
 import com.corundumstudio.socketio.namespace.EventEntry;
 import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.protocol.JsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.transport.NamespaceClient;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
 import io.netty.util.internal.PlatformDependent;
 
 public class ListenerManager implements ClientListeners {
@@ -25,23 +34,58 @@ public class ListenerManager implements ClientListeners {
     private final ExceptionListener exceptionListener;
     private final AckMode ackMode;
     private final Namespace namespace;
+    private final boolean isolateExceptions;
     
     private final ScannerEngine engine = new ScannerEngine();
 
     private final ConcurrentMap<String, EventEntry<?>> eventListeners = PlatformDependent.newConcurrentHashMap();
+    private volatile EventDispatchTable dispatchTable = EventDispatchTable.EMPTY;
 	
-    private final Queue<ConnectListener> connectListeners = new ConcurrentLinkedQueue<ConnectListener>();
-    private final Queue<DisconnectListener> disconnectListeners = new ConcurrentLinkedQueue<DisconnectListener>();
-    private final Queue<PingListener> pingListeners = new ConcurrentLinkedQueue<PingListener>();
-    private final Queue<EventInterceptor> eventInterceptors = new ConcurrentLinkedQueue<EventInterceptor>();
+    // listeners are registered on startup and read on each invocation,
+    // so registration replaces whole array instead of iterating over concurrent queues
+    private volatile ConnectListener[] connectListeners = new ConnectListener[0];
+    private volatile DisconnectListener[] disconnectListeners = new DisconnectListener[0];
+    private volatile PingListener[] pingListeners = new PingListener[0];
+    private volatile EventInterceptor[] eventInterceptors = new EventInterceptor[0];
+    private volatile AnyEventListener[] anyEventListeners = new AnyEventListener[0];
+    private volatile EventMiddleware[] middlewares = new EventMiddleware[0];
+
+    private final EventHandler dispatcher = new EventHandler() {
+        @Override
+        public void onEvent(SocketIOClient client, InboundEvent event, AckRequest ackRequest) {
+            NamespaceClient namespaceClient = (NamespaceClient) client;
+            if (event instanceof PacketEvent) {
+                dispatch(namespaceClient, ((PacketEvent) event).packet, ackRequest);
+            } else if (ListenerManager.this.onEvent(namespaceClient, event.getName(), event.getArgs(), ackRequest)) {
+                sendAck(ackRequest);
+            }
+        }
+    };
+    // middlewares composed with dispatcher, dispatcher itself if there are no middlewares
+    private volatile EventHandler eventHandler = dispatcher;
 	
     
     public ListenerManager(Namespace namespace, JsonSupport jsonSupport, String namespaceName, ExceptionListener exceptionListener, AckMode ackMode) {
+    	this(namespace, jsonSupport, namespaceName, exceptionListener, ackMode, false);
+    }
+
+    /**
+     * @param isolateExceptions - invoke remaining listeners if one of them has failed
+     */
+    public ListenerManager(Namespace namespace, JsonSupport jsonSupport, String namespaceName, ExceptionListener exceptionListener, AckMode ackMode,
+                            boolean isolateExceptions) {
     	this.namespace = namespace;
     	this.jsonSupport = jsonSupport;
     	this.namespaceName = namespaceName;
     	this.exceptionListener = exceptionListener;
     	this.ackMode = ackMode;
+    	this.isolateExceptions = isolateExceptions;
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = element;
+        return result;
     }
     
     
@@ -50,14 +94,16 @@ public class ListenerManager implements ClientListeners {
 		// TODO Auto-generated method stub
 		 EventEntry entry = eventListeners.get(eventName);
 	        if (entry == null) {
-	            entry = new EventEntry();
+	            entry = new EventEntry(eventName);
 	            EventEntry<?> oldEntry = eventListeners.putIfAbsent(eventName, entry);
 	            if (oldEntry != null) {
 	                entry = oldEntry;
 	            }
 	        }
 	        entry.addListener(listener);
+	        entry.setArgTypes(Arrays.asList(eventClass));
 	   jsonSupport.addEventMapping(namespaceName, eventName, eventClass);
+	   compileDispatchTable();
 	}
 
 	@Override
@@ -66,39 +112,128 @@ public class ListenerManager implements ClientListeners {
 		// TODO Auto-generated method stub
 		EventEntry entry = eventListeners.get(eventName);
         if (entry == null) {
-            entry = new EventEntry<T>();
+            entry = new EventEntry<T>(eventName);
             EventEntry<?> oldEntry = eventListeners.putIfAbsent(eventName, entry);
             if (oldEntry != null) {
                 entry = oldEntry;
             }
         }
         entry.addListener(listener);
+        entry.setArgTypes(Collections.<Class<?>>singletonList(eventClass));
         jsonSupport.addEventMapping(namespaceName, eventName, eventClass);
+        compileDispatchTable();
+	}
+
+	@Override
+	public void addRawEventListener(String eventName, RawDataListener listener) {
+		EventEntry<?> entry = eventListeners.get(eventName);
+        if (entry == null) {
+            entry = new EventEntry<Object>(eventName);
+            EventEntry<?> oldEntry = eventListeners.putIfAbsent(eventName, entry);
+            if (oldEntry != null) {
+                entry = oldEntry;
+            }
+        }
+        entry.addRawListener(listener);
+        compileDispatchTable();
 	}
 
 	@Override
-	public void addEventInterceptor(EventInterceptor eventInterceptor) {
+	public synchronized void addEventInterceptor(EventInterceptor eventInterceptor) {
 		// TODO Auto-generated method stub
-        eventInterceptors.add(eventInterceptor);
+        eventInterceptors = append(eventInterceptors, eventInterceptor);
+
+	}
+
+	@Override
+	public synchronized void addAnyEventListener(AnyEventListener listener) {
+		anyEventListeners = append(anyEventListeners, listener);
+	}
+
+	@Override
+	public synchronized void addEventMiddleware(EventMiddleware middleware) {
+		middlewares = append(middlewares, middleware);
+
+		EventHandler handler = dispatcher;
+		for (int i = middlewares.length - 1; i >= 0; i--) {
+			handler = chain(middlewares[i], handler);
+		}
+		eventHandler = handler;
+	}
+
+	private static EventHandler chain(final EventMiddleware middleware, final EventHandler next) {
+		return new EventHandler() {
+			@Override
+			public void onEvent(SocketIOClient client, InboundEvent event, AckRequest ackRequest) throws Exception {
+				middleware.onEvent(client, event, ackRequest, next);
+			}
+		};
+	}
+
+	/**
+	 * Passes inbound event through middlewares chain to listeners.
+	 * Raw arguments of packet aren't released if event is rejected by middleware.
+	 */
+	public void handleEvent(NamespaceClient client, Packet packet, AckRequest ackRequest) throws Exception {
+		EventHandler handler = eventHandler;
+		if (handler == dispatcher) {
+			dispatch(client, packet, ackRequest);
+			return;
+		}
+		handler.onEvent(client, new PacketEvent(packet), ackRequest);
+	}
+
+	/**
+	 * Event view of packet, its arguments are bound lazily by {@link Packet#getData()}
+	 */
+	private static final class PacketEvent implements InboundEvent {
+
+		private final Packet packet;
+
+		PacketEvent(Packet packet) {
+			this.packet = packet;
+		}
+
+		@Override
+		public String getName() {
+			return packet.getName();
+		}
+
+		@Override
+		public List<Object> getArgs() {
+			List<Object> args = packet.getData();
+			if (args == null) {
+				return Collections.emptyList();
+			}
+			return args;
+		}
+
+	}
 
+	/**
+	 * @return <code>true</code> if events without registered listeners
+	 *          should be passed to {@link AnyEventListener}s or {@link EventMiddleware}s
+	 */
+	public boolean acceptsAnyEvent() {
+		return anyEventListeners.length > 0 || middlewares.length > 0;
 	}
 
 	@Override
-	public void addDisconnectListener(DisconnectListener listener) {
+	public synchronized void addDisconnectListener(DisconnectListener listener) {
 		// TODO Auto-generated method stub
-        disconnectListeners.add(listener);
+        disconnectListeners = append(disconnectListeners, listener);
 	}
 
 	@Override
-	public void addConnectListener(ConnectListener listener) {
+	public synchronized void addConnectListener(ConnectListener listener) {
 		// TODO Auto-generated method stub
-		connectListeners.add(listener);
+		connectListeners = append(connectListeners, listener);
 	}
 
 	@Override
-	public void addPingListener(PingListener listener) {
+	public synchronized void addPingListener(PingListener listener) {
 		// TODO Auto-generated method stub
-		 pingListeners.add(listener);
+		 pingListeners = append(pingListeners, listener);
 	}
 
 	@Override
@@ -108,8 +243,14 @@ public class ListenerManager implements ClientListeners {
 	}
 
 	@Override
+    @SuppressWarnings("unchecked")
 	public void addListeners(Object listeners, Class<?> listenersClass) {
 		// TODO Auto-generated method stub
+        ListenerRegistration<Object> registration = (ListenerRegistration<Object>) ListenerRegistrations.find(listenersClass);
+        if (registration != null && listenersClass.isInstance(listeners)) {
+            registration.register(this, listeners);
+            return;
+        }
         engine.scan(namespace, listeners, listenersClass);
 	}
 
@@ -119,50 +260,180 @@ public class ListenerManager implements ClientListeners {
         EventEntry<?> entry = eventListeners.remove(eventName);
         if (entry != null) {
             jsonSupport.removeEventMapping(namespaceName, eventName);
+            compileDispatchTable();
         }
 	}
 
 	public EventEntry getEntry(String eventName) {
 		return eventListeners.get(eventName);
 	}
+
+	/**
+	 * @return lookup table of registered events
+	 */
+	public EventDispatchTable getDispatchTable() {
+		return dispatchTable;
+	}
+
+	private synchronized void compileDispatchTable() {
+		dispatchTable = EventDispatchTable.compile(eventListeners.values());
+	}
 	
-    private Object getEventData(List<Object> args, DataListener<?> dataListener) {
-        if (dataListener instanceof MultiTypeEventListener) {
-            return new MultiTypeArgs(args);
-        } else {
-            if (!args.isEmpty()) {
-                return args.get(0);
-            }
+	public boolean onEvent(NamespaceClient client, String eventName, List<Object> args, AckRequest ackRequest) {
+        EventEntry<?> entry = eventListeners.get(eventName);
+        return onEvent(client, eventName, entry, args, encodeRawArgs(client, entry, args), ackRequest);
+    }
+
+    /**
+     * Encodes already decoded arguments for raw listeners of event dispatched by name
+     *
+     * @return comma separated JSON arguments or <code>null</code> if event has no raw listeners
+     */
+    private ByteBuf encodeRawArgs(NamespaceClient client, EventEntry<?> entry, List<Object> args) {
+        if (entry == null || entry.getRawListenersSnapshot().length == 0 || args.isEmpty()) {
+            return null;
         }
-        return null;
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            jsonSupport.writeValue(new ByteBufOutputStream(buf), args);
+        } catch (IOException e) {
+            buf.release();
+            exceptionListener.onEventException(e, args, client);
+            return null;
+        }
+        // strip array brackets, slice shares reference count with buffer
+        return buf.slice(buf.readerIndex() + 1, buf.readableBytes() - 2);
     }
 
-    @SuppressWarnings({"rawtypes", "unchecked"})
-	public boolean onEvent(NamespaceClient client, String eventName, List<Object> args, AckRequest ackRequest) {
-		EventEntry entry = eventListeners.get(eventName);
-   
+    private void dispatch(NamespaceClient client, Packet packet, AckRequest ackRequest) {
+        // released by listeners invocation
+        ByteBuf rawArgs = packet.getRawArgs();
+        packet.setRawArgs(null);
+
+        List<Object> args = packet.getData();
+        if (args == null) {
+            args = Collections.emptyList();
+        }
+        EventEntry<?> entry = packet.getEventEntry();
         if (entry == null) {
+            entry = eventListeners.get(packet.getName());
+        }
+        if (rawArgs == null) {
+            // raw arguments aren't sliced by decoder without namespaces hub
+            rawArgs = encodeRawArgs(client, entry, args);
+        }
+        if (onEvent(client, packet.getName(), entry, args, rawArgs, ackRequest)) {
+            sendAck(ackRequest);
+        }
+    }
+
+    /**
+     * Invokes event listeners
+     *
+     * @param client - sender
+     * @param entry - event listeners
+     * @param args - decoded arguments
+     * @param rawArgs - undecoded arguments, released after invocation, may be <code>null</code>
+     * @param ackRequest - ack request
+     * @return <code>true</code> if ack should be sent
+     */
+    @SuppressWarnings("rawtypes")
+	public boolean onEvent(NamespaceClient client, EventEntry entry, List<Object> args, ByteBuf rawArgs, AckRequest ackRequest) {
+        return onEvent(client, entry.getName(), entry, args, rawArgs, ackRequest);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private boolean onEvent(NamespaceClient client, String eventName, EventEntry entry, List<Object> args, ByteBuf rawArgs, AckRequest ackRequest) {
+        AnyEventListener[] anyListeners = anyEventListeners;
+        if (entry == null && anyListeners.length == 0) {
+            if (rawArgs != null) {
+                rawArgs.release();
+            }
             return false;
         }
 
+        boolean failed = false;
         try {
-            Queue<DataListener> listeners = entry.getListeners();
-            for (DataListener dataListener : listeners) {
-                Object data = getEventData(args, dataListener);
-                dataListener.onData(client, data, ackRequest);
+            for (int i = 0; i < anyListeners.length; i++) {
+                try {
+                    anyListeners[i].onEvent(client, eventName, args, ackRequest);
+                } catch (Exception e) {
+                    if (!onEventException(e, args, client)) {
+                        return ackMode != AckMode.AUTO_SUCCESS_ONLY;
+                    }
+                    failed = true;
+                }
+            }
+            if (entry == null) {
+                return !failed || ackMode != AckMode.AUTO_SUCCESS_ONLY;
+            }
+
+            RawDataListener[] rawListeners = entry.getRawListenersSnapshot();
+            for (int i = 0; i < rawListeners.length; i++) {
+                ByteBuf data = Unpooled.EMPTY_BUFFER;
+                if (rawArgs != null) {
+                    data = rawArgs.duplicate();
+                }
+                try {
+                    rawListeners[i].onData(client, data, ackRequest);
+                } catch (Exception e) {
+                    if (!onEventException(e, args, client)) {
+                        return ackMode != AckMode.AUTO_SUCCESS_ONLY;
+                    }
+                    failed = true;
+                }
+            }
+
+            DataListener[] listeners = entry.getListenersSnapshot();
+            // shared by all multi-type listeners of event
+            MultiTypeArgs multiTypeArgs = null;
+            for (int i = 0; i < listeners.length; i++) {
+                DataListener dataListener = listeners[i];
+                Object data = null;
+                if (dataListener instanceof MultiTypeEventListener) {
+                    if (multiTypeArgs == null) {
+                        multiTypeArgs = new MultiTypeArgs(args);
+                    }
+                    data = multiTypeArgs;
+                } else if (!args.isEmpty()) {
+                    data = args.get(0);
+                }
+                try {
+                    dataListener.onData(client, data, ackRequest);
+                } catch (Exception e) {
+                    if (!onEventException(e, args, client)) {
+                        return ackMode != AckMode.AUTO_SUCCESS_ONLY;
+                    }
+                    failed = true;
+                }
             }
 
-            for (EventInterceptor eventInterceptor : eventInterceptors) {
-                eventInterceptor.onEvent(client, eventName, args, ackRequest);
+            EventInterceptor[] interceptors = eventInterceptors;
+            for (int i = 0; i < interceptors.length; i++) {
+                try {
+                    interceptors[i].onEvent(client, eventName, args, ackRequest);
+                } catch (Exception e) {
+                    if (!onEventException(e, args, client)) {
+                        return ackMode != AckMode.AUTO_SUCCESS_ONLY;
+                    }
+                    failed = true;
+                }
             }
-        } catch (Exception e) {
-        	exceptionListener.onEventException(e, args, client);
-            if (ackMode == AckMode.AUTO_SUCCESS_ONLY) {
-                return false;
+        } finally {
+            if (rawArgs != null) {
+                rawArgs.release();
             }
         }
 		
-        return true;
+        return !failed || ackMode != AckMode.AUTO_SUCCESS_ONLY;
+    }
+
+    /**
+     * @return <code>true</code> if remaining listeners should be invoked
+     */
+    private boolean onEventException(Exception e, List<Object> args, NamespaceClient client) {
+        exceptionListener.onEventException(e, args, client);
+        return isolateExceptions;
     }
     
     public void sendAck(AckRequest ackRequest) {
@@ -175,45 +446,65 @@ public class ListenerManager implements ClientListeners {
     }
 	
     public void onDisconnect(SocketIOClient client) {
-        try {
-            for (DisconnectListener listener : disconnectListeners) {
-                listener.onDisconnect(client);
+        DisconnectListener[] listeners = disconnectListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].onDisconnect(client);
+            } catch (Exception e) {
+                exceptionListener.onDisconnectException(e, client);
+                if (!isolateExceptions) {
+                    return;
+                }
             }
-        } catch (Exception e) {
-            exceptionListener.onDisconnectException(e, client);
         }
     }
   
+	/**
+	 * @return copy of registered interceptors, changes to it aren't reflected
+	 *         in this manager
+	 */
 	public Queue<EventInterceptor> getEventInterceptors(){
-		return eventInterceptors;
+		return new ConcurrentLinkedQueue<EventInterceptor>(Arrays.asList(eventInterceptors));
 	}
 	public ExceptionListener getExceptionListener(){
 		return exceptionListener;
 	}
+	/**
+	 * @return copy of registered listeners, changes to it aren't reflected
+	 *         in this manager
+	 */
 	public Queue<DisconnectListener> getDisconnectListeners(){
-		return disconnectListeners;
+		return new ConcurrentLinkedQueue<DisconnectListener>(Arrays.asList(disconnectListeners));
 	}
 
 
 	public void onConnect(SocketIOClient client) {
-        try {
-            for (ConnectListener listener : connectListeners) {
-                listener.onConnect(client);
+        ConnectListener[] listeners = connectListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].onConnect(client);
+            } catch (Exception e) {
+                exceptionListener.onConnectException(e, client);
+                if (!isolateExceptions) {
+                    return;
+                }
             }
-        } catch (Exception e) {
-            exceptionListener.onConnectException(e, client);
-        }		
+        }
 	}
 
 
 	public void onPing(SocketIOClient client) {
-		try {
-            for (PingListener listener : pingListeners) {
-                listener.onPing(client);
+        PingListener[] listeners = pingListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].onPing(client);
+            } catch (Exception e) {
+                exceptionListener.onPingException(e, client);
+                if (!isolateExceptions) {
+                    return;
+                }
             }
-        } catch (Exception e) {
-            exceptionListener.onPingException(e, client);
-        }		
+        }
 	}
 
 
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Receives event arguments as undecoded JSON bytes.
+ * Useful to relay event through
+ * {@link com.corundumstudio.socketio.BroadcastOperations#sendRawEvent(String, ByteBuf)}
+ * without JSON parsing.
+ *
+ */
+public interface RawDataListener {
+
+    /**
+     * Invokes when event received from client
+     *
+     * @param client - receiver
+     * @param args - comma separated JSON arguments of event, like <code>{"a":1},"b"</code>.
+     *          Slice of inbound frame, valid during invocation only,
+     *          use {@link ByteBuf#retain()} to keep it longer.
+     *          Binary attachments are inlined as base64 strings.
+     * @param ackSender - ack request
+     *
+     * @throws Exception
+     */
+    void onData(SocketIOClient client, ByteBuf args, AckRequest ackSender) throws Exception;
+
+}
@@ -18,6 +18,7 @@ package com.corundumstudio.socketio.messages;
 import com.corundumstudio.socketio.Transport;
 import com.corundumstudio.socketio.handler.ClientHead;
 import com.corundumstudio.socketio.handler.EncoderHandler;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketEncoder;
 import io.netty.buffer.ByteBuf;
@@ -86,7 +87,7 @@ public class OutPacketMessage extends HttpMessage {
             }
 
             final ByteBuf out = encoder.allocateBuffer(ctx.alloc());
-            encoder.encodePacket(packet, out, ctx.alloc(), true);
+            encoder.encodePacket(packet, out, ctx.alloc(), true, msg.getClientHead().getEngineIOVersion());
 
             WebSocketFrame res = new TextWebSocketFrame(out);
             if (log.isTraceEnabled()) {
@@ -99,9 +100,13 @@ public class OutPacketMessage extends HttpMessage {
                 out.release();
             }
 
+            boolean v4 = msg.getClientHead().getEngineIOVersion() == EngineIOVersion.V4;
             for (ByteBuf buf : packet.getAttachments()) {
                 ByteBuf outBuf = encoder.allocateBuffer(ctx.alloc());
-                outBuf.writeByte(4);
+                // EIO4 sends attachments as raw binary frames
+                if (!v4) {
+                    outBuf.writeByte(4);
+                }
                 outBuf.writeBytes(buf);
                 if (log.isTraceEnabled()) {
                     log.trace("Out attachment: {} sessionId: {}", ByteBufUtil.hexDump(outBuf), msg.getSessionId());
@@ -123,6 +128,12 @@ public class OutPacketMessage extends HttpMessage {
         }
 
         ByteBuf out = encoder.allocateBuffer(ctx.alloc());
+        if (msg.getClientHead().getEngineIOVersion() == EngineIOVersion.V4) {
+            encoder.encodeV4Packets(queue, out, ctx.alloc(), 50);
+            sendMessage(msg, channel, out, "text/plain; charset=UTF-8", promise, HttpResponseStatus.OK);
+            return;
+        }
+
         Boolean b64 = ctx.channel().attr(B64).get();
         if (b64 != null && b64) {
             Integer jsonpIndex = ctx.channel().attr(JSONP_INDEX).get();
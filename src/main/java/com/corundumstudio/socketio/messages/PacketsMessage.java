@@ -25,11 +25,26 @@ public class PacketsMessage {
     private final ClientHead client;
     private final ByteBuf content;
     private final Transport transport;
+    private final boolean binary;
 
     public PacketsMessage(ClientHead client, ByteBuf content, Transport transport) {
+        this(client, content, transport, false);
+    }
+
+    public PacketsMessage(ClientHead client, ByteBuf content, Transport transport, boolean binary) {
         this.client = client;
         this.content = content;
         this.transport = transport;
+        this.binary = binary;
+    }
+
+    /**
+     * Content received through binary websocket frame
+     *
+     * @return <code>true</code> if content is binary
+     */
+    public boolean isBinary() {
+        return binary;
     }
 
     public Transport getTransport() {
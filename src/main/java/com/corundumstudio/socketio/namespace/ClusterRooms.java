@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Room membership of other nodes of cluster.
+ * Keeps amount of members of each room per node instead of their session ids,
+ * so memory doesn't depend on cluster population.
+ * <p>
+ * Node is forgotten once all its members have left
+ * or once it's considered failed and {@link #removeNode(Long)} is invoked.
+ * <p>
+ * Digest of membership is kept per node, so it can be compared
+ * with digest of node state, see {@link #digest(Map)}.
+ *
+ */
+public class ClusterRooms {
+
+    // guarded by this
+    private final Map<String, Map<Long, Integer>> roomNodes = new HashMap<String, Map<Long, Integer>>();
+    // guarded by this
+    private final Map<Long, Long> nodeDigests = new HashMap<Long, Long>();
+
+    /**
+     * Order independent digest of amount of members of rooms
+     *
+     * @param rooms - amount of members of rooms
+     * @return digest, <code>0</code> if there are no members
+     */
+    public static long digest(Map<String, Integer> rooms) {
+        long result = 0;
+        for (Map.Entry<String, Integer> entry : rooms.entrySet()) {
+            result += digest(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private static long digest(String room, int members) {
+        if (members <= 0) {
+            return 0;
+        }
+        long h = room.hashCode() * 0x9E3779B97F4A7C15L + members;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void updateDigest(Long nodeId, String room, int oldMembers, int newMembers) {
+        Long value = nodeDigests.get(nodeId);
+        long result = value != null ? value : 0;
+        result += digest(room, newMembers) - digest(room, oldMembers);
+        if (result == 0) {
+            nodeDigests.remove(nodeId);
+        } else {
+            nodeDigests.put(nodeId, result);
+        }
+    }
+
+    /**
+     * @return digest of membership of node, see {@link #digest(Map)}
+     */
+    public synchronized long getDigest(Long nodeId) {
+        Long value = nodeDigests.get(nodeId);
+        if (value == null) {
+            return 0;
+        }
+        return value;
+    }
+
+    public synchronized void join(String room, Long nodeId) {
+        Map<Long, Integer> nodes = roomNodes.get(room);
+        if (nodes == null) {
+            nodes = new HashMap<Long, Integer>();
+            roomNodes.put(room, nodes);
+        }
+        Integer members = nodes.get(nodeId);
+        if (members == null) {
+            members = 0;
+        }
+        nodes.put(nodeId, members + 1);
+        updateDigest(nodeId, room, members, members + 1);
+    }
+
+    public synchronized void leave(String room, Long nodeId) {
+        Map<Long, Integer> nodes = roomNodes.get(room);
+        if (nodes == null) {
+            return;
+        }
+        Integer members = nodes.get(nodeId);
+        if (members == null) {
+            return;
+        }
+        updateDigest(nodeId, room, members, members - 1);
+        if (members > 1) {
+            nodes.put(nodeId, members - 1);
+            return;
+        }
+        nodes.remove(nodeId);
+        if (nodes.isEmpty()) {
+            roomNodes.remove(room);
+        }
+    }
+
+    public synchronized void removeNode(Long nodeId) {
+        nodeDigests.remove(nodeId);
+        for (Iterator<Map<Long, Integer>> iterator = roomNodes.values().iterator(); iterator.hasNext();) {
+            Map<Long, Integer> nodes = iterator.next();
+            nodes.remove(nodeId);
+            if (nodes.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Replaces membership of node
+     *
+     * @param nodeId - node id
+     * @param rooms - amount of members of rooms on node
+     */
+    public synchronized void setNode(Long nodeId, Map<String, Integer> rooms) {
+        removeNode(nodeId);
+        for (Map.Entry<String, Integer> entry : rooms.entrySet()) {
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+            Map<Long, Integer> nodes = roomNodes.get(entry.getKey());
+            if (nodes == null) {
+                nodes = new HashMap<Long, Integer>();
+                roomNodes.put(entry.getKey(), nodes);
+            }
+            nodes.put(nodeId, entry.getValue());
+            updateDigest(nodeId, entry.getKey(), 0, entry.getValue());
+        }
+    }
+
+    /**
+     * @return ids of nodes which have members of room
+     */
+    public synchronized Set<Long> getNodes(String room) {
+        Map<Long, Integer> nodes = roomNodes.get(room);
+        if (nodes == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<Long>(nodes.keySet());
+    }
+
+    /**
+     * @return amount of members of room on other nodes
+     */
+    public synchronized int getClientsCount(String room) {
+        Map<Long, Integer> nodes = roomNodes.get(room);
+        if (nodes == null) {
+            return 0;
+        }
+        int result = 0;
+        for (Integer members : nodes.values()) {
+            result += members;
+        }
+        return result;
+    }
+
+    /**
+     * @return rooms which have members on other nodes
+     */
+    public synchronized Set<String> getRooms() {
+        return new HashSet<String>(roomNodes.keySet());
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory of executors for listener dispatching
+ *
+ * @see com.corundumstudio.socketio.Configuration#setDispatchExecutor(java.util.concurrent.Executor)
+ */
+public final class DispatchExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchExecutors.class);
+
+    private DispatchExecutors() {
+    }
+
+    /**
+     * Creates virtual thread per task executor if it's supported by JVM,
+     * otherwise thread pool with <code>poolSize</code> threads.
+     *
+     * @param poolSize - threads amount of fallback pool
+     * @return executor
+     */
+    public static ExecutorService newDispatchExecutor(int poolSize) {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            // virtual threads are not available
+        } catch (Exception e) {
+            log.warn("Can't create virtual thread executor", e);
+        }
+        return newPooledExecutor(poolSize);
+    }
+
+    /**
+     * Creates thread pool with <code>poolSize</code> daemon threads
+     *
+     * @param poolSize - threads amount
+     * @return executor
+     */
+    public static ExecutorService newPooledExecutor(int poolSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "socketio-dispatch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
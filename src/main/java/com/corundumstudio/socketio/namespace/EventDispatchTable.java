@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Immutable event name lookup table of namespace.
+ * Compiled on listeners registration into a perfect hash
+ * of UTF-8 encoded event names, so inbound event is resolved
+ * straight from frame bytes without event name String allocation.
+ * Falls back to lookup by decoded name if perfect hash
+ * would need too large table for amount of events.
+ *
+ */
+public final class EventDispatchTable {
+
+    public static final EventDispatchTable EMPTY = new EventDispatchTable(new EventEntry<?>[1], 0);
+
+    private static final int SEED_ATTEMPTS = 32;
+    private static final int MAX_SLOTS_PER_ENTRY = 64;
+    private static final int MAX_SIZE = 1 << 20;
+
+    private final EventEntry<?>[] slots;
+    private final int mask;
+    private final int seed;
+    private final Map<String, EventEntry<?>> entriesByName;
+
+    private EventDispatchTable(EventEntry<?>[] slots, int seed) {
+        this.slots = slots;
+        this.mask = slots.length - 1;
+        this.seed = seed;
+        this.entriesByName = null;
+    }
+
+    private EventDispatchTable(Map<String, EventEntry<?>> entriesByName) {
+        this.slots = null;
+        this.mask = 0;
+        this.seed = 0;
+        this.entriesByName = entriesByName;
+    }
+
+    /**
+     * Compiles table for entries. Hash seed and table size are chosen
+     * to place each entry in its own slot. Size needed for that grows
+     * quadratically with entries amount, so table is limited to
+     * {@value #MAX_SLOTS_PER_ENTRY} slots per entry and lookup by name is used beyond it.
+     *
+     * @param entries - event entries
+     * @return compiled table
+     */
+    public static EventDispatchTable compile(Collection<EventEntry<?>> entries) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+
+        int size = Integer.highestOneBit(entries.size() * 2 - 1) << 1;
+        long maxSize = Math.min(MAX_SIZE, (long) entries.size() * MAX_SLOTS_PER_ENTRY);
+        while (size <= maxSize) {
+            for (int seed = 0; seed < SEED_ATTEMPTS; seed++) {
+                EventEntry<?>[] slots = place(entries, size, seed);
+                if (slots != null) {
+                    return new EventDispatchTable(slots, seed);
+                }
+            }
+            size <<= 1;
+        }
+
+        Map<String, EventEntry<?>> entriesByName = new HashMap<String, EventEntry<?>>(entries.size() * 2);
+        for (EventEntry<?> entry : entries) {
+            entriesByName.put(entry.getName(), entry);
+        }
+        return new EventDispatchTable(entriesByName);
+    }
+
+    /**
+     * @return <code>true</code> if events are resolved by perfect hash
+     *          without event name allocation
+     */
+    public boolean isPerfectHash() {
+        return entriesByName == null;
+    }
+
+    private static EventEntry<?>[] place(Collection<EventEntry<?>> entries, int size, int seed) {
+        EventEntry<?>[] slots = new EventEntry<?>[size];
+        for (EventEntry<?> entry : entries) {
+            byte[] name = entry.getNameBytes();
+            int index = hash(seed, name) & (size - 1);
+            if (slots[index] != null) {
+                return null;
+            }
+            slots[index] = entry;
+        }
+        return slots;
+    }
+
+    /**
+     * Resolves entry by UTF-8 encoded event name
+     *
+     * @param buf - buffer with event name
+     * @param index - index of first name byte
+     * @param length - name length in bytes
+     * @return entry or <code>null</code> if event isn't registered
+     */
+    public EventEntry<?> lookup(ByteBuf buf, int index, int length) {
+        if (entriesByName != null) {
+            return entriesByName.get(buf.toString(index, length, CharsetUtil.UTF_8));
+        }
+        EventEntry<?> entry = slots[hash(seed, buf, index, length) & mask];
+        if (entry == null) {
+            return null;
+        }
+        byte[] name = entry.getNameBytes();
+        if (name.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != buf.getByte(index + i)) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    private static int hash(int seed, byte[] name) {
+        int h = 0x811c9dc5 ^ seed * 0x9e3779b9;
+        for (byte b : name) {
+            h = (h ^ (b & 0xff)) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int hash(int seed, ByteBuf buf, int index, int length) {
+        int h = 0x811c9dc5 ^ seed * 0x9e3779b9;
+        for (int i = index; i < index + length; i++) {
+            h = (h ^ (buf.getByte(i) & 0xff)) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+}
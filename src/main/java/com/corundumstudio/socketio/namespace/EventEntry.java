@@ -15,25 +15,99 @@
  */
 package com.corundumstudio.socketio.namespace;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.corundumstudio.socketio.listener.DataListener;
+import com.corundumstudio.socketio.listener.RawDataListener;
+
+import io.netty.util.CharsetUtil;
 
 public class EventEntry<T> {
 
-    private final Queue<DataListener<T>> listeners = new ConcurrentLinkedQueue<DataListener<T>>();;
+    private static final RawDataListener[] NO_RAW_LISTENERS = new RawDataListener[0];
+
+    // listeners are added rarely and read on every event,
+    // so they are kept in arrays replaced on each registration
+    @SuppressWarnings("unchecked")
+    private volatile DataListener<T>[] listeners = new DataListener[0];
+    private volatile RawDataListener[] rawListeners = NO_RAW_LISTENERS;
+
+    private final String name;
+    private final byte[] nameBytes;
+    private volatile List<Class<?>> argTypes = Collections.emptyList();
 
-    public EventEntry() {
+    public EventEntry(String name) {
         super();
+        this.name = name;
+        this.nameBytes = name.getBytes(CharsetUtil.UTF_8);
     }
 
-    public void addListener(DataListener<T> listener) {
-        listeners.add(listener);
+    public synchronized void addListener(DataListener<T> listener) {
+        DataListener<T>[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
     }
 
+    /**
+     * @return copy of registered listeners, changes to it aren't reflected
+     *         in this entry
+     */
     public Queue<DataListener<T>> getListeners() {
+        return new ConcurrentLinkedQueue<DataListener<T>>(Arrays.asList(listeners));
+    }
+
+    /**
+     * @return snapshot of listeners, shouldn't be modified
+     */
+    public DataListener<T>[] getListenersSnapshot() {
         return listeners;
     }
 
+    public synchronized void addRawListener(RawDataListener listener) {
+        RawDataListener[] newListeners = Arrays.copyOf(rawListeners, rawListeners.length + 1);
+        newListeners[rawListeners.length] = listener;
+        rawListeners = newListeners;
+    }
+
+    /**
+     * @return copy of registered raw listeners, changes to it aren't reflected
+     *         in this entry
+     */
+    public Queue<RawDataListener> getRawListeners() {
+        return new ConcurrentLinkedQueue<RawDataListener>(Arrays.asList(rawListeners));
+    }
+
+    /**
+     * @return snapshot of raw listeners, shouldn't be modified
+     */
+    public RawDataListener[] getRawListenersSnapshot() {
+        return rawListeners;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return UTF-8 encoded event name
+     */
+    public byte[] getNameBytes() {
+        return nameBytes;
+    }
+
+    public void setArgTypes(List<Class<?>> argTypes) {
+        this.argTypes = argTypes;
+    }
+
+    /**
+     * @return classes of event arguments declared by last registered listener
+     */
+    public List<Class<?>> getArgTypes() {
+        return argTypes;
+    }
+
 }
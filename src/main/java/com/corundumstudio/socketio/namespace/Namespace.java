@@ -18,13 +18,17 @@ package com.corundumstudio.socketio.namespace;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.corundumstudio.socketio.AckMode;
 import com.corundumstudio.socketio.AckRequest;
@@ -42,6 +46,7 @@ import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
 import com.corundumstudio.socketio.store.pubsub.PubSubType;
 import com.corundumstudio.socketio.transport.NamespaceClient;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.util.internal.PlatformDependent;
 
 /**
@@ -59,18 +64,28 @@ public class Namespace implements SocketIONamespace {
     private final Map<UUID, SocketIOClient> allClients = PlatformDependent.newConcurrentHashMap();
     private final ConcurrentMap<String, Set<UUID>> roomClients = PlatformDependent.newConcurrentHashMap();
     private final ConcurrentMap<UUID, Set<String>> clientRooms = PlatformDependent.newConcurrentHashMap();
+    private final ClusterRooms clusterRooms = new ClusterRooms();
+
+    private final ConcurrentMap<UUID, SessionQueue> sessionQueues = PlatformDependent.newConcurrentHashMap();
 
     private final String name;
     private final StoreFactory storeFactory;
+    private final int dispatchQueueThreshold;
+    private volatile Executor dispatchExecutor;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private NamespacesHub namespacesHub;
 
     public Namespace(String name, Configuration configuration) {
         super();
 
         this.name = name;
         this.storeFactory = configuration.getStoreFactory();
+        this.dispatchExecutor = configuration.getDispatchExecutor();
+        this.dispatchQueueThreshold = configuration.getDispatchQueueThreshold();
     
         listenerManager = new ListenerManager(this, configuration.getJsonSupport(), name,
-        		configuration.getExceptionListener(), configuration.getAckMode());
+        		configuration.getExceptionListener(), configuration.getAckMode(),
+        		configuration.isIsolateListenerExceptions());
     }
 
     public void addClient(SocketIOClient client) {
@@ -105,14 +120,92 @@ public class Namespace implements SocketIONamespace {
 //    }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
-    public void onEvent(NamespaceClient client, String eventName, List<Object> args, AckRequest ackRequest) {
-        if(listenerManager.onEvent(client, eventName, args, ackRequest))
-        	listenerManager.sendAck(ackRequest);
-        return;
+    public void onEvent(final NamespaceClient client, final String eventName, final List<Object> args, final AckRequest ackRequest) {
+        execute(client, new Runnable() {
+            @Override
+            public void run() {
+                if(listenerManager.onEvent(client, eventName, args, ackRequest))
+                    listenerManager.sendAck(ackRequest);
+            }
+        });
+    }
+
+    /**
+     * Passes inbound event through middlewares to listeners.
+     * Event could be resolved by {@link EventDispatchTable} or by its name.
+     */
+    public void onEvent(final NamespaceClient client, final Packet packet, final AckRequest ackRequest) {
+        execute(client, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listenerManager.handleEvent(client, packet, ackRequest);
+                } catch (Exception e) {
+                    List<Object> args = packet.getData();
+                    if (args == null) {
+                        args = Collections.emptyList();
+                    }
+                    listenerManager.getExceptionListener().onEventException(e, args, client);
+                } finally {
+                    // event rejected by middleware
+                    ByteBuf rawArgs = packet.getRawArgs();
+                    if (rawArgs != null) {
+                        packet.setRawArgs(null);
+                        rawArgs.release();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Invoked by decoder for inbound event without listeners
+     */
+    public void onEventDropped() {
+        droppedEvents.incrementAndGet();
+    }
+
+    @Override
+    public long getDroppedEventsCount() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public void setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
     }
 
+    /**
+     * Executes listener invocation on dispatch executor
+     * keeping order of invocations for each session.
+     * Executes it in current thread if dispatch executor isn't set.
+     *
+     * @param client - client
+     * @param task - listener invocation
+     */
+    public void execute(SocketIOClient client, Runnable task) {
+        Executor executor = dispatchExecutor;
+        if (executor == null || !(client instanceof NamespaceClient)) {
+            task.run();
+            return;
+        }
 
-    public void onDisconnect(SocketIOClient client) {
+        getSessionQueue(executor, (NamespaceClient) client).execute(task);
+    }
+
+    private SessionQueue getSessionQueue(Executor executor, NamespaceClient client) {
+        SessionQueue queue = sessionQueues.get(client.getSessionId());
+        if (queue == null) {
+            queue = new SessionQueue(executor, client.getBaseClient(), dispatchQueueThreshold);
+            SessionQueue oldQueue = sessionQueues.putIfAbsent(client.getSessionId(), queue);
+            if (oldQueue != null) {
+                queue = oldQueue;
+            }
+        }
+        return queue;
+    }
+
+    public void onDisconnect(final SocketIOClient client) {
         Set<String> joinedRooms = client.getAllRooms();        
         allClients.remove(client.getSessionId());
 
@@ -120,21 +213,53 @@ public class Namespace implements SocketIONamespace {
         storeFactory.pubSubStore().publish(PubSubType.LEAVE, new JoinLeaveMessage(client.getSessionId(), getName(), getName()));
 
         for (String joinedRoom : joinedRooms) {
-            leave(roomClients, joinedRoom, client.getSessionId());
+            if (leave(roomClients, joinedRoom, client.getSessionId())) {
+                storeFactory.pubSubStore().publish(PubSubType.LEAVE, new JoinLeaveMessage(client.getSessionId(), joinedRoom, getName()));
+            }
         }
         clientRooms.remove(client.getSessionId());
 
-        listenerManager.onDisconnect(client);
+        Executor executor = dispatchExecutor;
+        if (executor == null || !(client instanceof NamespaceClient)) {
+            listenerManager.onDisconnect(client);
+            return;
+        }
+
+        // the queue is released by the disconnect task itself, so tasks queued
+        // before it has run still share the queue and keep their order
+        final SessionQueue queue = getSessionQueue(executor, (NamespaceClient) client);
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listenerManager.onDisconnect(client);
+                } finally {
+                    sessionQueues.remove(client.getSessionId(), queue);
+                }
+            }
+        });
     }
 
 
 
-    public void onConnect(SocketIOClient client) {
+    void setNamespacesHub(NamespacesHub namespacesHub) {
+        this.namespacesHub = namespacesHub;
+    }
+
+    public void onConnect(final SocketIOClient client) {
         join(getName(), client.getSessionId());
         storeFactory.pubSubStore().publish(PubSubType.JOIN, new JoinLeaveMessage(client.getSessionId(), getName(), getName()));
 
-        listenerManager.onConnect(client);
-
+        execute(client, new Runnable() {
+            @Override
+            public void run() {
+                listenerManager.onConnect(client);
+                if (client instanceof NamespaceClient) {
+                    int namespacesCount = namespacesHub != null ? namespacesHub.getAllNamespaces().size() : 1;
+                    ((NamespaceClient) client).getBaseClient().onConnected(Namespace.this, namespacesCount);
+                }
+            }
+        });
     }
 
 //    @Override
@@ -192,8 +317,9 @@ public class Namespace implements SocketIONamespace {
 //    }
 
     public void joinRoom(String room, UUID sessionId) {
-        join(room, sessionId);
-        storeFactory.pubSubStore().publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, room, getName()));
+        if (join(room, sessionId)) {
+            storeFactory.pubSubStore().publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, room, getName()));
+        }
     }
 
     public void dispatch(String room, Packet packet) {
@@ -204,7 +330,7 @@ public class Namespace implements SocketIONamespace {
         }
     }
 
-    private <K, V> void join(ConcurrentMap<K, Set<V>> map, K key, V value) {
+    private <K, V> boolean join(ConcurrentMap<K, Set<V>> map, K key, V value) {
         Set<V> clients = map.get(key);
         if (clients == null) {
             clients = Collections.newSetFromMap(PlatformDependent.<V, Boolean>newConcurrentHashMap());
@@ -213,41 +339,112 @@ public class Namespace implements SocketIONamespace {
                 clients = oldClients;
             }
         }
-        clients.add(value);
+        boolean added = clients.add(value);
         // object may be changed due to other concurrent call
         if (clients != map.get(key)) {
             // re-join if queue has been replaced
-            join(map, key, value);
+            return join(map, key, value);
         }
+        return added;
     }
 
-    public void join(String room, UUID sessionId) {
-        join(roomClients, room, sessionId);
+    /**
+     * Adds local client to room
+     *
+     * @return <code>true</code> if client wasn't a member of room
+     */
+    public boolean join(String room, UUID sessionId) {
         join(clientRooms, sessionId, room);
+        return join(roomClients, room, sessionId);
     }
 
     public void leaveRoom(String room, UUID sessionId) {
-        leave(room, sessionId);
-        storeFactory.pubSubStore().publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, room, getName()));
+        if (leave(room, sessionId)) {
+            storeFactory.pubSubStore().publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, room, getName()));
+        }
     }
 
-    private <K, V> void leave(ConcurrentMap<K, Set<V>> map, K room, V sessionId) {
+    private <K, V> boolean leave(ConcurrentMap<K, Set<V>> map, K room, V sessionId) {
         Set<V> clients = map.get(room);
         if (clients == null) {
-            return;
+            return false;
         }
-        clients.remove(sessionId);
+        boolean removed = clients.remove(sessionId);
 
         if (clients.isEmpty()) {
             map.remove(room, Collections.emptySet());
         }
+        return removed;
     }
 
-    public void leave(String room, UUID sessionId) {
-        leave(roomClients, room, sessionId);
+    /**
+     * Removes local client from room
+     *
+     * @return <code>true</code> if client was a member of room
+     */
+    public boolean leave(String room, UUID sessionId) {
         leave(clientRooms, sessionId, room);
+        return leave(roomClients, room, sessionId);
+    }
+
+    /**
+     * Invoked on {@link PubSubType#JOIN} message of other node.
+     * Only amount of node members is tracked, remote session ids are not stored.
+     */
+    public void onRemoteJoin(String room, Long nodeId) {
+        clusterRooms.join(room, nodeId);
+    }
+
+    /**
+     * Invoked on {@link PubSubType#LEAVE} message of other node.
+     */
+    public void onRemoteLeave(String room, Long nodeId) {
+        clusterRooms.leave(room, nodeId);
+    }
+
+    /**
+     * Forgets room membership of node which has left cluster.
+     * Invoked by store factory once node is considered failed.
+     */
+    public void onRemoteNodeRemoved(Long nodeId) {
+        clusterRooms.removeNode(nodeId);
+    }
+
+    /**
+     * Replaces room membership of other node by its published state.
+     *
+     * @param nodeId - node id
+     * @param rooms - amount of members of rooms on node
+     */
+    public void onRemoteNodeState(Long nodeId, Map<String, Integer> rooms) {
+        clusterRooms.setNode(nodeId, rooms);
+    }
+
+    /**
+     * @return digest of room membership of other node tracked by this node,
+     *          see {@link ClusterRooms#digest(Map)}
+     */
+    public long getRemoteRoomsDigest(Long nodeId) {
+        return clusterRooms.getDigest(nodeId);
     }
 
+    /**
+     * @return amount of local members of rooms
+     */
+    public Map<String, Integer> getLocalRoomSizes() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Entry<String, Set<UUID>> entry : roomClients.entrySet()) {
+            int size = entry.getValue().size();
+            if (size > 0) {
+                result.put(entry.getKey(), size);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rooms of local client
+     */
     public Set<String> getRooms(SocketIOClient client) {
         Set<String> res = clientRooms.get(client.getSessionId());
         if (res == null) {
@@ -256,10 +453,40 @@ public class Namespace implements SocketIONamespace {
         return Collections.unmodifiableSet(res);
     }
 
+    /**
+     * Rooms with members connected to this node only,
+     * see {@link #getClusterRooms()} for rooms of whole cluster.
+     */
     public Set<String> getRooms() {
         return roomClients.keySet();
     }
 
+    @Override
+    public Set<String> getClusterRooms() {
+        Set<String> result = clusterRooms.getRooms();
+        result.addAll(roomClients.keySet());
+        return result;
+    }
+
+    @Override
+    public int getClusterRoomSize(String room) {
+        int result = clusterRooms.getClientsCount(room);
+        Set<UUID> sessionIds = roomClients.get(room);
+        if (sessionIds != null) {
+            result += sessionIds.size();
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Long> getRoomNodes(String room) {
+        return clusterRooms.getNodes(room);
+    }
+
+    /**
+     * Members of room connected to this node only,
+     * see {@link #getClusterRoomSize(String)} for size of room in whole cluster.
+     */
     public Iterable<SocketIOClient> getRoomClients(String room) {
         Set<UUID> sessionIds = roomClients.get(room);
 
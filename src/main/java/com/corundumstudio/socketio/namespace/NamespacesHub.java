@@ -40,6 +40,7 @@ public class NamespacesHub {
         Namespace namespace = (Namespace) namespaces.get(name);
         if (namespace == null) {
             namespace = new Namespace(name, configuration);
+            namespace.setNamespacesHub(this);
             Namespace oldNamespace = (Namespace) namespaces.putIfAbsent(name, namespace);
             if (oldNamespace != null) {
                 namespace = oldNamespace;
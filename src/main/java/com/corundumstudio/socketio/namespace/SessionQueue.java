@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.corundumstudio.socketio.handler.ClientHead;
+
+/**
+ * Serial queue of listener invocations for single session in namespace.
+ * Tasks are executed one by one in submission order on dispatch executor.
+ * Channel reads of session are paused while queue size exceeds threshold.
+ */
+class SessionQueue implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionQueue.class);
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean readsPaused = new AtomicBoolean();
+
+    private final Executor executor;
+    private final ClientHead client;
+    private final int threshold;
+
+    SessionQueue(Executor executor, ClientHead client, int threshold) {
+        this.executor = executor;
+        this.client = client;
+        this.threshold = threshold;
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        int queueSize = size.incrementAndGet();
+        if (threshold > 0 && queueSize > threshold
+                && readsPaused.compareAndSet(false, true)) {
+            client.pauseReads();
+        }
+        if (queueSize == 1) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                log.error("Dispatch executor rejected task, sessionId: " + client.getSessionId(), e);
+                run();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            Runnable task = tasks.poll();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Listener invocation error, sessionId: " + client.getSessionId(), e);
+            }
+
+            int queueSize = size.decrementAndGet();
+            if (queueSize <= threshold / 2
+                    && readsPaused.compareAndSet(true, false)) {
+                client.resumeReads();
+            }
+            if (queueSize == 0) {
+                return;
+            }
+        }
+    }
+
+}
@@ -20,12 +20,17 @@ import java.util.UUID;
 
 public class AuthPacket {
 
-    private final UUID sid;
+    private final String sid;
     private final String[] upgrades;
     private final int pingInterval;
     private final int pingTimeout;
+    private String pid;
 
     public AuthPacket(UUID sid, String[] upgrades, int pingInterval, int pingTimeout) {
+        this(sid.toString(), upgrades, pingInterval, pingTimeout);
+    }
+
+    public AuthPacket(String sid, String[] upgrades, int pingInterval, int pingTimeout) {
         super();
         this.sid = sid;
         this.upgrades = upgrades;
@@ -41,7 +46,7 @@ public class AuthPacket {
         return pingTimeout;
     }
 
-    public UUID getSid() {
+    public String getSid() {
         return sid;
     }
 
@@ -49,4 +54,18 @@ public class AuthPacket {
         return upgrades;
     }
 
+    /**
+     * Private session id used by client to recover session
+     * on reconnect, <code>null</code> if recovery is disabled
+     *
+     * @return private session id
+     */
+    public String getPid() {
+        return pid;
+    }
+
+    public void setPid(String pid) {
+        this.pid = pid;
+    }
+
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+/**
+ * Engine.IO protocol revision negotiated per connection
+ * through the <b>EIO</b> query parameter of the handshake request.
+ *
+ * <ul>
+ * <li>{@link #V3} - length-prefixed polling payloads, client-initiated pings (socket.io-client 1.x, 2.x)</li>
+ * <li>{@link #V4} - record separated polling payloads, raw binary websocket frames,
+ * server-initiated pings (socket.io-client 3.x, 4.x)</li>
+ * </ul>
+ *
+ */
+public enum EngineIOVersion {
+
+    V3("3"), V4("4");
+
+    public static final String EIO = "EIO";
+
+    private final String value;
+
+    EngineIOVersion(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Resolves protocol version by <b>EIO</b> query parameter value.
+     * Clients which don't send the parameter are treated as {@link #V3}.
+     *
+     * @param value - EIO parameter value, may be <code>null</code>
+     * @return version or <code>null</code> if version is not supported
+     */
+    public static EngineIOVersion fromValue(String value) {
+        if (value == null) {
+            return V3;
+        }
+        for (EngineIOVersion version : values()) {
+            if (version.getValue().equals(value)) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+}
@@ -184,25 +184,9 @@ public class JacksonJsonSupport implements JsonSupport {
                 }
             }
 
-            List<Object> eventArgs = new ArrayList<Object>();
-            Event event = new Event(eventName, eventArgs);
             List<Class<?>> eventClasses = eventMapping.get(ek);
-            int i = 0;
-            while (true) {
-                JsonToken token = jp.nextToken();
-                if (token == JsonToken.END_ARRAY) {
-                    break;
-                }
-                if (i > eventClasses.size() - 1) {
-                    log.debug("Event {} has more args than declared in handler: {}", eventName, null);
-                    break;
-                }
-                Class<?> eventClass = eventClasses.get(i);
-                Object arg = mapper.readValue(jp, eventClass);
-                eventArgs.add(arg);
-                i++;
-            }
-            return event;
+            List<Object> eventArgs = readArgs(jp, mapper, eventName, eventClasses);
+            return new Event(eventName, eventArgs);
         }
 
     }
@@ -353,6 +337,26 @@ public class JacksonJsonSupport implements JsonSupport {
         return objectMapper.readValue((InputStream)src, valueType);
     }
 
+    private List<Object> readArgs(JsonParser jp, ObjectMapper mapper, String eventName, List<Class<?>> eventClasses) throws IOException {
+        List<Object> eventArgs = new ArrayList<Object>(eventClasses.size());
+        int i = 0;
+        while (true) {
+            JsonToken token = jp.nextToken();
+            if (token == JsonToken.END_ARRAY || token == null) {
+                break;
+            }
+            if (i > eventClasses.size() - 1) {
+                log.debug("Event {} has more args than declared in handler: {}", eventName, eventClasses);
+                break;
+            }
+            Class<?> eventClass = eventClasses.get(i);
+            Object arg = mapper.readValue(jp, eventClass);
+            eventArgs.add(arg);
+            i++;
+        }
+        return eventArgs;
+    }
+
     @Override
     public AckArgs readAckArgs(ByteBufInputStream src, AckCallback<?> callback) throws IOException {
         currentAckClass.set(callback);
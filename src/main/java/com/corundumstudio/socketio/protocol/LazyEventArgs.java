@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Event arguments bound to declared classes on first access.
+ * Keeps encoded arguments and offsets of each of them,
+ * so listeners and interceptors which don't read all arguments
+ * don't pay for their deserialization.
+ *
+ * Binding errors are thrown from {@link #get(int)} as {@link IllegalArgumentException}.
+ *
+ */
+public final class LazyEventArgs extends AbstractList<Object> {
+
+    private static final Object UNBOUND = new Object();
+
+    private final JsonSupport jsonSupport;
+    private final String namespaceName;
+    private final List<Class<?>> argTypes;
+    private final byte[] source;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int size;
+    private final Object[] values;
+
+    /**
+     * @param jsonSupport - binds arguments
+     * @param namespaceName - event namespace
+     * @param argTypes - declared argument classes, arguments beyond them are ignored
+     * @param source - comma separated JSON arguments, like <code>{"a":1},"b"</code>
+     */
+    public LazyEventArgs(JsonSupport jsonSupport, String namespaceName, List<Class<?>> argTypes, byte[] source) {
+        this.jsonSupport = jsonSupport;
+        this.namespaceName = namespaceName;
+        this.argTypes = argTypes;
+        this.source = source;
+
+        int capacity = argTypes.size();
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.size = scan(capacity);
+        this.values = new Object[size];
+        Arrays.fill(values, UNBOUND);
+    }
+
+    /**
+     * Finds top-level argument boundaries without tokenizing them
+     *
+     * @return arguments amount
+     */
+    private int scan(int capacity) {
+        int count = 0;
+        int depth = 0;
+        boolean inString = false;
+        int start = 0;
+        for (int i = 0; i <= source.length && count < capacity; i++) {
+            if (i == source.length) {
+                count = addArg(count, start, i);
+                break;
+            }
+            byte b = source[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            } else if (b == ',' && depth == 0) {
+                count = addArg(count, start, i);
+                start = i + 1;
+            }
+        }
+        return count;
+    }
+
+    private int addArg(int count, int start, int end) {
+        while (start < end && isWhitespace(source[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(source[end - 1])) {
+            end--;
+        }
+        if (start == end) {
+            return count;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        return count + 1;
+    }
+
+    private boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        Object value = values[index];
+        if (value == UNBOUND) {
+            value = bind(index);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private Object bind(int index) {
+        ByteBufInputStream in = new ByteBufInputStream(
+                Unpooled.wrappedBuffer(source, starts[index], ends[index] - starts[index]));
+        try {
+            return jsonSupport.readValue(namespaceName, in, argTypes.get(index));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read event argument: " + index
+                                                + " for type: " + argTypes.get(index), e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.corundumstudio.socketio.namespace.EventEntry;
 import com.corundumstudio.socketio.namespace.Namespace;
 
 public class Packet implements Serializable {
@@ -34,6 +35,11 @@ public class Packet implements Serializable {
     private String name;
     private String nsp = Namespace.DEFAULT_NAME;
     private Object data;
+    private long offset;
+    private transient EventEntry<?> eventEntry;
+    private transient boolean dropped;
+    private transient ByteBuf rawArgs;
+    private byte[] encodedArgs;
 
     private ByteBuf dataSource;
     private int attachmentsCount;
@@ -93,6 +99,8 @@ public class Packet implements Serializable {
             newPacket.setName(this.name);
             newPacket.setSubType(this.subType);
             newPacket.setNsp(namespace);
+            newPacket.setOffset(this.offset);
+            newPacket.setEncodedArgs(this.encodedArgs);
             newPacket.attachments = this.attachments;
             newPacket.attachmentsCount = this.attachmentsCount;
             return newPacket;
@@ -115,6 +123,54 @@ public class Packet implements Serializable {
         this.name = name;
     }
 
+    /**
+     * @return listeners entry of inbound event resolved during decoding
+     * or <code>null</code> if event was resolved by name
+     */
+    public EventEntry<?> getEventEntry() {
+        return eventEntry;
+    }
+
+    public void setEventEntry(EventEntry<?> eventEntry) {
+        this.eventEntry = eventEntry;
+    }
+
+    /**
+     * @return retained slice of inbound event arguments for raw listeners
+     * or <code>null</code> if event has no raw listeners
+     */
+    public ByteBuf getRawArgs() {
+        return rawArgs;
+    }
+
+    public void setRawArgs(ByteBuf rawArgs) {
+        this.rawArgs = rawArgs;
+    }
+
+    /**
+     * @return comma separated JSON arguments of outbound event
+     * written as is instead of encoding packet data
+     */
+    public byte[] getEncodedArgs() {
+        return encodedArgs;
+    }
+
+    public void setEncodedArgs(byte[] encodedArgs) {
+        this.encodedArgs = encodedArgs;
+    }
+
+    /**
+     * @return <code>true</code> if inbound event has no listeners
+     * and was skipped during decoding
+     */
+    public boolean isDropped() {
+        return dropped;
+    }
+
+    public void setDropped(boolean dropped) {
+        this.dropped = dropped;
+    }
+
     public Long getAckId() {
         return ackId;
     }
@@ -123,6 +179,20 @@ public class Packet implements Serializable {
         this.ackId = ackId;
     }
 
+    /**
+     * Offset of event in session replay buffer,
+     * <code>0</code> if packet is not recoverable
+     *
+     * @return offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
     public boolean isAckRequested() {
         return getAckId() != null;
     }
@@ -18,14 +18,20 @@ package com.corundumstudio.socketio.protocol;
 import com.corundumstudio.socketio.AckCallback;
 import com.corundumstudio.socketio.ack.AckManager;
 import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.namespace.EventDispatchTable;
+import com.corundumstudio.socketio.namespace.EventEntry;
+import com.corundumstudio.socketio.namespace.Namespace;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.base64.Base64;
 import io.netty.util.CharsetUtil;
 
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.UUID;
 
@@ -33,17 +39,31 @@ public class PacketDecoder {
 	
 	
 
+    private static final byte RECORD_SEPARATOR = 0x1e;
+
     private final UTF8CharsScanner utf8scanner = new UTF8CharsScanner();
 
     private final ByteBuf QUOTES = Unpooled.copiedBuffer("\"", CharsetUtil.UTF_8);
 
     private final JsonSupport jsonSupport;
     private final AckManager ackManager;
+    private final NamespacesHub namespacesHub;
     
 
     public PacketDecoder(JsonSupport jsonSupport, AckManager ackManager) {
+        this(jsonSupport, ackManager, null);
+    }
+
+    /**
+     * @param jsonSupport - json support
+     * @param ackManager - ack manager
+     * @param namespacesHub - namespaces which dispatch tables are used
+     *          to resolve inbound events from frame bytes, may be <code>null</code>
+     */
+    public PacketDecoder(JsonSupport jsonSupport, AckManager ackManager, NamespacesHub namespacesHub) {
         this.jsonSupport = jsonSupport;
         this.ackManager = ackManager;
+        this.namespacesHub = namespacesHub;
     }
 
     
@@ -120,6 +140,23 @@ public class PacketDecoder {
     
 
     public Packet decodePackets(ByteBuf buffer, ClientHead client) throws IOException {
+        return decodePackets(buffer, client, false);
+    }
+
+    /**
+     * Decodes next packet from buffer
+     *
+     * @param buffer - received content
+     * @param client - sender
+     * @param binaryFrame - <code>true</code> if content received through binary websocket frame
+     * @return packet
+     * @throws IOException
+     */
+    public Packet decodePackets(ByteBuf buffer, ClientHead client, boolean binaryFrame) throws IOException {
+        if (client != null && client.getEngineIOVersion() == EngineIOVersion.V4) {
+            return decodeV4Packets(buffer, client, binaryFrame);
+        }
+
         if (isStringPacket(buffer)) {
             // TODO refactor
         	Packets isStringPacket = new isStringPacket();
@@ -133,6 +170,35 @@ public class PacketDecoder {
         return decode(client, buffer);
     }
 
+    /**
+     * EIO4 framing: websocket frame holds single packet or raw binary attachment,
+     * polling payload holds packets separated by <code>\x1e</code>
+     * and base64 encoded attachments prefixed with <code>b</code>
+     */
+    private Packet decodeV4Packets(ByteBuf buffer, ClientHead client, boolean binaryFrame) throws IOException {
+        if (binaryFrame) {
+            ByteBuf attachment = Base64.encode(buffer, false);
+            buffer.readerIndex(buffer.writerIndex());
+            return addAttachment(client, attachment);
+        }
+
+        ByteBuf frame;
+        int length = buffer.bytesBefore(RECORD_SEPARATOR);
+        if (length == -1) {
+            frame = buffer.slice();
+            buffer.readerIndex(buffer.writerIndex());
+        } else {
+            frame = buffer.slice(buffer.readerIndex(), length);
+            buffer.readerIndex(buffer.readerIndex() + length + 1);
+        }
+
+        if (frame.isReadable() && frame.getByte(0) == 'b') {
+            frame.readByte();
+            return addAttachment(client, Unpooled.copiedBuffer(frame));
+        }
+        return decode(client, frame);
+    }
+
     private String readString(ByteBuf frame) {
         return readString(frame, frame.readableBytes());
     }
@@ -225,46 +291,63 @@ public class PacketDecoder {
         }
 
         Packet binaryPacket = head.getLastBinaryPacket();
-        if (binaryPacket != null) {
-            if (frame.getByte(0) == 'b' && frame.getByte(1) == '4') {
-                binaryPacket.addAttachment(Unpooled.copiedBuffer(frame));
-            } else {
-                ByteBuf attachBuf = Base64.encode(frame);
-                binaryPacket.addAttachment(Unpooled.copiedBuffer(attachBuf));
-                attachBuf.release();
-            }
-            frame.readerIndex(frame.readerIndex() + frame.readableBytes());
-
-            if (binaryPacket.isAttachmentsLoaded()) {
-                LinkedList<ByteBuf> slices = new LinkedList<ByteBuf>();
-                ByteBuf source = binaryPacket.getDataSource();
-                for (int i = 0; i < binaryPacket.getAttachments().size(); i++) {
-                    ByteBuf attachment = binaryPacket.getAttachments().get(i);
-                    ByteBuf scanValue = Unpooled.copiedBuffer("{\"_placeholder\":true,\"num\":" + i + "}", CharsetUtil.UTF_8);
-                    int pos = PacketEncoder.find(source, scanValue);
-                    if (pos == -1) {
-                        scanValue = Unpooled.copiedBuffer("{\"num\":" + i + ",\"_placeholder\":true}", CharsetUtil.UTF_8);
-                        pos = PacketEncoder.find(source, scanValue);
-                        if (pos == -1) {
-                            throw new IllegalStateException("Can't find attachment by index: " + i + " in packet source");
-                        }
-                    }
+        if (binaryPacket == null) {
+            return new Packet(PacketType.MESSAGE);
+        }
 
-                    ByteBuf prefixBuf = source.slice(source.readerIndex(), pos - source.readerIndex());
-                    slices.add(prefixBuf);
-                    slices.add(QUOTES);
-                    slices.add(attachment);
-                    slices.add(QUOTES);
+        ByteBuf attachment;
+        if (frame.getByte(0) == 'b' && frame.getByte(1) == '4') {
+            attachment = Unpooled.copiedBuffer(frame);
+        } else {
+            ByteBuf attachBuf = Base64.encode(frame);
+            attachment = Unpooled.copiedBuffer(attachBuf);
+            attachBuf.release();
+        }
+        frame.readerIndex(frame.readerIndex() + frame.readableBytes());
+        return addAttachment(head, attachment);
+    }
+
+    /**
+     * Adds base64 encoded attachment to the pending binary packet
+     * and parses packet body once all attachments are received
+     */
+    private Packet addAttachment(ClientHead head, ByteBuf attachment) throws IOException {
+        Packet binaryPacket = head.getLastBinaryPacket();
+        if (binaryPacket == null) {
+            attachment.release();
+            return new Packet(PacketType.MESSAGE);
+        }
 
-                    source.readerIndex(pos + scanValue.readableBytes());
+        binaryPacket.addAttachment(attachment);
+        if (binaryPacket.isAttachmentsLoaded()) {
+            LinkedList<ByteBuf> slices = new LinkedList<ByteBuf>();
+            ByteBuf source = binaryPacket.getDataSource();
+            for (int i = 0; i < binaryPacket.getAttachments().size(); i++) {
+                ByteBuf attachmentBuf = binaryPacket.getAttachments().get(i);
+                ByteBuf scanValue = Unpooled.copiedBuffer("{\"_placeholder\":true,\"num\":" + i + "}", CharsetUtil.UTF_8);
+                int pos = PacketEncoder.find(source, scanValue);
+                if (pos == -1) {
+                    scanValue = Unpooled.copiedBuffer("{\"num\":" + i + ",\"_placeholder\":true}", CharsetUtil.UTF_8);
+                    pos = PacketEncoder.find(source, scanValue);
+                    if (pos == -1) {
+                        throw new IllegalStateException("Can't find attachment by index: " + i + " in packet source");
+                    }
                 }
-                slices.add(source.slice());
 
-                ByteBuf compositeBuf = Unpooled.wrappedBuffer(slices.toArray(new ByteBuf[slices.size()]));
-                parseBody(head, compositeBuf, binaryPacket);
-                head.setLastBinaryPacket(null);
-                return binaryPacket;
+                ByteBuf prefixBuf = source.slice(source.readerIndex(), pos - source.readerIndex());
+                slices.add(prefixBuf);
+                slices.add(QUOTES);
+                slices.add(attachmentBuf);
+                slices.add(QUOTES);
+
+                source.readerIndex(pos + scanValue.readableBytes());
             }
+            slices.add(source.slice());
+
+            ByteBuf compositeBuf = Unpooled.wrappedBuffer(slices.toArray(new ByteBuf[slices.size()]));
+            parseBody(head, compositeBuf, binaryPacket);
+            head.setLastBinaryPacket(null);
+            return binaryPacket;
         }
         return new Packet(PacketType.MESSAGE);
     }
@@ -276,6 +359,15 @@ public class PacketDecoder {
                 packet.setNsp(readNamespace(frame));
             }
 
+            if ((packet.getSubType() == PacketType.EVENT
+                    || packet.getSubType() == PacketType.BINARY_EVENT)
+                        && !resolveEvent(packet, frame)) {
+                // event without listeners, skip the rest of frame unparsed
+                frame.readerIndex(frame.writerIndex());
+                packet.setDropped(true);
+                return;
+            }
+
             if (packet.hasAttachments() && !packet.isAttachmentsLoaded()) {
                 packet.setDataSource(Unpooled.copiedBuffer(frame));
                 frame.readerIndex(frame.readableBytes());
@@ -296,12 +388,140 @@ public class PacketDecoder {
 
             if (packet.getSubType() == PacketType.EVENT
                     || packet.getSubType() == PacketType.BINARY_EVENT) {
+                EventEntry<?> entry = packet.getEventEntry();
+                if (entry != null) {
+                    packet.setName(entry.getName());
+                    ByteBuf args = sliceArgs(frame);
+                    if (entry.getRawListenersSnapshot().length > 0) {
+                        packet.setRawArgs(args.retain());
+                    }
+                    if (entry.getListenersSnapshot().length > 0) {
+                        // arguments are bound on first access
+                        packet.setData(new LazyEventArgs(jsonSupport, packet.getNsp(),
+                                            entry.getArgTypes(), ByteBufUtil.getBytes(args)));
+                    } else if (acceptsAnyEvent(packet)) {
+                        // arguments of raw only event for catch-all listeners
+                        ByteBufInputStream in = new ByteBufInputStream(frame);
+                        Event event = jsonSupport.readValue(packet.getNsp(), in, Event.class);
+                        packet.setData(event.getArgs());
+                    } else {
+                        packet.setData(Collections.emptyList());
+                    }
+                    frame.readerIndex(frame.writerIndex());
+                    return;
+                }
+                // event resolved by name, e.g. escaped event name
+                ByteBuf args = sliceArgs(frame);
                 ByteBufInputStream in = new ByteBufInputStream(frame);
                 Event event = jsonSupport.readValue(packet.getNsp(), in, Event.class);
                 packet.setName(event.getName());
                 packet.setData(event.getArgs());
+                if (hasRawListeners(packet.getNsp(), event.getName())) {
+                    packet.setRawArgs(args.retain());
+                }
+            }
+        }
+    }
+
+    private boolean hasRawListeners(String nsp, String eventName) {
+        if (namespacesHub == null || eventName == null) {
+            return false;
+        }
+        Namespace namespace = namespacesHub.get(nsp);
+        if (namespace == null) {
+            return false;
+        }
+        EventEntry<?> entry = namespace.getListenerManager().getEntry(eventName);
+        return entry != null && entry.getRawListenersSnapshot().length > 0;
+    }
+
+    /**
+     * Resolves event by name bytes of <code>["name",...]</code> frame
+     * through dispatch table of packet namespace.
+     * Events with escaped names are left to be resolved by name.
+     *
+     * @return <code>false</code> if namespace has no listeners for event
+     *          and doesn't accept any event
+     */
+    private boolean resolveEvent(Packet packet, ByteBuf frame) {
+        if (namespacesHub == null || packet.getEventEntry() != null) {
+            return true;
+        }
+        Namespace namespace = namespacesHub.get(packet.getNsp());
+        if (namespace == null) {
+            return true;
+        }
+
+        int index = skipWhitespaces(frame, frame.readerIndex());
+        if (index == -1 || frame.getByte(index) != '[') {
+            return true;
+        }
+        index = skipWhitespaces(frame, index + 1);
+        if (index == -1 || frame.getByte(index) != '"') {
+            return true;
+        }
+        int start = index + 1;
+        int end = frame.indexOf(start, frame.writerIndex(), (byte)'"');
+        if (end == -1 || frame.indexOf(start, end, (byte)'\\') != -1) {
+            return true;
+        }
+
+        EventDispatchTable table = namespace.getListenerManager().getDispatchTable();
+        EventEntry<?> entry = table.lookup(frame, start, end - start);
+        if (entry == null) {
+            if (namespace.getListenerManager().acceptsAnyEvent()) {
+                return true;
             }
+            namespace.onEventDropped();
+            return false;
         }
+        packet.setEventEntry(entry);
+        return true;
+    }
+
+    private boolean acceptsAnyEvent(Packet packet) {
+        if (namespacesHub == null) {
+            return false;
+        }
+        Namespace namespace = namespacesHub.get(packet.getNsp());
+        return namespace != null && namespace.getListenerManager().acceptsAnyEvent();
+    }
+
+    /**
+     * Slices arguments following event name of <code>["name",...]</code> frame
+     */
+    private ByteBuf sliceArgs(ByteBuf frame) {
+        int nameStart = frame.indexOf(frame.readerIndex(), frame.writerIndex(), (byte)'"') + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < frame.writerIndex() && frame.getByte(nameEnd) != '"') {
+            if (frame.getByte(nameEnd) == '\\') {
+                // skip escaped char
+                nameEnd++;
+            }
+            nameEnd++;
+        }
+        if (nameStart == 0 || nameEnd >= frame.writerIndex()) {
+            return Unpooled.EMPTY_BUFFER;
+        }
+        int start = skipWhitespaces(frame, nameEnd + 1);
+        if (start == -1 || frame.getByte(start) != ',') {
+            return Unpooled.EMPTY_BUFFER;
+        }
+        int end = frame.writerIndex() - 1;
+        while (end > start && frame.getByte(end) != ']') {
+            end--;
+        }
+        return frame.slice(start + 1, Math.max(end - start - 1, 0));
+    }
+
+    private int skipWhitespaces(ByteBuf frame, int index) {
+        for (int i = index; i < frame.writerIndex(); i++) {
+            byte b = frame.getByte(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return i;
+            }
+        }
+        return -1;
     }
     
     private String readNamespace(ByteBuf frame){
@@ -310,14 +530,19 @@ public class PacketDecoder {
          *  /message?a=1,
          *  /message,
          */
-        int endIndex = frame.bytesBefore((byte)'?');
-        if(endIndex > 0){
-            return readString(frame,endIndex);
+        if (frame.isReadable() && frame.getByte(frame.readerIndex()) != '/') {
+            // EIO4 connect packet to default namespace may carry auth payload only
+            return Namespace.DEFAULT_NAME;
         }
-        endIndex = frame.bytesBefore((byte)',');
+        int dividerIndex = frame.bytesBefore((byte)',');
+        // EIO4 auth payload follows the divider and may contain '?' as well
+        int endIndex = dividerIndex == -1 ? frame.bytesBefore((byte)'?') : frame.bytesBefore(dividerIndex, (byte)'?');
         if(endIndex > 0){
             return readString(frame,endIndex);
         }
+        if(dividerIndex > 0){
+            return readString(frame,dividerIndex);
+        }
         return readString(frame);
     }
 
@@ -18,6 +18,7 @@ package com.corundumstudio.socketio.protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.base64.Base64;
 import io.netty.handler.codec.base64.Base64Dialect;
@@ -33,6 +34,8 @@ import com.corundumstudio.socketio.Configuration;
 public class PacketEncoder {
 
     private static final byte[] BINARY_HEADER = "b4".getBytes(CharsetUtil.UTF_8);
+    private static final byte V4_BINARY_HEADER = 'b';
+    private static final byte RECORD_SEPARATOR = 0x1e;
     private static final byte[] B64_DELIMITER = new byte[] {':'};
     private static final byte[] JSONP_HEAD = "___eio[".getBytes(CharsetUtil.UTF_8);
     private static final byte[] JSONP_START = "]('".getBytes(CharsetUtil.UTF_8);
@@ -141,6 +144,40 @@ public class PacketEncoder {
         }
     }
 
+    /**
+     * Encodes EIO4 polling payload. Packets are separated by <code>\x1e</code>
+     * and binary attachments are sent as base64 strings prefixed with <code>b</code>
+     *
+     * @param packets - packets queue
+     * @param buffer - output buffer
+     * @param allocator - buffer allocator
+     * @param limit - max packets amount per payload
+     * @throws IOException
+     */
+    public void encodeV4Packets(Queue<Packet> packets, ByteBuf buffer, ByteBufAllocator allocator, int limit) throws IOException {
+        int i = 0;
+        while (true) {
+            Packet packet = packets.poll();
+            if (packet == null || i == limit) {
+                break;
+            }
+            if (i > 0) {
+                buffer.writeByte(RECORD_SEPARATOR);
+            }
+            encodePacket(packet, buffer, allocator, true, EngineIOVersion.V4);
+
+            i++;
+
+            for (ByteBuf attachment : packet.getAttachments()) {
+                ByteBuf encodedBuf = Base64.encode(attachment, false);
+                buffer.writeByte(RECORD_SEPARATOR);
+                buffer.writeByte(V4_BINARY_HEADER);
+                buffer.writeBytes(encodedBuf);
+                encodedBuf.release();
+            }
+        }
+    }
+
     private byte toChar(int number) {
         return (byte) (number ^ 0x30);
     }
@@ -228,6 +265,15 @@ public class PacketEncoder {
     }
 
     public void encodePacket(Packet packet, ByteBuf buffer, ByteBufAllocator allocator, boolean binary) throws IOException {
+        encodePacket(packet, buffer, allocator, binary, EngineIOVersion.V3);
+    }
+
+    /**
+     * Encodes packet for client of given protocol version.
+     * Replay offset of event is sent to EIO4 clients only.
+     */
+    public void encodePacket(Packet packet, ByteBuf buffer, ByteBufAllocator allocator, boolean binary,
+            EngineIOVersion version) throws IOException {
         ByteBuf buf = buffer;
         if (!binary) {
             buf = allocateBuffer(allocator);
@@ -243,6 +289,13 @@ public class PacketEncoder {
                     break;
                 }
 
+                case PING: {
+                    if (packet.getData() != null) {
+                        buf.writeBytes(packet.getData().toString().getBytes(CharsetUtil.UTF_8));
+                    }
+                    break;
+                }
+
                 case OPEN: {
                     ByteBufOutputStream out = new ByteBufOutputStream(buf);
                     jsonSupport.writeValue(out, packet.getData());
@@ -251,7 +304,7 @@ public class PacketEncoder {
 
                 case MESSAGE: {
 
-                    MessageEncode(packet, allocator, buf);
+                    encodeMessage(packet, allocator, buf, version == EngineIOVersion.V4);
 
                     break;
                 }
@@ -271,9 +324,14 @@ public class PacketEncoder {
     }
 
 	public void MessageEncode(Packet packet, ByteBufAllocator allocator, ByteBuf buf) throws IOException {
+		encodeMessage(packet, allocator, buf, false);
+	}
+
+	private void encodeMessage(Packet packet, ByteBufAllocator allocator, ByteBuf buf, boolean withOffset) throws IOException {
 		ByteBuf encBuf = null;
 
-		if (packet.getSubType() == PacketType.ERROR) {
+		if (packet.getSubType() == PacketType.ERROR
+		        || (packet.getSubType() == PacketType.CONNECT && packet.getData() != null)) {
 		    encBuf = allocateBuffer(allocator);
 
 		    ByteBufOutputStream out = new ByteBufOutputStream(encBuf);
@@ -281,6 +339,10 @@ public class PacketEncoder {
 		}
 
 		if (packet.getSubType() == PacketType.EVENT
+		        && packet.getEncodedArgs() != null) {
+		    encBuf = allocateBuffer(allocator);
+		    encodeRawEvent(packet, encBuf, withOffset);
+		} else if (packet.getSubType() == PacketType.EVENT
 		        || packet.getSubType() == PacketType.ACK) {
 
 		    List<Object> values = new ArrayList<Object>();
@@ -292,6 +354,10 @@ public class PacketEncoder {
 
 		    List<Object> args = packet.getData();
 		    values.addAll(args);
+		    if (withOffset && packet.getOffset() != 0) {
+		        // offset is reported back by client on connection state recovery
+		        values.add(String.valueOf(packet.getOffset()));
+		    }
 		    ByteBufOutputStream out = new ByteBufOutputStream(encBuf);
 		    jsonSupport.writeValue(out, values);
 
@@ -317,6 +383,10 @@ public class PacketEncoder {
 		if (packet.getSubType() == PacketType.CONNECT) {
 		    if (!packet.getNsp().isEmpty()) {
 		        buf.writeBytes(packet.getNsp().getBytes(CharsetUtil.UTF_8));
+		        // EIO4 connect packet carries session id payload
+		        if (encBuf != null) {
+		            buf.writeByte(',');
+		        }
 		    }
 		} else {
 		    if (!packet.getNsp().isEmpty()) {
@@ -336,6 +406,55 @@ public class PacketEncoder {
 		}
 	}
 
+    /**
+     * Writes <code>["name",args]</code> event array
+     * using already encoded arguments of packet
+     */
+    private void encodeRawEvent(Packet packet, ByteBuf out, boolean withOffset) {
+        out.writeByte('[');
+        out.writeByte('"');
+        ByteBufUtil.writeUtf8(out, escapeJson(packet.getName()));
+        out.writeByte('"');
+        byte[] args = packet.getEncodedArgs();
+        if (args.length > 0) {
+            out.writeByte(',');
+            out.writeBytes(args);
+        }
+        if (withOffset && packet.getOffset() != 0) {
+            // offset is reported back by client on connection state recovery
+            out.writeByte(',');
+            out.writeByte('"');
+            out.writeBytes(toChars(packet.getOffset()));
+            out.writeByte('"');
+        }
+        out.writeByte(']');
+    }
+
+    private String escapeJson(String value) {
+        StringBuilder result = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                if (result != null) {
+                    result.append(c);
+                }
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append('\\').append(c);
+            }
+        }
+        if (result == null) {
+            return value;
+        }
+        return result.toString();
+    }
+
     public static int find(ByteBuf buffer, ByteBuf searchValue) {
         for (int i = buffer.readerIndex(); i < buffer.readerIndex() + buffer.readableBytes(); i++) {
             if (isValueFound(buffer, i, searchValue)) {
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+import java.util.UUID;
+
+/**
+ * Converts session id to compact 22 chars url-safe base64 form and back.
+ * Decoder accepts both compact and canonical UUID forms and doesn't
+ * create intermediate objects, unlike {@link UUID#fromString(String)}.
+ */
+public final class SessionIdCodec {
+
+    public static final int COMPACT_LENGTH = 22;
+    private static final int CANONICAL_LENGTH = 36;
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private SessionIdCodec() {
+    }
+
+    public static String encode(UUID sessionId) {
+        long msb = sessionId.getMostSignificantBits();
+        long lsb = sessionId.getLeastSignificantBits();
+        char[] chars = new char[COMPACT_LENGTH];
+        for (int i = 0; i < COMPACT_LENGTH; i++) {
+            int value = 0;
+            for (int bit = i * 6; bit < i * 6 + 6; bit++) {
+                value = (value << 1) | bitAt(msb, lsb, bit);
+            }
+            chars[i] = ALPHABET[value];
+        }
+        return new String(chars);
+    }
+
+    private static int bitAt(long msb, long lsb, int bit) {
+        if (bit < 64) {
+            return (int) (msb >>> (63 - bit)) & 1;
+        }
+        if (bit < 128) {
+            return (int) (lsb >>> (127 - bit)) & 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses session id in compact or canonical UUID form
+     *
+     * @param value - session id
+     * @return session id
+     * @throws IllegalArgumentException if value is malformed
+     */
+    public static UUID decode(CharSequence value) {
+        if (value.length() == COMPACT_LENGTH) {
+            return decodeCompact(value);
+        }
+        if (value.length() == CANONICAL_LENGTH) {
+            return decodeCanonical(value);
+        }
+        return UUID.fromString(value.toString());
+    }
+
+    private static UUID decodeCompact(CharSequence value) {
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < COMPACT_LENGTH; i++) {
+            char c = value.charAt(i);
+            int digit = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid session id: " + value);
+            }
+            for (int j = 5; j >= 0; j--) {
+                int bit = i * 6 + 5 - j;
+                long bitValue = (digit >>> j) & 1;
+                if (bit < 64) {
+                    msb |= bitValue << (63 - bit);
+                } else if (bit < 128) {
+                    lsb |= bitValue << (127 - bit);
+                } else if (bitValue != 0) {
+                    throw new IllegalArgumentException("Invalid session id: " + value);
+                }
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    private static UUID decodeCanonical(CharSequence value) {
+        if (value.charAt(8) != '-' || value.charAt(13) != '-'
+                || value.charAt(18) != '-' || value.charAt(23) != '-') {
+            throw new IllegalArgumentException("Invalid session id: " + value);
+        }
+        long msb = parseHex(value, 0, 8);
+        msb = (msb << 16) | parseHex(value, 9, 13);
+        msb = (msb << 16) | parseHex(value, 14, 18);
+        long lsb = parseHex(value, 19, 23);
+        lsb = (lsb << 48) | parseHex(value, 24, 36);
+        return new UUID(msb, lsb);
+    }
+
+    private static long parseHex(CharSequence value, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid session id: " + value);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+}
@@ -18,7 +18,7 @@ package com.corundumstudio.socketio.scheduler;
 
 public class SchedulerKey {
 
-    public enum Type {PING_TIMEOUT, ACK_TIMEOUT, UPGRADE_TIMEOUT};
+    public enum Type {PING, PING_TIMEOUT, ACK_TIMEOUT, UPGRADE_TIMEOUT, RECOVERY_TIMEOUT};
 
     private final Type type;
     private final Object sessionId;
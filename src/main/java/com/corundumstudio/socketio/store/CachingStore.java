@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.corundumstudio.socketio.store.pubsub.InvalidateMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Session store with near-cache of values read from <code>delegate</code>
+ * and coalesced write-behind of changed values, see {@link CachingStoreFactory}.
+ *
+ */
+public class CachingStore implements Store {
+
+    private static final Object ABSENT = new Absent();
+    private static final Object DELETED = new Object();
+
+    private final UUID sessionId;
+    private final Store delegate;
+    private final CachingStoreFactory factory;
+
+    private final ConcurrentMap<String, Object> cache = PlatformDependent.newConcurrentHashMap();
+    private final ConcurrentMap<String, Object> pending = PlatformDependent.newConcurrentHashMap();
+    // incremented before invalidated keys are dropped
+    private final AtomicLong invalidations = new AtomicLong();
+    // set once session is disconnected, written under lock of this
+    private volatile boolean discarded;
+
+    public CachingStore(UUID sessionId, Store delegate, CachingStoreFactory factory) {
+        this.sessionId = sessionId;
+        this.delegate = delegate;
+        this.factory = factory;
+    }
+
+    @Override
+    public void set(String key, Object val) {
+        cache.put(key, val);
+        write(key, val);
+    }
+
+    @Override
+    public <T> T get(String key) {
+        Object value = cache.get(key);
+        if (value == null) {
+            long version = invalidations.get();
+            value = delegate.get(key);
+            if (value == null) {
+                // own instance, so only this fill could be dropped below
+                value = new Absent();
+            }
+            // value may be changed meanwhile
+            Object oldValue = cache.putIfAbsent(key, value);
+            if (oldValue != null) {
+                value = oldValue;
+            } else if (invalidations.get() != version) {
+                // value read from delegate may be older than invalidation
+                cache.remove(key, value);
+            }
+        }
+        if (value instanceof Absent) {
+            return null;
+        }
+        return (T) value;
+    }
+
+    @Override
+    public boolean has(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public void del(String key) {
+        cache.put(key, ABSENT);
+        write(key, DELETED);
+    }
+
+    private void write(String key, Object value) {
+        if (factory.getFlushInterval() == 0) {
+            synchronized (this) {
+                if (discarded) {
+                    return;
+                }
+                try {
+                    apply(key, value);
+                } finally {
+                    factory.pubSubStore().publish(PubSubType.INVALIDATE, new InvalidateMessage(sessionId, Collections.singletonList(key)));
+                }
+            }
+            return;
+        }
+        if (discarded) {
+            return;
+        }
+        pending.put(key, value);
+        factory.scheduleFlush(this);
+    }
+
+    private void apply(String key, Object value) {
+        if (value == DELETED) {
+            delegate.del(key);
+        } else {
+            delegate.set(key, value);
+        }
+    }
+
+    /**
+     * Writes pending changes to <code>delegate</code>
+     * and invalidates changed keys on other nodes.
+     * Keys written before a failure are invalidated as well,
+     * the failed key is invalidated since it may be partially written.
+     */
+    public synchronized void flush() {
+        if (discarded || pending.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<String>(pending.size());
+        try {
+            for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                keys.add(entry.getKey());
+                apply(entry.getKey(), entry.getValue());
+                // newer value stays for next flush
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            if (!keys.isEmpty()) {
+                factory.pubSubStore().publish(PubSubType.INVALIDATE, new InvalidateMessage(sessionId, keys));
+            }
+        }
+    }
+
+    /**
+     * Drops pending changes and stops writes to <code>delegate</code>,
+     * waits for flush in progress, so session store can be released after it.
+     */
+    public synchronized void discard() {
+        discarded = true;
+        pending.clear();
+    }
+
+    /**
+     * Drops values changed by other node, unless they have pending local changes.
+     */
+    public void invalidate(List<String> keys) {
+        invalidations.incrementAndGet();
+        for (String key : keys) {
+            if (!pending.containsKey(key)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Cached absence of value
+     */
+    private static final class Absent {
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.corundumstudio.socketio.AckCallback;
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.JsonSupport;
+import com.corundumstudio.socketio.store.pubsub.InvalidateMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Wraps client stores of any factory into {@link CachingStore}.
+ * <p>
+ * Values read from session store are cached locally until the session disconnects
+ * or other node changes them, changes are announced with {@link PubSubType#INVALIDATE} message.
+ * Changes are written to session store by a background thread every <code>flushInterval</code>,
+ * only the last change of each key is written.
+ * Changes are written synchronously if <code>flushInterval</code> is <code>0</code>,
+ * pending changes of disconnected session are discarded.
+ *
+ */
+public class CachingStoreFactory implements StoreFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingStoreFactory.class);
+
+    private final StoreFactory delegate;
+    private final long flushInterval;
+
+    private final ConcurrentMap<UUID, CachingStore> stores = PlatformDependent.newConcurrentHashMap();
+    private final Set<CachingStore> dirtyStores = Collections.newSetFromMap(PlatformDependent.<CachingStore, Boolean>newConcurrentHashMap());
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param delegate - factory of session stores
+     * @param flushInterval - interval of writes in milliseconds
+     */
+    public CachingStoreFactory(StoreFactory delegate, long flushInterval) {
+        this.delegate = delegate;
+        this.flushInterval = flushInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("socketio-store-flush", true));
+        if (flushInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    void scheduleFlush(CachingStore store) {
+        dirtyStores.add(store);
+    }
+
+    private void flush() {
+        for (Iterator<CachingStore> iterator = dirtyStores.iterator(); iterator.hasNext();) {
+            CachingStore store = iterator.next();
+            iterator.remove();
+            flush(store);
+        }
+    }
+
+    private void flush(CachingStore store) {
+        try {
+            store.flush();
+        } catch (Exception e) {
+            log.error("Can't write store of session " + store.getSessionId() + ", retrying", e);
+            dirtyStores.add(store);
+        }
+    }
+
+    @Override
+    public PubSubStore pubSubStore() {
+        return delegate.pubSubStore();
+    }
+
+    @Override
+    public <K, V> Map<K, V> createMap(String name) {
+        return delegate.createMap(name);
+    }
+
+    @Override
+    public Store createStore(UUID sessionId) {
+        CachingStore store = new CachingStore(sessionId, delegate.createStore(sessionId), this);
+        stores.put(sessionId, store);
+        return store;
+    }
+
+    @Override
+    public void init(NamespacesHub namespacesHub, AuthorizeHandler authorizeHandler, JsonSupport jsonSupport) {
+        delegate.init(namespacesHub, authorizeHandler, jsonSupport);
+
+        pubSubStore().subscribe(PubSubType.INVALIDATE, new PubSubListener<InvalidateMessage>() {
+            @Override
+            public void onMessage(InvalidateMessage msg) {
+                CachingStore store = stores.get(msg.getSessionId());
+                if (store != null) {
+                    store.invalidate(msg.getKeys());
+                }
+            }
+        }, InvalidateMessage.class);
+    }
+
+    @Override
+    public Long getSessionNode(UUID sessionId) {
+        return delegate.getSessionNode(sessionId);
+    }
+
+    @Override
+    public boolean sendToSession(String namespace, UUID sessionId, String name, AckCallback<?> ackCallback, Object... data) {
+        return delegate.sendToSession(namespace, sessionId, name, ackCallback, data);
+    }
+
+    @Override
+    public void onDisconnect(ClientHead client) {
+        // session store is released, pending changes are useless
+        CachingStore store = stores.remove(client.getSessionId());
+        if (store != null) {
+            dirtyStores.remove(store);
+            // flush in progress shouldn't write after release
+            store.discard();
+        }
+        delegate.onDisconnect(client);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(flushInterval + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " (near-cache of " + delegate + ")";
+    }
+
+}
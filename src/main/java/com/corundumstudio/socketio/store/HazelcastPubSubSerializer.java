@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.io.IOException;
+
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.serialization.ByteArraySerializer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Hazelcast serializer of {@link PubSubMessage}s backed by {@link PubSubMessageCodec}.
+ * Should be registered in configuration of hazelcast instance
+ * passed to {@link HazelcastStoreFactory} with the same codec:
+ * <pre>
+ * PubSubMessageCodec codec = new PubSubMessageCodec();
+ * HazelcastPubSubSerializer.register(clientConfig.getSerializationConfig(), codec);
+ * HazelcastStoreFactory factory = new HazelcastStoreFactory(HazelcastClient.newHazelcastClient(clientConfig), codec);
+ * </pre>
+ *
+ */
+public class HazelcastPubSubSerializer implements ByteArraySerializer<PubSubMessage> {
+
+    public static final int TYPE_ID = 0x534F4331;
+
+    private final PubSubMessageCodec codec;
+
+    public HazelcastPubSubSerializer() {
+        this(new PubSubMessageCodec());
+    }
+
+    /**
+     * @param codec - codec of {@link HazelcastStoreFactory}
+     */
+    public HazelcastPubSubSerializer(PubSubMessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Registers serializer with its own codec, its settings
+     * like {@link PubSubMessageCodec#setAllowedClasses(java.util.List)} can't be changed.
+     *
+     * @param config - serialization config of hazelcast instance
+     */
+    public static void register(SerializationConfig config) {
+        register(config, new PubSubMessageCodec());
+    }
+
+    /**
+     * @param config - serialization config of hazelcast instance
+     * @param codec - codec passed to {@link HazelcastStoreFactory}
+     */
+    public static void register(SerializationConfig config, PubSubMessageCodec codec) {
+        config.addSerializerConfig(new SerializerConfig()
+                                        .setImplementation(new HazelcastPubSubSerializer(codec))
+                                        .setTypeClass(PubSubMessage.class));
+    }
+
+    @Override
+    public int getTypeId() {
+        return TYPE_ID;
+    }
+
+    @Override
+    public byte[] write(PubSubMessage object) throws IOException {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            codec.encode(object, out);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public PubSubMessage read(byte[] buffer) throws IOException {
+        return codec.decode(Unpooled.wrappedBuffer(buffer));
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+}
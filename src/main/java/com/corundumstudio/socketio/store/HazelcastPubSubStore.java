@@ -23,6 +23,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import com.corundumstudio.socketio.store.pubsub.PubSubListener;
 import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
 import com.corundumstudio.socketio.store.pubsub.PubSubStore;
 import com.corundumstudio.socketio.store.pubsub.PubSubType;
 import com.hazelcast.core.HazelcastInstance;
@@ -36,24 +37,50 @@ public class HazelcastPubSubStore implements PubSubStore {
     private final HazelcastInstance hazelcastPub;
     private final HazelcastInstance hazelcastSub;
     private final Long nodeId;
+    private final PubSubMessageCodec codec;
 
     private final ConcurrentMap<String, Queue<String>> map = PlatformDependent.newConcurrentHashMap();
 
     public HazelcastPubSubStore(HazelcastInstance hazelcastPub, HazelcastInstance hazelcastSub, Long nodeId) {
+        this(hazelcastPub, hazelcastSub, nodeId, new PubSubMessageCodec());
+    }
+
+    /**
+     * @param codec - prepares dispatched packets for {@link HazelcastPubSubSerializer}
+     */
+    public HazelcastPubSubStore(HazelcastInstance hazelcastPub, HazelcastInstance hazelcastSub, Long nodeId, PubSubMessageCodec codec) {
         this.hazelcastPub = hazelcastPub;
         this.hazelcastSub = hazelcastSub;
         this.nodeId = nodeId;
+        this.codec = codec;
     }
 
     @Override
     public void publish(PubSubType type, PubSubMessage msg) {
+        publish(type.toString(), msg);
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        publish(type + ":" + channel, msg);
+    }
+
+    private void publish(String name, PubSubMessage msg) {
         msg.setNodeId(nodeId);
-        hazelcastPub.getTopic(type.toString()).publish(msg);
+        hazelcastPub.getTopic(name).publish(codec.prepare(msg));
     }
 
     @Override
     public <T extends PubSubMessage> void subscribe(PubSubType type, final PubSubListener<T> listener, Class<T> clazz) {
-        String name = type.toString();
+        subscribe(type.toString(), listener);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type + ":" + channel, listener);
+    }
+
+    private <T extends PubSubMessage> void subscribe(String name, final PubSubListener<T> listener) {
         ITopic<T> topic = hazelcastSub.getTopic(name);
         String regId = topic.addMessageListener(new MessageListener<T>() {
             @Override
@@ -78,8 +105,19 @@ public class HazelcastPubSubStore implements PubSubStore {
 
     @Override
     public void unsubscribe(PubSubType type) {
-        String name = type.toString();
+        unsubscribe(type.toString());
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        unsubscribe(type + ":" + channel);
+    }
+
+    private void unsubscribe(String name) {
         Queue<String> regIds = map.remove(name);
+        if (regIds == null) {
+            return;
+        }
         ITopic<Object> topic = hazelcastSub.getTopic(name);
         for (String id : regIds) {
             topic.removeMessageListener(id);
@@ -15,16 +15,31 @@
  */
 package com.corundumstudio.socketio.store;
 
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.JsonSupport;
 import com.corundumstudio.socketio.store.pubsub.BaseStoreFactory;
+import com.corundumstudio.socketio.store.pubsub.BatchingPubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
 import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.RoomRoutingPubSubStore;
 import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.client.config.XmlClientConfigBuilder;
 import com.hazelcast.core.HazelcastInstance;
 
 /**
  * WARN: It's necessary to add netty-socketio.jar in hazelcast server classpath.
+ * Pub/sub messages are encoded by {@link HazelcastPubSubSerializer}.
+ * It's registered by {@link #HazelcastStoreFactory()} and should be registered
+ * in configuration of hazelcast instances passed to other constructors,
+ * with the codec passed to factory if codec settings are changed.
  *
  */
 public class HazelcastStoreFactory extends BaseStoreFactory {
@@ -33,26 +48,108 @@ public class HazelcastStoreFactory extends BaseStoreFactory {
     private final HazelcastInstance hazelcastPub;
     private final HazelcastInstance hazelcastSub;
 
-    private final PubSubStore pubSubStore;
+    private final PubSubMessageCodec codec;
+    private volatile PubSubStore pubSubStore;
 
+    // pub/sub options applied on init
+    private File sharedMemoryDirectory;
+    private int sharedMemorySegmentSize;
+    private boolean pubSubBatching;
+    private int maxBatchSize;
+    private long lingerMillis;
+    private boolean dispatchRouting;
+    private int routingShards;
+
+    private final StoreCleaner storeCleaner = new StoreCleaner() {
+        @Override
+        protected void delete(List<String> names) {
+            for (String name : names) {
+                hazelcastClient.getMap(name).destroy();
+            }
+        }
+    };
+
+    /**
+     * Creates hazelcast client configured by <code>hazelcast-client.xml</code>
+     * with registered {@link HazelcastPubSubSerializer}
+     */
     public HazelcastStoreFactory() {
-        this(HazelcastClient.newHazelcastClient());
+        this(new PubSubMessageCodec());
+    }
+
+    /**
+     * Creates hazelcast client configured by <code>hazelcast-client.xml</code>
+     * with {@link HazelcastPubSubSerializer} registered with <code>codec</code>
+     *
+     * @param codec - codec of pub/sub messages
+     */
+    public HazelcastStoreFactory(PubSubMessageCodec codec) {
+        this(HazelcastClient.newHazelcastClient(createClientConfig(codec)), codec);
+    }
+
+    private static ClientConfig createClientConfig(PubSubMessageCodec codec) {
+        ClientConfig config = new XmlClientConfigBuilder().build();
+        HazelcastPubSubSerializer.register(config.getSerializationConfig(), codec);
+        return config;
     }
 
+    /**
+     * @param instance - instance with registered {@link HazelcastPubSubSerializer}
+     */
     public HazelcastStoreFactory(HazelcastInstance instance) {
-        this.hazelcastClient = instance;
-        this.hazelcastPub = instance;
-        this.hazelcastSub = instance;
+        this(instance, new PubSubMessageCodec());
+    }
 
-        this.pubSubStore = new HazelcastPubSubStore(hazelcastPub, hazelcastSub, getNodeId());
+    /**
+     * @param instance - instance with {@link HazelcastPubSubSerializer} registered with <code>codec</code>
+     * @param codec - codec of pub/sub messages
+     */
+    public HazelcastStoreFactory(HazelcastInstance instance, PubSubMessageCodec codec) {
+        this(instance, instance, instance, codec);
     }
 
+    /**
+     * Instances should have registered {@link HazelcastPubSubSerializer}
+     */
     public HazelcastStoreFactory(HazelcastInstance hazelcastClient, HazelcastInstance hazelcastPub, HazelcastInstance hazelcastSub) {
+        this(hazelcastClient, hazelcastPub, hazelcastSub, new PubSubMessageCodec());
+    }
+
+    /**
+     * Instances should have {@link HazelcastPubSubSerializer} registered with <code>codec</code>
+     */
+    public HazelcastStoreFactory(HazelcastInstance hazelcastClient, HazelcastInstance hazelcastPub, HazelcastInstance hazelcastSub,
+            PubSubMessageCodec codec) {
         this.hazelcastClient = hazelcastClient;
         this.hazelcastPub = hazelcastPub;
         this.hazelcastSub = hazelcastSub;
+        this.codec = codec;
+    }
+
+    @Override
+    public synchronized void init(NamespacesHub namespacesHub, AuthorizeHandler authorizeHandler, JsonSupport jsonSupport) {
+        codec.setJsonSupport(jsonSupport);
+        pubSubStore = createPubSubStore();
+        super.init(namespacesHub, authorizeHandler, jsonSupport);
+    }
 
-        this.pubSubStore = new HazelcastPubSubStore(hazelcastPub, hazelcastSub, getNodeId());
+    /**
+     * Creates pub/sub store decorated according to options,
+     * messages pass through room routing, batching, shared memory
+     * and then topic store.
+     */
+    private PubSubStore createPubSubStore() {
+        PubSubStore store = new HazelcastPubSubStore(hazelcastPub, hazelcastSub, getNodeId(), codec);
+        if (sharedMemoryDirectory != null) {
+            store = new SharedMemoryPubSubStore(getNodeId(), sharedMemoryDirectory, sharedMemorySegmentSize, store, codec);
+        }
+        if (pubSubBatching) {
+            store = new BatchingPubSubStore(store, maxBatchSize, lingerMillis);
+        }
+        if (dispatchRouting) {
+            store = new RoomRoutingPubSubStore(store, routingShards);
+        }
+        return store;
     }
 
     @Override
@@ -60,8 +157,65 @@ public class HazelcastStoreFactory extends BaseStoreFactory {
         return new HazelcastStore(sessionId, hazelcastClient);
     }
 
+    /**
+     * Exchange pub/sub messages with nodes of the same host through shared memory,
+     * see {@link SharedMemoryPubSubStore}. Should be set before server start.
+     *
+     * @param directory - directory of segments, e.g. <code>/dev/shm/socketio</code>
+     * @param segmentSize - size of segment of this node in bytes
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setSharedMemory(File directory, int segmentSize) {
+        checkNotInitialized();
+        this.sharedMemoryDirectory = directory;
+        this.sharedMemorySegmentSize = segmentSize;
+    }
+
+    /**
+     * Publish pub/sub messages in batches, see {@link BatchingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param maxBatchSize - max amount of messages in batch
+     * @param lingerMillis - max delay of message publishing
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setPubSubBatching(int maxBatchSize, long lingerMillis) {
+        checkNotInitialized();
+        this.pubSubBatching = true;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Publish room dispatches to room channels, see {@link RoomRoutingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param shards - amount of channels rooms are hashed to, <code>0</code> - channel per room
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setDispatchRouting(int shards) {
+        checkNotInitialized();
+        this.dispatchRouting = true;
+        this.routingShards = shards;
+    }
+
+    /**
+     * Session map is deleted if it has been created
+     */
+    @Override
+    public void onDisconnect(ClientHead client) {
+        if (client.isStoreCreated()) {
+            storeCleaner.release(client.getSessionId());
+        }
+    }
+
     @Override
     public void shutdown() {
+        super.shutdown();
+        storeCleaner.shutdown();
+        if (pubSubStore != null) {
+            pubSubStore.shutdown();
+        }
         hazelcastClient.shutdown();
         hazelcastPub.shutdown();
         hazelcastSub.shutdown();
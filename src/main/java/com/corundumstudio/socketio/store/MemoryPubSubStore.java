@@ -34,6 +34,18 @@ public class MemoryPubSubStore implements PubSubStore {
     public void unsubscribe(PubSubType type) {
     }
 
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+    }
+
     @Override
     public void shutdown() {
     }
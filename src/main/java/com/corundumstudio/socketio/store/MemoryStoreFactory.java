@@ -27,6 +27,11 @@ public class MemoryStoreFactory extends BaseStoreFactory {
 
     private final MemoryPubSubStore pubSubMemoryStore = new MemoryPubSubStore();
 
+    public MemoryStoreFactory() {
+        // single node
+        setNodeHeartbeat(0, 0);
+    }
+
     @Override
     public Store createStore(UUID sessionId) {
         return new MemoryStore();
@@ -39,6 +44,7 @@ public class MemoryStoreFactory extends BaseStoreFactory {
 
     @Override
     public void shutdown() {
+        super.shutdown();
     }
 
     @Override
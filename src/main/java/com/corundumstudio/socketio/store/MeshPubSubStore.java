@@ -0,0 +1,807 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Brokerless pub/sub over direct TCP connections between nodes.
+ * <p>
+ * Each node listens on its own address and keeps an outbound connection
+ * to every known peer. Peers are known from static seed addresses,
+ * from the hello frame sent by every node which connects
+ * and, if enabled, from periodic gossip of known addresses.
+ * Without gossip every node should list all others as seeds.
+ * <p>
+ * Node accepting connection sends random challenge, connecting node
+ * answers with hello frame signed by HMAC of shared secret, see {@link #setSecret(String)}.
+ * Secret is required unless authentication is disabled by {@link #setInsecure(boolean)}.
+ * Frames of connection are ignored until its hello frame is verified.
+ * Messages read by java serialization should be restricted
+ * by {@link PubSubMessageCodec#setAllowedClasses(List)} of codec.
+ * <p>
+ * Messages are encoded once by {@link PubSubMessageCodec} and written to all peers,
+ * writes are flushed by a single task per peer, so frames published meanwhile
+ * share a syscall. Frames are dropped for a peer whose outbound buffer
+ * exceeds high water mark or which isn't connected, see {@link #getDroppedFramesCount()},
+ * except for frames of cluster state messages like
+ * {@link PubSubType#JOIN} or {@link PubSubType#CONNECT}. They are written regardless of
+ * high water mark and queued until peer is connected, see {@link #setMaxPendingControlFrames(int)}.
+ * Seed connections are re-established forever, learned peers are
+ * forgotten once reconnection fails.
+ *
+ */
+public class MeshPubSubStore implements PubSubStore {
+
+    /**
+     * Notified about connection changes of peers
+     */
+    public interface PeerListener {
+
+        /**
+         * Invoked once node has closed its connection to this node
+         *
+         * @param nodeId - id of disconnected node
+         */
+        void onPeerDisconnected(Long nodeId);
+
+        /**
+         * Invoked once connection to peer is re-established,
+         * messages published meanwhile could be lost
+         *
+         * @param address - address of peer
+         */
+        void onPeerReconnected(InetSocketAddress address);
+
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(MeshPubSubStore.class);
+
+    private static final AttributeKey<Long> PEER_NODE_ID = AttributeKey.valueOf("socketio-mesh-node-id");
+    private static final AttributeKey<byte[]> CHALLENGE_NONCE = AttributeKey.valueOf("socketio-mesh-challenge");
+    private static final AttributeKey<Peer> PEER = AttributeKey.valueOf("socketio-mesh-peer");
+
+    private static final byte HELLO = 0;
+    private static final byte PEERS = 1;
+    private static final byte MESSAGE = 2;
+    private static final byte CHALLENGE = 3;
+
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    private static final int NONCE_LENGTH = 16;
+    private static final long HANDSHAKE_TIMEOUT = 10000;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final Set<PubSubType> CONTROL_TYPES = EnumSet.of(PubSubType.CONNECT, PubSubType.DISCONNECT,
+            PubSubType.JOIN, PubSubType.LEAVE, PubSubType.HEARTBEAT, PubSubType.NODE_STATE);
+
+    private final Long nodeId;
+    private final InetSocketAddress address;
+    private final List<InetSocketAddress> seeds;
+    private final PubSubMessageCodec codec;
+    private final SecureRandom random = new SecureRandom();
+
+    private final ConcurrentMap<String, Queue<PubSubListener<PubSubMessage>>> listeners = PlatformDependent.newConcurrentHashMap();
+    private final ConcurrentMap<InetSocketAddress, Peer> peers = PlatformDependent.newConcurrentHashMap();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private InetSocketAddress bindAddress;
+    private byte[] secret;
+    private boolean insecure;
+    private long gossipInterval;
+    private long reconnectDelay = 1000;
+    private int writeBufferHighWaterMark = 4 * 1024 * 1024;
+    private int maxPendingControlFrames = 100000;
+
+    private volatile PeerListener peerListener;
+
+    private EventLoopGroup group;
+    private Bootstrap bootstrap;
+    private Channel serverChannel;
+    private volatile boolean closed;
+
+    /**
+     * @param nodeId - id of this node
+     * @param address - address announced to other nodes, also listened on by default
+     * @param seeds - addresses of other nodes
+     * @param codec - message codec
+     */
+    public MeshPubSubStore(Long nodeId, InetSocketAddress address, List<InetSocketAddress> seeds, PubSubMessageCodec codec) {
+        this.nodeId = nodeId;
+        this.address = address;
+        this.bindAddress = address;
+        this.seeds = seeds;
+        this.codec = codec;
+    }
+
+    /**
+     * Address to listen on, e.g. wildcard or specific interface address
+     * if announced address is address of NAT or proxy.
+     * <p>
+     * Default is address announced to other nodes
+     *
+     * @param bindAddress - address to listen on
+     */
+    public void setBindAddress(InetSocketAddress bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * Shared secret of cluster nodes, connections of nodes
+     * which don't know it are closed.
+     * Required to start node, see {@link #setInsecure(boolean)}.
+     * <p>
+     * Default is <code>null</code>
+     *
+     * @param secret - shared secret
+     */
+    public void setSecret(String secret) {
+        if (secret == null) {
+            this.secret = null;
+        } else {
+            this.secret = secret.getBytes(CharsetUtil.UTF_8);
+        }
+    }
+
+    /**
+     * Allows to start node without secret, so any node
+     * which connects to it is accepted.
+     * Should be used only in trusted network.
+     * <p>
+     * Default is <code>false</code>
+     *
+     * @param insecure - <code>true</code> to accept nodes without authentication
+     */
+    public void setInsecure(boolean insecure) {
+        this.insecure = insecure;
+    }
+
+    /**
+     * Interval of known peers announcement to other nodes.
+     * <code>0</code> disables gossip.
+     * <p>
+     * Default is <code>0</code>
+     *
+     * @param gossipInterval - interval in milliseconds
+     */
+    public void setGossipInterval(long gossipInterval) {
+        this.gossipInterval = gossipInterval;
+    }
+
+    /**
+     * Default is <code>1000</code>
+     *
+     * @param reconnectDelay - delay before reconnection to peer in milliseconds
+     */
+    public void setReconnectDelay(long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Amount of bytes pending in outbound buffer of peer
+     * after which frames to that peer are dropped.
+     * <p>
+     * Default is <code>4MB</code>
+     *
+     * @param writeBufferHighWaterMark - amount of bytes
+     */
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    /**
+     * Max amount of cluster state frames queued for disconnected peer.
+     * Oldest frames are dropped once it's exceeded, the state is
+     * exchanged again after reconnection, see {@link PeerListener#onPeerReconnected(InetSocketAddress)}.
+     * <p>
+     * Default is <code>100000</code>
+     *
+     * @param maxPendingControlFrames - amount of frames
+     */
+    public void setMaxPendingControlFrames(int maxPendingControlFrames) {
+        this.maxPendingControlFrames = maxPendingControlFrames;
+    }
+
+    /**
+     * @param peerListener - listener of peers connection changes
+     */
+    public void setPeerListener(PeerListener peerListener) {
+        this.peerListener = peerListener;
+    }
+
+    public void start() {
+        if (secret == null) {
+            if (!insecure) {
+                throw new IllegalStateException("Mesh secret isn't set, see setSecret or setInsecure");
+            }
+            log.warn("Mesh node {} accepts any node without authentication", nodeId);
+        }
+        if (!codec.isSerializationRestricted()) {
+            log.warn("Classes deserialized by mesh node {} aren't restricted, see PubSubMessageCodec.setAllowedClasses", nodeId);
+        }
+        group = new NioEventLoopGroup(1, new DefaultThreadFactory("socketio-mesh", true));
+
+        final InboundHandler inboundHandler = new InboundHandler();
+        ServerBootstrap serverBootstrap = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+                        ch.pipeline().addLast(inboundHandler);
+                    }
+                });
+        serverChannel = serverBootstrap.bind(bindAddress).syncUninterruptibly().channel();
+
+        final OutboundHandler outboundHandler = new OutboundHandler();
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(writeBufferHighWaterMark / 2, writeBufferHighWaterMark))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        // outbound connections only receive challenge
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(1024, 0, 4, 0, 4));
+                        ch.pipeline().addLast(outboundHandler);
+                    }
+                });
+
+        for (InetSocketAddress seed : seeds) {
+            addPeer(seed, true);
+        }
+
+        if (gossipInterval > 0) {
+            group.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    gossip();
+                }
+            }, gossipInterval, gossipInterval, TimeUnit.MILLISECONDS);
+        }
+        log.info("Mesh pub/sub node {} started at {}", nodeId, address);
+    }
+
+    private void addPeer(InetSocketAddress peerAddress, boolean seed) {
+        if (closed || address.equals(peerAddress)) {
+            return;
+        }
+        Peer peer = new Peer(peerAddress, seed);
+        if (peers.putIfAbsent(peerAddress, peer) == null) {
+            peer.connect();
+        }
+    }
+
+    private void gossip() {
+        Collection<Peer> currentPeers = peers.values();
+        ByteBuf frame = newFrame(PEERS);
+        frame.writeInt(currentPeers.size());
+        for (Peer peer : currentPeers) {
+            writeAddress(peer.address, frame);
+        }
+        writeToPeers(frame, false);
+    }
+
+    /**
+     * @return amount of peers with established outbound connection
+     */
+    public int getConnectedPeersCount() {
+        int result = 0;
+        for (Peer peer : peers.values()) {
+            if (peer.channel != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return amount of frames dropped due to peer unavailability or backpressure
+     */
+    public long getDroppedFramesCount() {
+        return droppedFrames.get();
+    }
+
+    @Override
+    public void publish(PubSubType type, PubSubMessage msg) {
+        publishFrame(type, type.toString(), msg);
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        publishFrame(type, type + ":" + channel, msg);
+    }
+
+    private void publishFrame(PubSubType type, String name, PubSubMessage msg) {
+        msg.setNodeId(nodeId);
+        ByteBuf frame = newFrame(MESSAGE);
+        try {
+            writeString(name, frame);
+            codec.encode(codec.prepare(msg), frame);
+        } catch (IOException e) {
+            frame.release();
+            throw new IllegalStateException("Can't encode message " + msg, e);
+        }
+        writeToPeers(frame, CONTROL_TYPES.contains(type));
+    }
+
+    private ByteBuf newFrame(byte type) {
+        ByteBuf frame = ByteBufAllocator.DEFAULT.buffer();
+        // length placeholder
+        frame.writeInt(0);
+        frame.writeByte(type);
+        return frame;
+    }
+
+    private void writeToPeers(ByteBuf frame, boolean control) {
+        frame.setInt(0, frame.readableBytes() - 4);
+        try {
+            for (Peer peer : peers.values()) {
+                if (control) {
+                    peer.writeControl(frame.retainedDuplicate());
+                } else {
+                    peer.write(frame.retainedDuplicate());
+                }
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static void writeString(String value, ByteBuf out) {
+        byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+        out.writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = in.readUnsignedShort();
+        String result = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return result;
+    }
+
+    private static void writeAddress(InetSocketAddress address, ByteBuf out) {
+        writeString(address.getHostString(), out);
+        out.writeShort(address.getPort());
+    }
+
+    private static InetSocketAddress readAddress(ByteBuf in) {
+        String host = readString(in);
+        return new InetSocketAddress(host, in.readUnsignedShort());
+    }
+
+    /**
+     * Signature of hello frame proving knowledge of secret
+     */
+    private byte[] sign(byte[] nonce, long helloNodeId, InetSocketAddress helloAddress) {
+        if (secret == null) {
+            return new byte[0];
+        }
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            mac.update(nonce);
+            for (int i = 56; i >= 0; i -= 8) {
+                mac.update((byte) (helloNodeId >>> i));
+            }
+            mac.update(helloAddress.getHostString().getBytes(CharsetUtil.UTF_8));
+            mac.update((byte) (helloAddress.getPort() >>> 8));
+            mac.update((byte) helloAddress.getPort());
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't sign mesh hello frame", e);
+        }
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type.toString(), listener);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type + ":" + channel, listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends PubSubMessage> void subscribe(String name, PubSubListener<T> listener) {
+        Queue<PubSubListener<PubSubMessage>> list = listeners.get(name);
+        if (list == null) {
+            list = new ConcurrentLinkedQueue<PubSubListener<PubSubMessage>>();
+            Queue<PubSubListener<PubSubMessage>> oldList = listeners.putIfAbsent(name, list);
+            if (oldList != null) {
+                list = oldList;
+            }
+        }
+        list.add((PubSubListener<PubSubMessage>) listener);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type) {
+        listeners.remove(type.toString());
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        listeners.remove(type + ":" + channel);
+    }
+
+    @Override
+    public void shutdown() {
+        closed = true;
+        if (group == null) {
+            return;
+        }
+        serverChannel.close();
+        for (Peer peer : peers.values()) {
+            peer.close();
+        }
+        peers.clear();
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    private void onMessage(ByteBuf frame) throws IOException {
+        String name = readString(frame);
+        Queue<PubSubListener<PubSubMessage>> list = listeners.get(name);
+        if (list == null) {
+            return;
+        }
+        PubSubMessage msg = codec.decode(frame);
+        if (nodeId.equals(msg.getNodeId())) {
+            return;
+        }
+        for (PubSubListener<PubSubMessage> listener : list) {
+            listener.onMessage(msg);
+        }
+    }
+
+    @Sharable
+    private class InboundHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+            byte[] nonce = new byte[NONCE_LENGTH];
+            random.nextBytes(nonce);
+            ctx.channel().attr(CHALLENGE_NONCE).set(nonce);
+
+            ByteBuf challenge = ctx.alloc().buffer();
+            challenge.writeInt(1 + nonce.length);
+            challenge.writeByte(CHALLENGE);
+            challenge.writeBytes(nonce);
+            ctx.writeAndFlush(challenge);
+
+            ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (ctx.channel().attr(PEER_NODE_ID).get() == null) {
+                        log.warn("Mesh handshake timeout, closing connection from {}", ctx.channel().remoteAddress());
+                        ctx.close();
+                    }
+                }
+            }, HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+            byte type = frame.readByte();
+            if (type == HELLO) {
+                onHello(ctx, frame);
+                return;
+            }
+            if (ctx.channel().attr(PEER_NODE_ID).get() == null) {
+                log.warn("Mesh frame before hello, closing connection from {}", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            if (type == MESSAGE) {
+                onMessage(frame);
+            } else if (type == PEERS) {
+                int count = frame.readInt();
+                for (int i = 0; i < count; i++) {
+                    addPeer(readAddress(frame), false);
+                }
+            }
+        }
+
+        private void onHello(ChannelHandlerContext ctx, ByteBuf frame) {
+            long peerNodeId = frame.readLong();
+            InetSocketAddress peerAddress = readAddress(frame);
+            byte[] signature = new byte[frame.readUnsignedShort()];
+            frame.readBytes(signature);
+
+            byte[] nonce = ctx.channel().attr(CHALLENGE_NONCE).getAndSet(null);
+            if (nonce == null
+                    || (secret != null && !MessageDigest.isEqual(sign(nonce, peerNodeId, peerAddress), signature))) {
+                log.warn("Mesh node {} from {} isn't authenticated, closing connection", peerNodeId, ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+
+            ctx.channel().attr(PEER_NODE_ID).set(peerNodeId);
+            log.debug("Mesh node {} connected from {}", peerNodeId, peerAddress);
+            addPeer(peerAddress, false);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Long peerNodeId = ctx.channel().attr(PEER_NODE_ID).get();
+            PeerListener listener = peerListener;
+            if (peerNodeId != null && listener != null && !closed) {
+                log.debug("Mesh node {} disconnected", peerNodeId);
+                listener.onPeerDisconnected(peerNodeId);
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            log.error("Mesh frame handling error, closing connection from " + ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+
+    }
+
+    @Sharable
+    private class OutboundHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+            Peer peer = ctx.channel().attr(PEER).get();
+            if (frame.readByte() != CHALLENGE || peer == null || peer.channel == ctx.channel()) {
+                log.warn("Unexpected mesh frame, closing connection to {}", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            byte[] nonce = new byte[frame.readableBytes()];
+            frame.readBytes(nonce);
+
+            byte[] signature = sign(nonce, nodeId, address);
+            ByteBuf hello = ctx.alloc().buffer();
+            hello.writeInt(0);
+            hello.writeByte(HELLO);
+            hello.writeLong(nodeId);
+            writeAddress(address, hello);
+            hello.writeShort(signature.length);
+            hello.writeBytes(signature);
+            hello.setInt(0, hello.readableBytes() - 4);
+            ctx.write(hello);
+
+            peer.onHandshake(ctx.channel());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            log.error("Mesh connection error, closing connection to " + ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+
+    }
+
+    private class Peer {
+
+        private final InetSocketAddress address;
+        private final boolean seed;
+
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled.set(false);
+                Channel ch = channel;
+                if (ch != null) {
+                    ch.flush();
+                }
+            }
+        };
+
+        // control frames published while peer isn't connected, guarded by this
+        private final Queue<ByteBuf> pendingFrames = new ArrayDeque<ByteBuf>();
+        private boolean connectedBefore;
+
+        private volatile Channel channel;
+
+        Peer(InetSocketAddress address, boolean seed) {
+            this.address = address;
+            this.seed = seed;
+        }
+
+        void connect() {
+            if (closed) {
+                return;
+            }
+            bootstrap.clone().attr(PEER, this).connect(address).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        if (seed) {
+                            reconnect();
+                        } else {
+                            log.debug("Mesh peer {} is unavailable, forgetting it", address);
+                            if (peers.remove(address, Peer.this)) {
+                                close();
+                            }
+                        }
+                        return;
+                    }
+
+                    future.channel().closeFuture().addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) throws Exception {
+                            synchronized (Peer.this) {
+                                if (channel == future.channel()) {
+                                    channel = null;
+                                }
+                            }
+                            reconnect();
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Invoked on event loop of channel once hello frame is written
+         */
+        void onHandshake(Channel ch) {
+            boolean reconnected;
+            synchronized (this) {
+                if (closed) {
+                    ch.close();
+                    return;
+                }
+                // queued frames precede frames published after
+                for (ByteBuf frame : pendingFrames) {
+                    ch.write(frame, ch.voidPromise());
+                }
+                pendingFrames.clear();
+                channel = ch;
+                reconnected = connectedBefore;
+                connectedBefore = true;
+            }
+            ch.flush();
+            log.info("Mesh peer {} connected", address);
+
+            PeerListener listener = peerListener;
+            if (reconnected && listener != null) {
+                listener.onPeerReconnected(address);
+            }
+        }
+
+        void reconnect() {
+            if (closed) {
+                return;
+            }
+            group.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            }, reconnectDelay, TimeUnit.MILLISECONDS);
+        }
+
+        void write(ByteBuf frame) {
+            Channel ch = channel;
+            if (ch == null || !ch.isWritable()) {
+                frame.release();
+                droppedFrames.incrementAndGet();
+                return;
+            }
+            ch.write(frame, ch.voidPromise());
+            scheduleFlush(ch);
+        }
+
+        void writeControl(ByteBuf frame) {
+            Channel ch;
+            synchronized (this) {
+                ch = channel;
+                if (ch == null) {
+                    if (closed) {
+                        frame.release();
+                        return;
+                    }
+                    if (pendingFrames.size() >= maxPendingControlFrames) {
+                        pendingFrames.poll().release();
+                        droppedFrames.incrementAndGet();
+                    }
+                    pendingFrames.add(frame);
+                    return;
+                }
+                // written regardless of high water mark
+                ch.write(frame, ch.voidPromise());
+            }
+            scheduleFlush(ch);
+        }
+
+        private void scheduleFlush(Channel ch) {
+            if (flushScheduled.compareAndSet(false, true)) {
+                ch.eventLoop().execute(flushTask);
+            }
+        }
+
+        void close() {
+            Channel ch;
+            synchronized (this) {
+                ch = channel;
+                for (ByteBuf frame : pendingFrames) {
+                    frame.release();
+                }
+                pendingFrames.clear();
+            }
+            if (ch != null) {
+                ch.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.JsonSupport;
+import com.corundumstudio.socketio.store.pubsub.BaseStoreFactory;
+import com.corundumstudio.socketio.store.pubsub.BatchingPubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.RoomRoutingPubSubStore;
+
+/**
+ * Cluster of nodes connected directly to each other, see {@link MeshPubSubStore}.
+ * Client stores and maps are local to node.
+ * Nodes authenticate each other by shared secret, see {@link #setSecret(String)}.
+ * Classes read by java serialization from other nodes are restricted
+ * to {@link PubSubMessageCodec#DEFAULT_ALLOWED_CLASSES}, see {@link #setAllowedClasses(List)}.
+ *
+ */
+public class MeshStoreFactory extends BaseStoreFactory {
+
+    private final PubSubMessageCodec codec = new PubSubMessageCodec();
+    private final MeshPubSubStore meshStore;
+    private volatile PubSubStore pubSubStore;
+
+    // pub/sub options applied on init
+    private boolean pubSubBatching;
+    private int maxBatchSize;
+    private long lingerMillis;
+    private boolean dispatchRouting;
+    private int routingShards;
+
+    /**
+     * @param address - address to listen on, announced to other nodes
+     * @param seeds - addresses of other nodes
+     */
+    public MeshStoreFactory(InetSocketAddress address, List<InetSocketAddress> seeds) {
+        codec.setAllowedClasses(PubSubMessageCodec.DEFAULT_ALLOWED_CLASSES);
+        this.meshStore = new MeshPubSubStore(getNodeId(), address, seeds, codec);
+        meshStore.setPeerListener(new MeshPubSubStore.PeerListener() {
+            @Override
+            public void onPeerDisconnected(Long nodeId) {
+                onNodeLeft(nodeId);
+            }
+
+            @Override
+            public void onPeerReconnected(InetSocketAddress address) {
+                requestNodeStates();
+            }
+        });
+    }
+
+    /**
+     * See {@link MeshPubSubStore#setBindAddress(InetSocketAddress)}.
+     * Should be set before server start.
+     *
+     * @param bindAddress - address to listen on
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setBindAddress(InetSocketAddress bindAddress) {
+        checkNotInitialized();
+        meshStore.setBindAddress(bindAddress);
+    }
+
+    /**
+     * See {@link MeshPubSubStore#setSecret(String)}.
+     * Should be set on all nodes before server start.
+     *
+     * @param secret - shared secret
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setSecret(String secret) {
+        checkNotInitialized();
+        meshStore.setSecret(secret);
+    }
+
+    /**
+     * See {@link MeshPubSubStore#setInsecure(boolean)}.
+     * Should be set before server start.
+     *
+     * @param insecure - <code>true</code> to accept nodes without authentication
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setInsecure(boolean insecure) {
+        checkNotInitialized();
+        meshStore.setInsecure(insecure);
+    }
+
+    /**
+     * Classes allowed to be received by java serialization,
+     * should include classes of event arguments and ack results
+     * sent with binary attachments or to sessions of other nodes,
+     * see {@link PubSubMessageCodec#setAllowedClasses(List)}.
+     * <p>
+     * Default is {@link PubSubMessageCodec#DEFAULT_ALLOWED_CLASSES}
+     *
+     * @param allowedClasses - class names or their prefixes
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setAllowedClasses(List<String> allowedClasses) {
+        checkNotInitialized();
+        codec.setAllowedClasses(allowedClasses);
+    }
+
+    /**
+     * Announce known peers to other nodes, see {@link MeshPubSubStore#setGossipInterval(long)}.
+     * Should be set before server start.
+     *
+     * @param gossipInterval - interval in milliseconds
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setGossipInterval(long gossipInterval) {
+        checkNotInitialized();
+        meshStore.setGossipInterval(gossipInterval);
+    }
+
+    public MeshPubSubStore getMeshStore() {
+        return meshStore;
+    }
+
+    @Override
+    public synchronized void init(NamespacesHub namespacesHub, AuthorizeHandler authorizeHandler, JsonSupport jsonSupport) {
+        codec.setJsonSupport(jsonSupport);
+        meshStore.start();
+        pubSubStore = createPubSubStore();
+        super.init(namespacesHub, authorizeHandler, jsonSupport);
+    }
+
+    /**
+     * Creates pub/sub store decorated according to options,
+     * messages pass through room routing and batching to mesh store.
+     */
+    private PubSubStore createPubSubStore() {
+        PubSubStore store = meshStore;
+        if (pubSubBatching) {
+            store = new BatchingPubSubStore(store, maxBatchSize, lingerMillis);
+        }
+        if (dispatchRouting) {
+            store = new RoomRoutingPubSubStore(store, routingShards);
+        }
+        return store;
+    }
+
+    @Override
+    public Store createStore(UUID sessionId) {
+        return new MemoryStore();
+    }
+
+    @Override
+    public PubSubStore pubSubStore() {
+        return pubSubStore;
+    }
+
+    /**
+     * Publish pub/sub messages in batches, see {@link BatchingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param maxBatchSize - max amount of messages in batch
+     * @param lingerMillis - max delay of message publishing
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setPubSubBatching(int maxBatchSize, long lingerMillis) {
+        checkNotInitialized();
+        this.pubSubBatching = true;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Publish room dispatches to room channels, see {@link RoomRoutingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param shards - amount of channels rooms are hashed to, <code>0</code> - channel per room
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setDispatchRouting(int shards) {
+        checkNotInitialized();
+        this.dispatchRouting = true;
+        this.routingShards = shards;
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (pubSubStore != null) {
+            pubSubStore.shutdown();
+        } else {
+            meshStore.shutdown();
+        }
+    }
+
+    @Override
+    public <K, V> Map<K, V> createMap(String name) {
+        return PlatformDependent.newConcurrentHashMap();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " (local session store, direct publish/subscribe)";
+    }
+
+}
@@ -25,6 +25,7 @@ import org.redisson.api.listener.MessageListener;
 
 import com.corundumstudio.socketio.store.pubsub.PubSubListener;
 import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
 import com.corundumstudio.socketio.store.pubsub.PubSubStore;
 import com.corundumstudio.socketio.store.pubsub.PubSubType;
 
@@ -35,25 +36,50 @@ public class RedissonPubSubStore implements PubSubStore {
     private final RedissonClient redissonPub;
     private final RedissonClient redissonSub;
     private final Long nodeId;
+    private final PubSubMessageCodec codec;
+    private final RedissonPubSubCodec topicCodec;
 
     private final ConcurrentMap<String, Queue<Integer>> map = PlatformDependent.newConcurrentHashMap();
 
     public RedissonPubSubStore(RedissonClient redissonPub, RedissonClient redissonSub, Long nodeId) {
+        this(redissonPub, redissonSub, nodeId, new PubSubMessageCodec());
+    }
+
+    public RedissonPubSubStore(RedissonClient redissonPub, RedissonClient redissonSub, Long nodeId, PubSubMessageCodec codec) {
         this.redissonPub = redissonPub;
         this.redissonSub = redissonSub;
         this.nodeId = nodeId;
+        this.codec = codec;
+        this.topicCodec = new RedissonPubSubCodec(codec);
     }
 
     @Override
     public void publish(PubSubType type, PubSubMessage msg) {
+        publish(type.toString(), msg);
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        publish(type + ":" + channel, msg);
+    }
+
+    private void publish(String topicName, PubSubMessage msg) {
         msg.setNodeId(nodeId);
-        redissonPub.getTopic(type.toString()).publish(msg);
+        redissonPub.getTopic(topicName, topicCodec).publish(codec.prepare(msg));
     }
 
     @Override
     public <T extends PubSubMessage> void subscribe(PubSubType type, final PubSubListener<T> listener, Class<T> clazz) {
-        String typeName = type.toString();
-        RTopic topic = redissonSub.getTopic(typeName);
+        subscribe(type.toString(), listener);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type + ":" + channel, listener);
+    }
+
+    private <T extends PubSubMessage> void subscribe(String typeName, final PubSubListener<T> listener) {
+        RTopic topic = redissonSub.getTopic(typeName, topicCodec);
         int regId = topic.addListener(PubSubMessage.class, new MessageListener<PubSubMessage>() {
             @Override
             public void onMessage(CharSequence channel, PubSubMessage msg) {
@@ -76,9 +102,20 @@ public class RedissonPubSubStore implements PubSubStore {
 
     @Override
     public void unsubscribe(PubSubType type) {
-        String typeName = type.toString();
+        unsubscribe(type.toString());
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        unsubscribe(type + ":" + channel);
+    }
+
+    private void unsubscribe(String typeName) {
         Queue<Integer> regIds = map.remove(typeName);
-        RTopic topic = redissonSub.getTopic(typeName);
+        if (regIds == null) {
+            return;
+        }
+        RTopic topic = redissonSub.getTopic(typeName, topicCodec);
         for (Integer id : regIds) {
             topic.removeListener(id);
         }
@@ -15,14 +15,23 @@
  */
 package com.corundumstudio.socketio.store;
 
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.protocol.JsonSupport;
 import com.corundumstudio.socketio.store.pubsub.BaseStoreFactory;
+import com.corundumstudio.socketio.store.pubsub.BatchingPubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
 import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.RoomRoutingPubSubStore;
 
 public class RedissonStoreFactory extends BaseStoreFactory {
 
@@ -30,7 +39,27 @@ public class RedissonStoreFactory extends BaseStoreFactory {
     private final RedissonClient redisPub;
     private final RedissonClient redisSub;
 
-    private final PubSubStore pubSubStore;
+    private final PubSubMessageCodec codec = new PubSubMessageCodec();
+    private volatile PubSubStore pubSubStore;
+
+    // pub/sub options applied on init
+    private boolean streamPubSub;
+    private int streamMaxLength;
+    private int streamBatchSize;
+    private File sharedMemoryDirectory;
+    private int sharedMemorySegmentSize;
+    private boolean pubSubBatching;
+    private int maxBatchSize;
+    private long lingerMillis;
+    private boolean dispatchRouting;
+    private int routingShards;
+
+    private final StoreCleaner storeCleaner = new StoreCleaner() {
+        @Override
+        protected void delete(List<String> names) {
+            redisClient.getKeys().delete(names.toArray(new String[names.size()]));
+        }
+    };
 
     public RedissonStoreFactory() {
         this(Redisson.create());
@@ -40,16 +69,43 @@ public class RedissonStoreFactory extends BaseStoreFactory {
         this.redisClient = redisson;
         this.redisPub = redisson;
         this.redisSub = redisson;
-
-        this.pubSubStore = new RedissonPubSubStore(redisPub, redisSub, getNodeId());
     }
 
     public RedissonStoreFactory(Redisson redisClient, Redisson redisPub, Redisson redisSub) {
         this.redisClient = redisClient;
         this.redisPub = redisPub;
         this.redisSub = redisSub;
+    }
+
+    @Override
+    public synchronized void init(NamespacesHub namespacesHub, AuthorizeHandler authorizeHandler, JsonSupport jsonSupport) {
+        codec.setJsonSupport(jsonSupport);
+        pubSubStore = createPubSubStore();
+        super.init(namespacesHub, authorizeHandler, jsonSupport);
+    }
 
-        this.pubSubStore = new RedissonPubSubStore(redisPub, redisSub, getNodeId());
+    /**
+     * Creates pub/sub store decorated according to options,
+     * messages pass through room routing, batching, shared memory
+     * and then topic or stream store.
+     */
+    private PubSubStore createPubSubStore() {
+        PubSubStore store;
+        if (streamPubSub) {
+            store = new RedissonStreamPubSubStore(redisSub, getNodeId(), codec, streamMaxLength, streamBatchSize);
+        } else {
+            store = new RedissonPubSubStore(redisPub, redisSub, getNodeId(), codec);
+        }
+        if (sharedMemoryDirectory != null) {
+            store = new SharedMemoryPubSubStore(getNodeId(), sharedMemoryDirectory, sharedMemorySegmentSize, store, codec);
+        }
+        if (pubSubBatching) {
+            store = new BatchingPubSubStore(store, maxBatchSize, lingerMillis);
+        }
+        if (dispatchRouting) {
+            store = new RoomRoutingPubSubStore(store, routingShards);
+        }
+        return store;
     }
 
     @Override
@@ -62,8 +118,80 @@ public class RedissonStoreFactory extends BaseStoreFactory {
         return pubSubStore;
     }
 
+    /**
+     * Use Redis Streams instead of topics for pub/sub, see {@link RedissonStreamPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param maxLength - approximate max amount of messages kept in each stream
+     * @param batchSize - max amount of messages read at once
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setStreamPubSub(int maxLength, int batchSize) {
+        checkNotInitialized();
+        this.streamPubSub = true;
+        this.streamMaxLength = maxLength;
+        this.streamBatchSize = batchSize;
+    }
+
+    /**
+     * Exchange pub/sub messages with nodes of the same host through shared memory,
+     * see {@link SharedMemoryPubSubStore}. Should be set before server start.
+     *
+     * @param directory - directory of segments, e.g. <code>/dev/shm/socketio</code>
+     * @param segmentSize - size of segment of this node in bytes
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setSharedMemory(File directory, int segmentSize) {
+        checkNotInitialized();
+        this.sharedMemoryDirectory = directory;
+        this.sharedMemorySegmentSize = segmentSize;
+    }
+
+    /**
+     * Publish pub/sub messages in batches, see {@link BatchingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param maxBatchSize - max amount of messages in batch
+     * @param lingerMillis - max delay of message publishing
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setPubSubBatching(int maxBatchSize, long lingerMillis) {
+        checkNotInitialized();
+        this.pubSubBatching = true;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Publish room dispatches to room channels, see {@link RoomRoutingPubSubStore}.
+     * Should be set on all nodes before server start.
+     *
+     * @param shards - amount of channels rooms are hashed to, <code>0</code> - channel per room
+     * @throws IllegalStateException if server has been started
+     */
+    public synchronized void setDispatchRouting(int shards) {
+        checkNotInitialized();
+        this.dispatchRouting = true;
+        this.routingShards = shards;
+    }
+
+    /**
+     * Session map is deleted if it has been created
+     */
+    @Override
+    public void onDisconnect(ClientHead client) {
+        if (client.isStoreCreated()) {
+            storeCleaner.release(client.getSessionId());
+        }
+    }
+
     @Override
     public void shutdown() {
+        super.shutdown();
+        storeCleaner.shutdown();
+        if (pubSubStore != null) {
+            pubSubStore.shutdown();
+        }
         redisClient.shutdown();
         redisPub.shutdown();
         redisSub.shutdown();
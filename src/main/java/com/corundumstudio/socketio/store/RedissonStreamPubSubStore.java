@@ -0,0 +1,439 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamConsumer;
+import org.redisson.api.StreamGroup;
+import org.redisson.api.StreamMessageId;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Pub/sub over Redis Streams.
+ * <p>
+ * Unlike {@link RedissonPubSubStore} messages aren't lost if node is slow
+ * or reconnecting: each node reads every stream through its own consumer group,
+ * so its offset is kept by Redis and reading continues from it after reconnection.
+ * Messages delivered but not acknowledged before a read failure are read again.
+ * <p>
+ * Streams are trimmed to about <code>maxLength</code> messages on publishing,
+ * so node which lags behind by more messages misses the trimmed ones.
+ * All subscribed streams are read by a single thread with one blocking command
+ * in batches of <code>batchSize</code> per stream. Streams share a hash slot
+ * to be read by one command in Redis Cluster. Stream subscribed meanwhile is
+ * read once blocking read returns, messages published after subscription aren't lost.
+ * <p>
+ * Consumer groups of nodes which haven't read for {@link #setGroupTimeout(long)}
+ * are removed, as well as streams without groups and new messages for that time.
+ *
+ */
+public class RedissonStreamPubSubStore implements PubSubStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedissonStreamPubSubStore.class);
+
+    private static final String PREFIX = "{socketio:stream}:";
+    private static final String FIELD = "msg";
+    private static final String GROUP_PREFIX = "node-";
+
+    private static final long READ_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long CLEANUP_INTERVAL_MILLIS = 60000;
+
+    // deletes stream without groups whose last message is older than given time
+    private static final String DELETE_UNUSED_STREAM_SCRIPT =
+            "if #redis.call('xinfo', 'groups', KEYS[1]) > 0 then return 0 end; "
+          + "local last = redis.call('xrevrange', KEYS[1], '+', '-', 'COUNT', 1); "
+          + "if #last > 0 and tonumber(string.match(last[1][1], '^(%d+)')) > tonumber(ARGV[1]) then return 0 end; "
+          + "return redis.call('del', KEYS[1]);";
+
+    private final RedissonClient redisson;
+    private final Long nodeId;
+    private final PubSubMessageCodec codec;
+    private final Codec streamCodec;
+    private final int maxLength;
+    private final int batchSize;
+
+    private final String groupName;
+    private final String consumerName;
+    private final ConcurrentMap<String, Reader> readers = PlatformDependent.newConcurrentHashMap();
+    private final Set<String> groupStreams = Collections.newSetFromMap(PlatformDependent.<String, Boolean>newConcurrentHashMap());
+    private final Object subscriptionLock = new Object();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("socketio-stream", true));
+    private final ScheduledExecutorService cleanupExecutor =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("socketio-stream-cleanup", true));
+
+    private volatile long groupTimeout = TimeUnit.MINUTES.toMillis(10);
+    private volatile boolean stopped;
+
+    /**
+     * @param redisson - redisson client
+     * @param nodeId - id of this node
+     * @param codec - message codec
+     * @param maxLength - approximate max amount of messages kept in stream
+     * @param batchSize - max amount of messages read at once from each stream
+     */
+    public RedissonStreamPubSubStore(RedissonClient redisson, Long nodeId, PubSubMessageCodec codec, int maxLength, int batchSize) {
+        this.redisson = redisson;
+        this.nodeId = nodeId;
+        this.codec = codec;
+        this.maxLength = maxLength;
+        this.batchSize = batchSize;
+        this.groupName = GROUP_PREFIX + nodeId;
+        this.consumerName = nodeId.toString();
+
+        RedissonPubSubCodec messageCodec = new RedissonPubSubCodec(codec);
+        this.streamCodec = new CompositeCodec(StringCodec.INSTANCE, messageCodec, messageCodec);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        });
+        cleanupExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cleanup();
+                } catch (Exception e) {
+                    log.warn("Can't remove unused streams", e);
+                }
+            }
+        }, CLEANUP_INTERVAL_MILLIS, CLEANUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Time without reads after which consumer group of other node is considered dead.
+     * Group of node which has unsubscribed from stream for longer is removed as well,
+     * so messages published meanwhile aren't delivered on next subscription.
+     * <code>0</code> disables removal.
+     * <p>
+     * Default is <code>600000</code>
+     *
+     * @param groupTimeout - timeout in milliseconds
+     */
+    public void setGroupTimeout(long groupTimeout) {
+        this.groupTimeout = groupTimeout;
+    }
+
+    private RStream<String, PubSubMessage> getStream(String name) {
+        return redisson.getStream(PREFIX + name, streamCodec);
+    }
+
+    @Override
+    public void publish(PubSubType type, PubSubMessage msg) {
+        publish(type.toString(), msg);
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        publish(type + ":" + channel, msg);
+    }
+
+    private void publish(String name, PubSubMessage msg) {
+        msg.setNodeId(nodeId);
+        getStream(name).add(FIELD, codec.prepare(msg), maxLength, false);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type.toString(), listener);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        subscribe(type + ":" + channel, listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends PubSubMessage> void subscribe(String name, PubSubListener<T> listener) {
+        Reader reader = readers.get(name);
+        if (reader == null) {
+            Reader newReader = new Reader(getStream(name));
+            // listener should be registered before the first read
+            newReader.listeners.add((PubSubListener<PubSubMessage>) listener);
+            newReader.createGroup();
+            reader = readers.putIfAbsent(name, newReader);
+            if (reader == null) {
+                groupStreams.add(name);
+                synchronized (subscriptionLock) {
+                    subscriptionLock.notifyAll();
+                }
+                return;
+            }
+        }
+        reader.listeners.add((PubSubListener<PubSubMessage>) listener);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type) {
+        unsubscribe(type.toString());
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        unsubscribe(type + ":" + channel);
+    }
+
+    private void unsubscribe(String name) {
+        Reader reader = readers.remove(name);
+        if (reader != null) {
+            reader.stopped = true;
+        }
+    }
+
+    /**
+     * Consumer groups of this node are kept after unsubscription,
+     * so messages published meanwhile are delivered on next subscription.
+     * Groups are removed on shutdown.
+     */
+    @Override
+    public void shutdown() {
+        stopped = true;
+        for (Reader reader : readers.values()) {
+            reader.stopped = true;
+        }
+        readers.clear();
+        synchronized (subscriptionLock) {
+            subscriptionLock.notifyAll();
+        }
+        cleanupExecutor.shutdownNow();
+        executor.shutdown();
+        try {
+            // blocking read should return before groups removal
+            executor.awaitTermination(READ_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (String name : groupStreams) {
+            try {
+                getStream(name).removeGroup(groupName);
+            } catch (Exception e) {
+                log.debug("Can't remove consumer group of stream {}", name);
+            }
+        }
+    }
+
+    private void read() {
+        while (!stopped) {
+            List<Reader> current = new ArrayList<Reader>(readers.values());
+            if (current.isEmpty()) {
+                awaitSubscription();
+                continue;
+            }
+
+            try {
+                Map<String, StreamMessageId> otherStreams = new HashMap<String, StreamMessageId>();
+                for (int i = 1; i < current.size(); i++) {
+                    Reader reader = current.get(i);
+                    otherStreams.put(reader.stream.getName(), reader.nextId());
+                }
+                Reader first = current.get(0);
+                Map<String, Map<StreamMessageId, Map<String, PubSubMessage>>> result =
+                        first.stream.readGroup(groupName, consumerName, batchSize, READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS,
+                                                first.nextId(), otherStreams);
+
+                for (Reader reader : current) {
+                    Map<StreamMessageId, Map<String, PubSubMessage>> batch = null;
+                    if (result != null) {
+                        batch = result.get(reader.stream.getName());
+                    }
+                    reader.onBatch(batch);
+                }
+            } catch (Exception e) {
+                if (stopped) {
+                    break;
+                }
+                log.warn("Can't read streams, retrying", e);
+                sleep();
+                for (Reader reader : current) {
+                    // pending messages of this consumer are read first
+                    reader.readPending = true;
+                    try {
+                        reader.createGroup();
+                    } catch (Exception ex) {
+                        // connection is still unavailable
+                    }
+                }
+            }
+        }
+    }
+
+    private void awaitSubscription() {
+        synchronized (subscriptionLock) {
+            if (!stopped && readers.isEmpty()) {
+                try {
+                    subscriptionLock.wait(READ_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped = true;
+                }
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+
+    /**
+     * Removes groups of dead nodes and streams without groups,
+     * e.g. room or session channels nobody is subscribed to anymore
+     */
+    void cleanup() {
+        long timeout = groupTimeout;
+        if (timeout <= 0) {
+            return;
+        }
+        long expired = System.currentTimeMillis() - timeout;
+        for (String key : redisson.getKeys().getKeysByPattern(PREFIX + "*")) {
+            if (stopped) {
+                return;
+            }
+            RStream<String, PubSubMessage> stream = redisson.getStream(key, streamCodec);
+            try {
+                for (StreamGroup group : stream.listGroups()) {
+                    if (isDeadGroup(stream, group, timeout)) {
+                        stream.removeGroup(group.getName());
+                        log.debug("Consumer group {} of stream {} removed", group.getName(), key);
+                    }
+                }
+                Long deleted = redisson.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                        DELETE_UNUSED_STREAM_SCRIPT, RScript.ReturnType.INTEGER,
+                        Collections.<Object>singletonList(key), String.valueOf(expired));
+                if (deleted != null && deleted > 0) {
+                    log.debug("Unused stream {} removed", key);
+                }
+            } catch (RedisException e) {
+                // stream removed meanwhile
+                log.debug("Can't clean up stream " + key, e);
+            }
+        }
+    }
+
+    private boolean isDeadGroup(RStream<String, PubSubMessage> stream, StreamGroup group, long timeout) {
+        if (!group.getName().startsWith(GROUP_PREFIX) || group.getName().equals(groupName)) {
+            return false;
+        }
+        List<StreamConsumer> consumers = stream.listConsumers(group.getName());
+        if (consumers.isEmpty()) {
+            // group is created right before the first read
+            return false;
+        }
+        for (StreamConsumer consumer : consumers) {
+            if (consumer.getIdleTime() < timeout) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class Reader {
+
+        private final RStream<String, PubSubMessage> stream;
+        private final Queue<PubSubListener<PubSubMessage>> listeners = new ConcurrentLinkedQueue<PubSubListener<PubSubMessage>>();
+        private volatile boolean stopped;
+        // accessed by reading thread only, pending messages of this consumer are read first
+        private boolean readPending = true;
+
+        Reader(RStream<String, PubSubMessage> stream) {
+            this.stream = stream;
+        }
+
+        void createGroup() {
+            try {
+                stream.createGroup(groupName, StreamMessageId.NEWEST);
+            } catch (RedisException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                    throw e;
+                }
+            }
+        }
+
+        StreamMessageId nextId() {
+            if (readPending) {
+                return StreamMessageId.ALL;
+            }
+            return StreamMessageId.NEVER_DELIVERED;
+        }
+
+        void onBatch(Map<StreamMessageId, Map<String, PubSubMessage>> batch) {
+            if (batch == null || batch.isEmpty()) {
+                readPending = false;
+                return;
+            }
+            if (stopped || RedissonStreamPubSubStore.this.stopped) {
+                // not acknowledged, read again by next subscription
+                return;
+            }
+            for (Map<String, PubSubMessage> entry : batch.values()) {
+                onMessage(entry.get(FIELD));
+            }
+            stream.ack(groupName, batch.keySet().toArray(new StreamMessageId[batch.size()]));
+        }
+
+        private void onMessage(PubSubMessage msg) {
+            if (msg == null || nodeId.equals(msg.getNodeId())) {
+                return;
+            }
+            for (PubSubListener<PubSubMessage> listener : listeners) {
+                try {
+                    listener.onMessage(msg);
+                } catch (Exception e) {
+                    log.error("Can't handle message of stream " + stream.getName(), e);
+                }
+            }
+        }
+
+    }
+
+}
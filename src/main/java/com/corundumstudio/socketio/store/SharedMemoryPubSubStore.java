@@ -0,0 +1,570 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.PlatformDependent;
+import sun.misc.Unsafe;
+
+/**
+ * Pub/sub between server processes of the same host through memory-mapped files,
+ * usually placed under <code>/dev/shm</code>.
+ * <p>
+ * Each process writes its messages to its own ring buffer segment
+ * and polls segments of other processes found in the same directory.
+ * Messages are also published to <code>remote</code> store for nodes of other hosts,
+ * remote messages of co-located nodes are skipped since they are received through shared memory.
+ * <p>
+ * Readers start from current segment position, so messages published
+ * before a segment is discovered are received through remote store only.
+ * Remote messages of a node are skipped since its segment is discovered,
+ * so messages written to segment before discovery, but received from remote store
+ * after it, are lost. Segments are scanned every {@value #SCAN_INTERVAL_MILLIS} ms,
+ * so this happens within latency of remote store once a node has started.
+ * Reader which lags behind writer by more than segment capacity
+ * skips overwritten messages, see {@link #getLostMessagesCount()}.
+ * Segments without heartbeat for {@value #STALE_TIMEOUT_MILLIS} ms are ignored.
+ * Segment file is always created anew since other processes could have
+ * the previous one mapped, segment of live process with the same node id fails construction.
+ * <p>
+ * Segment position is written with release and read with acquire semantics
+ * by volatile accesses of {@link Unsafe}, so records are visible to other processes
+ * before position which covers them. Store can't be created if {@link Unsafe} isn't available.
+ *
+ */
+public class SharedMemoryPubSubStore implements PubSubStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedMemoryPubSubStore.class);
+
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_FIELD_OFFSET;
+
+    static {
+        Unsafe unsafe;
+        long addressOffset;
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e) {
+            log.debug("Unsafe isn't available, shared memory pub/sub can't be used", e);
+            unsafe = null;
+            addressOffset = -1;
+        }
+        UNSAFE = unsafe;
+        ADDRESS_FIELD_OFFSET = addressOffset;
+    }
+
+    public static final long STALE_TIMEOUT_MILLIS = 10000;
+
+    private static final String SUFFIX = ".ring";
+    private static final int MAGIC = 0x53494F52;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int NODE_ID_OFFSET = 8;
+    private static final int POSITION_OFFSET = 16;
+    private static final int HEARTBEAT_OFFSET = 24;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int WRAP = -1;
+
+    public static final long SCAN_INTERVAL_MILLIS = 1000;
+    private static final long POLL_INTERVAL_NANOS = 50000;
+
+    private final Long nodeId;
+    private final File directory;
+    private final PubSubStore remote;
+    private final PubSubMessageCodec codec;
+
+    private final File file;
+    private final MappedByteBuffer segment;
+    private final long segmentAddress;
+    private final int capacity;
+    // guarded by this
+    private long writePosition;
+
+    private final ConcurrentMap<String, Queue<PubSubListener<PubSubMessage>>> listeners = PlatformDependent.newConcurrentHashMap();
+    private final Set<Long> localNodes = Collections.newSetFromMap(PlatformDependent.<Long, Boolean>newConcurrentHashMap());
+    // accessed by reader thread only
+    private final Map<File, Reader> readers = new HashMap<File, Reader>();
+    private final AtomicLong lostMessages = new AtomicLong();
+
+    private final Thread readerThread;
+    private volatile boolean closed;
+
+    /**
+     * @param nodeId - id of this node
+     * @param directory - directory of segments shared by processes, e.g. <code>/dev/shm/socketio</code>
+     * @param segmentSize - size of segment of this process in bytes
+     * @param remote - store for nodes of other hosts, may be <code>null</code>
+     * @param codec - message codec
+     * @throws IllegalStateException if {@link Unsafe} isn't available
+     */
+    public SharedMemoryPubSubStore(Long nodeId, File directory, int segmentSize, PubSubStore remote, PubSubMessageCodec codec) {
+        if (UNSAFE == null) {
+            throw new IllegalStateException("Unsafe isn't available, it's required to order shared memory accesses");
+        }
+        this.nodeId = nodeId;
+        this.directory = directory;
+        this.remote = remote;
+        this.codec = codec;
+        this.capacity = (segmentSize - HEADER_SIZE) & ~3;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("segmentSize should be greater than " + HEADER_SIZE);
+        }
+
+        this.file = new File(directory, nodeId + SUFFIX);
+        this.segment = createSegment();
+        this.segmentAddress = address(segment);
+
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, "socketio-shm-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private MappedByteBuffer createSegment() {
+        directory.mkdirs();
+        try {
+            FileChannel channel = openNewSegment();
+            file.deleteOnExit();
+            try {
+                // file is grown by mapping
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+                // the same as of Unsafe accesses
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putLong(NODE_ID_OFFSET, nodeId);
+                buffer.putLong(POSITION_OFFSET, 0);
+                buffer.putLong(HEARTBEAT_OFFSET, System.currentTimeMillis());
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                return buffer;
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't create shared memory segment " + file, e);
+        }
+    }
+
+    /**
+     * Existing segment is never truncated, readers which have it mapped
+     * would fail on access beyond the end of file.
+     * Stale segment is deleted and created again as a new file.
+     */
+    private FileChannel openNewSegment() throws IOException {
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            Reader existing = openReader(file);
+            if (existing != null
+                    && System.currentTimeMillis() - existing.getHeartbeat() <= STALE_TIMEOUT_MILLIS) {
+                throw new IllegalStateException("Shared memory segment " + file + " is used by another process");
+            }
+            log.warn("Replacing stale shared memory segment {}", file);
+            Files.delete(file.toPath());
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    private static long address(MappedByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_FIELD_OFFSET);
+    }
+
+    /**
+     * Writes position of segment after all preceding writes of records
+     */
+    private void releasePosition(long position) {
+        UNSAFE.putLongVolatile(null, segmentAddress + POSITION_OFFSET, position);
+    }
+
+    /**
+     * @return amount of messages of other processes overwritten before being read
+     */
+    public long getLostMessagesCount() {
+        return lostMessages.get();
+    }
+
+    /**
+     * @return ids of nodes exchanging messages through shared memory
+     */
+    public Set<Long> getLocalNodes() {
+        return Collections.unmodifiableSet(localNodes);
+    }
+
+    @Override
+    public void publish(PubSubType type, PubSubMessage msg) {
+        msg.setNodeId(nodeId);
+        write(type.toString(), msg);
+        if (remote != null) {
+            remote.publish(type, msg);
+        }
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        msg.setNodeId(nodeId);
+        write(type + ":" + channel, msg);
+        if (remote != null) {
+            remote.publish(type, channel, msg);
+        }
+    }
+
+    private void write(String name, PubSubMessage msg) {
+        ByteBuf record = Unpooled.buffer();
+        try {
+            writeString(name, record);
+            codec.encode(codec.prepare(msg), record);
+            write(record);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't encode message " + msg, e);
+        } finally {
+            record.release();
+        }
+    }
+
+    private synchronized void write(ByteBuf record) {
+        int length = record.readableBytes();
+        int size = align(4 + length);
+        if (size > capacity / 4) {
+            log.error("Message of {} bytes exceeds quarter of shared memory segment capacity, skipped", length);
+            return;
+        }
+
+        int offset = (int) (writePosition % capacity);
+        if (capacity - offset < size) {
+            segment.putInt(HEADER_SIZE + offset, WRAP);
+            writePosition += capacity - offset;
+            offset = 0;
+        }
+
+        ByteBuffer dst = segment.duplicate();
+        dst.position(HEADER_SIZE + offset + 4);
+        dst.limit(HEADER_SIZE + offset + 4 + length);
+        record.getBytes(record.readerIndex(), dst);
+        segment.putInt(HEADER_SIZE + offset, length);
+        writePosition += size;
+
+        // record should be visible before position
+        releasePosition(writePosition);
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static void writeString(String value, ByteBuf out) {
+        byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+        out.writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = in.readUnsignedShort();
+        String result = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return result;
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+        addListener(type.toString(), listener);
+        if (remote != null) {
+            remote.subscribe(type, remoteListener(listener), clazz);
+        }
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        addListener(type + ":" + channel, listener);
+        if (remote != null) {
+            remote.subscribe(type, channel, remoteListener(listener), clazz);
+        }
+    }
+
+    private <T extends PubSubMessage> PubSubListener<T> remoteListener(final PubSubListener<T> listener) {
+        return new PubSubListener<T>() {
+            @Override
+            public void onMessage(T msg) {
+                if (!localNodes.contains(msg.getNodeId())) {
+                    listener.onMessage(msg);
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends PubSubMessage> void addListener(String name, PubSubListener<T> listener) {
+        Queue<PubSubListener<PubSubMessage>> list = listeners.get(name);
+        if (list == null) {
+            list = new ConcurrentLinkedQueue<PubSubListener<PubSubMessage>>();
+            Queue<PubSubListener<PubSubMessage>> oldList = listeners.putIfAbsent(name, list);
+            if (oldList != null) {
+                list = oldList;
+            }
+        }
+        list.add((PubSubListener<PubSubMessage>) listener);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type) {
+        listeners.remove(type.toString());
+        if (remote != null) {
+            remote.unsubscribe(type);
+        }
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        listeners.remove(type + ":" + channel);
+        if (remote != null) {
+            remote.unsubscribe(type, channel);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        closed = true;
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.delete();
+        if (remote != null) {
+            remote.shutdown();
+        }
+    }
+
+    private void poll() {
+        long nextScan = 0;
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            if (now >= nextScan) {
+                segment.putLong(HEARTBEAT_OFFSET, now);
+                scan(now);
+                nextScan = now + SCAN_INTERVAL_MILLIS;
+            }
+
+            boolean idle = true;
+            for (Reader reader : readers.values()) {
+                if (reader.read()) {
+                    idle = false;
+                }
+            }
+            if (idle) {
+                LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+            }
+        }
+    }
+
+    private void scan(long now) {
+        for (Iterator<Reader> iterator = readers.values().iterator(); iterator.hasNext();) {
+            Reader reader = iterator.next();
+            if (now - reader.getHeartbeat() > STALE_TIMEOUT_MILLIS || !reader.file.exists()) {
+                log.debug("Shared memory segment of node {} is stale", reader.nodeId);
+                localNodes.remove(reader.nodeId);
+                iterator.remove();
+            }
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.equals(file) || !f.getName().endsWith(SUFFIX) || readers.containsKey(f)) {
+                continue;
+            }
+            try {
+                Reader reader = openReader(f);
+                if (reader == null || now - reader.getHeartbeat() > STALE_TIMEOUT_MILLIS) {
+                    continue;
+                }
+                readers.put(f, reader);
+                localNodes.add(reader.nodeId);
+                log.debug("Shared memory segment of node {} discovered", reader.nodeId);
+            } catch (IOException e) {
+                log.warn("Can't open shared memory segment " + f, e);
+            }
+        }
+    }
+
+    /**
+     * @return <code>null</code> if segment is not initialized yet
+     */
+    private Reader openReader(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC
+                    || buffer.capacity() < HEADER_SIZE + buffer.getInt(CAPACITY_OFFSET)) {
+                return null;
+            }
+            return new Reader(file, buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void onRecord(byte[] bytes) {
+        ByteBuf in = Unpooled.wrappedBuffer(bytes);
+        try {
+            String name = readString(in);
+            Queue<PubSubListener<PubSubMessage>> list = listeners.get(name);
+            if (list == null) {
+                return;
+            }
+            PubSubMessage msg = codec.decode(in);
+            for (PubSubListener<PubSubMessage> listener : list) {
+                listener.onMessage(msg);
+            }
+        } catch (Exception e) {
+            log.error("Can't handle shared memory message", e);
+        }
+    }
+
+    private final class Reader {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final long address;
+        private final int capacity;
+        private final Long nodeId;
+        private long readPosition;
+
+        private Reader(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.address = address(buffer);
+            this.capacity = buffer.getInt(CAPACITY_OFFSET);
+            this.nodeId = buffer.getLong(NODE_ID_OFFSET);
+            this.readPosition = acquirePosition();
+        }
+
+        /**
+         * Reads position of segment before all following reads of records
+         */
+        long acquirePosition() {
+            return UNSAFE.getLongVolatile(null, address + POSITION_OFFSET);
+        }
+
+        /**
+         * Reads position of segment after all preceding reads of records
+         */
+        long recheckPosition() {
+            UNSAFE.loadFence();
+            return UNSAFE.getLongVolatile(null, address + POSITION_OFFSET);
+        }
+
+        long getHeartbeat() {
+            return buffer.getLong(HEARTBEAT_OFFSET);
+        }
+
+        /**
+         * @return <code>true</code> if any record has been read
+         */
+        boolean read() {
+            long position = acquirePosition();
+            if (position == readPosition) {
+                return false;
+            }
+
+            while (readPosition < position) {
+                int offset = (int) (readPosition % capacity);
+                int length = buffer.getInt(HEADER_SIZE + offset);
+                if (length == WRAP) {
+                    readPosition += capacity - offset;
+                    continue;
+                }
+                if (length < 0 || align(4 + length) > capacity - offset) {
+                    skipTo(acquirePosition());
+                    return true;
+                }
+
+                byte[] bytes = new byte[length];
+                ByteBuffer src = buffer.duplicate();
+                src.position(HEADER_SIZE + offset + 4);
+                src.get(bytes);
+
+                // writer may have started to overwrite record, record size is limited to quarter of capacity
+                long latest = recheckPosition();
+                if (latest + capacity / 4 - readPosition > capacity) {
+                    skipTo(latest);
+                    return true;
+                }
+
+                readPosition += align(4 + length);
+                onRecord(bytes);
+            }
+            return true;
+        }
+
+        private void skipTo(long position) {
+            lostMessages.incrementAndGet();
+            readPosition = position;
+            log.warn("Shared memory reader is lagging behind node {}, messages skipped", nodeId);
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Deletes remote maps of disconnected sessions in batches
+ * by a background thread. Names of a failed batch are queued
+ * again and retried up to {@link #MAX_ATTEMPTS} times.
+ *
+ */
+abstract class StoreCleaner {
+
+    private static final Logger log = LoggerFactory.getLogger(StoreCleaner.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final long INTERVAL_MILLIS = 1000;
+    static final int MAX_ATTEMPTS = 5;
+
+    private static class Entry {
+
+        final String name;
+        int attempts;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+    }
+
+    private final Queue<Entry> names = new ConcurrentLinkedQueue<Entry>();
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("socketio-store-cleaner", true));
+
+    StoreCleaner() {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                clean();
+            }
+        }, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void release(UUID sessionId) {
+        names.add(new Entry(sessionId.toString()));
+    }
+
+    void clean() {
+        List<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+        // failed names are queued again only after this pass
+        List<Entry> failed = new ArrayList<Entry>();
+        while (true) {
+            Entry entry = names.poll();
+            if (entry != null) {
+                batch.add(entry);
+            }
+            if (batch.size() == BATCH_SIZE || (entry == null && !batch.isEmpty())) {
+                deleteBatch(batch, failed);
+                batch.clear();
+            }
+            if (entry == null) {
+                break;
+            }
+        }
+        names.addAll(failed);
+    }
+
+    private void deleteBatch(List<Entry> batch, List<Entry> failed) {
+        List<String> batchNames = new ArrayList<String>(batch.size());
+        for (Entry entry : batch) {
+            batchNames.add(entry.name);
+        }
+        try {
+            delete(batchNames);
+        } catch (Exception e) {
+            int dropped = 0;
+            for (Entry entry : batch) {
+                if (++entry.attempts < MAX_ATTEMPTS) {
+                    failed.add(entry);
+                } else {
+                    dropped++;
+                }
+            }
+            log.error("Can't delete stores of disconnected sessions, " + dropped
+                    + " of " + batch.size() + " dropped after " + MAX_ATTEMPTS + " attempts", e);
+        }
+    }
+
+    /**
+     * @param names - names of session maps
+     */
+    protected abstract void delete(List<String> names);
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        clean();
+    }
+
+}
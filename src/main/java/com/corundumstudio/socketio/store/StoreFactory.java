@@ -18,6 +18,7 @@ package com.corundumstudio.socketio.store;
 import java.util.Map;
 import java.util.UUID;
 
+import com.corundumstudio.socketio.AckCallback;
 import com.corundumstudio.socketio.Disconnectable;
 import com.corundumstudio.socketio.handler.AuthorizeHandler;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
@@ -39,6 +40,32 @@ public interface StoreFactory extends Disconnectable {
 
     void init(NamespacesHub namespacesHub, AuthorizeHandler authorizeHandler, JsonSupport jsonSupport);
 
+    /**
+     * Node which owns the session according to cluster session directory.
+     *
+     * @param sessionId - session id
+     * @return node id or <code>null</code> if session is unknown or connected to this node
+     */
+    default Long getSessionNode(UUID sessionId) {
+        return null;
+    }
+
+    /**
+     * Sends event to session connected to other node of cluster
+     * through private channel of that node.
+     *
+     * @param namespace - namespace name
+     * @param sessionId - session id
+     * @param name - event name
+     * @param ackCallback - ack callback, may be <code>null</code>
+     * @param data - event arguments
+     * @return <code>false</code> if owner node of session is unknown
+     *          or sending to other nodes isn't supported
+     */
+    default boolean sendToSession(String namespace, UUID sessionId, String name, AckCallback<?> ackCallback, Object... data) {
+        return false;
+    }
+
     void shutdown();
 
 }
@@ -15,30 +15,111 @@
  */
 package com.corundumstudio.socketio.store.pubsub;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.corundumstudio.socketio.AckCallback;
+import com.corundumstudio.socketio.MultiTypeAckCallback;
+import com.corundumstudio.socketio.MultiTypeArgs;
+import com.corundumstudio.socketio.SocketIOClient;
+import com.corundumstudio.socketio.SocketIONamespace;
 import com.corundumstudio.socketio.handler.AuthorizeHandler;
 import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.namespace.ClusterRooms;
+import com.corundumstudio.socketio.namespace.Namespace;
 import com.corundumstudio.socketio.namespace.NamespacesHub;
 import com.corundumstudio.socketio.protocol.JsonSupport;
 import com.corundumstudio.socketio.store.StoreFactory;
 
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
 public abstract class BaseStoreFactory implements StoreFactory {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private Long nodeId = (long) (Math.random() * 1000000);
 
+    private final ConcurrentMap<UUID, Long> sessionNodes = PlatformDependent.newConcurrentHashMap();
+    private final ConcurrentMap<Long, SessionAck> sessionAcks = PlatformDependent.newConcurrentHashMap();
+    private final AtomicLong sessionAckIndex = new AtomicLong();
+
+    private volatile boolean initialized;
+    // false if pub/sub store doesn't support channels
+    private volatile boolean sessionChannels = true;
+
+    private long heartbeatInterval = 5000;
+    private long heartbeatTimeout = 15000;
+    // time of last heartbeat or state of other nodes
+    private final ConcurrentMap<Long, Long> nodesLastSeen = PlatformDependent.newConcurrentHashMap();
+    // nodes whose last heartbeat digest didn't match their tracked state
+    private final Set<Long> divergedNodes = Collections.newSetFromMap(PlatformDependent.<Long, Boolean>newConcurrentHashMap());
+    // heartbeats and timeouts of acks requested from other nodes
+    private volatile ScheduledExecutorService scheduler;
+    private volatile NamespacesHub namespacesHub;
+
     protected Long getNodeId() {
         return nodeId;
     }
 
+    /**
+     * Failure detection of other nodes. Each node publishes heartbeats
+     * and room membership of node whose heartbeats stop is forgotten,
+     * see {@link Namespace#onRemoteNodeRemoved(Long)}.
+     * Timeout should be a few times longer than interval.
+     * Heartbeat carries digest of room membership of node, room states
+     * are exchanged again once it doesn't match membership tracked by other node.
+     * <code>0</code> interval disables heartbeats and failure detection.
+     * <p>
+     * Default is <code>5000</code> and <code>15000</code>
+     *
+     * @param interval - heartbeat interval in milliseconds
+     * @param timeout - time in milliseconds without heartbeats after which node is removed
+     * @throws IllegalStateException if server has been started
+     */
+    public void setNodeHeartbeat(long interval, long timeout) {
+        checkNotInitialized();
+        if (interval > 0 && timeout <= interval) {
+            throw new IllegalArgumentException("timeout should be longer than interval");
+        }
+        this.heartbeatInterval = interval;
+        this.heartbeatTimeout = timeout;
+    }
+
+    /**
+     * @throws IllegalStateException if factory has been initialized by server
+     */
+    protected void checkNotInitialized() {
+        if (initialized) {
+            throw new IllegalStateException("Pub/sub settings can't be changed after server start");
+        }
+    }
+
     @Override
     public void init(final NamespacesHub namespacesHub, final AuthorizeHandler authorizeHandler, JsonSupport jsonSupport) {
+        initialized = true;
+        this.namespacesHub = namespacesHub;
+        // thread is started on first task
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("socketio-store-scheduler", true));
         pubSubStore().subscribe(PubSubType.DISCONNECT, new PubSubListener<DisconnectMessage>() {
             @Override
             public void onMessage(DisconnectMessage msg) {
+                sessionNodes.remove(msg.getSessionId(), msg.getNodeId());
                 log.debug("{} sessionId: {}", PubSubType.DISCONNECT, msg.getSessionId());
             }
         }, DisconnectMessage.class);
@@ -47,6 +128,7 @@ public abstract class BaseStoreFactory implements StoreFactory {
             @Override
             public void onMessage(ConnectMessage msg) {
                 authorizeHandler.connect(msg.getSessionId());
+                sessionNodes.put(msg.getSessionId(), msg.getNodeId());
                 log.debug("{} sessionId: {}", PubSubType.CONNECT, msg.getSessionId());
             }
         }, ConnectMessage.class);
@@ -64,9 +146,10 @@ public abstract class BaseStoreFactory implements StoreFactory {
         pubSubStore().subscribe(PubSubType.JOIN, new PubSubListener<JoinLeaveMessage>() {
             @Override
             public void onMessage(JoinLeaveMessage msg) {
-                String roomName = msg.getRoom();
-
-                namespacesHub.get(msg.getNamespace()).join(roomName, msg.getSessionId());
+                Namespace n = namespacesHub.get(msg.getNamespace());
+                if (n != null) {
+                    n.onRemoteJoin(msg.getRoom(), msg.getNodeId());
+                }
                 log.debug("{} sessionId: {}", PubSubType.JOIN, msg.getSessionId());
             }
         }, JoinLeaveMessage.class);
@@ -74,12 +157,390 @@ public abstract class BaseStoreFactory implements StoreFactory {
         pubSubStore().subscribe(PubSubType.LEAVE, new PubSubListener<JoinLeaveMessage>() {
             @Override
             public void onMessage(JoinLeaveMessage msg) {
-                String roomName = msg.getRoom();
-
-                namespacesHub.get(msg.getNamespace()).leave(roomName, msg.getSessionId());
+                Namespace n = namespacesHub.get(msg.getNamespace());
+                if (n != null) {
+                    n.onRemoteLeave(msg.getRoom(), msg.getNodeId());
+                }
                 log.debug("{} sessionId: {}", PubSubType.LEAVE, msg.getSessionId());
             }
         }, JoinLeaveMessage.class);
+
+        String channel = String.valueOf(nodeId);
+        try {
+            subscribeSessionChannel(namespacesHub, channel);
+        } catch (UnsupportedOperationException e) {
+            sessionChannels = false;
+            log.warn("Sending to sessions of other nodes is disabled: {}", e.getMessage());
+        }
+
+        if (heartbeatInterval > 0) {
+            startHeartbeat();
+        }
+    }
+
+    private void startHeartbeat() {
+        pubSubStore().subscribe(PubSubType.HEARTBEAT, new PubSubListener<HeartbeatMessage>() {
+            @Override
+            public void onMessage(HeartbeatMessage msg) {
+                if (nodeId.equals(msg.getNodeId())) {
+                    return;
+                }
+                if (nodesLastSeen.put(msg.getNodeId(), System.currentTimeMillis()) == null) {
+                    // joined or returned node, exchange states with it
+                    log.info("Node {} joined", msg.getNodeId());
+                    publishNodeState(true);
+                } else {
+                    checkStateDigest(msg);
+                }
+            }
+        }, HeartbeatMessage.class);
+
+        pubSubStore().subscribe(PubSubType.NODE_STATE, new PubSubListener<NodeStateMessage>() {
+            @Override
+            public void onMessage(NodeStateMessage msg) {
+                if (nodeId.equals(msg.getNodeId())) {
+                    return;
+                }
+                onNodeState(msg);
+                log.debug("{} nodeId: {}", PubSubType.NODE_STATE, msg.getNodeId());
+            }
+        }, NodeStateMessage.class);
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pubSubStore().publish(PubSubType.HEARTBEAT, new HeartbeatMessage(localStateDigest()));
+                    removeExpiredNodes();
+                } catch (Exception e) {
+                    log.error("Can't publish heartbeat", e);
+                }
+            }
+        }, 0, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        // request states of running nodes
+        publishNodeState(true);
+    }
+
+    /**
+     * Requests states of nodes once room membership tracked for node
+     * doesn't match its heartbeat digest twice in a row, e.g. due to lost
+     * or duplicated join message. Single mismatch could be caused
+     * by membership change published concurrently with heartbeat.
+     */
+    private void checkStateDigest(HeartbeatMessage msg) {
+        if (msg.getStateDigest() == remoteStateDigest(msg.getNodeId())) {
+            divergedNodes.remove(msg.getNodeId());
+            return;
+        }
+        if (divergedNodes.add(msg.getNodeId())) {
+            return;
+        }
+        divergedNodes.remove(msg.getNodeId());
+        log.warn("Room membership of node {} has diverged, requesting node states", msg.getNodeId());
+        publishNodeState(true);
+    }
+
+    private long localStateDigest() {
+        long result = 0;
+        for (SocketIONamespace namespace : namespacesHub.getAllNamespaces()) {
+            long digest = ClusterRooms.digest(((Namespace) namespace).getLocalRoomSizes());
+            result += namespaceDigest(namespace.getName(), digest);
+        }
+        return result;
+    }
+
+    private long remoteStateDigest(Long nodeId) {
+        long result = 0;
+        for (SocketIONamespace namespace : namespacesHub.getAllNamespaces()) {
+            long digest = ((Namespace) namespace).getRemoteRoomsDigest(nodeId);
+            result += namespaceDigest(namespace.getName(), digest);
+        }
+        return result;
+    }
+
+    private static long namespaceDigest(String name, long roomsDigest) {
+        if (roomsDigest == 0) {
+            // namespace may not exist on other node
+            return 0;
+        }
+        return (name.hashCode() * 0x9E3779B97F4A7C15L) ^ roomsDigest;
+    }
+
+    private void onNodeState(NodeStateMessage msg) {
+        nodesLastSeen.put(msg.getNodeId(), System.currentTimeMillis());
+        divergedNodes.remove(msg.getNodeId());
+        for (SocketIONamespace namespace : namespacesHub.getAllNamespaces()) {
+            Map<String, Integer> rooms = msg.getRooms().get(namespace.getName());
+            if (rooms == null) {
+                rooms = Collections.emptyMap();
+            }
+            ((Namespace) namespace).onRemoteNodeState(msg.getNodeId(), rooms);
+        }
+        if (msg.isSyncRequested()) {
+            publishNodeState(false);
+        }
+    }
+
+    private void publishNodeState(boolean syncRequested) {
+        Map<String, Map<String, Integer>> rooms = new HashMap<String, Map<String, Integer>>();
+        for (SocketIONamespace namespace : namespacesHub.getAllNamespaces()) {
+            Map<String, Integer> sizes = ((Namespace) namespace).getLocalRoomSizes();
+            if (!sizes.isEmpty()) {
+                rooms.put(namespace.getName(), sizes);
+            }
+        }
+        pubSubStore().publish(PubSubType.NODE_STATE, new NodeStateMessage(rooms, syncRequested));
+    }
+
+    private void removeExpiredNodes() {
+        long expired = System.currentTimeMillis() - heartbeatTimeout;
+        for (Map.Entry<Long, Long> entry : nodesLastSeen.entrySet()) {
+            if (entry.getValue() < expired
+                    && nodesLastSeen.remove(entry.getKey(), entry.getValue())) {
+                log.warn("Node {} has no heartbeats for {} ms, removing it", entry.getKey(), heartbeatTimeout);
+                removeNode(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Invoked once other node is considered failed, e.g. by its heartbeat expiration
+     * or by disconnection of its mesh connection. Node which is still alive
+     * is added back with its state by next heartbeat.
+     *
+     * @param nodeId - id of failed node
+     */
+    protected void onNodeLeft(Long nodeId) {
+        if (nodesLastSeen.remove(nodeId) != null) {
+            log.warn("Node {} is disconnected, removing it", nodeId);
+        }
+        removeNode(nodeId);
+    }
+
+    /**
+     * Exchanges room states with other nodes, e.g. once connection
+     * to other node is restored and messages published meanwhile could be lost
+     */
+    protected void requestNodeStates() {
+        if (namespacesHub == null || heartbeatInterval <= 0) {
+            return;
+        }
+        publishNodeState(true);
+    }
+
+    private void removeNode(Long nodeId) {
+        NamespacesHub hub = namespacesHub;
+        if (hub == null) {
+            return;
+        }
+        for (SocketIONamespace namespace : hub.getAllNamespaces()) {
+            ((Namespace) namespace).onRemoteNodeRemoved(nodeId);
+        }
+
+        divergedNodes.remove(nodeId);
+        sessionNodes.values().removeAll(Collections.singleton(nodeId));
+        for (Map.Entry<Long, SessionAck> entry : sessionAcks.entrySet()) {
+            if (nodeId.equals(entry.getValue().nodeId)
+                    && sessionAcks.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().complete(null);
+            }
+        }
+    }
+
+    /**
+     * @return ids of other nodes which send heartbeats
+     */
+    public Set<Long> getNodes() {
+        return Collections.unmodifiableSet(nodesLastSeen.keySet());
+    }
+
+    /**
+     * Stops heartbeats and ack timeouts, should be invoked by {@link #shutdown()} of subclass
+     */
+    @Override
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void subscribeSessionChannel(final NamespacesHub namespacesHub, String channel) {
+        pubSubStore().subscribe(PubSubType.SESSION, channel, new PubSubListener<SessionMessage>() {
+            @Override
+            public void onMessage(SessionMessage msg) {
+                onSessionMessage(namespacesHub, msg);
+                log.debug("{} sessionId: {}", PubSubType.SESSION, msg.getSessionId());
+            }
+        }, SessionMessage.class);
+
+        pubSubStore().subscribe(PubSubType.SESSION_ACK, channel, new PubSubListener<SessionAckMessage>() {
+            @Override
+            public void onMessage(SessionAckMessage msg) {
+                onSessionAck(msg);
+                log.debug("{} ackId: {}", PubSubType.SESSION_ACK, msg.getAckId());
+            }
+        }, SessionAckMessage.class);
+    }
+
+    @Override
+    public Long getSessionNode(UUID sessionId) {
+        return sessionNodes.get(sessionId);
+    }
+
+    /**
+     * Ack requested by this method is completed once remote client responds
+     * or remote node reports timeout or disconnection of client.
+     * It's also timed out by this node after {@link AckCallback#getTimeout()}
+     * and once remote node is considered failed.
+     */
+    @Override
+    public boolean sendToSession(String namespace, UUID sessionId, String name, AckCallback<?> ackCallback, Object... data) {
+        Long node = sessionNodes.get(sessionId);
+        if (node == null || !sessionChannels) {
+            return false;
+        }
+
+        List<Object> args = Arrays.asList(data);
+        SessionMessage msg;
+        if (ackCallback == null) {
+            msg = new SessionMessage(sessionId, namespace, name, args);
+        } else {
+            long ackId = sessionAckIndex.incrementAndGet();
+            Class<?>[] resultClasses = new Class<?>[] {ackCallback.getResultClass()};
+            if (ackCallback instanceof MultiTypeAckCallback) {
+                resultClasses = ((MultiTypeAckCallback) ackCallback).getResultClasses();
+            }
+            SessionAck sessionAck = new SessionAck(node, ackCallback);
+            sessionAcks.put(ackId, sessionAck);
+            scheduleAckTimeout(ackId, sessionAck);
+            msg = new SessionMessage(sessionId, namespace, name, args,
+                                        ackId, resultClasses, ackCallback.getTimeout());
+        }
+        pubSubStore().publish(PubSubType.SESSION, String.valueOf(node), msg);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onSessionMessage(NamespacesHub namespacesHub, SessionMessage msg) {
+        final Long ackId = msg.getAckId();
+        final String senderChannel = String.valueOf(msg.getNodeId());
+
+        Namespace namespace = namespacesHub.get(msg.getNamespace());
+        SocketIOClient client = null;
+        if (namespace != null) {
+            client = namespace.getClient(msg.getSessionId());
+        }
+        if (client == null) {
+            if (ackId != null) {
+                pubSubStore().publish(PubSubType.SESSION_ACK, senderChannel, new SessionAckMessage(ackId));
+            }
+            return;
+        }
+
+        Object[] data = msg.getArgs().toArray();
+        if (ackId == null) {
+            client.sendEvent(msg.getName(), data);
+            return;
+        }
+
+        Class<?>[] resultClasses = msg.getAckResultClasses();
+        AckCallback<?> ackCallback;
+        if (resultClasses.length == 1 && !MultiTypeArgs.class.equals(resultClasses[0])) {
+            ackCallback = new AckCallback<Object>((Class<Object>) resultClasses[0], msg.getAckTimeout()) {
+                @Override
+                public void onSuccess(Object result) {
+                    pubSubStore().publish(PubSubType.SESSION_ACK, senderChannel,
+                                            new SessionAckMessage(ackId, Collections.singletonList(result)));
+                }
+
+                @Override
+                public void onTimeout() {
+                    pubSubStore().publish(PubSubType.SESSION_ACK, senderChannel, new SessionAckMessage(ackId));
+                }
+            };
+        } else {
+            ackCallback = new MultiTypeAckCallback(resultClasses) {
+                @Override
+                public void onSuccess(MultiTypeArgs result) {
+                    pubSubStore().publish(PubSubType.SESSION_ACK, senderChannel,
+                                            new SessionAckMessage(ackId, result.getArgs()));
+                }
+
+                @Override
+                public void onTimeout() {
+                    pubSubStore().publish(PubSubType.SESSION_ACK, senderChannel, new SessionAckMessage(ackId));
+                }
+            };
+        }
+        client.sendEvent(msg.getName(), ackCallback, data);
+    }
+
+    private void scheduleAckTimeout(final Long ackId, final SessionAck sessionAck) {
+        int timeout = sessionAck.callback.getTimeout();
+        ScheduledExecutorService executor = scheduler;
+        if (timeout == -1 || executor == null) {
+            return;
+        }
+        try {
+            sessionAck.timeoutFuture = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (sessionAcks.remove(ackId, sessionAck)) {
+                        sessionAck.complete(null);
+                    }
+                }
+            }, timeout, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // factory is shut down
+        }
+    }
+
+    private void onSessionAck(SessionAckMessage msg) {
+        SessionAck sessionAck = sessionAcks.remove(msg.getAckId());
+        if (sessionAck != null) {
+            sessionAck.complete(msg);
+        }
+    }
+
+    /**
+     * Ack requested from other node
+     */
+    private static class SessionAck {
+
+        final Long nodeId;
+        final AckCallback<?> callback;
+        volatile ScheduledFuture<?> timeoutFuture;
+
+        SessionAck(Long nodeId, AckCallback<?> callback) {
+            this.nodeId = nodeId;
+            this.callback = callback;
+        }
+
+        /**
+         * Invoked once ack is removed from pending ones
+         *
+         * @param msg - response or <code>null</code> if ack is timed out by this node
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void complete(SessionAckMessage msg) {
+            ScheduledFuture<?> future = timeoutFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+
+            AckCallback ackCallback = callback;
+            if (msg == null || msg.isTimeout()) {
+                ackCallback.onTimeout();
+                return;
+            }
+            if (ackCallback instanceof MultiTypeAckCallback) {
+                ackCallback.onSuccess(new MultiTypeArgs(msg.getArgs()));
+            } else {
+                ackCallback.onSuccess(msg.getArgs().isEmpty() ? null : msg.getArgs().get(0));
+            }
+        }
+
     }
 
     @Override
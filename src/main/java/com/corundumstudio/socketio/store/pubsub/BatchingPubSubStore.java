@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Decorator which groups published messages by {@link PubSubType} and channel
+ * and publishes them as {@link BatchMessage} envelopes to underlying store.
+ * Envelope is published once it reaches <code>maxBatchSize</code> messages
+ * or after <code>lingerMillis</code> since its first message.
+ * Received envelopes are unpacked, so listeners get messages one by one.
+ * <p>
+ * Order of messages of the same type is kept.
+ * Messages shouldn't be modified after publishing.
+ * All nodes should use this decorator, since plain stores
+ * don't unpack envelopes.
+ *
+ */
+public class BatchingPubSubStore implements PubSubStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingPubSubStore.class);
+
+    private final PubSubStore delegate;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("socketio-pubsub-batch", true));
+    private final Batch[] batches = new Batch[PubSubType.values().length];
+    // batches of channels are removed once flushed
+    private final ConcurrentMap<String, Batch> channelBatches = PlatformDependent.newConcurrentHashMap();
+
+    /**
+     * @param delegate - store used to publish envelopes
+     * @param maxBatchSize - max amount of messages in envelope
+     * @param lingerMillis - max delay of message publishing, 1-5 ms is usually enough
+     */
+    public BatchingPubSubStore(PubSubStore delegate, int maxBatchSize, long lingerMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize should be positive");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        for (PubSubType type : PubSubType.values()) {
+            batches[type.ordinal()] = new Batch(type, null);
+        }
+    }
+
+    @Override
+    public void publish(PubSubType type, PubSubMessage msg) {
+        batches[type.ordinal()].add(msg);
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        String key = type + ":" + channel;
+        Batch batch = channelBatches.get(key);
+        if (batch == null) {
+            batch = new Batch(type, channel);
+            Batch oldBatch = channelBatches.putIfAbsent(key, batch);
+            if (oldBatch != null) {
+                batch = oldBatch;
+            }
+        }
+        batch.add(msg);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, final PubSubListener<T> listener, Class<T> clazz) {
+        delegate.subscribe(type, unpacking(listener), PubSubMessage.class);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        delegate.subscribe(type, channel, unpacking(listener), PubSubMessage.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends PubSubMessage> PubSubListener<PubSubMessage> unpacking(final PubSubListener<T> listener) {
+        return new PubSubListener<PubSubMessage>() {
+            @Override
+            public void onMessage(PubSubMessage msg) {
+                if (!(msg instanceof BatchMessage)) {
+                    listener.onMessage((T) msg);
+                    return;
+                }
+
+                List<PubSubMessage> messages = ((BatchMessage) msg).getMessages();
+                for (int i = 0; i < messages.size(); i++) {
+                    PubSubMessage message = messages.get(i);
+                    message.setNodeId(msg.getNodeId());
+                    listener.onMessage((T) message);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type) {
+        delegate.unsubscribe(type);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        delegate.unsubscribe(type, channel);
+    }
+
+    /**
+     * Publishes pending messages and shuts down underlying store
+     */
+    @Override
+    public void shutdown() {
+        // pending linger tasks are cancelled, their batches are flushed below
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Batch batch : batches) {
+            batch.flush();
+        }
+        for (Batch batch : channelBatches.values()) {
+            batch.flush();
+        }
+        delegate.shutdown();
+    }
+
+    private class Batch implements Runnable {
+
+        private final PubSubType type;
+        private final String channel;
+        // keeps order of envelopes flushed by publishers and by timer
+        private final Object publishLock = new Object();
+
+        private List<PubSubMessage> messages = new ArrayList<PubSubMessage>();
+        private boolean scheduled;
+
+        Batch(PubSubType type, String channel) {
+            this.type = type;
+            this.channel = channel;
+        }
+
+        void add(PubSubMessage msg) {
+            boolean full;
+            synchronized (this) {
+                messages.add(msg);
+                full = messages.size() >= maxBatchSize;
+                if (!full && !scheduled) {
+                    try {
+                        executor.schedule(this, lingerMillis, TimeUnit.MILLISECONDS);
+                        scheduled = true;
+                    } catch (RejectedExecutionException e) {
+                        // store is shut down
+                        full = true;
+                    }
+                }
+            }
+            if (full) {
+                flush();
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                scheduled = false;
+            }
+            flush();
+
+            if (channel != null) {
+                synchronized (this) {
+                    if (messages.isEmpty() && !scheduled) {
+                        channelBatches.remove(type + ":" + channel, this);
+                    }
+                }
+            }
+        }
+
+        void flush() {
+            synchronized (publishLock) {
+                List<PubSubMessage> pending;
+                synchronized (this) {
+                    pending = messages;
+                    messages = new ArrayList<PubSubMessage>();
+                }
+                publish(pending);
+            }
+        }
+
+        private void publish(List<PubSubMessage> pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                PubSubMessage msg = pending.get(0);
+                if (pending.size() > 1) {
+                    msg = new BatchMessage(pending);
+                }
+                if (channel == null) {
+                    delegate.publish(type, msg);
+                } else {
+                    delegate.publish(type, channel, msg);
+                }
+            } catch (Exception e) {
+                log.error("Can't publish " + pending.size() + " " + type + " messages", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+/**
+ * Published periodically by each node, see {@link BaseStoreFactory#setNodeHeartbeat(long, long)}.
+ * Node is considered failed if its heartbeats stop.
+ * Carries digest of room membership of node, so other nodes
+ * can detect that their view of node state has diverged.
+ *
+ */
+public class HeartbeatMessage extends PubSubMessage {
+
+    private static final long serialVersionUID = -3364880427357366146L;
+
+    private long stateDigest;
+
+    public HeartbeatMessage() {
+    }
+
+    public HeartbeatMessage(long stateDigest) {
+        this.stateDigest = stateDigest;
+    }
+
+    /**
+     * @return digest of room membership of node,
+     *          see {@link com.corundumstudio.socketio.namespace.ClusterRooms#digest(java.util.Map)}
+     */
+    public long getStateDigest() {
+        return stateDigest;
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keys of session store changed by other node,
+ * which should be dropped from near-cache.
+ *
+ */
+public class InvalidateMessage extends PubSubMessage {
+
+    private static final long serialVersionUID = 5517062446410731283L;
+
+    private UUID sessionId;
+    private List<String> keys;
+
+    public InvalidateMessage() {
+    }
+
+    public InvalidateMessage(UUID sessionId, List<String> keys) {
+        this.sessionId = sessionId;
+        this.keys = keys;
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+}
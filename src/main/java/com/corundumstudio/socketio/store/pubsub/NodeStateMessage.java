@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.Map;
+
+/**
+ * Room membership of node published once it's seen by other nodes,
+ * replaces membership of this node known to receivers.
+ *
+ */
+public class NodeStateMessage extends PubSubMessage {
+
+    private static final long serialVersionUID = 2861573436913843071L;
+
+    private Map<String, Map<String, Integer>> rooms;
+    private boolean syncRequested;
+
+    public NodeStateMessage() {
+    }
+
+    /**
+     * @param rooms - amount of local members of rooms by namespace name
+     * @param syncRequested - receivers should publish their state in response
+     */
+    public NodeStateMessage(Map<String, Map<String, Integer>> rooms, boolean syncRequested) {
+        this.rooms = rooms;
+        this.syncRequested = syncRequested;
+    }
+
+    public Map<String, Map<String, Integer>> getRooms() {
+        return rooms;
+    }
+
+    public boolean isSyncRequested() {
+        return syncRequested;
+    }
+
+}
@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.corundumstudio.socketio.protocol.JsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Binary codec of {@link PubSubMessage}s used by distributed stores
+ * instead of java serialization.
+ * <p>
+ * Message is written as type tag followed by varint node id and its fields:
+ * session ids as two longs, strings as varint length and UTF-8 bytes.
+ * Event packet of {@link DispatchMessage} is written with its arguments
+ * encoded to JSON by {@link #prepare(PubSubMessage)}, so receiver
+ * sends them to clients as is.
+ * Packets which can't be encoded this way, like ones with binary attachments,
+ * and messages of other classes fall back to java serialization.
+ * Classes read by java serialization can be restricted by {@link #setAllowedClasses(List)},
+ * which should be done if messages are received from untrusted network.
+ *
+ */
+public class PubSubMessageCodec {
+
+    /**
+     * Classes of messages and packets with types of their fields,
+     * boxed primitives, strings and standard lists, maps and sets of arguments.
+     * Other argument classes should be added to this list explicitly.
+     */
+    public static final List<String> DEFAULT_ALLOWED_CLASSES = Collections.unmodifiableList(
+            Arrays.asList("com.corundumstudio.socketio.store.pubsub.",
+                    "com.corundumstudio.socketio.protocol.Packet",
+                    "com.corundumstudio.socketio.protocol.PacketType",
+                    "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short",
+                    "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double",
+                    "java.lang.Number", "java.lang.Enum", "java.lang.String", "java.lang.Class", "java.lang.Object",
+                    "java.util.UUID", "java.util.ArrayList", "java.util.Arrays$ArrayList",
+                    "java.util.HashMap", "java.util.LinkedHashMap", "java.util.HashSet", "java.util.LinkedHashSet",
+                    "java.util.Collections$Empty", "java.util.Collections$Singleton",
+                    "java.util.Collections$Unmodifiable"));
+
+    private static final byte SERIALIZED = 0;
+    private static final byte CONNECT = 1;
+    private static final byte DISCONNECT = 2;
+    private static final byte JOIN_LEAVE = 3;
+    private static final byte DISPATCH = 4;
+    private static final byte BATCH = 5;
+    private static final byte HEARTBEAT = 6;
+    private static final byte NODE_STATE = 7;
+
+    private static final byte PACKET_SERIALIZED = 0;
+    private static final byte PACKET_EVENT = 1;
+
+    private final StringCache strings = new StringCache(1024);
+
+    private volatile JsonSupport jsonSupport;
+    private volatile List<String> allowedClasses;
+
+    /**
+     * @param jsonSupport - used to encode arguments of dispatched events
+     */
+    public void setJsonSupport(JsonSupport jsonSupport) {
+        this.jsonSupport = jsonSupport;
+    }
+
+    /**
+     * Restricts classes which can be read by java serialization fallback,
+     * any other class fails decoding of message.
+     * List should include classes of event arguments and ack results
+     * sent to other nodes with binary attachments or by
+     * {@link com.corundumstudio.socketio.store.StoreFactory#sendToSession}.
+     * <p>
+     * Default is <code>null</code> - any class is allowed
+     *
+     * @param allowedClasses - class names or their prefixes, e.g. package name with trailing dot,
+     *                  see {@link #DEFAULT_ALLOWED_CLASSES}
+     */
+    public void setAllowedClasses(List<String> allowedClasses) {
+        if (allowedClasses == null) {
+            this.allowedClasses = null;
+        } else {
+            this.allowedClasses = new ArrayList<String>(allowedClasses);
+        }
+    }
+
+    public boolean isSerializationRestricted() {
+        return allowedClasses != null;
+    }
+
+    /**
+     * Encodes arguments of dispatched event packets to JSON.
+     * Original message isn't modified since its packet
+     * could be concurrently sent to local clients.
+     *
+     * @param msg - message to publish
+     * @return message with encoded arguments or <code>msg</code> itself
+     */
+    public PubSubMessage prepare(PubSubMessage msg) {
+        if (msg instanceof BatchMessage) {
+            List<PubSubMessage> messages = ((BatchMessage) msg).getMessages();
+            List<PubSubMessage> prepared = new ArrayList<PubSubMessage>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                prepared.add(prepare(messages.get(i)));
+            }
+            BatchMessage result = new BatchMessage(prepared);
+            result.setNodeId(msg.getNodeId());
+            return result;
+        }
+        if (msg.getClass() != DispatchMessage.class) {
+            return msg;
+        }
+
+        DispatchMessage dispatchMessage = (DispatchMessage) msg;
+        Packet packet = dispatchMessage.getPacket();
+        JsonSupport json = jsonSupport;
+        Object data = packet.getData();
+        if (json == null
+                || packet.getSubType() != PacketType.EVENT
+                || packet.getEncodedArgs() != null
+                || packet.hasAttachments()
+                || !(data instanceof List)) {
+            return msg;
+        }
+
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            json.writeValue(new ByteBufOutputStream(buf), data);
+            if (!json.getArrays().isEmpty()) {
+                // binary attachments are sent separately from JSON
+                return msg;
+            }
+
+            Packet encoded = new Packet(packet.getType());
+            encoded.setSubType(packet.getSubType());
+            encoded.setNsp(packet.getNsp());
+            encoded.setName(packet.getName());
+            encoded.setAckId(packet.getAckId());
+            encoded.setOffset(packet.getOffset());
+            encoded.setData(Collections.emptyList());
+            // strip brackets of arguments array
+            encoded.setEncodedArgs(ByteBufUtil.getBytes(buf, buf.readerIndex() + 1, buf.readableBytes() - 2));
+
+            DispatchMessage result = new DispatchMessage(dispatchMessage.getRoom(), encoded, dispatchMessage.getNamespace());
+            result.setNodeId(msg.getNodeId());
+            return result;
+        } catch (IOException e) {
+            return msg;
+        } finally {
+            buf.release();
+        }
+    }
+
+    public void encode(PubSubMessage msg, ByteBuf out) throws IOException {
+        Class<?> clazz = msg.getClass();
+        if (clazz == ConnectMessage.class) {
+            writeHeader(out, CONNECT, msg);
+            writeUUID(out, ((ConnectMessage) msg).getSessionId());
+        } else if (clazz == DisconnectMessage.class) {
+            writeHeader(out, DISCONNECT, msg);
+            writeUUID(out, ((DisconnectMessage) msg).getSessionId());
+        } else if (clazz == JoinLeaveMessage.class) {
+            JoinLeaveMessage m = (JoinLeaveMessage) msg;
+            writeHeader(out, JOIN_LEAVE, msg);
+            writeUUID(out, m.getSessionId());
+            writeString(out, m.getNamespace());
+            writeString(out, m.getRoom());
+        } else if (clazz == DispatchMessage.class) {
+            DispatchMessage m = (DispatchMessage) msg;
+            writeHeader(out, DISPATCH, msg);
+            writeString(out, m.getNamespace());
+            writeString(out, m.getRoom());
+            writePacket(out, m.getPacket());
+        } else if (clazz == HeartbeatMessage.class) {
+            writeHeader(out, HEARTBEAT, msg);
+            out.writeLong(((HeartbeatMessage) msg).getStateDigest());
+        } else if (clazz == NodeStateMessage.class) {
+            NodeStateMessage m = (NodeStateMessage) msg;
+            writeHeader(out, NODE_STATE, msg);
+            out.writeBoolean(m.isSyncRequested());
+            writeVarLong(out, m.getRooms().size());
+            for (Map.Entry<String, Map<String, Integer>> namespace : m.getRooms().entrySet()) {
+                writeString(out, namespace.getKey());
+                writeVarLong(out, namespace.getValue().size());
+                for (Map.Entry<String, Integer> room : namespace.getValue().entrySet()) {
+                    writeString(out, room.getKey());
+                    writeVarLong(out, room.getValue());
+                }
+            }
+        } else if (clazz == BatchMessage.class) {
+            List<PubSubMessage> messages = ((BatchMessage) msg).getMessages();
+            writeHeader(out, BATCH, msg);
+            writeVarLong(out, messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                encode(messages.get(i), out);
+            }
+        } else {
+            out.writeByte(SERIALIZED);
+            writeSerialized(out, msg);
+        }
+    }
+
+    public PubSubMessage decode(ByteBuf in) throws IOException {
+        byte tag = in.readByte();
+        if (tag == SERIALIZED) {
+            return (PubSubMessage) readSerialized(in);
+        }
+
+        Long nodeId = readNullableLong(in);
+        PubSubMessage msg;
+        switch (tag) {
+        case CONNECT:
+            msg = new ConnectMessage(readUUID(in));
+            break;
+        case DISCONNECT:
+            msg = new DisconnectMessage(readUUID(in));
+            break;
+        case JOIN_LEAVE: {
+            UUID sessionId = readUUID(in);
+            String namespace = readString(in);
+            String room = readString(in);
+            msg = new JoinLeaveMessage(sessionId, room, namespace);
+            break;
+        }
+        case DISPATCH: {
+            String namespace = readString(in);
+            String room = readString(in);
+            msg = new DispatchMessage(room, readPacket(in), namespace);
+            break;
+        }
+        case HEARTBEAT:
+            msg = new HeartbeatMessage(in.readLong());
+            break;
+        case NODE_STATE: {
+            boolean syncRequested = in.readBoolean();
+            int namespacesCount = (int) readVarLong(in);
+            Map<String, Map<String, Integer>> rooms = new HashMap<String, Map<String, Integer>>();
+            for (int i = 0; i < namespacesCount; i++) {
+                String namespace = readString(in);
+                int roomsCount = (int) readVarLong(in);
+                Map<String, Integer> namespaceRooms = new HashMap<String, Integer>();
+                for (int j = 0; j < roomsCount; j++) {
+                    String room = readString(in);
+                    namespaceRooms.put(room, (int) readVarLong(in));
+                }
+                rooms.put(namespace, namespaceRooms);
+            }
+            msg = new NodeStateMessage(rooms, syncRequested);
+            break;
+        }
+        case BATCH: {
+            int size = (int) readVarLong(in);
+            List<PubSubMessage> messages = new ArrayList<PubSubMessage>(size);
+            for (int i = 0; i < size; i++) {
+                messages.add(decode(in));
+            }
+            msg = new BatchMessage(messages);
+            break;
+        }
+        default:
+            throw new IOException("Unknown message type: " + tag);
+        }
+        msg.setNodeId(nodeId);
+        return msg;
+    }
+
+    private void writeHeader(ByteBuf out, byte tag, PubSubMessage msg) {
+        out.writeByte(tag);
+        writeNullableLong(out, msg.getNodeId());
+    }
+
+    private void writePacket(ByteBuf out, Packet packet) throws IOException {
+        if (packet.getSubType() != PacketType.EVENT
+                || packet.getEncodedArgs() == null
+                || packet.hasAttachments()) {
+            out.writeByte(PACKET_SERIALIZED);
+            writeSerialized(out, packet);
+            return;
+        }
+
+        out.writeByte(PACKET_EVENT);
+        out.writeByte(packet.getType().ordinal());
+        writeString(out, packet.getNsp());
+        writeString(out, packet.getName());
+        writeNullableLong(out, packet.getAckId());
+        writeVarLong(out, packet.getOffset());
+        byte[] args = packet.getEncodedArgs();
+        writeVarLong(out, args.length);
+        out.writeBytes(args);
+    }
+
+    private Packet readPacket(ByteBuf in) throws IOException {
+        if (in.readByte() == PACKET_SERIALIZED) {
+            return (Packet) readSerialized(in);
+        }
+
+        Packet packet = new Packet(PacketType.VALUES[in.readByte()]);
+        packet.setSubType(PacketType.EVENT);
+        packet.setNsp(readString(in));
+        packet.setName(readString(in));
+        packet.setAckId(readNullableLong(in));
+        packet.setOffset(readVarLong(in));
+        packet.setData(Collections.emptyList());
+        byte[] args = new byte[(int) readVarLong(in)];
+        in.readBytes(args);
+        packet.setEncodedArgs(args);
+        return packet;
+    }
+
+    private void writeUUID(ByteBuf out, UUID value) {
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private UUID readUUID(ByteBuf in) {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    private String readString(ByteBuf in) {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        return strings.read(in, length - 1);
+    }
+
+    private void writeNullableLong(ByteBuf out, Long value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+        } else {
+            writeVarLong(out, value + 1);
+        }
+    }
+
+    private Long readNullableLong(ByteBuf in) {
+        long value = readVarLong(in);
+        if (value == 0) {
+            return null;
+        }
+        return value - 1;
+    }
+
+    private void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    private void writeSerialized(ByteBuf out, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(bytes);
+        stream.writeObject(value);
+        stream.close();
+        writeVarLong(out, bytes.size());
+        out.writeBytes(bytes.toByteArray());
+    }
+
+    private Object readSerialized(ByteBuf in) throws IOException {
+        int length = (int) readVarLong(in);
+        InputStream input = new ByteBufInputStream(in.readSlice(length));
+        List<String> allowed = allowedClasses;
+        ObjectInputStream stream;
+        if (allowed == null) {
+            stream = new ObjectInputStream(input);
+        } else {
+            stream = new AllowedClassesInputStream(input, allowed);
+        }
+        try {
+            return stream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static class AllowedClassesInputStream extends ObjectInputStream {
+
+        private final List<String> allowedClasses;
+
+        AllowedClassesInputStream(InputStream in, List<String> allowedClasses) throws IOException {
+            super(in);
+            this.allowedClasses = allowedClasses;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class isn't allowed to be deserialized");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes aren't allowed to be deserialized");
+        }
+
+        private boolean isAllowed(String className) {
+            String name = className;
+            if (name.startsWith("[")) {
+                name = name.substring(name.lastIndexOf('[') + 1);
+                if (name.length() == 1) {
+                    // array of primitives
+                    return true;
+                }
+                // element class written as Lname;
+                name = name.substring(1, name.length() - 1);
+            }
+            for (String prefix : allowedClasses) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -24,6 +24,28 @@ public interface PubSubStore {
 
     void unsubscribe(PubSubType type);
 
+    /**
+     * Publishes message to sub-channel of message type,
+     * received only by subscribers of this channel.
+     * Channels are optional, stores without them don't support
+     * sending to remote sessions and room routing.
+     *
+     * @param type - message type
+     * @param channel - channel name
+     * @param msg - message
+     */
+    default void publish(PubSubType type, String channel, PubSubMessage msg) {
+        throw new UnsupportedOperationException("Channels aren't supported by " + getClass().getName());
+    }
+
+    default <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        throw new UnsupportedOperationException("Channels aren't supported by " + getClass().getName());
+    }
+
+    default void unsubscribe(PubSubType type, String channel) {
+        throw new UnsupportedOperationException("Channels aren't supported by " + getClass().getName());
+    }
+
     void shutdown();
 
 }
@@ -17,7 +17,7 @@ package com.corundumstudio.socketio.store.pubsub;
 
 public enum PubSubType {
 
-    CONNECT, DISCONNECT, JOIN, LEAVE, DISPATCH;
+    CONNECT, DISCONNECT, JOIN, LEAVE, DISPATCH, SESSION, SESSION_ACK, INVALIDATE, HEARTBEAT, NODE_STATE;
 
     @Override
     public String toString() {
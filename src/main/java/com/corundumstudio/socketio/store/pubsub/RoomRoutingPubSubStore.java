@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Decorator which publishes {@link DispatchMessage}s to channels of their rooms
+ * instead of the single {@link PubSubType#DISPATCH} topic, so node receives
+ * only dispatches to rooms with local clients.
+ * <p>
+ * Node subscribes to room channel when first local client joins the room
+ * and unsubscribes once last local client leaves it.
+ * Local membership is tracked by {@link PubSubType#JOIN} and {@link PubSubType#LEAVE}
+ * messages published by this node.
+ * With positive <code>shards</code> rooms are hashed to this amount of channels,
+ * which bounds amount of subscriptions of node with many sparse rooms.
+ * <p>
+ * Subscriptions are changed asynchronously, so publishing of membership messages
+ * isn't blocked by round-trips of underlying store.
+ * <p>
+ * All nodes should use the same routing mode.
+ * Dispatch published while subscription to its channel is in progress may be missed.
+ *
+ */
+public class RoomRoutingPubSubStore implements PubSubStore {
+
+    private final PubSubStore delegate;
+    private final int shards;
+    private final Executor executor;
+    // created by this store, null if executor is passed
+    private final ExecutorService ownExecutor;
+
+    private final List<PubSubListener<DispatchMessage>> dispatchListeners = new CopyOnWriteArrayList<PubSubListener<DispatchMessage>>();
+    private final PubSubListener<DispatchMessage> channelListener = new PubSubListener<DispatchMessage>() {
+        @Override
+        public void onMessage(DispatchMessage msg) {
+            for (PubSubListener<DispatchMessage> listener : dispatchListeners) {
+                listener.onMessage(msg);
+            }
+        }
+    };
+
+    // guarded by this
+    private final Map<String, Set<UUID>> roomMembers = new HashMap<String, Set<UUID>>();
+    private final Map<String, Integer> channelRooms = new HashMap<String, Integer>();
+    // channels subscribed in underlying store, guarded by itself
+    private final Set<String> subscribedChannels = new HashSet<String>();
+
+    /**
+     * @param delegate - underlying store
+     * @param shards - amount of channels rooms are hashed to, <code>0</code> - channel per room
+     */
+    public RoomRoutingPubSubStore(PubSubStore delegate, int shards) {
+        this(delegate, shards, null);
+    }
+
+    /**
+     * @param delegate - underlying store
+     * @param shards - amount of channels rooms are hashed to, <code>0</code> - channel per room
+     * @param executor - executor of subscription changes, <code>null</code> - own single thread
+     */
+    public RoomRoutingPubSubStore(PubSubStore delegate, int shards, Executor executor) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("shards can't be negative");
+        }
+        this.delegate = delegate;
+        this.shards = shards;
+        if (executor == null) {
+            ownExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("socketio-room-routing", true));
+            executor = ownExecutor;
+        } else {
+            ownExecutor = null;
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * @return channel of room dispatches
+     */
+    public String channel(String namespace, String room) {
+        if (shards > 0) {
+            int hash = (namespace + ":" + room).hashCode();
+            return "shard-" + (hash & Integer.MAX_VALUE) % shards;
+        }
+        return namespace + ":" + room;
+    }
+
+    @Override
+    public void publish(PubSubType type, PubSubMessage msg) {
+        if (msg instanceof BatchMessage) {
+            List<PubSubMessage> messages = ((BatchMessage) msg).getMessages();
+            if (type == PubSubType.DISPATCH) {
+                for (PubSubMessage message : messages) {
+                    publish(type, message);
+                }
+                return;
+            }
+            for (PubSubMessage message : messages) {
+                track(type, message);
+            }
+        } else if (type == PubSubType.DISPATCH) {
+            DispatchMessage dispatchMessage = (DispatchMessage) msg;
+            delegate.publish(type, channel(dispatchMessage.getNamespace(), dispatchMessage.getRoom()), msg);
+            return;
+        } else {
+            track(type, msg);
+        }
+        delegate.publish(type, msg);
+    }
+
+    private void track(PubSubType type, PubSubMessage msg) {
+        if (type == PubSubType.JOIN) {
+            JoinLeaveMessage m = (JoinLeaveMessage) msg;
+            onLocalJoin(m.getNamespace(), m.getRoom(), m.getSessionId());
+        } else if (type == PubSubType.LEAVE) {
+            JoinLeaveMessage m = (JoinLeaveMessage) msg;
+            onLocalLeave(m.getNamespace(), m.getRoom(), m.getSessionId());
+        }
+    }
+
+    private void onLocalJoin(String namespace, String room, UUID sessionId) {
+        String channel = channel(namespace, room);
+        synchronized (this) {
+            String key = namespace + ":" + room;
+            Set<UUID> members = roomMembers.get(key);
+            if (members == null) {
+                members = new HashSet<UUID>();
+                roomMembers.put(key, members);
+            }
+            if (!members.add(sessionId) || members.size() > 1) {
+                return;
+            }
+
+            Integer rooms = channelRooms.get(channel);
+            channelRooms.put(channel, rooms == null ? 1 : rooms + 1);
+            if (rooms != null) {
+                return;
+            }
+        }
+        updateSubscription(channel);
+    }
+
+    private void onLocalLeave(String namespace, String room, UUID sessionId) {
+        String channel = channel(namespace, room);
+        synchronized (this) {
+            String key = namespace + ":" + room;
+            Set<UUID> members = roomMembers.get(key);
+            if (members == null || !members.remove(sessionId) || !members.isEmpty()) {
+                return;
+            }
+            roomMembers.remove(key);
+
+            int rooms = channelRooms.get(channel) - 1;
+            if (rooms > 0) {
+                channelRooms.put(channel, rooms);
+                return;
+            }
+            channelRooms.remove(channel);
+        }
+        updateSubscription(channel);
+    }
+
+    /**
+     * Brings subscription of channel to its current state,
+     * so tasks of concurrent join and leave could run in any order
+     */
+    private void updateSubscription(final String channel) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (subscribedChannels) {
+                    boolean required;
+                    synchronized (RoomRoutingPubSubStore.this) {
+                        required = channelRooms.containsKey(channel);
+                    }
+                    if (required && subscribedChannels.add(channel)) {
+                        delegate.subscribe(PubSubType.DISPATCH, channel, channelListener, DispatchMessage.class);
+                    } else if (!required && subscribedChannels.remove(channel)) {
+                        delegate.unsubscribe(PubSubType.DISPATCH, channel);
+                    }
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // store is shut down
+        }
+    }
+
+    /**
+     * @return amount of channels node should be subscribed to
+     */
+    public synchronized int getChannelsCount() {
+        return channelRooms.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+        if (type == PubSubType.DISPATCH) {
+            dispatchListeners.add((PubSubListener<DispatchMessage>) listener);
+            return;
+        }
+        delegate.subscribe(type, listener, clazz);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type) {
+        if (type != PubSubType.DISPATCH) {
+            delegate.unsubscribe(type);
+            return;
+        }
+        dispatchListeners.clear();
+        List<String> channels;
+        synchronized (this) {
+            channels = new ArrayList<String>(channelRooms.keySet());
+            channelRooms.clear();
+            roomMembers.clear();
+        }
+        for (String channel : channels) {
+            updateSubscription(channel);
+        }
+    }
+
+    @Override
+    public void publish(PubSubType type, String channel, PubSubMessage msg) {
+        delegate.publish(type, channel, msg);
+    }
+
+    @Override
+    public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+        delegate.subscribe(type, channel, listener, clazz);
+    }
+
+    @Override
+    public void unsubscribe(PubSubType type, String channel) {
+        delegate.unsubscribe(type, channel);
+    }
+
+    @Override
+    public void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+        delegate.shutdown();
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.List;
+
+/**
+ * Client acknowledgement of {@link SessionMessage}
+ * returned to private channel of the sender node.
+ *
+ */
+public class SessionAckMessage extends PubSubMessage {
+
+    private static final long serialVersionUID = 2297934580212359416L;
+
+    private long ackId;
+    private List<Object> args;
+    private boolean timeout;
+
+    public SessionAckMessage() {
+    }
+
+    public SessionAckMessage(long ackId, List<Object> args) {
+        this.ackId = ackId;
+        this.args = args;
+    }
+
+    public SessionAckMessage(long ackId) {
+        this.ackId = ackId;
+        this.timeout = true;
+    }
+
+    public long getAckId() {
+        return ackId;
+    }
+
+    public List<Object> getArgs() {
+        return args;
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+}
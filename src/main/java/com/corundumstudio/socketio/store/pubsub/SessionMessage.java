@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Event addressed to a single session connected to other node.
+ * Published to private channel of the node which owns the session.
+ *
+ */
+public class SessionMessage extends PubSubMessage {
+
+    private static final long serialVersionUID = -4250180470379312186L;
+
+    private UUID sessionId;
+    private String namespace;
+    private String name;
+    private List<Object> args;
+    private Long ackId;
+    private Class<?>[] ackResultClasses;
+    private int ackTimeout;
+
+    public SessionMessage() {
+    }
+
+    public SessionMessage(UUID sessionId, String namespace, String name, List<Object> args) {
+        this.sessionId = sessionId;
+        this.namespace = namespace;
+        this.name = name;
+        this.args = args;
+    }
+
+    public SessionMessage(UUID sessionId, String namespace, String name, List<Object> args,
+                            Long ackId, Class<?>[] ackResultClasses, int ackTimeout) {
+        this(sessionId, namespace, name, args);
+        this.ackId = ackId;
+        this.ackResultClasses = ackResultClasses;
+        this.ackTimeout = ackTimeout;
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Object> getArgs() {
+        return args;
+    }
+
+    /**
+     * @return ack id on sender node or <code>null</code> if ack is not requested
+     */
+    public Long getAckId() {
+        return ackId;
+    }
+
+    /**
+     * @return result classes of ack or <code>null</code> if single result is expected
+     */
+    public Class<?>[] getAckResultClasses() {
+        return ackResultClasses;
+    }
+
+    public int getAckTimeout() {
+        return ackTimeout;
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store.pubsub;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Cache of strings decoded from UTF-8 bytes.
+ * Repeated room and namespace names are resolved
+ * to the same instance without allocation.
+ *
+ */
+final class StringCache {
+
+    private static final int MAX_LENGTH = 128;
+
+    private static final class Entry {
+
+        final byte[] bytes;
+        final String value;
+
+        Entry(byte[] bytes, String value) {
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        boolean matches(ByteBuf in, int index, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != in.getByte(index + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param size - amount of cached strings, power of two
+     */
+    StringCache(int size) {
+        entries = new Entry[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Reads string of <code>length</code> bytes
+     */
+    String read(ByteBuf in, int length) {
+        int index = in.readerIndex();
+        in.skipBytes(length);
+        if (length > MAX_LENGTH) {
+            return in.toString(index, length, CharsetUtil.UTF_8);
+        }
+
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + in.getByte(index + i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = entries[slot];
+        if (entry != null && entry.matches(in, index, length)) {
+            return entry.value;
+        }
+
+        byte[] bytes = new byte[length];
+        in.getBytes(index, bytes);
+        String value = new String(bytes, CharsetUtil.UTF_8).intern();
+        entries[slot] = new Entry(bytes, value);
+        return value;
+    }
+
+}
@@ -26,6 +26,7 @@ import com.corundumstudio.socketio.messages.PacketsMessage;
 import com.corundumstudio.socketio.messages.XHROptionsMessage;
 import com.corundumstudio.socketio.messages.XHRPostMessage;
 import com.corundumstudio.socketio.protocol.PacketDecoder;
+import com.corundumstudio.socketio.protocol.SessionIdCodec;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
@@ -98,7 +99,7 @@ public class PollingTransport extends ChannelInboundHandlerAdapter {
 
                 try {
                     if (isNotNull(sid)) {
-                        final UUID sessionId = UUID.fromString(sid.get(0));
+                        final UUID sessionId = SessionIdCodec.decode(sid.get(0));
                         handleMessage(req, sessionId, queryDecoder, ctx);
                     } else {
                         // first connection
@@ -158,7 +159,7 @@ public class PollingTransport extends ChannelInboundHandlerAdapter {
      private void onPost(UUID sessionId, ChannelHandlerContext ctx, String origin, ByteBuf content)
                                                                                  throws IOException {
          ClientHead client = clientsBox.get(sessionId);
-         if (client == null) {
+         if (client == null || client.isParked()) {
              log.error("{} is not registered. Closing connection", sessionId);
              sendError(ctx);
              return;
@@ -179,7 +180,7 @@ public class PollingTransport extends ChannelInboundHandlerAdapter {
 
      protected void onGet(UUID sessionId, ChannelHandlerContext ctx, String origin) {
          ClientHead client = clientsBox.get(sessionId);
-         if (client == null) {
+         if (client == null || client.isParked()) {
              log.error("{} is not registered. Closing connection", sessionId);
              sendError(ctx);
              return;
@@ -21,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.corundumstudio.socketio.protocol.Packet;
 import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.protocol.SessionIdCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,7 +93,8 @@ public class WebSocketTransport extends ChannelInboundHandlerAdapter {
                 return;
             }
 
-            ctx.pipeline().fireChannelRead(new PacketsMessage(client, frame.content(), Transport.WEBSOCKET));
+            boolean binary = msg instanceof BinaryWebSocketFrame;
+            ctx.pipeline().fireChannelRead(new PacketsMessage(client, frame.content(), Transport.WEBSOCKET, binary));
             frame.release();
         } else if (msg instanceof FullHttpRequest) {
             FullHttpRequest req = (FullHttpRequest) msg;
@@ -109,7 +111,7 @@ public class WebSocketTransport extends ChannelInboundHandlerAdapter {
                         return;
                     }
                     if (sid != null && sid.get(0) != null) {
-                        final UUID sessionId = UUID.fromString(sid.get(0));
+                        final UUID sessionId = SessionIdCodec.decode(sid.get(0));
                         handshake(ctx, sessionId, path, req);
                     } else {
                         ClientHead client = ctx.channel().attr(ClientHead.CLIENT).get();
@@ -145,7 +147,9 @@ public class WebSocketTransport extends ChannelInboundHandlerAdapter {
         packet.setSubType(PacketType.DISCONNECT);
         if (client != null && client.isTransportChannel(ctx.channel(), Transport.WEBSOCKET)) {
             log.debug("channel inactive {}", client.getSessionId());
-            client.onChannelDisconnect();
+            if (!client.park()) {
+                client.onChannelDisconnect();
+            }
         }
         super.channelInactive(ctx);
         if (client != null) {
@@ -183,7 +187,7 @@ public class WebSocketTransport extends ChannelInboundHandlerAdapter {
 
     private void connectClient(final Channel channel, final UUID sessionId) {
         ClientHead client = clientsBox.get(sessionId);
-        if (client == null) {
+        if (client == null || client.isParked()) {
             log.warn("Unauthorized client with sessionId: {} with ip: {}. Channel closed!",
                         sessionId, channel.remoteAddress());
             channel.close();
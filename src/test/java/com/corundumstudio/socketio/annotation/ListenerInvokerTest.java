@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.MultiTypeArgs;
+import com.corundumstudio.socketio.SocketIOClient;
+import com.corundumstudio.socketio.handler.SocketIOException;
+import com.corundumstudio.socketio.listener.DataListener;
+import com.corundumstudio.socketio.namespace.Namespace;
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+
+public class ListenerInvokerTest {
+
+    static final List<Object> calls = new ArrayList<Object>();
+
+    public static class PublicListener {
+
+        public void onData(String data) {
+            calls.add(data);
+        }
+
+        public static void onStatic(String data, AckRequest ackRequest) {
+            calls.add("static:" + data);
+        }
+
+        public void onPrimitives(int a, long b, boolean c) {
+            calls.add(a + b + (c ? 1 : 0));
+        }
+
+        public void onMany(SocketIOClient client, String a, Integer b, String c, Integer d, AckRequest ackRequest) {
+            calls.add(Arrays.<Object>asList(a, b, c, d));
+        }
+
+        @OnEvent("fail")
+        public void onFail(String data) {
+            throw new IllegalStateException(data);
+        }
+
+    }
+
+    private static class HiddenListener {
+
+        private void onData(String data) {
+            calls.add("hidden:" + data);
+        }
+
+        private static void onStatic(String data) {
+            calls.add("hidden-static:" + data);
+        }
+
+    }
+
+    private Method method(Class<?> type, String name) {
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                method.setAccessible(true);
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private void invoke(Object target, Method method, int[] sources, Object data) throws Throwable {
+        calls.clear();
+        ListenerInvoker.create(target, method, sources).invoke(null, data, null);
+    }
+
+    @Test
+    public void testPublicMethod() throws Throwable {
+        invoke(new PublicListener(), method(PublicListener.class, "onData"),
+                new int[] {ListenerInvoker.DATA}, "a");
+        Assert.assertEquals(Arrays.<Object>asList("a"), calls);
+    }
+
+    @Test
+    public void testStaticMethod() throws Throwable {
+        invoke(null, method(PublicListener.class, "onStatic"),
+                new int[] {ListenerInvoker.DATA, ListenerInvoker.ACK_REQUEST}, "a");
+        Assert.assertEquals(Arrays.<Object>asList("static:a"), calls);
+    }
+
+    @Test
+    public void testNonPublicMethod() throws Throwable {
+        invoke(new HiddenListener(), method(HiddenListener.class, "onData"),
+                new int[] {ListenerInvoker.DATA}, "a");
+        Assert.assertEquals(Arrays.<Object>asList("hidden:a"), calls);
+    }
+
+    @Test
+    public void testNonPublicStaticMethod() throws Throwable {
+        invoke(null, method(HiddenListener.class, "onStatic"),
+                new int[] {ListenerInvoker.DATA}, "a");
+        Assert.assertEquals(Arrays.<Object>asList("hidden-static:a"), calls);
+    }
+
+    @Test
+    public void testPrimitiveParameters() throws Throwable {
+        MultiTypeArgs args = new MultiTypeArgs(Arrays.<Object>asList(1, 2L, true));
+        invoke(new PublicListener(), method(PublicListener.class, "onPrimitives"),
+                new int[] {0, 1, 2}, args);
+        Assert.assertEquals(Arrays.<Object>asList(4L), calls);
+    }
+
+    @Test
+    public void testMoreThanFourParameters() throws Throwable {
+        MultiTypeArgs args = new MultiTypeArgs(Arrays.<Object>asList("a", 1, "b", 2));
+        invoke(new PublicListener(), method(PublicListener.class, "onMany"),
+                new int[] {ListenerInvoker.CLIENT, 0, 1, 2, 3, ListenerInvoker.ACK_REQUEST}, args);
+        Assert.assertEquals(Arrays.<Object>asList(Arrays.<Object>asList("a", 1, "b", 2)), calls);
+    }
+
+    @Test
+    public void testListenerExceptionIsCause() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.setJsonSupport(new JacksonJsonSupport());
+        Namespace namespace = new Namespace(Namespace.DEFAULT_NAME, configuration);
+        Method method = method(PublicListener.class, "onFail");
+        new OnEventScanner().addListener(namespace, new PublicListener(), method, method.getAnnotation(OnEvent.class));
+
+        @SuppressWarnings("unchecked")
+        DataListener<Object> listener = namespace.getListenerManager().getEntry("fail").getListenersSnapshot()[0];
+        try {
+            listener.onData(null, "boom", null);
+            Assert.fail();
+        } catch (SocketIOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            Assert.assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.annotation;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+
+public class ListenerRegistrationProcessorTest {
+
+    private Compilation compile(JavaFileObject source) {
+        return javac().withProcessors(new ListenerRegistrationProcessor()).compile(source);
+    }
+
+    @Test
+    public void testValidListenersGenerateRegistration() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.ChatListeners",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.AckRequest;",
+                "import com.corundumstudio.socketio.SocketIOClient;",
+                "import com.corundumstudio.socketio.annotation.OnConnect;",
+                "import com.corundumstudio.socketio.annotation.OnDisconnect;",
+                "import com.corundumstudio.socketio.annotation.OnEvent;",
+                "",
+                "public class ChatListeners {",
+                "    @OnConnect",
+                "    public void onConnect(SocketIOClient client) {}",
+                "    @OnDisconnect",
+                "    void onDisconnect(SocketIOClient client) {}",
+                "    @OnEvent(\"message\")",
+                "    public void onMessage(SocketIOClient client, String data, AckRequest ackRequest) {}",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.ChatListeners" + ListenerRegistrations.SUFFIX)
+                .contentsAsUtf8String().contains("clientListeners.addEventListener(\"message\"");
+    }
+
+    @Test
+    public void testNestedClassRegistrationName() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.Outer",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.SocketIOClient;",
+                "import com.corundumstudio.socketio.annotation.OnConnect;",
+                "",
+                "public class Outer {",
+                "    public static class Inner {",
+                "        @OnConnect",
+                "        public void onConnect(SocketIOClient client) {}",
+                "    }",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.Outer_Inner" + ListenerRegistrations.SUFFIX);
+    }
+
+    @Test
+    public void testPrivateMethodFallsBackToReflection() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.PrivateListeners",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.SocketIOClient;",
+                "import com.corundumstudio.socketio.annotation.OnConnect;",
+                "",
+                "public class PrivateListeners {",
+                "    @OnConnect",
+                "    private void onConnect(SocketIOClient client) {}",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("reflection is used");
+        Assert.assertTrue(compilation.generatedSourceFiles().isEmpty());
+    }
+
+    @Test
+    public void testWrongConnectSignature() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.WrongConnect",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.annotation.OnConnect;",
+                "",
+                "public class WrongConnect {",
+                "    @OnConnect",
+                "    public void onConnect(String client) {}",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Wrong OnConnect listener signature")
+                .inFile(source).onLine(7);
+    }
+
+    @Test
+    public void testWrongDisconnectSignature() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.WrongDisconnect",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.SocketIOClient;",
+                "import com.corundumstudio.socketio.annotation.OnDisconnect;",
+                "",
+                "public class WrongDisconnect {",
+                "    @OnDisconnect",
+                "    public void onDisconnect(SocketIOClient client, String reason) {}",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Wrong OnDisconnect listener signature");
+    }
+
+    @Test
+    public void testEmptyEventName() {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.EmptyEvent",
+                "package test;",
+                "",
+                "import com.corundumstudio.socketio.SocketIOClient;",
+                "import com.corundumstudio.socketio.annotation.OnEvent;",
+                "",
+                "public class EmptyEvent {",
+                "    @OnEvent(\" \")",
+                "    public void onEvent(SocketIOClient client, String data) {}",
+                "}");
+
+        Compilation compilation = compile(source);
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("OnEvent \"value\" parameter is required");
+        Assert.assertTrue(compilation.generatedSourceFiles().isEmpty());
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.SocketIOClient;
+import com.corundumstudio.socketio.annotation.OnEvent;
+import com.corundumstudio.socketio.annotation.ScannerEngine;
+import com.corundumstudio.socketio.listener.DataListener;
+import com.corundumstudio.socketio.namespace.Namespace;
+
+/**
+ * Compares dispatch cost of annotated event listeners registered
+ * through generated registration and through runtime scanning
+ * with programmatic event listeners.
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.corundumstudio.socketio.benchmark.ListenerDispatchBenchmark</code>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    public static class AnnotatedListener {
+
+        Blackhole blackhole;
+
+        @OnEvent("message")
+        public void onMessage(SocketIOClient client, String data, AckRequest ackRequest) {
+            blackhole.consume(data);
+        }
+
+    }
+
+    private DataListener<Object> annotated;
+    private DataListener<Object> scanned;
+    private DataListener<Object> programmatic;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        AnnotatedListener listener = new AnnotatedListener();
+        listener.blackhole = blackhole;
+        Namespace annotatedNamespace = new Namespace("/annotated", new Configuration());
+        annotatedNamespace.getListenerManager().addListeners(listener);
+        annotated = (DataListener<Object>) annotatedNamespace.getListenerManager()
+                                                .getEntry("message").getListenersSnapshot()[0];
+
+        Namespace scannedNamespace = new Namespace("/scanned", new Configuration());
+        new ScannerEngine().scan(scannedNamespace, listener, AnnotatedListener.class);
+        scanned = (DataListener<Object>) scannedNamespace.getListenerManager()
+                                                .getEntry("message").getListenersSnapshot()[0];
+
+        Namespace programmaticNamespace = new Namespace("/programmatic", new Configuration());
+        programmaticNamespace.getListenerManager().addEventListener("message", String.class, new DataListener<String>() {
+            @Override
+            public void onData(SocketIOClient client, String data, AckRequest ackSender) {
+                blackhole.consume(data);
+            }
+        });
+        programmatic = (DataListener<Object>) programmaticNamespace.getListenerManager()
+                                                .getEntry("message").getListenersSnapshot()[0];
+    }
+
+    @Benchmark
+    public void annotated() throws Exception {
+        annotated.onData(null, "data", null);
+    }
+
+    @Benchmark
+    public void scanned() throws Exception {
+        scanned.onData(null, "data", null);
+    }
+
+    @Benchmark
+    public void programmatic() throws Exception {
+        programmatic.onData(null, "data", null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(ListenerDispatchBenchmark.class.getSimpleName())
+                        .build()).run();
+    }
+
+}
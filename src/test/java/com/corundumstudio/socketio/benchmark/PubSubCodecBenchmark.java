@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.store.pubsub.DispatchMessage;
+import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Compares encoded size and encode/decode throughput of pub/sub messages
+ * with java serialization and {@link PubSubMessageCodec}.
+ * Encoded size of codec is returned by {@link #codecEncode()}.
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.corundumstudio.socketio.benchmark.PubSubCodecBenchmark</code>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PubSubCodecBenchmark {
+
+    @Param({"join", "dispatch"})
+    public String message;
+
+    private final PubSubMessageCodec codec = new PubSubMessageCodec();
+    private final ByteBuf buf = Unpooled.buffer();
+
+    private PubSubMessage msg;
+    private PubSubMessage preparedMsg;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        codec.setJsonSupport(new JacksonJsonSupport());
+        if ("join".equals(message)) {
+            msg = new JoinLeaveMessage(UUID.randomUUID(), "room-42", "/chat");
+        } else {
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("user", "john");
+            data.put("text", "hello world");
+            data.put("time", 1571000000000L);
+
+            Packet packet = new Packet(PacketType.MESSAGE);
+            packet.setSubType(PacketType.EVENT);
+            packet.setNsp("/chat");
+            packet.setName("message");
+            packet.setData(Arrays.<Object>asList(data));
+            msg = new DispatchMessage("room-42", packet, "/chat");
+        }
+        msg.setNodeId(123456L);
+        preparedMsg = codec.prepare(msg);
+        serialized = serialize(msg);
+
+        buf.clear();
+        codec.encode(preparedMsg, buf);
+    }
+
+    private byte[] serialize(PubSubMessage value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(bytes);
+        stream.writeObject(value);
+        stream.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializationEncode() throws IOException {
+        return serialize(msg);
+    }
+
+    @Benchmark
+    public Object serializationDecode() throws Exception {
+        ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        return stream.readObject();
+    }
+
+    @Benchmark
+    public int codecEncode() throws IOException {
+        buf.clear();
+        // arguments are encoded to JSON on publishing
+        codec.encode(codec.prepare(msg), buf);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public PubSubMessage codecDecode() throws IOException {
+        buf.readerIndex(0);
+        return codec.decode(buf);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(PubSubCodecBenchmark.class.getSimpleName())
+                        .build()).run();
+    }
+
+}
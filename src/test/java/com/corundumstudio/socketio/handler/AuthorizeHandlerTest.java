@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.AdmissionConfig;
+import com.corundumstudio.socketio.AsyncAuthorizationListener;
+import com.corundumstudio.socketio.AuthorizationResult;
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.scheduler.HashedWheelScheduler;
+
+public class AuthorizeHandlerTest {
+
+    private final CompletableFuture<AuthorizationResult> result = new CompletableFuture<AuthorizationResult>();
+
+    private HashedWheelScheduler scheduler;
+    private ClientsBox clientsBox;
+    private Configuration configuration;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void before() {
+        configuration = new Configuration();
+        configuration.setAsyncAuthorizationListener(new AsyncAuthorizationListener() {
+            @Override
+            public CompletionStage<AuthorizationResult> authorize(HandshakeData data) {
+                return result;
+            }
+        });
+
+        scheduler = new HashedWheelScheduler();
+        clientsBox = new ClientsBox();
+        AuthorizeHandler handler = new AuthorizeHandler("/socket.io/", scheduler, configuration,
+                null, null, null, null, clientsBox);
+        channel = createChannel(handler);
+    }
+
+    private EmbeddedChannel createChannel(AuthorizeHandler handler) {
+        return new EmbeddedChannel(handler) {
+            @Override
+            public SocketAddress remoteAddress() {
+                return new InetSocketAddress("127.0.0.1", 50000);
+            }
+
+            @Override
+            public SocketAddress localAddress() {
+                return new InetSocketAddress("127.0.0.1", 8080);
+            }
+        };
+    }
+
+    @After
+    public void after() {
+        channel.finishAndReleaseAll();
+        scheduler.shutdown();
+    }
+
+    private void handshake() {
+        handshake(channel);
+    }
+
+    private void handshake(EmbeddedChannel channel) {
+        channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/socket.io/?EIO=4&transport=polling"));
+    }
+
+    @Test
+    public void testReadsPausedUntilAuthorized() {
+        handshake();
+
+        Assert.assertFalse(channel.config().isAutoRead());
+        Assert.assertNull(channel.readInbound());
+
+        result.complete(AuthorizationResult.SUCCESSFUL_AUTHORIZATION);
+        channel.runPendingTasks();
+
+        Assert.assertTrue(channel.config().isAutoRead());
+        FullHttpRequest forwarded = channel.readInbound();
+        Assert.assertNotNull(forwarded);
+        forwarded.release();
+
+        ClientHead client = channel.attr(ClientHead.CLIENT).get();
+        Assert.assertNotNull(client);
+        Assert.assertSame(client, clientsBox.get(client.getSessionId()));
+    }
+
+    @Test
+    public void testUnauthorized() {
+        handshake();
+        result.complete(AuthorizationResult.FAILED_AUTHORIZATION);
+        channel.runPendingTasks();
+
+        HttpResponse response = channel.readOutbound();
+        Assert.assertEquals(HttpResponseStatus.UNAUTHORIZED, response.status());
+        Assert.assertNull(channel.readInbound());
+        Assert.assertNull(channel.attr(ClientHead.CLIENT).get());
+    }
+
+    @Test
+    public void testFailedStageIsUnauthorized() {
+        handshake();
+        result.completeExceptionally(new IllegalStateException("auth service is down"));
+        channel.runPendingTasks();
+
+        HttpResponse response = channel.readOutbound();
+        Assert.assertEquals(HttpResponseStatus.UNAUTHORIZED, response.status());
+        Assert.assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testRejectedHandshakesShareResponse() {
+        AdmissionConfig admissionConfig = new AdmissionConfig();
+        admissionConfig.setMaxPendingHandshakes(1);
+        admissionConfig.setRetryAfter(5);
+        AuthorizeHandler handler = new AuthorizeHandler("/socket.io/", scheduler, configuration,
+                null, null, null, null, clientsBox, new HandshakeAdmissionController(admissionConfig));
+
+        EmbeddedChannel pending = createChannel(handler);
+        EmbeddedChannel first = createChannel(handler);
+        EmbeddedChannel second = createChannel(handler);
+        handshake(pending);
+        handshake(first);
+        handshake(second);
+
+        HttpResponse firstResponse = first.readOutbound();
+        HttpResponse secondResponse = second.readOutbound();
+        Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, firstResponse.status());
+        Assert.assertEquals("5", firstResponse.headers().get(HttpHeaderNames.RETRY_AFTER));
+        Assert.assertSame(firstResponse, secondResponse);
+        Assert.assertFalse(first.isOpen());
+
+        pending.finishAndReleaseAll();
+    }
+
+}
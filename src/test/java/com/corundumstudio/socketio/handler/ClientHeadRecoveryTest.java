@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.Transport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.scheduler.HashedWheelScheduler;
+
+import static org.junit.Assert.*;
+
+public class ClientHeadRecoveryTest {
+
+    private static final int EVENTS = 1000;
+
+    private HashedWheelScheduler scheduler;
+    private Configuration configuration;
+
+    @Before
+    public void before() {
+        scheduler = new HashedWheelScheduler();
+        configuration = new Configuration();
+        configuration.setRecoveryTimeout(60000);
+        configuration.setRecoveryBufferSize(EVENTS);
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdown();
+    }
+
+    private ClientHead createClient() {
+        HandshakeData data = new HandshakeData(new DefaultHttpHeaders(), new HashMap<String, List<String>>(),
+                new InetSocketAddress("127.0.0.1", 50000), "/socket.io/", false);
+        return new ClientHead(UUID.randomUUID(), null, null, null, data, new ClientsBox(), Transport.WEBSOCKET,
+                scheduler, configuration);
+    }
+
+    private Packet event(String name) {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName(name);
+        return packet;
+    }
+
+    /**
+     * Purpose: Test events sent concurrently with recovery
+     * Input: parked session, events sent while session is recovered
+     * Expected:
+     *          Head packet is queued first
+     *          All events are queued once and in sent order
+     *
+     */
+    @Test
+    public void recoverDuringSend() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            final ClientHead client = createClient();
+            assertTrue(client.park());
+
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread sender = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < EVENTS; j++) {
+                        client.send(event(String.valueOf(j)), Transport.WEBSOCKET);
+                    }
+                }
+            };
+            sender.start();
+
+            Packet open = new Packet(PacketType.OPEN);
+            start.countDown();
+            assertNotNull(client.recover(Transport.WEBSOCKET, 0, Collections.singletonList(open)));
+            sender.join();
+
+            Queue<Packet> queue = client.getPacketsQueue(Transport.WEBSOCKET);
+            assertSame(open, queue.poll());
+            List<String> names = new ArrayList<String>();
+            for (Packet packet : queue) {
+                names.add(packet.getName());
+            }
+            assertEquals(EVENTS, names.size());
+            for (int j = 0; j < EVENTS; j++) {
+                assertEquals(String.valueOf(j), names.get(j));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.AdmissionConfig;
+
+public class HandshakeAdmissionControllerTest {
+
+    @Test
+    public void testUnlimitedByDefault() throws UnknownHostException {
+        HandshakeAdmissionController controller = new HandshakeAdmissionController(new AdmissionConfig());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(controller.tryAcquire(InetAddress.getByName("127.0.0.1")));
+        }
+        Assert.assertEquals(0, controller.getRejected());
+    }
+
+    @Test
+    public void testPendingLimit() {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setMaxPendingHandshakes(2);
+        HandshakeAdmissionController controller = new HandshakeAdmissionController(config);
+
+        Assert.assertTrue(controller.tryAcquire(null));
+        Assert.assertTrue(controller.tryAcquire(null));
+        Assert.assertFalse(controller.tryAcquire(null));
+        Assert.assertEquals(1, controller.getRejectedByPending());
+
+        controller.release();
+        Assert.assertTrue(controller.tryAcquire(null));
+        Assert.assertEquals(2, controller.getPendingHandshakes());
+    }
+
+    @Test
+    public void testGlobalRate() {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setHandshakeRate(1);
+        config.setHandshakeBurst(2);
+        HandshakeAdmissionController controller = new HandshakeAdmissionController(config);
+
+        Assert.assertTrue(controller.tryAcquire(null));
+        Assert.assertTrue(controller.tryAcquire(null));
+        Assert.assertFalse(controller.tryAcquire(null));
+        Assert.assertEquals(1, controller.getRejectedByRate());
+        Assert.assertEquals(2, controller.getAdmitted());
+    }
+
+    @Test
+    public void testRatePerIp() throws UnknownHostException {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setHandshakeRate(1);
+        config.setHandshakeBurst(2);
+        config.setHandshakeRatePerIp(1);
+        HandshakeAdmissionController controller = new HandshakeAdmissionController(config);
+
+        InetAddress first = InetAddress.getByName("10.0.0.1");
+        InetAddress second = InetAddress.getByName("10.0.0.2");
+        Assert.assertTrue(controller.tryAcquire(first));
+        Assert.assertFalse(controller.tryAcquire(first));
+        Assert.assertEquals(1, controller.getRejectedByIpRate());
+
+        // global token taken by rejected address is refunded
+        Assert.assertTrue(controller.tryAcquire(second));
+        Assert.assertEquals(0, controller.getRejectedByRate());
+    }
+
+}
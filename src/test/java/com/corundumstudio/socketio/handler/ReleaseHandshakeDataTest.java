@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.Transport;
+import com.corundumstudio.socketio.namespace.Namespace;
+
+public class ReleaseHandshakeDataTest {
+
+    private ClientHead createClient(boolean release) {
+        Configuration configuration = new Configuration();
+        configuration.setReleaseHandshakeData(release);
+        HandshakeData data = new HandshakeData(new DefaultHttpHeaders(),
+                Collections.<String, List<String>>emptyMap(), null, "/socket.io/", false);
+        return new ClientHead(UUID.randomUUID(), null, null, null, data, null,
+                Transport.POLLING, null, configuration);
+    }
+
+    @Test
+    public void testReleasedAfterAllNamespacesConnected() {
+        Configuration configuration = new Configuration();
+        Namespace main = new Namespace(Namespace.DEFAULT_NAME, configuration);
+        Namespace chat = new Namespace("/chat", configuration);
+        ClientHead client = createClient(true);
+
+        client.onConnected(main, 2);
+        Assert.assertNotNull(client.getHandshakeData());
+        client.onConnected(main, 2);
+        Assert.assertNotNull(client.getHandshakeData());
+
+        client.onConnected(chat, 2);
+        Assert.assertNull(client.getHandshakeData());
+    }
+
+    @Test
+    public void testKeptWhenReleaseDisabled() {
+        Namespace main = new Namespace(Namespace.DEFAULT_NAME, new Configuration());
+        ClientHead client = createClient(false);
+
+        client.onConnected(main, 1);
+        Assert.assertNotNull(client.getHandshakeData());
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.corundumstudio.socketio.handler;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+import static org.junit.Assert.*;
+
+public class ReplayBufferTest {
+
+    private Packet event(String name) {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName(name);
+        return packet;
+    }
+
+    /**
+     * Purpose: Test packets sent after last received offset
+     * Input: 3 events, offset of first one
+     * Expected:
+     *          Return 2 last events
+     *
+     */
+    @Test
+    public void since() {
+        ReplayBuffer buffer = new ReplayBuffer(10);
+        Packet first = event("first");
+        buffer.add(first);
+        buffer.add(event("second"));
+        buffer.add(event("third"));
+
+        List<Packet> missed = buffer.since(first.getOffset());
+        assertEquals(2, missed.size());
+        assertEquals("second", missed.get(0).getName());
+        assertEquals("third", missed.get(1).getName());
+    }
+
+    /**
+     * Purpose: Test broadcast packet keeps offset
+     * Input: same packet added to 2 buffers
+     * Expected:
+     *          Same offset
+     *
+     */
+    @Test
+    public void sharedOffset() {
+        Packet packet = event("broadcast");
+        new ReplayBuffer(10).add(packet);
+        long offset = packet.getOffset();
+        new ReplayBuffer(10).add(packet);
+        assertNotEquals(0, offset);
+        assertEquals(offset, packet.getOffset());
+    }
+
+    /**
+     * Purpose: Test evicted offset
+     * Input: 3 events in buffer of 2
+     * Expected:
+     *          Return null for evicted and initial offsets
+     *
+     */
+    @Test
+    public void overflow() {
+        ReplayBuffer buffer = new ReplayBuffer(2);
+        Packet first = event("first");
+        buffer.add(first);
+        buffer.add(event("second"));
+        buffer.add(event("third"));
+
+        assertNull(buffer.since(first.getOffset()));
+        assertNull(buffer.since(0));
+    }
+
+}
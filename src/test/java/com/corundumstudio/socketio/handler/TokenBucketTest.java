@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testRejectedWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertFalse(bucket.tryAcquire(0));
+    }
+
+    @Test
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertFalse(bucket.tryAcquire(SECOND / 20));
+        // one token per 100ms
+        Assert.assertTrue(bucket.tryAcquire(SECOND / 5));
+        Assert.assertFalse(bucket.tryAcquire(SECOND / 5));
+    }
+
+    @Test
+    public void testRefillLimitedByCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertTrue(bucket.tryAcquire(0));
+
+        long now = 60 * SECOND;
+        Assert.assertTrue(bucket.tryAcquire(now));
+        Assert.assertTrue(bucket.tryAcquire(now));
+        Assert.assertFalse(bucket.tryAcquire(now));
+    }
+
+    @Test
+    public void testRefund() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        Assert.assertTrue(bucket.tryAcquire(0));
+        bucket.refund();
+        Assert.assertTrue(bucket.tryAcquire(0));
+        bucket.refund();
+        bucket.refund();
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertFalse(bucket.tryAcquire(0));
+    }
+
+}
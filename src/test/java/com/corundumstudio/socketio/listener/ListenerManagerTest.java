@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.listener;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.AckMode;
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+public class ListenerManagerTest {
+
+    private final List<Exception> exceptions = new ArrayList<Exception>();
+
+    private ListenerManager createManager(AckMode ackMode, boolean isolateExceptions) {
+        ExceptionListener exceptionListener = new ExceptionListenerAdapter() {
+            @Override
+            public void onEventException(Exception e, List<Object> data, SocketIOClient client) {
+                exceptions.add(e);
+            }
+
+            @Override
+            public void onConnectException(Exception e, SocketIOClient client) {
+                exceptions.add(e);
+            }
+
+            @Override
+            public void onDisconnectException(Exception e, SocketIOClient client) {
+                exceptions.add(e);
+            }
+        };
+        return new ListenerManager(null, new JacksonJsonSupport(), "", exceptionListener,
+                ackMode, isolateExceptions);
+    }
+
+    private List<String> addFailingListeners(ListenerManager manager) {
+        final List<String> calls = new ArrayList<String>();
+        manager.addEventListener("message", String.class, new DataListener<String>() {
+            @Override
+            public void onData(SocketIOClient client, String data, AckRequest ackSender) {
+                calls.add("first");
+                throw new IllegalStateException("first");
+            }
+        });
+        manager.addEventListener("message", String.class, new DataListener<String>() {
+            @Override
+            public void onData(SocketIOClient client, String data, AckRequest ackSender) {
+                calls.add("second");
+            }
+        });
+        return calls;
+    }
+
+    @Test
+    public void testFailingListenerStopsDispatchByDefault() {
+        ListenerManager manager = createManager(AckMode.AUTO, false);
+        List<String> calls = addFailingListeners(manager);
+
+        boolean sendAck = manager.onEvent(null, "message", Arrays.<Object>asList("text"), null);
+
+        Assert.assertEquals(Arrays.asList("first"), calls);
+        Assert.assertEquals(1, exceptions.size());
+        Assert.assertTrue(sendAck);
+    }
+
+    @Test
+    public void testIsolatedListenerExceptions() {
+        ListenerManager manager = createManager(AckMode.AUTO, true);
+        List<String> calls = addFailingListeners(manager);
+
+        boolean sendAck = manager.onEvent(null, "message", Arrays.<Object>asList("text"), null);
+
+        Assert.assertEquals(Arrays.asList("first", "second"), calls);
+        Assert.assertEquals(1, exceptions.size());
+        Assert.assertTrue(sendAck);
+    }
+
+    @Test
+    public void testAutoSuccessOnlySkipsAckWhenListenerFails() {
+        ListenerManager manager = createManager(AckMode.AUTO_SUCCESS_ONLY, false);
+        addFailingListeners(manager);
+
+        Assert.assertFalse(manager.onEvent(null, "message", Arrays.<Object>asList("text"), null));
+    }
+
+    @Test
+    public void testAutoSuccessOnlySkipsAckWhenIsolatedListenerFails() {
+        ListenerManager manager = createManager(AckMode.AUTO_SUCCESS_ONLY, true);
+        List<String> calls = addFailingListeners(manager);
+
+        boolean sendAck = manager.onEvent(null, "message", Arrays.<Object>asList("text"), null);
+
+        Assert.assertEquals(Arrays.asList("first", "second"), calls);
+        Assert.assertFalse(sendAck);
+    }
+
+    @Test
+    public void testAutoSuccessOnlySendsAckWithoutFailures() {
+        ListenerManager manager = createManager(AckMode.AUTO_SUCCESS_ONLY, true);
+        final List<String> calls = new ArrayList<String>();
+        manager.addEventListener("message", String.class, new DataListener<String>() {
+            @Override
+            public void onData(SocketIOClient client, String data, AckRequest ackSender) {
+                calls.add(data);
+            }
+        });
+
+        Assert.assertTrue(manager.onEvent(null, "message", Arrays.<Object>asList("text"), null));
+        Assert.assertEquals(Arrays.asList("text"), calls);
+    }
+
+    @Test
+    public void testIsolatedConnectAndDisconnectListeners() {
+        ListenerManager manager = createManager(AckMode.AUTO, true);
+        final List<String> calls = new ArrayList<String>();
+        manager.addConnectListener(new ConnectListener() {
+            @Override
+            public void onConnect(SocketIOClient client) {
+                throw new IllegalStateException("connect");
+            }
+        });
+        manager.addConnectListener(new ConnectListener() {
+            @Override
+            public void onConnect(SocketIOClient client) {
+                calls.add("connect");
+            }
+        });
+        manager.addDisconnectListener(new DisconnectListener() {
+            @Override
+            public void onDisconnect(SocketIOClient client) {
+                throw new IllegalStateException("disconnect");
+            }
+        });
+        manager.addDisconnectListener(new DisconnectListener() {
+            @Override
+            public void onDisconnect(SocketIOClient client) {
+                calls.add("disconnect");
+            }
+        });
+
+        manager.onConnect(null);
+        manager.onDisconnect(null);
+
+        Assert.assertEquals(Arrays.asList("connect", "disconnect"), calls);
+        Assert.assertEquals(2, exceptions.size());
+    }
+
+    private Packet createEvent(String name, Object... args) {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName(name);
+        packet.setData(Arrays.asList(args));
+        return packet;
+    }
+
+    private void addRecordingListener(ListenerManager manager, String eventName, final List<String> calls) {
+        manager.addEventListener(eventName, String.class, new DataListener<String>() {
+            @Override
+            public void onData(SocketIOClient client, String data, AckRequest ackSender) {
+                calls.add("listener:" + data);
+            }
+        });
+    }
+
+    private void addMiddleware(ListenerManager manager, final String name, final boolean proceed, final List<String> calls) {
+        manager.addEventMiddleware(new EventMiddleware() {
+            @Override
+            public void onEvent(SocketIOClient client, InboundEvent event, AckRequest ackRequest, EventHandler next) throws Exception {
+                calls.add(name + ":" + event.getName());
+                if (proceed) {
+                    next.onEvent(client, event, ackRequest);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testAnyEventListener() throws Exception {
+        ListenerManager manager = createManager(AckMode.MANUAL, false);
+        final List<String> calls = new ArrayList<String>();
+        manager.addAnyEventListener(new AnyEventListener() {
+            @Override
+            public void onEvent(SocketIOClient client, String eventName, List<Object> args, AckRequest ackRequest) {
+                calls.add("any:" + eventName + args);
+            }
+        });
+        addRecordingListener(manager, "message", calls);
+
+        Assert.assertTrue(manager.acceptsAnyEvent());
+        manager.handleEvent(null, createEvent("message", "text"), null);
+        manager.handleEvent(null, createEvent("unknown", 1), null);
+
+        Assert.assertEquals(Arrays.asList("any:message[text]", "listener:text", "any:unknown[1]"), calls);
+    }
+
+    @Test
+    public void testMiddlewaresInvokedInRegistrationOrder() throws Exception {
+        ListenerManager manager = createManager(AckMode.MANUAL, false);
+        List<String> calls = new ArrayList<String>();
+        addMiddleware(manager, "first", true, calls);
+        addMiddleware(manager, "second", true, calls);
+        addRecordingListener(manager, "message", calls);
+
+        manager.handleEvent(null, createEvent("message", "text"), null);
+
+        Assert.assertEquals(Arrays.asList("first:message", "second:message", "listener:text"), calls);
+    }
+
+    @Test
+    public void testMiddlewareRejectsEvent() throws Exception {
+        ListenerManager manager = createManager(AckMode.MANUAL, false);
+        final List<String> calls = new ArrayList<String>();
+        addMiddleware(manager, "first", false, calls);
+        addMiddleware(manager, "second", true, calls);
+        manager.addAnyEventListener(new AnyEventListener() {
+            @Override
+            public void onEvent(SocketIOClient client, String eventName, List<Object> args, AckRequest ackRequest) {
+                calls.add("any:" + eventName);
+            }
+        });
+        addRecordingListener(manager, "message", calls);
+
+        manager.handleEvent(null, createEvent("message", "text"), null);
+
+        Assert.assertEquals(Arrays.asList("first:message"), calls);
+    }
+
+    @Test
+    public void testMiddlewareReplacesEvent() throws Exception {
+        ListenerManager manager = createManager(AckMode.MANUAL, false);
+        List<String> calls = new ArrayList<String>();
+        manager.addEventMiddleware(new EventMiddleware() {
+            @Override
+            public void onEvent(SocketIOClient client, final InboundEvent event, AckRequest ackRequest, EventHandler next) throws Exception {
+                next.onEvent(client, new InboundEvent() {
+                    @Override
+                    public String getName() {
+                        return "renamed";
+                    }
+
+                    @Override
+                    public List<Object> getArgs() {
+                        return Arrays.<Object>asList(event.getArgs().get(0) + "!");
+                    }
+                }, ackRequest);
+            }
+        });
+        addRecordingListener(manager, "message", calls);
+        addRecordingListener(manager, "renamed", calls);
+
+        manager.handleEvent(null, createEvent("message", "text"), null);
+
+        Assert.assertEquals(Arrays.asList("listener:text!"), calls);
+    }
+
+    @Test
+    public void testGettersReturnCopies() {
+        ListenerManager manager = createManager(AckMode.AUTO, false);
+        manager.addDisconnectListener(new DisconnectListener() {
+            @Override
+            public void onDisconnect(SocketIOClient client) {
+            }
+        });
+
+        manager.getDisconnectListeners().clear();
+
+        Assert.assertEquals(1, manager.getDisconnectListeners().size());
+        Assert.assertTrue(manager.getEventInterceptors().isEmpty());
+    }
+
+    @Test
+    public void testRawListenerOfEventDispatchedByName() {
+        ListenerManager manager = createManager(AckMode.AUTO, false);
+        final List<String> received = new ArrayList<String>();
+        manager.addRawEventListener("relay", new RawDataListener() {
+            @Override
+            public void onData(SocketIOClient client, ByteBuf args, AckRequest ackSender) {
+                received.add(args.toString(CharsetUtil.UTF_8));
+            }
+        });
+
+        manager.onEvent(null, "relay", Arrays.<Object>asList("a", 1), null);
+
+        Assert.assertEquals(Arrays.asList("\"a\",1"), received);
+    }
+
+}
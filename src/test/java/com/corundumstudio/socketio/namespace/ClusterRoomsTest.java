@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ClusterRoomsTest {
+
+    @Test
+    public void testAggregation() {
+        ClusterRooms rooms = new ClusterRooms();
+        rooms.join("room", 1L);
+        rooms.join("room", 1L);
+        rooms.join("room", 2L);
+        rooms.join("other", 2L);
+
+        assertEquals(3, rooms.getClientsCount("room"));
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L)), rooms.getNodes("room"));
+        assertEquals(new HashSet<String>(Arrays.asList("room", "other")), rooms.getRooms());
+
+        rooms.leave("room", 1L);
+        assertEquals(2, rooms.getClientsCount("room"));
+        rooms.leave("room", 1L);
+        assertEquals(new HashSet<Long>(Arrays.asList(2L)), rooms.getNodes("room"));
+    }
+
+    @Test
+    public void testRemoveNode() {
+        ClusterRooms rooms = new ClusterRooms();
+        rooms.join("room", 1L);
+        rooms.join("room", 2L);
+        rooms.join("other", 2L);
+
+        rooms.removeNode(2L);
+        assertEquals(1, rooms.getClientsCount("room"));
+        assertEquals(new HashSet<String>(Arrays.asList("room")), rooms.getRooms());
+
+        rooms.leave("room", 1L);
+        rooms.leave("room", 1L);
+        assertTrue(rooms.getRooms().isEmpty());
+        assertEquals(0, rooms.getClientsCount("room"));
+    }
+
+    @Test
+    public void testSetNode() {
+        ClusterRooms rooms = new ClusterRooms();
+        rooms.join("room", 1L);
+        rooms.join("stale", 2L);
+
+        Map<String, Integer> state = new HashMap<String, Integer>();
+        state.put("room", 3);
+        state.put("empty", 0);
+        rooms.setNode(2L, state);
+
+        assertEquals(4, rooms.getClientsCount("room"));
+        assertEquals(new HashSet<String>(Arrays.asList("room")), rooms.getRooms());
+
+        rooms.leave("room", 2L);
+        assertEquals(3, rooms.getClientsCount("room"));
+    }
+
+    @Test
+    public void testDigest() {
+        ClusterRooms rooms = new ClusterRooms();
+        rooms.join("room", 1L);
+        rooms.join("room", 1L);
+        rooms.join("other", 1L);
+        rooms.join("room", 2L);
+
+        Map<String, Integer> state = new HashMap<String, Integer>();
+        state.put("other", 1);
+        state.put("room", 2);
+        assertEquals(ClusterRooms.digest(state), rooms.getDigest(1L));
+
+        rooms.join("room", 1L);
+        assertNotEquals(ClusterRooms.digest(state), rooms.getDigest(1L));
+        rooms.leave("room", 1L);
+        assertEquals(ClusterRooms.digest(state), rooms.getDigest(1L));
+
+        state.put("room", 1);
+        rooms.setNode(2L, state);
+        assertEquals(ClusterRooms.digest(state), rooms.getDigest(2L));
+
+        rooms.leave("room", 1L);
+        rooms.leave("room", 1L);
+        rooms.leave("other", 1L);
+        assertEquals(0, rooms.getDigest(1L));
+        rooms.removeNode(2L);
+        assertEquals(0, rooms.getDigest(2L));
+    }
+
+}
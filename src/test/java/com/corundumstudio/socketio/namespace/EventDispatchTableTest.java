@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+public class EventDispatchTableTest {
+
+    private EventEntry<?> lookup(EventDispatchTable table, String frame, String name) {
+        ByteBuf buf = Unpooled.copiedBuffer(frame, CharsetUtil.UTF_8);
+        int index = frame.indexOf(name);
+        int length = name.getBytes(CharsetUtil.UTF_8).length;
+        return table.lookup(buf, frame.substring(0, index).getBytes(CharsetUtil.UTF_8).length, length);
+    }
+
+    @Test
+    public void registeredEventsAreResolved() {
+        List<EventEntry<?>> entries = new ArrayList<EventEntry<?>>();
+        for (int i = 0; i < 500; i++) {
+            entries.add(new EventEntry<Object>("event" + i));
+        }
+        entries.add(new EventEntry<Object>("сообщение"));
+        EventDispatchTable table = EventDispatchTable.compile(entries);
+
+        for (EventEntry<?> entry : entries) {
+            String frame = "[\"" + entry.getName() + "\",{\"a\":1}]";
+            assertSame(entry, lookup(table, frame, entry.getName()));
+        }
+    }
+
+    @Test
+    public void unknownEventsAreNotResolved() {
+        List<EventEntry<?>> entries = new ArrayList<EventEntry<?>>();
+        entries.add(new EventEntry<Object>("message"));
+        entries.add(new EventEntry<Object>("chat"));
+        EventDispatchTable table = EventDispatchTable.compile(entries);
+
+        assertNull(lookup(table, "[\"messages\"]", "messages"));
+        assertNull(lookup(table, "[\"messag\"]", "messag"));
+        assertNull(lookup(table, "[\"\"]", ""));
+        assertNull(lookup(EventDispatchTable.compile(Collections.<EventEntry<?>>emptyList()), "[\"chat\"]", "chat"));
+    }
+
+    @Test
+    public void manyEventsFallBackToLookupByName() {
+        List<EventEntry<?>> entries = new ArrayList<EventEntry<?>>();
+        for (int i = 0; i < 5000; i++) {
+            entries.add(new EventEntry<Object>("event" + i));
+        }
+        EventDispatchTable table = EventDispatchTable.compile(entries);
+        assertFalse(table.isPerfectHash());
+
+        for (EventEntry<?> entry : entries) {
+            String frame = "[\"" + entry.getName() + "\",{\"a\":1}]";
+            assertSame(entry, lookup(table, frame, entry.getName()));
+        }
+        assertNull(lookup(table, "[\"event5000\"]", "event5000"));
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import mockit.Expectations;
+import mockit.Mocked;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.transport.NamespaceClient;
+
+public class NamespaceTest {
+
+    @Mocked
+    NamespaceClient client;
+
+    @Test
+    public void testSessionQueueReleasedByDisconnectTask() {
+        final UUID sessionId = UUID.randomUUID();
+        new Expectations() {{
+            client.getSessionId(); result = sessionId;
+        }};
+
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        Configuration configuration = new Configuration();
+        configuration.setDispatchExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+        Namespace namespace = new Namespace(Namespace.DEFAULT_NAME, configuration);
+
+        final List<String> executed = new ArrayList<String>();
+        namespace.execute(client, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("event");
+            }
+        });
+        namespace.onDisconnect(client);
+        namespace.execute(client, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("late");
+            }
+        });
+
+        // tasks queued before the disconnect has run share the same queue
+        Assert.assertEquals(1, submitted.size());
+        submitted.remove(0).run();
+        Assert.assertEquals(2, executed.size());
+        Assert.assertEquals("event", executed.get(0));
+        Assert.assertEquals("late", executed.get(1));
+
+        // the drained queue has been released, a new one is created
+        namespace.execute(client, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("next");
+            }
+        });
+        Assert.assertEquals(1, submitted.size());
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.namespace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import mockit.Mocked;
+import mockit.Verifications;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.handler.ClientHead;
+
+public class SessionQueueTest {
+
+    @Mocked
+    ClientHead client;
+
+    @Test
+    public void testOrdering() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SessionQueue queue = new SessionQueue(executor, client, 0);
+            final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch latch = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                final int index = i;
+                queue.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        order.add(index);
+                        latch.countDown();
+                    }
+                });
+            }
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < order.size(); i++) {
+                Assert.assertEquals(i, (int) order.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedTaskDoesNotStopQueue() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        SessionQueue queue = new SessionQueue(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        }, client, 0);
+
+        final List<String> executed = new ArrayList<String>();
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed.add("second");
+            }
+        });
+
+        Assert.assertEquals(1, submitted.size());
+        submitted.get(0).run();
+        Assert.assertEquals(Collections.singletonList("second"), executed);
+    }
+
+    @Test
+    public void testReadsPausedAboveThreshold() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        SessionQueue queue = new SessionQueue(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        }, client, 4);
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            queue.execute(task);
+        }
+
+        new Verifications() {{
+            client.pauseReads(); times = 1;
+            client.resumeReads(); times = 0;
+        }};
+
+        // queue is drained in single executor task
+        Assert.assertEquals(1, submitted.size());
+        submitted.get(0).run();
+
+        new Verifications() {{
+            client.pauseReads(); times = 1;
+            client.resumeReads(); times = 1;
+        }};
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.parser;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.Transport;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketDecoder;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+public class DecoderV4PacketTest extends DecoderBaseTest {
+
+    private ClientHead client;
+
+    @Before
+    public void before() {
+        JacksonJsonSupport jsonSupport = new JacksonJsonSupport();
+        jsonSupport.addEventMapping("", "a", Integer.class);
+        jsonSupport.addEventMapping("", "bin", byte[].class);
+        decoder = new PacketDecoder(jsonSupport, ackManager);
+
+        HandshakeData data = new HandshakeData(new DefaultHttpHeaders(),
+                Collections.<String, List<String>>emptyMap(), null, "/socket.io/", false);
+        client = new ClientHead(UUID.randomUUID(), ackManager, null, null, data, null,
+                Transport.POLLING, null, new Configuration(), EngineIOVersion.V4);
+    }
+
+    @Test
+    public void testDecodeRecordSeparatedPayload() throws IOException {
+        ByteBuf buffer = Unpooled.copiedBuffer("42[\"a\",1]\u001e42[\"a\",2]\u001e3", CharsetUtil.UTF_8);
+
+        Packet first = decoder.decodePackets(buffer, client);
+        Assert.assertEquals(PacketType.MESSAGE, first.getType());
+        Assert.assertEquals(PacketType.EVENT, first.getSubType());
+        Assert.assertEquals(Collections.<Object>singletonList(1), first.getData());
+
+        Packet second = decoder.decodePackets(buffer, client);
+        Assert.assertEquals(Collections.<Object>singletonList(2), second.getData());
+
+        Packet pong = decoder.decodePackets(buffer, client);
+        Assert.assertEquals(PacketType.PONG, pong.getType());
+        Assert.assertFalse(buffer.isReadable());
+    }
+
+    @Test
+    public void testDecodeBase64Attachment() throws IOException {
+        ByteBuf buffer = Unpooled.copiedBuffer(
+                "451-[\"bin\",{\"_placeholder\":true,\"num\":0}]\u001ebAQID", CharsetUtil.UTF_8);
+
+        Packet pending = decoder.decodePackets(buffer, client);
+        Assert.assertFalse(pending.isAttachmentsLoaded());
+
+        Packet packet = decoder.decodePackets(buffer, client);
+        Assert.assertEquals(PacketType.BINARY_EVENT, packet.getSubType());
+        Assert.assertEquals("bin", packet.getName());
+        List<Object> args = packet.getData();
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) args.get(0));
+        Assert.assertNull(client.getLastBinaryPacket());
+    }
+
+    @Test
+    public void testDecodeBinaryFrameAttachment() throws IOException {
+        ByteBuf text = Unpooled.copiedBuffer(
+                "451-[\"bin\",{\"_placeholder\":true,\"num\":0}]", CharsetUtil.UTF_8);
+        Packet pending = decoder.decodePackets(text, client, false);
+        Assert.assertFalse(pending.isAttachmentsLoaded());
+
+        ByteBuf binary = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+        Packet packet = decoder.decodePackets(binary, client, true);
+        Assert.assertEquals("bin", packet.getName());
+        List<Object> args = packet.getData();
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) args.get(0));
+        Assert.assertFalse(binary.isReadable());
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.parser;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.EngineIOVersion;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+public class EncoderRecoveryOffsetTest extends EncoderBaseTest {
+
+    private Packet createEvent() {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName("msg");
+        packet.setData(Arrays.<Object>asList("a"));
+        packet.setOffset(7);
+        return packet;
+    }
+
+    private String encode(Packet packet, EngineIOVersion version) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        encoder.encodePacket(packet, buf, ByteBufAllocator.DEFAULT, true, version);
+        String result = buf.toString(CharsetUtil.UTF_8);
+        buf.release();
+        return result;
+    }
+
+    @Test
+    public void testOffsetAppendedForV4() throws IOException {
+        Assert.assertEquals("42[\"msg\",\"a\",\"7\"]", encode(createEvent(), EngineIOVersion.V4));
+    }
+
+    @Test
+    public void testOffsetSkippedForV3() throws IOException {
+        Assert.assertEquals("42[\"msg\",\"a\"]", encode(createEvent(), EngineIOVersion.V3));
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.parser;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+
+public class EncoderV4PacketTest extends EncoderBaseTest {
+
+    private Packet createEvent(String name, Object... args) {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName(name);
+        packet.setData(Arrays.asList(args));
+        return packet;
+    }
+
+    private String encode(Queue<Packet> packets) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        encoder.encodeV4Packets(packets, buf, ByteBufAllocator.DEFAULT, 50);
+        String result = buf.toString(CharsetUtil.UTF_8);
+        buf.release();
+        return result;
+    }
+
+    @Test
+    public void testRecordSeparator() throws IOException {
+        Queue<Packet> packets = new ConcurrentLinkedQueue<Packet>();
+        packets.add(createEvent("a", 1));
+        packets.add(createEvent("b", 2));
+        packets.add(new Packet(PacketType.PING));
+
+        Assert.assertEquals("42[\"a\",1]\u001e42[\"b\",2]\u001e2", encode(packets));
+        Assert.assertTrue(packets.isEmpty());
+    }
+
+    @Test
+    public void testSinglePacketWithoutSeparator() throws IOException {
+        Queue<Packet> packets = new ConcurrentLinkedQueue<Packet>();
+        packets.add(createEvent("a", 1));
+
+        Assert.assertEquals("42[\"a\",1]", encode(packets));
+    }
+
+    @Test
+    public void testBase64Attachment() throws IOException {
+        Queue<Packet> packets = new ConcurrentLinkedQueue<Packet>();
+        packets.add(createEvent("bin", (Object) new byte[] {1, 2, 3}));
+
+        String[] records = encode(packets).split("\u001e");
+        Assert.assertEquals(2, records.length);
+        Assert.assertTrue(records[0], records[0].startsWith("451-[\"bin\",{"));
+        Assert.assertTrue(records[0], records[0].contains("\"_placeholder\":true"));
+        Assert.assertTrue(records[0], records[0].contains("\"num\":0"));
+        Assert.assertEquals("bAQID", records[1]);
+    }
+
+}
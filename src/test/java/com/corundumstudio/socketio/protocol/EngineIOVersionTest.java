@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class EngineIOVersionTest {
+
+    @Test
+    public void missingVersionIsTreatedAsV3() {
+        assertSame(EngineIOVersion.V3, EngineIOVersion.fromValue(null));
+    }
+
+    @Test
+    public void knownVersionsAreResolved() {
+        assertSame(EngineIOVersion.V3, EngineIOVersion.fromValue("3"));
+        assertSame(EngineIOVersion.V4, EngineIOVersion.fromValue("4"));
+    }
+
+    @Test
+    public void unsupportedVersionIsNotResolved() {
+        assertNull(EngineIOVersion.fromValue("2"));
+        assertNull(EngineIOVersion.fromValue("five"));
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.netty.util.CharsetUtil;
+
+public class LazyEventArgsTest {
+
+    private final JacksonJsonSupport jsonSupport = new JacksonJsonSupport();
+
+    private LazyEventArgs args(String source, Class<?>... types) {
+        return new LazyEventArgs(jsonSupport, "", Arrays.<Class<?>>asList(types), source.getBytes(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void argumentsAreSplitAtTopLevel() {
+        LazyEventArgs args = args("{\"a\":[1,2],\"b\":\"x,]\\\"\"}, [3,{}] ,\"4\",null",
+                                    Map.class, List.class, String.class, Object.class);
+        assertEquals(4, args.size());
+        assertEquals("4", args.get(2));
+        assertEquals(Arrays.asList(3, java.util.Collections.emptyMap()), args.get(1));
+        assertEquals("x,]\"", ((Map<?, ?>) args.get(0)).get("b"));
+        assertNull(args.get(3));
+    }
+
+    @Test
+    public void undeclaredArgumentsAreIgnored() {
+        LazyEventArgs args = args("1,2,3", Integer.class);
+        assertEquals(1, args.size());
+        assertEquals(1, args.get(0));
+    }
+
+    @Test
+    public void emptyArguments() {
+        assertEquals(0, args("", String.class).size());
+        assertEquals(0, args("  ", String.class).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bindingErrorIsThrownOnAccess() {
+        LazyEventArgs args = args("\"a\",\"b\"", String.class, Integer.class);
+        assertEquals("a", args.get(0));
+        args.get(1);
+    }
+
+}
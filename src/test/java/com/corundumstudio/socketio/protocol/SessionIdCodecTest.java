@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class SessionIdCodecTest {
+
+    @Test
+    public void compactFormIsDecoded() {
+        for (int i = 0; i < 100; i++) {
+            UUID sessionId = UUID.randomUUID();
+            String compact = SessionIdCodec.encode(sessionId);
+            assertEquals(SessionIdCodec.COMPACT_LENGTH, compact.length());
+            assertEquals(sessionId, SessionIdCodec.decode(compact));
+        }
+    }
+
+    @Test
+    public void canonicalFormIsDecoded() {
+        UUID sessionId = UUID.randomUUID();
+        assertEquals(sessionId, SessionIdCodec.decode(sessionId.toString()));
+        assertEquals(sessionId, SessionIdCodec.decode(sessionId.toString().toUpperCase()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCompactFormIsRejected() {
+        SessionIdCodec.decode("!AAAAAAAAAAAAAAAAAAAAA");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCanonicalFormIsRejected() {
+        SessionIdCodec.decode("123e4567+e89b-12d3-a456-426614174000");
+    }
+
+}
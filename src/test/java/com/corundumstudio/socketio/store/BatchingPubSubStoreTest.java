@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.store.pubsub.BatchMessage;
+import com.corundumstudio.socketio.store.pubsub.BatchingPubSubStore;
+import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+public class BatchingPubSubStoreTest {
+
+    /**
+     * Delivers published messages to its own listeners
+     */
+    static class LoopbackPubSubStore implements PubSubStore {
+
+        final List<PubSubMessage> published = new CopyOnWriteArrayList<PubSubMessage>();
+        final List<PubSubListener<PubSubMessage>> listeners = new CopyOnWriteArrayList<PubSubListener<PubSubMessage>>();
+        volatile boolean shutdown;
+        volatile int publishedAfterShutdown;
+
+        @Override
+        public void publish(PubSubType type, PubSubMessage msg) {
+            if (shutdown) {
+                publishedAfterShutdown++;
+            }
+            msg.setNodeId(1L);
+            published.add(msg);
+            for (PubSubListener<PubSubMessage> listener : listeners) {
+                listener.onMessage(msg);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+            listeners.add((PubSubListener<PubSubMessage>) listener);
+        }
+
+        @Override
+        public void unsubscribe(PubSubType type) {
+            listeners.clear();
+        }
+
+        @Override
+        public void publish(PubSubType type, String channel, PubSubMessage msg) {
+            publish(type, msg);
+        }
+
+        @Override
+        public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+            subscribe(type, listener, clazz);
+        }
+
+        @Override
+        public void unsubscribe(PubSubType type, String channel) {
+            unsubscribe(type);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+    }
+
+    @Test
+    public void testFlushBySize() {
+        LoopbackPubSubStore delegate = new LoopbackPubSubStore();
+        BatchingPubSubStore store = new BatchingPubSubStore(delegate, 3, 60000);
+        final List<JoinLeaveMessage> received = new ArrayList<JoinLeaveMessage>();
+        store.subscribe(PubSubType.JOIN, new PubSubListener<JoinLeaveMessage>() {
+            @Override
+            public void onMessage(JoinLeaveMessage data) {
+                received.add(data);
+            }
+        }, JoinLeaveMessage.class);
+
+        List<UUID> ids = new ArrayList<UUID>();
+        for (int i = 0; i < 3; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            store.publish(PubSubType.JOIN, new JoinLeaveMessage(id, "room", "/"));
+        }
+
+        assertEquals(1, delegate.published.size());
+        assertTrue(delegate.published.get(0) instanceof BatchMessage);
+        assertEquals(3, received.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), received.get(i).getSessionId());
+            assertEquals(Long.valueOf(1L), received.get(i).getNodeId());
+        }
+        store.shutdown();
+    }
+
+    @Test
+    public void testFlushByLinger() throws InterruptedException {
+        LoopbackPubSubStore delegate = new LoopbackPubSubStore();
+        BatchingPubSubStore store = new BatchingPubSubStore(delegate, 100, 2);
+        final CountDownLatch latch = new CountDownLatch(2);
+        store.subscribe(PubSubType.LEAVE, new PubSubListener<JoinLeaveMessage>() {
+            @Override
+            public void onMessage(JoinLeaveMessage data) {
+                latch.countDown();
+            }
+        }, JoinLeaveMessage.class);
+
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, delegate.published.size());
+        store.shutdown();
+    }
+
+    @Test
+    public void testSingleMessageIsNotWrapped() {
+        LoopbackPubSubStore delegate = new LoopbackPubSubStore();
+        BatchingPubSubStore store = new BatchingPubSubStore(delegate, 100, 60000);
+
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        store.shutdown();
+
+        assertEquals(1, delegate.published.size());
+        assertTrue(delegate.published.get(0) instanceof JoinLeaveMessage);
+    }
+
+    @Test
+    public void testShutdownFlushesBeforeDelegateShutdown() throws InterruptedException {
+        LoopbackPubSubStore delegate = new LoopbackPubSubStore();
+        BatchingPubSubStore store = new BatchingPubSubStore(delegate, 100, 50);
+
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        store.publish(PubSubType.DISPATCH, "room", new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        store.shutdown();
+
+        assertTrue(delegate.shutdown);
+        assertEquals(2, delegate.published.size());
+        assertTrue(delegate.published.get(0) instanceof BatchMessage);
+
+        // cancelled linger tasks don't publish to stopped delegate
+        Thread.sleep(100);
+        assertEquals(2, delegate.published.size());
+        assertEquals(0, delegate.publishedAfterShutdown);
+    }
+
+}
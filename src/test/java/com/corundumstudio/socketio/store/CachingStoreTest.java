@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.store.pubsub.InvalidateMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import mockit.Expectations;
+import mockit.Mocked;
+
+public class CachingStoreTest {
+
+    static class CountingStore extends MemoryStore {
+
+        int reads;
+        int writes;
+
+        @Override
+        public void set(String key, Object value) {
+            writes++;
+            super.set(key, value);
+        }
+
+        @Override
+        public <T> T get(String key) {
+            reads++;
+            return super.get(key);
+        }
+
+        @Override
+        public void del(String key) {
+            writes++;
+            super.del(key);
+        }
+
+    }
+
+    @Test
+    public void testNearCacheAndWriteBehind() {
+        final CountingStore remote = new CountingStore();
+        CachingStoreFactory factory = new CachingStoreFactory(new MemoryStoreFactory() {
+            @Override
+            public Store createStore(UUID sessionId) {
+                return remote;
+            }
+        }, 60000);
+
+        try {
+            remote.set("name", "value");
+            CachingStore store = (CachingStore) factory.createStore(UUID.randomUUID());
+
+            assertEquals("value", store.get("name"));
+            assertEquals("value", store.get("name"));
+            assertTrue(store.has("name"));
+            assertFalse(store.has("absent"));
+            assertFalse(store.has("absent"));
+            assertEquals(2, remote.reads);
+
+            store.set("counter", 1);
+            store.set("counter", 2);
+            store.del("name");
+            assertEquals(1, remote.writes);
+            assertNull(store.get("name"));
+
+            store.flush();
+            assertEquals(3, remote.writes);
+            assertEquals(2, (int) (Integer) remote.get("counter"));
+            assertFalse(remote.has("name"));
+
+            remote.set("counter", 3);
+            store.invalidate(Collections.singletonList("counter"));
+            assertEquals(3, (int) (Integer) store.get("counter"));
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidationDuringRead() {
+        final CachingStore[] stores = new CachingStore[1];
+        final MemoryStore remote = new MemoryStore() {
+            @Override
+            public <T> T get(String key) {
+                T value = super.get(key);
+                // other node changes value after it's read
+                super.set(key, "new");
+                stores[0].invalidate(Collections.singletonList(key));
+                return value;
+            }
+        };
+        CachingStoreFactory factory = new CachingStoreFactory(new MemoryStoreFactory() {
+            @Override
+            public Store createStore(UUID sessionId) {
+                return remote;
+            }
+        }, 60000);
+
+        try {
+            remote.set("name", "old");
+            stores[0] = (CachingStore) factory.createStore(UUID.randomUUID());
+
+            assertEquals("old", stores[0].get("name"));
+            // stale value isn't cached
+            assertEquals("new", stores[0].get("name"));
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidationOnFailedFlush() {
+        final List<String> invalidated = new ArrayList<String>();
+        final PubSubStore pubSubStore = new MemoryPubSubStore() {
+            @Override
+            public void publish(PubSubType type, PubSubMessage msg) {
+                invalidated.addAll(((InvalidateMessage) msg).getKeys());
+            }
+        };
+        final MemoryStore remote = new MemoryStore() {
+            @Override
+            public void set(String key, Object value) {
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        CachingStoreFactory factory = new CachingStoreFactory(new MemoryStoreFactory() {
+            @Override
+            public Store createStore(UUID sessionId) {
+                return remote;
+            }
+
+            @Override
+            public PubSubStore pubSubStore() {
+                return pubSubStore;
+            }
+        }, 60000);
+
+        try {
+            CachingStore store = (CachingStore) factory.createStore(UUID.randomUUID());
+            store.set("name", "value");
+            try {
+                store.flush();
+                fail();
+            } catch (IllegalStateException e) {
+                // write failure
+            }
+            assertEquals(Collections.singletonList("name"), invalidated);
+            assertEquals("value", store.get("name"));
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void testDisconnectDuringFlush(@Mocked final ClientHead client) throws Exception {
+        final UUID sessionId = UUID.randomUUID();
+        new Expectations() {{
+            client.getSessionId();
+            result = sessionId;
+            minTimes = 0;
+        }};
+
+        // session maps of remote storage
+        final ConcurrentMap<String, Map<String, Object>> remote = new ConcurrentHashMap<String, Map<String, Object>>();
+        final StoreCleaner cleaner = new StoreCleaner() {
+            @Override
+            protected void delete(List<String> names) {
+                for (String name : names) {
+                    remote.remove(name);
+                }
+            }
+        };
+        final CountDownLatch writeStarted = new CountDownLatch(1);
+        final CountDownLatch writeReleased = new CountDownLatch(1);
+        final CachingStoreFactory factory = new CachingStoreFactory(new MemoryStoreFactory() {
+            @Override
+            public Store createStore(final UUID id) {
+                return new MemoryStore() {
+                    @Override
+                    public void set(String key, Object value) {
+                        writeStarted.countDown();
+                        try {
+                            writeReleased.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        Map<String, Object> map = new ConcurrentHashMap<String, Object>();
+                        Map<String, Object> oldMap = remote.putIfAbsent(id.toString(), map);
+                        if (oldMap != null) {
+                            map = oldMap;
+                        }
+                        map.put(key, value);
+                    }
+                };
+            }
+
+            @Override
+            public void onDisconnect(ClientHead head) {
+                cleaner.release(head.getSessionId());
+            }
+        }, 10);
+
+        try {
+            Store store = factory.createStore(sessionId);
+            store.set("name", "value");
+            assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+
+            Thread disconnect = new Thread() {
+                @Override
+                public void run() {
+                    factory.onDisconnect(client);
+                }
+            };
+            disconnect.start();
+            // waits for flush in progress
+            disconnect.join(200);
+            assertTrue(disconnect.isAlive());
+
+            writeReleased.countDown();
+            disconnect.join(5000);
+            assertFalse(disconnect.isAlive());
+
+            // session map is deleted after the last write
+            cleaner.shutdown();
+            assertFalse(remote.containsKey(sessionId.toString()));
+
+            store.set("name", "other");
+            Thread.sleep(100);
+            assertFalse(remote.containsKey(sessionId.toString()));
+        } finally {
+            writeReleased.countDown();
+            factory.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
+import com.corundumstudio.socketio.store.pubsub.DispatchMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+public class MeshPubSubStoreTest {
+
+    private final List<MeshPubSubStore> nodes = new ArrayList<MeshPubSubStore>();
+
+    private InetSocketAddress freeAddress() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private MeshPubSubStore startNode(long nodeId, InetSocketAddress address, List<InetSocketAddress> seeds) {
+        MeshPubSubStore node = createNode(nodeId, address, seeds);
+        node.start();
+        return node;
+    }
+
+    private MeshPubSubStore createNode(long nodeId, InetSocketAddress address, List<InetSocketAddress> seeds) {
+        PubSubMessageCodec codec = new PubSubMessageCodec();
+        codec.setAllowedClasses(PubSubMessageCodec.DEFAULT_ALLOWED_CLASSES);
+        MeshPubSubStore node = new MeshPubSubStore(nodeId, address, seeds, codec);
+        node.setSecret("secret");
+        node.setGossipInterval(100);
+        node.setReconnectDelay(100);
+        nodes.add(node);
+        return node;
+    }
+
+    private void subscribeConnect(MeshPubSubStore node, final List<UUID> received, final CountDownLatch latch) {
+        node.subscribe(PubSubType.CONNECT, new PubSubListener<ConnectMessage>() {
+            @Override
+            public void onMessage(ConnectMessage msg) {
+                received.add(msg.getSessionId());
+                latch.countDown();
+            }
+        }, ConnectMessage.class);
+    }
+
+    private void awaitPeers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (MeshPubSubStore node : nodes) {
+            while (node.getConnectedPeersCount() < count) {
+                assertTrue("mesh is not established", System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @After
+    public void shutdown() {
+        for (MeshPubSubStore node : nodes) {
+            node.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullMeshFromSingleSeed() throws Exception {
+        InetSocketAddress seed = freeAddress();
+        List<InetSocketAddress> seeds = Collections.singletonList(seed);
+        startNode(1, seed, Collections.<InetSocketAddress>emptyList());
+        startNode(2, freeAddress(), seeds);
+        MeshPubSubStore third = startNode(3, freeAddress(), seeds);
+        awaitPeers(2);
+
+        final UUID sessionId = UUID.randomUUID();
+        final CountDownLatch latch = new CountDownLatch(2);
+        for (MeshPubSubStore node : nodes) {
+            node.subscribe(PubSubType.CONNECT, new PubSubListener<ConnectMessage>() {
+                @Override
+                public void onMessage(ConnectMessage msg) {
+                    assertEquals(sessionId, msg.getSessionId());
+                    assertEquals(3L, (long) msg.getNodeId());
+                    latch.countDown();
+                }
+            }, ConnectMessage.class);
+        }
+
+        third.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, third.getDroppedFramesCount());
+    }
+
+    @Test
+    public void testControlFramesOnOverflow() throws Exception {
+        InetSocketAddress firstAddress = freeAddress();
+        MeshPubSubStore first = startNode(1, firstAddress, Collections.<InetSocketAddress>emptyList());
+        MeshPubSubStore second = createNode(2, freeAddress(), Collections.singletonList(firstAddress));
+        second.setWriteBufferHighWaterMark(64);
+        second.start();
+        awaitPeers(1);
+
+        int count = 2000;
+        List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        CountDownLatch latch = new CountDownLatch(count);
+        subscribeConnect(first, received, latch);
+
+        List<UUID> sent = new ArrayList<UUID>();
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName("event");
+        packet.setData(Collections.<Object>singletonList(new String(new char[1024])));
+        for (int i = 0; i < count; i++) {
+            second.publish(PubSubType.DISPATCH, new DispatchMessage("room", packet, ""));
+            UUID sessionId = UUID.randomUUID();
+            sent.add(sessionId);
+            second.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(sent, received);
+        assertTrue(second.getDroppedFramesCount() > 0);
+    }
+
+    @Test
+    public void testControlFramesOnReconnect() throws Exception {
+        InetSocketAddress firstAddress = freeAddress();
+        InetSocketAddress secondAddress = freeAddress();
+        MeshPubSubStore first = createNode(1, firstAddress, Collections.singletonList(secondAddress));
+        final CountDownLatch reconnected = new CountDownLatch(1);
+        first.setPeerListener(new MeshPubSubStore.PeerListener() {
+            @Override
+            public void onPeerDisconnected(Long nodeId) {
+            }
+
+            @Override
+            public void onPeerReconnected(InetSocketAddress address) {
+                reconnected.countDown();
+            }
+        });
+        first.start();
+        MeshPubSubStore second = startNode(2, secondAddress, Collections.singletonList(firstAddress));
+        awaitPeers(1);
+
+        second.shutdown();
+        nodes.remove(second);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (first.getConnectedPeersCount() > 0) {
+            assertTrue("peer is not disconnected", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+
+        UUID sessionId = UUID.randomUUID();
+        first.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+
+        List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        CountDownLatch latch = new CountDownLatch(1);
+        MeshPubSubStore restarted = createNode(2, secondAddress, Collections.singletonList(firstAddress));
+        subscribeConnect(restarted, received, latch);
+        restarted.start();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(sessionId), received);
+        assertTrue(reconnected.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWrongSecret() throws Exception {
+        InetSocketAddress firstAddress = freeAddress();
+        MeshPubSubStore first = startNode(1, firstAddress, Collections.<InetSocketAddress>emptyList());
+        List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        CountDownLatch latch = new CountDownLatch(1);
+        subscribeConnect(first, received, latch);
+
+        MeshPubSubStore second = createNode(2, freeAddress(), Collections.singletonList(firstAddress));
+        second.setSecret("other");
+        second.start();
+        MeshPubSubStore third = startNode(3, freeAddress(), Collections.singletonList(firstAddress));
+
+        for (int i = 0; i < 10; i++) {
+            second.publish(PubSubType.CONNECT, new ConnectMessage(UUID.randomUUID()));
+            Thread.sleep(50);
+        }
+        assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+
+        UUID sessionId = UUID.randomUUID();
+        third.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(sessionId), received);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSecretRequired() throws Exception {
+        MeshPubSubStore node = createNode(1, freeAddress(), Collections.<InetSocketAddress>emptyList());
+        node.setSecret(null);
+        node.start();
+    }
+
+    @Test
+    public void testInsecure() throws Exception {
+        InetSocketAddress firstAddress = freeAddress();
+        MeshPubSubStore first = createNode(1, firstAddress, Collections.<InetSocketAddress>emptyList());
+        first.setSecret(null);
+        first.setInsecure(true);
+        first.start();
+        List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        CountDownLatch latch = new CountDownLatch(1);
+        subscribeConnect(first, received, latch);
+
+        MeshPubSubStore second = createNode(2, freeAddress(), Collections.singletonList(firstAddress));
+        second.setSecret(null);
+        second.setInsecure(true);
+        second.start();
+        awaitPeers(1);
+
+        UUID sessionId = UUID.randomUUID();
+        second.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(sessionId), received);
+    }
+
+}
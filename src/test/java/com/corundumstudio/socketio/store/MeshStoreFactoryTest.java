@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.RoomRoutingPubSubStore;
+
+import mockit.Injectable;
+
+public class MeshStoreFactoryTest {
+
+    @Injectable
+    private AuthorizeHandler authorizeHandler;
+
+    private MeshStoreFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        } finally {
+            socket.close();
+        }
+        factory = new MeshStoreFactory(address, Collections.<InetSocketAddress>emptyList());
+        factory.setSecret("secret");
+    }
+
+    @After
+    public void tearDown() {
+        factory.shutdown();
+    }
+
+    private void init() {
+        NamespacesHub hub = new NamespacesHub(new Configuration());
+        factory.init(hub, authorizeHandler, null);
+    }
+
+    @Test
+    public void testPubSubOptions() {
+        factory.setDispatchRouting(4);
+        factory.setPubSubBatching(100, 5);
+        factory.setPubSubBatching(200, 5);
+        init();
+
+        PubSubStore store = factory.pubSubStore();
+        assertTrue(store instanceof RoomRoutingPubSubStore);
+        assertSame(store, factory.pubSubStore());
+    }
+
+    @Test
+    public void testOptionsAfterInit() {
+        init();
+        PubSubStore store = factory.pubSubStore();
+        assertSame(factory.getMeshStore(), store);
+
+        try {
+            factory.setPubSubBatching(100, 5);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            factory.setDispatchRouting(0);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            factory.setSecret("other");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertSame(store, factory.pubSubStore());
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.store.pubsub.BatchMessage;
+import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
+import com.corundumstudio.socketio.store.pubsub.DispatchMessage;
+import com.corundumstudio.socketio.store.pubsub.HeartbeatMessage;
+import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
+import com.corundumstudio.socketio.store.pubsub.NodeStateMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.SessionMessage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+public class PubSubMessageCodecTest {
+
+    private final PubSubMessageCodec codec = new PubSubMessageCodec();
+
+    private PubSubMessage roundTrip(PubSubMessage msg) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            codec.encode(msg, buf);
+            PubSubMessage result = codec.decode(buf);
+            assertEquals(0, buf.readableBytes());
+            return result;
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testJoinLeaveMessage() throws IOException {
+        UUID sessionId = UUID.randomUUID();
+        JoinLeaveMessage msg = new JoinLeaveMessage(sessionId, "room", "/chat");
+        msg.setNodeId(123456L);
+
+        JoinLeaveMessage first = (JoinLeaveMessage) roundTrip(msg);
+        assertEquals(sessionId, first.getSessionId());
+        assertEquals("room", first.getRoom());
+        assertEquals("/chat", first.getNamespace());
+        assertEquals(Long.valueOf(123456L), first.getNodeId());
+
+        JoinLeaveMessage second = (JoinLeaveMessage) roundTrip(msg);
+        assertSame(first.getRoom(), second.getRoom());
+        assertSame(first.getNamespace(), second.getNamespace());
+    }
+
+    @Test
+    public void testNullValues() throws IOException {
+        ConnectMessage msg = (ConnectMessage) roundTrip(new ConnectMessage(new UUID(0, 0)));
+        assertNull(msg.getNodeId());
+        assertEquals(new UUID(0, 0), msg.getSessionId());
+
+        JoinLeaveMessage joinMsg = (JoinLeaveMessage) roundTrip(new JoinLeaveMessage(UUID.randomUUID(), null, ""));
+        assertNull(joinMsg.getRoom());
+        assertEquals("", joinMsg.getNamespace());
+    }
+
+    @Test
+    public void testPreparedDispatchMessage() throws IOException {
+        codec.setJsonSupport(new JacksonJsonSupport());
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName("message");
+        packet.setNsp("/chat");
+        packet.setData(Arrays.<Object>asList("text", 1));
+        DispatchMessage msg = new DispatchMessage("room", packet, "/chat");
+        msg.setNodeId(1L);
+
+        DispatchMessage prepared = (DispatchMessage) codec.prepare(msg);
+        assertNull(packet.getEncodedArgs());
+
+        DispatchMessage result = (DispatchMessage) roundTrip(prepared);
+        Packet resultPacket = result.getPacket();
+        assertEquals("room", result.getRoom());
+        assertEquals("/chat", result.getNamespace());
+        assertEquals(PacketType.MESSAGE, resultPacket.getType());
+        assertEquals(PacketType.EVENT, resultPacket.getSubType());
+        assertEquals("message", resultPacket.getName());
+        assertEquals("/chat", resultPacket.getNsp());
+        assertNull(resultPacket.getAckId());
+        assertArrayEquals("\"text\",1".getBytes(CharsetUtil.UTF_8), resultPacket.getEncodedArgs());
+    }
+
+    @Test
+    public void testSerializedPacket() throws IOException {
+        Packet packet = new Packet(PacketType.MESSAGE);
+        packet.setSubType(PacketType.EVENT);
+        packet.setName("message");
+        packet.setData(Collections.<Object>singletonList("text"));
+
+        DispatchMessage result = (DispatchMessage) roundTrip(new DispatchMessage("room", packet, ""));
+        assertEquals(Collections.singletonList("text"), result.getPacket().getData());
+    }
+
+    @Test
+    public void testBatchMessage() throws IOException {
+        BatchMessage msg = new BatchMessage(Arrays.<PubSubMessage>asList(
+                                new JoinLeaveMessage(UUID.randomUUID(), "a", ""),
+                                new JoinLeaveMessage(UUID.randomUUID(), "b", "")));
+        msg.setNodeId(7L);
+
+        BatchMessage result = (BatchMessage) roundTrip(msg);
+        assertEquals(Long.valueOf(7L), result.getNodeId());
+        assertEquals(2, result.getMessages().size());
+        assertEquals("b", ((JoinLeaveMessage) result.getMessages().get(1)).getRoom());
+        assertTrue(result.getMessages().get(0) instanceof JoinLeaveMessage);
+    }
+
+    @Test
+    public void testNodeMessages() throws IOException {
+        HeartbeatMessage heartbeat = new HeartbeatMessage(-42L);
+        heartbeat.setNodeId(3L);
+        HeartbeatMessage heartbeatResult = (HeartbeatMessage) roundTrip(heartbeat);
+        assertEquals(Long.valueOf(3L), heartbeatResult.getNodeId());
+        assertEquals(-42L, heartbeatResult.getStateDigest());
+
+        Map<String, Integer> chatRooms = new HashMap<String, Integer>();
+        chatRooms.put("room", 2);
+        chatRooms.put("other", 300);
+        Map<String, Map<String, Integer>> rooms = new HashMap<String, Map<String, Integer>>();
+        rooms.put("/chat", chatRooms);
+        rooms.put("", Collections.singletonMap("lobby", 1));
+        NodeStateMessage state = new NodeStateMessage(rooms, true);
+        state.setNodeId(3L);
+
+        NodeStateMessage result = (NodeStateMessage) roundTrip(state);
+        assertEquals(Long.valueOf(3L), result.getNodeId());
+        assertTrue(result.isSyncRequested());
+        assertEquals(rooms, result.getRooms());
+    }
+
+    @Test
+    public void testAllowedClasses() throws IOException {
+        codec.setAllowedClasses(PubSubMessageCodec.DEFAULT_ALLOWED_CLASSES);
+        SessionMessage msg = new SessionMessage(UUID.randomUUID(), "", "event",
+                                    Arrays.<Object>asList("text", 1, new int[] {1}, new String[] {"a"}),
+                                    1L, new Class<?>[] {String.class}, 5);
+
+        SessionMessage result = (SessionMessage) roundTrip(msg);
+        assertEquals("text", result.getArgs().get(0));
+        assertArrayEquals(new String[] {"a"}, (String[]) result.getArgs().get(3));
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testNotAllowedClass() throws IOException {
+        codec.setAllowedClasses(PubSubMessageCodec.DEFAULT_ALLOWED_CLASSES);
+        SessionMessage msg = new SessionMessage(UUID.randomUUID(), "", "event",
+                                    Arrays.<Object>asList(URI.create("http://localhost")));
+        roundTrip(msg);
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testNotAllowedJdkClass() throws IOException {
+        codec.setAllowedClasses(PubSubMessageCodec.DEFAULT_ALLOWED_CLASSES);
+        SessionMessage msg = new SessionMessage(UUID.randomUUID(), "", "event",
+                                    Arrays.<Object>asList(new Date()));
+        roundTrip(msg);
+    }
+
+}
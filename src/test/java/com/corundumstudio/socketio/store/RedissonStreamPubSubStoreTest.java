@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamGroup;
+import org.redisson.api.StreamMessageId;
+import org.redisson.config.Config;
+
+import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+/**
+ * Requires <code>redis-server</code> on localhost:6379, skipped otherwise
+ */
+public class RedissonStreamPubSubStoreTest {
+
+    private RedissonClient redisson;
+
+    @Before
+    public void before() {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress("127.0.0.1", 6379), 500);
+            socket.close();
+        } catch (IOException e) {
+            Assume.assumeNoException(e);
+        }
+
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:6379");
+        redisson = Redisson.create(config);
+    }
+
+    @After
+    public void after() {
+        if (redisson != null) {
+            redisson.shutdown();
+        }
+    }
+
+    private void await(List<UUID> received, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (received.size() < size) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testCatchUpAfterResubscription() throws Exception {
+        String channel = UUID.randomUUID().toString();
+        RedissonStreamPubSubStore publisher = new RedissonStreamPubSubStore(redisson, 1L, new PubSubMessageCodec(), 1000, 16);
+        RedissonStreamPubSubStore subscriber = new RedissonStreamPubSubStore(redisson, 2L, new PubSubMessageCodec(), 1000, 16);
+        final List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        PubSubListener<ConnectMessage> listener = new PubSubListener<ConnectMessage>() {
+            @Override
+            public void onMessage(ConnectMessage msg) {
+                received.add(msg.getSessionId());
+            }
+        };
+
+        try {
+            List<UUID> sent = new ArrayList<UUID>();
+            subscriber.subscribe(PubSubType.CONNECT, channel, listener, ConnectMessage.class);
+            for (int i = 0; i < 100; i++) {
+                UUID sessionId = UUID.randomUUID();
+                sent.add(sessionId);
+                publisher.publish(PubSubType.CONNECT, channel, new ConnectMessage(sessionId));
+            }
+            await(received, 100);
+
+            // messages published while unsubscribed are read from group offset
+            subscriber.unsubscribe(PubSubType.CONNECT, channel);
+            for (int i = 0; i < 50; i++) {
+                UUID sessionId = UUID.randomUUID();
+                sent.add(sessionId);
+                publisher.publish(PubSubType.CONNECT, channel, new ConnectMessage(sessionId));
+            }
+            subscriber.subscribe(PubSubType.CONNECT, channel, listener, ConnectMessage.class);
+            await(received, 150);
+
+            assertEquals(sent, received);
+        } finally {
+            publisher.shutdown();
+            subscriber.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultipleStreams() throws Exception {
+        RedissonStreamPubSubStore publisher = new RedissonStreamPubSubStore(redisson, 1L, new PubSubMessageCodec(), 1000, 16);
+        RedissonStreamPubSubStore subscriber = new RedissonStreamPubSubStore(redisson, 2L, new PubSubMessageCodec(), 1000, 16);
+        final List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        PubSubListener<ConnectMessage> listener = new PubSubListener<ConnectMessage>() {
+            @Override
+            public void onMessage(ConnectMessage msg) {
+                received.add(msg.getSessionId());
+            }
+        };
+
+        try {
+            List<String> channels = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                String channel = UUID.randomUUID().toString();
+                channels.add(channel);
+                subscriber.subscribe(PubSubType.CONNECT, channel, listener, ConnectMessage.class);
+            }
+            for (int i = 0; i < 100; i++) {
+                publisher.publish(PubSubType.CONNECT, channels.get(i % channels.size()), new ConnectMessage(UUID.randomUUID()));
+            }
+            await(received, 100);
+        } finally {
+            publisher.shutdown();
+            subscriber.shutdown();
+        }
+    }
+
+    @Test
+    public void testCleanup() throws Exception {
+        String channel = UUID.randomUUID().toString();
+        RedissonStreamPubSubStore store = new RedissonStreamPubSubStore(redisson, 1L, new PubSubMessageCodec(), 1000, 16);
+        store.setGroupTimeout(200);
+        try {
+            store.publish(PubSubType.CONNECT, channel, new ConnectMessage(UUID.randomUUID()));
+            RStream<Object, Object> stream = redisson.getStream("{socketio:stream}:CONNECT:" + channel);
+            // group of crashed node
+            stream.createGroup("node-3", StreamMessageId.ALL);
+            stream.readGroup("node-3", "3", StreamMessageId.NEVER_DELIVERED);
+            assertEquals(1, stream.listGroups().size());
+
+            Thread.sleep(300);
+            store.cleanup();
+            assertFalse(stream.isExists());
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    public void testCleanupKeepsLiveGroups() throws Exception {
+        String channel = UUID.randomUUID().toString();
+        RedissonStreamPubSubStore subscriber = new RedissonStreamPubSubStore(redisson, 2L, new PubSubMessageCodec(), 1000, 16);
+        subscriber.setGroupTimeout(5000);
+        final List<UUID> received = new CopyOnWriteArrayList<UUID>();
+        subscriber.subscribe(PubSubType.CONNECT, channel, new PubSubListener<ConnectMessage>() {
+            @Override
+            public void onMessage(ConnectMessage msg) {
+                received.add(msg.getSessionId());
+            }
+        }, ConnectMessage.class);
+        try {
+            RStream<Object, Object> stream = redisson.getStream("{socketio:stream}:CONNECT:" + channel);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (stream.listConsumers("node-2").isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+
+            subscriber.cleanup();
+            List<StreamGroup> groups = stream.listGroups();
+            assertEquals(1, groups.size());
+            assertEquals("node-2", groups.get(0).getName());
+        } finally {
+            subscriber.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import com.corundumstudio.socketio.store.pubsub.DispatchMessage;
+import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+import com.corundumstudio.socketio.store.pubsub.RoomRoutingPubSubStore;
+
+public class RoomRoutingPubSubStoreTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Records subscribed channels and published messages
+     */
+    static class RecordingPubSubStore extends MemoryPubSubStore {
+
+        final Set<String> channels = Collections.synchronizedSet(new HashSet<String>());
+        final List<String> publishedChannels = Collections.synchronizedList(new ArrayList<String>());
+        final List<PubSubType> publishedTypes = Collections.synchronizedList(new ArrayList<PubSubType>());
+
+        @Override
+        public void publish(PubSubType type, PubSubMessage msg) {
+            publishedTypes.add(type);
+        }
+
+        @Override
+        public void publish(PubSubType type, String channel, PubSubMessage msg) {
+            publishedChannels.add(channel);
+        }
+
+        @Override
+        public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+            assertTrue(channels.add(channel));
+        }
+
+        @Override
+        public void unsubscribe(PubSubType type, String channel) {
+            assertTrue(channels.remove(channel));
+        }
+
+    }
+
+    @Test
+    public void testRoomChannels() {
+        RecordingPubSubStore delegate = new RecordingPubSubStore();
+        RoomRoutingPubSubStore store = new RoomRoutingPubSubStore(delegate, 0, DIRECT_EXECUTOR);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(first, "room", "/chat"));
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(second, "room", "/chat"));
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(second, "room", "/chat"));
+        assertEquals(1, delegate.channels.size());
+        assertTrue(delegate.channels.contains(store.channel("/chat", "room")));
+
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(second, "room", "/chat"));
+        assertEquals(1, delegate.channels.size());
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(first, "room", "/chat"));
+        assertEquals(0, delegate.channels.size());
+        assertEquals(0, store.getChannelsCount());
+
+        // membership messages are still published to other nodes
+        assertEquals(5, delegate.publishedTypes.size());
+    }
+
+    @Test
+    public void testShardChannels() {
+        RecordingPubSubStore delegate = new RecordingPubSubStore();
+        RoomRoutingPubSubStore store = new RoomRoutingPubSubStore(delegate, 1, DIRECT_EXECUTOR);
+        UUID sessionId = UUID.randomUUID();
+
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, "a", ""));
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, "b", ""));
+        assertEquals(1, store.getChannelsCount());
+
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, "a", ""));
+        assertEquals(1, store.getChannelsCount());
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, "b", ""));
+        assertEquals(0, store.getChannelsCount());
+    }
+
+    @Test
+    public void testDispatchIsPublishedToRoomChannel() {
+        RecordingPubSubStore delegate = new RecordingPubSubStore();
+        RoomRoutingPubSubStore store = new RoomRoutingPubSubStore(delegate, 16);
+
+        store.publish(PubSubType.DISPATCH, new DispatchMessage("room", new Packet(PacketType.MESSAGE), "/chat"));
+
+        assertEquals(1, delegate.publishedChannels.size());
+        assertEquals(store.channel("/chat", "room"), delegate.publishedChannels.get(0));
+        assertEquals(0, delegate.publishedTypes.size());
+    }
+
+    @Test
+    public void testSubscriptionIsChangedAsynchronously() throws InterruptedException {
+        RecordingPubSubStore delegate = new RecordingPubSubStore();
+        RoomRoutingPubSubStore store = new RoomRoutingPubSubStore(delegate, 0);
+        UUID sessionId = UUID.randomUUID();
+
+        store.publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, "room", "/chat"));
+        assertEquals(1, store.getChannelsCount());
+        awaitChannels(delegate, 1);
+
+        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, "room", "/chat"));
+        assertEquals(0, store.getChannelsCount());
+        awaitChannels(delegate, 0);
+        store.shutdown();
+    }
+
+    @Test
+    public void testConcurrentJoinAndLeave() throws InterruptedException {
+        final RecordingPubSubStore delegate = new RecordingPubSubStore();
+        final RoomRoutingPubSubStore store = new RoomRoutingPubSubStore(delegate, 0);
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    UUID sessionId = UUID.randomUUID();
+                    for (int j = 0; j < 1000; j++) {
+                        store.publish(PubSubType.JOIN, new JoinLeaveMessage(sessionId, "room", "/chat"));
+                        store.publish(PubSubType.LEAVE, new JoinLeaveMessage(sessionId, "room", "/chat"));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(0, store.getChannelsCount());
+        awaitChannels(delegate, 0);
+        store.shutdown();
+    }
+
+    private void awaitChannels(RecordingPubSubStore delegate, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && delegate.channels.size() != count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, delegate.channels.size());
+    }
+
+}
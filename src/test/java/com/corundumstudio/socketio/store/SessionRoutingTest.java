@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corundumstudio.socketio.AckCallback;
+import com.corundumstudio.socketio.AsyncAuthorizationListener;
+import com.corundumstudio.socketio.AuthorizationResult;
+import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.HandshakeData;
+import com.corundumstudio.socketio.handler.AuthorizeHandler;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.handler.ClientsBox;
+import com.corundumstudio.socketio.namespace.Namespace;
+import com.corundumstudio.socketio.namespace.NamespacesHub;
+import com.corundumstudio.socketio.scheduler.HashedWheelScheduler;
+import com.corundumstudio.socketio.store.pubsub.BaseStoreFactory;
+import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
+import com.corundumstudio.socketio.store.pubsub.JoinLeaveMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubStore;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+import mockit.Injectable;
+
+public class SessionRoutingTest {
+
+    @Injectable
+    private AuthorizeHandler authorizeHandler;
+
+    private final List<ClusterPubSubStore> cluster = new CopyOnWriteArrayList<ClusterPubSubStore>();
+    private volatile boolean dropSessionMessages;
+
+    private TestStoreFactory node1;
+    private TestStoreFactory node2;
+
+    @Before
+    public void setUp() {
+        node1 = createNode(0);
+        node2 = createNode(0);
+    }
+
+    @After
+    public void tearDown() {
+        for (ClusterPubSubStore store : cluster) {
+            store.factory.shutdown();
+        }
+    }
+
+    private TestStoreFactory createNode(long heartbeatInterval) {
+        TestStoreFactory factory = new TestStoreFactory(heartbeatInterval);
+        cluster.add(factory.pubSubStore);
+
+        factory.hub.create("/");
+        factory.init(factory.hub, authorizeHandler, null);
+        return factory;
+    }
+
+    private UUID connectToNode2() {
+        UUID sessionId = UUID.randomUUID();
+        node2.pubSubStore().publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+        assertEquals(node2.nodeId(), node1.getSessionNode(sessionId));
+        return sessionId;
+    }
+
+    @Test
+    public void testUnknownSession() {
+        assertFalse(node1.sendToSession("/", UUID.randomUUID(), "event", null));
+    }
+
+    @Test
+    public void testEngineIOv4Session() {
+        Configuration configuration = new Configuration();
+        configuration.setStoreFactory(node2);
+        configuration.setAsyncAuthorizationListener(new AsyncAuthorizationListener() {
+            @Override
+            public CompletionStage<AuthorizationResult> authorize(HandshakeData data) {
+                return CompletableFuture.completedFuture(AuthorizationResult.SUCCESSFUL_AUTHORIZATION);
+            }
+        });
+        HashedWheelScheduler scheduler = new HashedWheelScheduler();
+        AuthorizeHandler handler = new AuthorizeHandler("/socket.io/", scheduler, configuration,
+                null, null, null, null, new ClientsBox());
+        EmbeddedChannel channel = new EmbeddedChannel(handler) {
+            @Override
+            public SocketAddress remoteAddress() {
+                return new InetSocketAddress("127.0.0.1", 50000);
+            }
+
+            @Override
+            public SocketAddress localAddress() {
+                return new InetSocketAddress("127.0.0.1", 8080);
+            }
+        };
+        try {
+            channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                    "/socket.io/?EIO=4&transport=polling"));
+            channel.runPendingTasks();
+            ClientHead client = channel.attr(ClientHead.CLIENT).get();
+            UUID sessionId = client.getSessionId();
+            assertFalse(node1.sendToSession("/", sessionId, "event", null));
+
+            // polling transport connects on each request
+            handler.connect(client);
+            handler.connect(client);
+
+            assertEquals(node2.nodeId(), node1.getSessionNode(sessionId));
+            assertTrue(node1.sendToSession("/", sessionId, "event", null, "data"));
+        } finally {
+            channel.finishAndReleaseAll();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testRoomStateReconciliation() throws InterruptedException {
+        TestStoreFactory first = createNode(50);
+        TestStoreFactory second = createNode(50);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!first.getNodes().contains(second.nodeId())
+                || !second.getNodes().contains(first.nodeId())) {
+            assertTrue("node is not discovered", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        // let initial state exchange complete
+        Thread.sleep(200);
+
+        // duplicated join of member which isn't connected to second node
+        second.pubSubStore().publish(PubSubType.JOIN, new JoinLeaveMessage(UUID.randomUUID(), "room", "/"));
+        Namespace namespace = first.hub.get("/");
+        assertEquals(1, namespace.getClusterRoomSize("room"));
+
+        while (namespace.getClusterRoomSize("room") != 0) {
+            assertTrue("room state is not reconciled", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testRemoteTimeoutOfMissingClient() {
+        UUID sessionId = connectToNode2();
+        RecordingAckCallback callback = new RecordingAckCallback(-1);
+
+        assertTrue(node1.sendToSession("/", sessionId, "event", callback, "data"));
+        assertEquals(1, callback.timeouts.get());
+    }
+
+    @Test
+    public void testLocalTimeout() throws InterruptedException {
+        UUID sessionId = connectToNode2();
+        dropSessionMessages = true;
+        RecordingAckCallback callback = new RecordingAckCallback(1);
+
+        assertTrue(node1.sendToSession("/", sessionId, "event", callback, "data"));
+        assertTrue(callback.timeoutLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, callback.timeouts.get());
+    }
+
+    @Test
+    public void testNodeFailure() {
+        UUID sessionId = connectToNode2();
+        dropSessionMessages = true;
+        RecordingAckCallback callback = new RecordingAckCallback(-1);
+        assertTrue(node1.sendToSession("/", sessionId, "event", callback, "data"));
+        assertEquals(0, callback.timeouts.get());
+
+        node1.nodeLeft(node2.nodeId());
+
+        assertEquals(1, callback.timeouts.get());
+        assertNull(node1.getSessionNode(sessionId));
+        assertFalse(node1.sendToSession("/", sessionId, "event", null));
+    }
+
+    private static class RecordingAckCallback extends AckCallback<String> {
+
+        final AtomicInteger timeouts = new AtomicInteger();
+        final CountDownLatch timeoutLatch = new CountDownLatch(1);
+
+        RecordingAckCallback(int timeout) {
+            super(String.class, timeout);
+        }
+
+        @Override
+        public void onSuccess(String result) {
+        }
+
+        @Override
+        public void onTimeout() {
+            timeouts.incrementAndGet();
+            timeoutLatch.countDown();
+        }
+
+    }
+
+    private class TestStoreFactory extends BaseStoreFactory {
+
+        final ClusterPubSubStore pubSubStore = new ClusterPubSubStore(this);
+        final NamespacesHub hub = new NamespacesHub(new Configuration());
+
+        TestStoreFactory(long heartbeatInterval) {
+            setNodeHeartbeat(heartbeatInterval, 10000);
+        }
+
+        Long nodeId() {
+            return getNodeId();
+        }
+
+        void nodeLeft(Long nodeId) {
+            onNodeLeft(nodeId);
+        }
+
+        @Override
+        public Store createStore(UUID sessionId) {
+            return new MemoryStore();
+        }
+
+        @Override
+        public PubSubStore pubSubStore() {
+            return pubSubStore;
+        }
+
+        @Override
+        public <K, V> Map<K, V> createMap(String name) {
+            return new ConcurrentHashMap<K, V>();
+        }
+
+    }
+
+    /**
+     * Delivers messages synchronously to subscribers of other nodes
+     */
+    private class ClusterPubSubStore implements PubSubStore {
+
+        private final TestStoreFactory factory;
+        private final Map<String, List<PubSubListener<PubSubMessage>>> listeners =
+                                    new ConcurrentHashMap<String, List<PubSubListener<PubSubMessage>>>();
+
+        ClusterPubSubStore(TestStoreFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void publish(PubSubType type, PubSubMessage msg) {
+            publish(type.toString(), msg);
+        }
+
+        @Override
+        public void publish(PubSubType type, String channel, PubSubMessage msg) {
+            if (type == PubSubType.SESSION && dropSessionMessages) {
+                return;
+            }
+            publish(type + ":" + channel, msg);
+        }
+
+        private void publish(String name, PubSubMessage msg) {
+            msg.setNodeId(factory.nodeId());
+            for (ClusterPubSubStore store : cluster) {
+                if (store == this) {
+                    continue;
+                }
+                List<PubSubListener<PubSubMessage>> list = store.listeners.get(name);
+                if (list == null) {
+                    continue;
+                }
+                for (PubSubListener<PubSubMessage> listener : list) {
+                    listener.onMessage(msg);
+                }
+            }
+        }
+
+        @Override
+        public <T extends PubSubMessage> void subscribe(PubSubType type, PubSubListener<T> listener, Class<T> clazz) {
+            subscribe(type.toString(), listener);
+        }
+
+        @Override
+        public <T extends PubSubMessage> void subscribe(PubSubType type, String channel, PubSubListener<T> listener, Class<T> clazz) {
+            subscribe(type + ":" + channel, listener);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void subscribe(String name, PubSubListener<?> listener) {
+            List<PubSubListener<PubSubMessage>> list = listeners.get(name);
+            if (list == null) {
+                list = new CopyOnWriteArrayList<PubSubListener<PubSubMessage>>();
+                listeners.put(name, list);
+            }
+            list.add((PubSubListener<PubSubMessage>) listener);
+        }
+
+        @Override
+        public void unsubscribe(PubSubType type) {
+            listeners.remove(type.toString());
+        }
+
+        @Override
+        public void unsubscribe(PubSubType type, String channel) {
+            listeners.remove(type + ":" + channel);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.corundumstudio.socketio.store.pubsub.ConnectMessage;
+import com.corundumstudio.socketio.store.pubsub.PubSubListener;
+import com.corundumstudio.socketio.store.pubsub.PubSubMessageCodec;
+import com.corundumstudio.socketio.store.pubsub.PubSubType;
+
+public class SharedMemoryPubSubStoreTest {
+
+    @Test
+    public void testExchange() throws Exception {
+        File directory = Files.createTempDirectory("socketio-shm").toFile();
+        SharedMemoryPubSubStore first = new SharedMemoryPubSubStore(1L, directory, 1024 * 1024, null, new PubSubMessageCodec());
+        SharedMemoryPubSubStore second = new SharedMemoryPubSubStore(2L, directory, 1024 * 1024, null, new PubSubMessageCodec());
+        try {
+            final List<UUID> received = new CopyOnWriteArrayList<UUID>();
+            second.subscribe(PubSubType.CONNECT, new PubSubListener<ConnectMessage>() {
+                @Override
+                public void onMessage(ConnectMessage msg) {
+                    received.add(msg.getSessionId());
+                }
+            }, ConnectMessage.class);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!second.getLocalNodes().contains(1L)) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+
+            List<UUID> sent = new ArrayList<UUID>();
+            for (int i = 0; i < 1000; i++) {
+                UUID sessionId = UUID.randomUUID();
+                sent.add(sessionId);
+                first.publish(PubSubType.CONNECT, new ConnectMessage(sessionId));
+            }
+
+            while (received.size() < sent.size()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+            assertEquals(sent, received);
+            assertEquals(0, second.getLostMessagesCount());
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void testExistingSegment() throws Exception {
+        File directory = Files.createTempDirectory("socketio-shm").toFile();
+        File stale = new File(directory, "1.ring");
+        Files.write(stale.toPath(), new byte[16]);
+
+        SharedMemoryPubSubStore first = new SharedMemoryPubSubStore(1L, directory, 1024 * 1024, null, new PubSubMessageCodec());
+        try {
+            assertEquals(1024 * 1024, stale.length());
+            try {
+                new SharedMemoryPubSubStore(1L, directory, 4096, null, new PubSubMessageCodec());
+                fail();
+            } catch (IllegalStateException e) {
+                // segment of live node
+            }
+            assertEquals(1024 * 1024, stale.length());
+        } finally {
+            first.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012-2019 Nikita Koksharov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.corundumstudio.socketio.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class StoreCleanerTest {
+
+    @Test
+    public void testBatches() {
+        final List<Integer> batches = new ArrayList<Integer>();
+        StoreCleaner cleaner = new StoreCleaner() {
+            @Override
+            protected void delete(List<String> names) {
+                batches.add(names.size());
+            }
+        };
+        for (int i = 0; i < 250; i++) {
+            cleaner.release(UUID.randomUUID());
+        }
+        cleaner.shutdown();
+
+        assertEquals(Arrays.asList(100, 100, 50), batches);
+    }
+
+    @Test
+    public void testFailedBatchRetried() {
+        final List<List<String>> batches = new ArrayList<List<String>>();
+        StoreCleaner cleaner = new StoreCleaner() {
+            @Override
+            protected void delete(List<String> names) {
+                batches.add(new ArrayList<String>(names));
+                if (batches.size() == 1) {
+                    throw new IllegalStateException("unavailable");
+                }
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            cleaner.release(UUID.randomUUID());
+        }
+        cleaner.shutdown();
+        cleaner.clean();
+        cleaner.clean();
+
+        assertEquals(2, batches.size());
+        assertEquals(batches.get(0), batches.get(1));
+    }
+
+    @Test
+    public void testRetriesLimited() {
+        final AtomicInteger attempts = new AtomicInteger();
+        StoreCleaner cleaner = new StoreCleaner() {
+            @Override
+            protected void delete(List<String> names) {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        cleaner.release(UUID.randomUUID());
+        cleaner.shutdown();
+        for (int i = 0; i < StoreCleaner.MAX_ATTEMPTS * 2; i++) {
+            cleaner.clean();
+        }
+
+        assertEquals(StoreCleaner.MAX_ATTEMPTS, attempts.get());
+    }
+
+}